@@ -0,0 +1,119 @@
+package org.protempa.backend.dsb.file;
+
+/*
+ * #%L
+ * Protempa File Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2015 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.protempa.DataSourceReadException;
+
+/**
+ * Measures how fast {@link DelimitedFileLineIterator} parses a tab-delimited
+ * extract. It is not a test and is compiled only with the benchmarks profile.
+ * Run with the test classpath:
+ * <pre>
+ * java org.protempa.backend.dsb.file.DelimitedFileLineIteratorBenchmark [lines]
+ * java org.protempa.backend.dsb.file.DelimitedFileLineIteratorBenchmark file keyIdIndex column...
+ * </pre>
+ * The first form generates a UTF-8 file with the given number of lines
+ * (default 2000000) of a key id and four columns, and parses it. The second
+ * parses an existing file, such as a multi-GB extract, with the given key id
+ * column index and column specs in the <code>columns</code> backend property
+ * format (for example, <code>1|[Lab Observation].value$NUMERICALVALUE</code>).
+ * It reports lines per second and megabytes per second for each of three
+ * runs.
+ *
+ * @author Andrew Post
+ */
+public class DelimitedFileLineIteratorBenchmark {
+
+    private static final int RUNS = 3;
+    private static final String[] GENERATED_COLUMNS = {
+        "1|[Encounter Event 0]",
+        "2|[Encounter Event 0]>labs,encounter[Lab Observation].value$NUMERICALVALUE",
+        "3|[Encounter Event 0].type$NOMINALVALUE",
+        "4|[Demographics Constant].gender$NOMINALVALUE"
+    };
+
+    public static void main(String[] args) throws IOException, DataSourceReadException {
+        File file;
+        int keyIdIndex;
+        String[] columns;
+        boolean generated = args.length < 2;
+        if (generated) {
+            int lines = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+            file = generate(lines);
+            keyIdIndex = 0;
+            columns = GENERATED_COLUMNS;
+        } else {
+            file = new File(args[0]);
+            keyIdIndex = Integer.parseInt(args[1]);
+            columns = Arrays.copyOfRange(args, 2, args.length);
+        }
+        try {
+            DelimitedFileDataSourceBackend backend = new DelimitedFileDataSourceBackend();
+            backend.setId("benchmark");
+            backend.setCharset(StandardCharsets.UTF_8);
+            backend.setKeyIdIndex(keyIdIndex);
+            backend.parseDelimitedColumnSpecs(columns);
+            double megabytes = file.length() / (1024.0 * 1024.0);
+            for (int run = 0; run < RUNS; run++) {
+                long begin = System.nanoTime();
+                int lines = 0;
+                try (DelimitedFileLineIterator itr = new DelimitedFileLineIterator(backend, file, null)) {
+                    while (itr.hasNext()) {
+                        itr.next();
+                        lines++;
+                    }
+                }
+                double seconds = (System.nanoTime() - begin) / 1e9;
+                System.out.printf("run %d: %,d lines in %.2f s: %,.0f lines/s, %,.1f MB/s%n",
+                        run + 1, lines, seconds, lines / seconds, megabytes / seconds);
+            }
+        } finally {
+            if (generated) {
+                file.delete();
+            }
+        }
+    }
+
+    private static File generate(int lines) throws IOException {
+        File file = File.createTempFile("protempa-dsb-file-benchmark", ".txt");
+        String[] types = {"INPATIENT", "OUTPATIENT", "EMERGENCY"};
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lines; i++) {
+                writer.write(String.format("PATIENT%010d", i / 10));
+                writer.write('\t');
+                writer.write("ENC" + i);
+                writer.write('\t');
+                writer.write(Integer.toString(i % 500));
+                writer.write('\t');
+                writer.write(types[i % types.length]);
+                writer.write('\t');
+                writer.write(i % 2 == 0 ? "F" : "M");
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+}
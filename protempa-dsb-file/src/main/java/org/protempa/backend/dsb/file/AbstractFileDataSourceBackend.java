@@ -21,9 +21,11 @@ package org.protempa.backend.dsb.file;
  */
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.lang3.ArrayUtils;
+import org.protempa.DataStreamingEventIterator;
 import org.protempa.KnowledgeSource;
 import org.protempa.KnowledgeSourceReadException;
 import org.protempa.PropositionDefinition;
@@ -32,6 +34,7 @@ import org.protempa.backend.DataSourceBackendFailedConfigurationValidationExcept
 import org.protempa.backend.DataSourceBackendFailedDataValidationException;
 import org.protempa.backend.annotations.BackendProperty;
 import org.protempa.backend.dsb.DataValidationEvent;
+import org.protempa.proposition.Proposition;
 import org.protempa.proposition.value.Granularity;
 
 /**
@@ -40,17 +43,197 @@ import org.protempa.proposition.value.Granularity;
  */
 public abstract class AbstractFileDataSourceBackend extends AbstractCommonsDataSourceBackend implements FileDataSourceBackend {
     private static final File[] EMPTY_FILE_ARRAY = new File[0];
+    private static final int DEFAULT_FILE_BUFFER_SIZE = 100;
+    private static final long DEFAULT_SORT_MEMORY_BUDGET = 64L * 1024 * 1024;
     private File[] files;
+    private Charset charset;
     private int skipLines;
     private Class<? extends PropositionDefinition> rowPropositionType;
     private int[] rowSpecs;
     private String keyId;
     private Long defaultPosition;
     private Granularity defaultGranularity;
+    private boolean parallelFiles;
+    private int fileBufferSize;
+    private boolean sortFiles;
+    private long sortMemoryBudget;
+    private File sortTempDirectory;
 
     protected AbstractFileDataSourceBackend() {
         this.files = EMPTY_FILE_ARRAY;
+        this.charset = Charset.defaultCharset();
         this.rowSpecs = ArrayUtils.EMPTY_INT_ARRAY;
+        this.parallelFiles = true;
+        this.fileBufferSize = DEFAULT_FILE_BUFFER_SIZE;
+        this.sortMemoryBudget = DEFAULT_SORT_MEMORY_BUDGET;
+    }
+
+    /**
+     * Combines the files' line iterators into the iterator that is returned
+     * from <code>readPropositions</code>. If there is more than one file and
+     * parallel parsing is on, each file is parsed on its own thread and the
+     * files are merged by key id, so each file must be sorted by key id.
+     * Otherwise, the files are read one after another, so the files together
+     * must be sorted by key id.
+     *
+     * @param files the files.
+     * @param lines the files' line iterators, in the same order.
+     * @return an iterator over all of the files.
+     */
+    protected DataStreamingEventIterator<Proposition> combine(File[] files,
+            DataStreamingEventIterator<Proposition>[] lines) {
+        if (this.parallelFiles && lines.length > 1) {
+            String[] names = new String[files.length];
+            for (int i = 0; i < files.length; i++) {
+                names[i] = files[i].getName();
+            }
+            return new KeyOrderedMergeIterator(names, lines,
+                    this.fileBufferSize);
+        } else {
+            return new CloseableIteratorChain<>(lines);
+        }
+    }
+
+    /**
+     * Writes a copy of a file sorted by key id if sorting is on. Files are
+     * not sorted if the key id is set, because then each file is for a
+     * single key id.
+     *
+     * @param file the file.
+     * @param keyExtractor gets the key id of a line.
+     * @return the sorted copy, or <code>null</code> if sorting is off. The
+     * caller is responsible for deleting the copy.
+     * @throws IOException if an error occurred sorting the file.
+     */
+    File sortedCopy(File file, ExternalLineSorter.KeyExtractor keyExtractor)
+            throws IOException {
+        if (!this.sortFiles || getKeyId() != null) {
+            return null;
+        }
+        return new ExternalLineSorter(getCharset(), getSkipLines(),
+                this.sortMemoryBudget, this.sortTempDirectory, keyExtractor)
+                .sort(file);
+    }
+
+    /**
+     * Returns whether files are sorted by key id before they are read.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean isSortFiles() {
+        return sortFiles;
+    }
+
+    /**
+     * Sets whether to sort files by key id before reading them, for files
+     * that are not sorted by key id. Each file is sorted with an external
+     * merge sort into a temporary copy, which is deleted after the file has
+     * been read. The default is <code>false</code>.
+     *
+     * @param sortFiles <code>true</code> or <code>false</code>. If
+     * <code>null</code>, the default is used.
+     */
+    @BackendProperty
+    public void setSortFiles(Boolean sortFiles) {
+        this.sortFiles = sortFiles != null && sortFiles;
+    }
+
+    /**
+     * Returns about how many bytes of lines are held in memory while sorting
+     * a file.
+     *
+     * @return a positive number.
+     */
+    public long getSortMemoryBudget() {
+        return sortMemoryBudget;
+    }
+
+    /**
+     * Sets about how many bytes of lines to hold in memory while sorting a
+     * file before spilling them to disk. The default is 64 MiB.
+     *
+     * @param sortMemoryBudget a positive number. If <code>null</code> or not
+     * positive, the default is used.
+     */
+    @BackendProperty
+    public void setSortMemoryBudget(Long sortMemoryBudget) {
+        if (sortMemoryBudget == null || sortMemoryBudget < 1) {
+            this.sortMemoryBudget = DEFAULT_SORT_MEMORY_BUDGET;
+        } else {
+            this.sortMemoryBudget = sortMemoryBudget;
+        }
+    }
+
+    /**
+     * Returns where temporary files are written while sorting.
+     *
+     * @return a directory, or <code>null</code> for the system's temporary
+     * directory.
+     */
+    public File getSortTempDirectory() {
+        return sortTempDirectory;
+    }
+
+    /**
+     * Sets where to write temporary files while sorting.
+     *
+     * @param sortTempDirectory a directory, or <code>null</code> for the
+     * system's temporary directory.
+     */
+    public void setSortTempDirectory(File sortTempDirectory) {
+        this.sortTempDirectory = sortTempDirectory;
+    }
+
+    @BackendProperty(propertyName = "sortTempDirectory")
+    public void parseSortTempDirectory(String pathString) {
+        this.sortTempDirectory = pathString != null ? new File(pathString) : null;
+    }
+
+    /**
+     * Returns whether files are parsed in parallel.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean isParallelFiles() {
+        return parallelFiles;
+    }
+
+    /**
+     * Sets whether to parse each file on its own thread and merge the files
+     * by key id. The default is <code>true</code>. Turn it off for files
+     * that are sorted by key id only when read one after another.
+     *
+     * @param parallelFiles <code>true</code> or <code>false</code>. If
+     * <code>null</code>, the default is used.
+     */
+    @BackendProperty
+    public void setParallelFiles(Boolean parallelFiles) {
+        this.parallelFiles = parallelFiles == null || parallelFiles;
+    }
+
+    /**
+     * Returns how many key ids may be parsed ahead of the merge per file.
+     *
+     * @return a positive number.
+     */
+    public int getFileBufferSize() {
+        return fileBufferSize;
+    }
+
+    /**
+     * Sets how many key ids may be parsed ahead of the merge per file when
+     * files are parsed in parallel. The default is 100.
+     *
+     * @param fileBufferSize a positive number. If <code>null</code> or not
+     * positive, the default is used.
+     */
+    @BackendProperty
+    public void setFileBufferSize(Integer fileBufferSize) {
+        if (fileBufferSize == null || fileBufferSize < 1) {
+            this.fileBufferSize = DEFAULT_FILE_BUFFER_SIZE;
+        } else {
+            this.fileBufferSize = fileBufferSize;
+        }
     }
     
     protected Long getDefaultPositionPerFile(File file) throws IOException {
@@ -119,6 +302,32 @@ public abstract class AbstractFileDataSourceBackend extends AbstractCommonsDataS
         this.files = result;
     }
 
+    @Override
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Sets the character encoding of the files. If <code>null</code>, the
+     * platform's default encoding is used.
+     *
+     * @param charset the encoding.
+     */
+    @Override
+    public void setCharset(Charset charset) {
+        if (charset == null) {
+            this.charset = Charset.defaultCharset();
+        } else {
+            this.charset = charset;
+        }
+    }
+
+    @BackendProperty(propertyName = "charset")
+    @Override
+    public void parseCharset(String charsetName) {
+        setCharset(charsetName != null ? Charset.forName(charsetName) : null);
+    }
+
     @Override
     public int getSkipLines() {
         return skipLines;
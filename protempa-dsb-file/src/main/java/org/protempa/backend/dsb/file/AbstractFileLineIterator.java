@@ -19,16 +19,12 @@ package org.protempa.backend.dsb.file;
  * limitations under the License.
  * #L%
  */
-import au.com.bytecode.opencsv.CSVParser;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
 import java.nio.file.Files;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
-import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -36,7 +32,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.StringTokenizer;
 import org.arp.javautil.collections.Collections;
 import org.protempa.DataSourceReadException;
 import org.protempa.DataStreamingEvent;
@@ -51,7 +46,6 @@ import org.protempa.proposition.Proposition;
 import org.protempa.proposition.UniqueId;
 import org.protempa.proposition.interval.IntervalFactory;
 import org.protempa.proposition.value.Granularity;
-import org.protempa.proposition.value.ValueType;
 
 /**
  *
@@ -59,30 +53,49 @@ import org.protempa.proposition.value.ValueType;
  */
 abstract class AbstractFileLineIterator implements DataStreamingEventIterator<Proposition> {
 
-    private final LineNumberReader reader;
+    private final FileLineReader reader;
     private String currentLine;
     private int requiredRowLength;
     private Map<String, List<Proposition>> props;
     private Map<Proposition, Map<String, Set<UniqueId>>> refs;
-    private String id;
+    private final DataSourceBackendId dataSourceBackendId;
     private int lineNo;
     private Date updateDate;
     private Date creationDate;
     private Date downloadDate;
-    private final CSVParser referenceNameParser;
     private final SourceSystem sourceSystem;
     private final Long defaultPosition;
     private final Granularity defaultGranularity;
     private final IntervalFactory intervalFactory;
     private final boolean oneKeyId;
+    private final File sortedFile;
 
     protected AbstractFileLineIterator(FileDataSourceBackend backend, File file, Long defaultPosition, boolean oneKeyId) throws DataSourceReadException {
-        this.id = backend.getId();
+        this(backend, file, null, defaultPosition, oneKeyId);
+    }
+
+    /**
+     * Creates a line iterator.
+     *
+     * @param backend the backend.
+     * @param file the data file.
+     * @param sortedFile a copy of the data file sorted by key id to read
+     * instead, or <code>null</code> to read the data file. The copy is
+     * deleted when this iterator is closed.
+     * @param defaultPosition the position of propositions with no position.
+     * @param oneKeyId whether the whole file is for a single key id.
+     * @throws DataSourceReadException if the file could not be opened.
+     */
+    protected AbstractFileLineIterator(FileDataSourceBackend backend, File file, File sortedFile, Long defaultPosition, boolean oneKeyId) throws DataSourceReadException {
+        this.dataSourceBackendId = DataSourceBackendId.getInstance(backend.getId());
+        this.sortedFile = sortedFile;
 
         try {
-            this.reader = new LineNumberReader(new FileReader(file));
-            while (this.reader.getLineNumber() < backend.getSkipLines()) {
-                this.reader.readLine();
+            this.reader = new FileLineReader(sortedFile != null ? sortedFile : file, backend.getCharset());
+            for (int i = 0, n = backend.getSkipLines(); i < n; i++) {
+                if (this.reader.readLine() == null) {
+                    break;
+                }
             }
         } catch (IOException ex) {
             throw new DataSourceReadException(ex);
@@ -103,7 +116,6 @@ abstract class AbstractFileLineIterator implements DataStreamingEventIterator<Pr
 
         this.lineNo = 1;
 
-        this.referenceNameParser = new CSVParser(',');
         this.sourceSystem = backend.getSourceSystem();
         this.defaultPosition = defaultPosition;
         this.defaultGranularity = backend.getDefaultGranularity();
@@ -144,6 +156,21 @@ abstract class AbstractFileLineIterator implements DataStreamingEventIterator<Pr
 
     protected abstract DataStreamingEvent<Proposition> dataStreamingEvent() throws DataSourceReadException;
 
+    /**
+     * Returns the compiled links of some columns, compiling them if needed.
+     *
+     * @param columnSpecs the columns.
+     * @return the columns' plans, in the same order.
+     * @throws DataSourceReadException if any of the links are invalid.
+     */
+    protected static LinkPlan[] linkPlans(ColumnSpec[] columnSpecs) throws DataSourceReadException {
+        LinkPlan[] result = new LinkPlan[columnSpecs.length];
+        for (int i = 0; i < columnSpecs.length; i++) {
+            result[i] = columnSpecs[i].getLinkPlan();
+        }
+        return result;
+    }
+
     public int getLineNumber() {
         return this.lineNo;
     }
@@ -160,127 +187,81 @@ abstract class AbstractFileLineIterator implements DataStreamingEventIterator<Pr
         this.requiredRowLength = requiredRowLength;
     }
 
-    protected void parseLinks(String keyId, String links, String column, int colNum) throws DataSourceReadException {
-        if (links != null) {
-            String tokens = "[ ]>.$";
-            char[] tokensArr = tokens.toCharArray();
-            StringTokenizer st = new StringTokenizer(links, tokens, true);
-            String lastToken = null;
-            String propId = null;
-            String propType = null;
-            Proposition lastProposition = null;
-            String referenceNames = null;
-            String propertyName = null;
-            boolean inPropSpec = false;
-            int index = 0;
-            OUTER:
-            while (st.hasMoreTokens()) {
-                String nextToken = st.nextToken();
-                for (char token : tokensArr) {
-                    if (nextToken.charAt(0) == token) {
-                        lastToken = nextToken;
-                        if (token == ']') {
-                            inPropSpec = false;
-                            Proposition tempProp = null;
-                            List<Proposition> p = props.get(propId);
-                            if (p != null && p.size() >= index) {
-                                tempProp = p.get(index);
-                            } else {
-                                UniqueId uniqueId = new UniqueId(
-                                        DataSourceBackendId.getInstance(this.id),
-                                        new KeyIdPropIdColNumLocalUniqueId(keyId, propId, colNum));
-                                assert propType != null : "propType cannot be null";
-                                switch (propType) {
-                                    case "Constant":
-                                        Constant c = new Constant(propId, uniqueId);
-                                        c.setCreateDate(this.creationDate);
-                                        c.setDownloadDate(this.downloadDate);
-                                        c.setUpdateDate(this.updateDate);
-                                        c.setSourceSystem(this.sourceSystem);
-                                        tempProp = c;
-                                        break;
-                                    case "Observation":
-                                        PrimitiveParameter pp = new PrimitiveParameter(propId, uniqueId);
-                                        pp.setCreateDate(this.creationDate);
-                                        pp.setDownloadDate(this.downloadDate);
-                                        pp.setUpdateDate(this.updateDate);
-                                        pp.setSourceSystem(this.sourceSystem);
-                                        pp.setPosition(this.defaultPosition);
-                                        pp.setGranularity(this.defaultGranularity);
-                                        tempProp = pp;
-                                        break;
-                                    case "Event":
-                                        Event e = new Event(propId, uniqueId);
-                                        e.setCreateDate(this.creationDate);
-                                        e.setDownloadDate(this.downloadDate);
-                                        e.setUpdateDate(this.updateDate);
-                                        e.setSourceSystem(this.sourceSystem);
-                                        e.setInterval(this.intervalFactory.getInstance(this.defaultPosition, this.defaultGranularity));
-                                        tempProp = e;
-                                        break;
-                                    default:
-                                        throw new DataSourceReadException("Invalid proposition type " + propType);
-                                }
-                                Collections.putList(props, propId, tempProp);
-                            }
-                            propId = null;
-                            propType = null;
-                            if (referenceNames != null) {
-                                try {
-                                    String[] parseLine = this.referenceNameParser.parseLine(referenceNames);
-                                    if (parseLine.length < 1 || parseLine.length > 2) {
-                                        String msg = MessageFormat.format("Invalid reference in line {0}: expected referenceName[,backReferenceName] but was {1}", new Object[]{this.lineNo, referenceNames});
-                                        throw new DataSourceReadException(msg);
-                                    }
-                                    setReferences(tempProp, lastProposition, parseLine[0], parseLine.length > 1 ? parseLine[1] : null);
-                                } catch (IOException ioe) {
-                                    throw new DataSourceReadException(ioe);
-                                }
-                                referenceNames = null;
-                            }
-                            lastProposition = tempProp;
-                        }
-                        continue OUTER;
-                    }
+    /**
+     * Creates or gets the propositions of a column's compiled links, and sets
+     * their references and values.
+     *
+     * @param keyId the line's key id.
+     * @param plan the column's links.
+     * @param column the column's value.
+     * @param colNum the column's number.
+     * @throws DataSourceReadException if the column's value could not be
+     * parsed.
+     */
+    protected void applyLinks(String keyId, LinkPlan plan, String column, int colNum) throws DataSourceReadException {
+        Proposition lastProposition = null;
+        for (LinkPlan.Step step : plan.getSteps()) {
+            if (step instanceof LinkPlan.PropositionStep) {
+                LinkPlan.PropositionStep propStep = (LinkPlan.PropositionStep) step;
+                String propId = propStep.getPropId();
+                Proposition tempProp;
+                List<Proposition> p = this.props.get(propId);
+                if (p != null && p.size() > propStep.getIndex()) {
+                    tempProp = p.get(propStep.getIndex());
+                } else {
+                    tempProp = newProposition(keyId, propStep, colNum);
+                    Collections.putList(this.props, propId, tempProp);
                 }
-                switch (lastToken) {
-                    case "[":
-                        inPropSpec = true;
-                        propId = nextToken;
-                        break;
-                    case " ":
-                        if (inPropSpec) {
-                            if (propType == null) {
-                                propType = nextToken;
-                            } else {
-                                index = Integer.parseInt(nextToken);
-                            }
-                        }
-                        break;
-                    case ">":
-                        referenceNames = nextToken;
-                        break;
-                    case ".":
-                        propertyName = nextToken;
-                        break;
-                    case "$":
-                        ValueType vt;
-                        try {
-                            vt = ValueType.valueOf(nextToken);
-                        } catch (IllegalArgumentException ex) {
-                            throw new DataSourceReadException("Invalid value type " + nextToken, ex);
-                        }
-                        if ("value".equals(propertyName) && lastProposition instanceof PrimitiveParameter) {
-                            ((PrimitiveParameter) lastProposition).setValue(vt.parse(column));
-                        } else {
-                            assert lastProposition != null : "lastProposition cannot be null";
-                            ((AbstractProposition) lastProposition).setProperty(propertyName, vt.parse(column));
-                        }
+                if (propStep.getReferenceName() != null) {
+                    setReferences(tempProp, lastProposition, propStep.getReferenceName(), propStep.getBackReferenceName());
+                }
+                lastProposition = tempProp;
+            } else {
+                LinkPlan.ValueStep valueStep = (LinkPlan.ValueStep) step;
+                String propertyName = valueStep.getPropertyName();
+                if ("value".equals(propertyName) && lastProposition instanceof PrimitiveParameter) {
+                    ((PrimitiveParameter) lastProposition).setValue(valueStep.getValueType().parse(column));
+                } else {
+                    ((AbstractProposition) lastProposition).setProperty(propertyName, valueStep.getValueType().parse(column));
                 }
             }
         }
     }
 
+    private Proposition newProposition(String keyId, LinkPlan.PropositionStep propStep, int colNum) {
+        String propId = propStep.getPropId();
+        UniqueId uniqueId = new UniqueId(this.dataSourceBackendId,
+                new KeyIdPropIdColNumLocalUniqueId(keyId, propId, colNum));
+        switch (propStep.getType()) {
+            case CONSTANT:
+                Constant c = new Constant(propId, uniqueId);
+                c.setCreateDate(this.creationDate);
+                c.setDownloadDate(this.downloadDate);
+                c.setUpdateDate(this.updateDate);
+                c.setSourceSystem(this.sourceSystem);
+                return c;
+            case OBSERVATION:
+                PrimitiveParameter pp = new PrimitiveParameter(propId, uniqueId);
+                pp.setCreateDate(this.creationDate);
+                pp.setDownloadDate(this.downloadDate);
+                pp.setUpdateDate(this.updateDate);
+                pp.setSourceSystem(this.sourceSystem);
+                pp.setPosition(this.defaultPosition);
+                pp.setGranularity(this.defaultGranularity);
+                return pp;
+            case EVENT:
+                Event e = new Event(propId, uniqueId);
+                e.setCreateDate(this.creationDate);
+                e.setDownloadDate(this.downloadDate);
+                e.setUpdateDate(this.updateDate);
+                e.setSourceSystem(this.sourceSystem);
+                e.setInterval(this.intervalFactory.getInstance(this.defaultPosition, this.defaultGranularity));
+                return e;
+            default:
+                throw new AssertionError("Invalid proposition type " + propStep.getType());
+        }
+    }
+
     private void setReferences(Proposition tempProp, Proposition lastProposition, String referenceName, String backReferenceName) {
         assert tempProp != null : "tempProp cannot be null";
         assert lastProposition != null : "lastProposition cannot be null";
@@ -317,6 +298,10 @@ abstract class AbstractFileLineIterator implements DataStreamingEventIterator<Pr
             this.reader.close();
         } catch (IOException ex) {
             throw new DataSourceReadException(ex);
+        } finally {
+            if (this.sortedFile != null) {
+                this.sortedFile.delete();
+            }
         }
     }
 
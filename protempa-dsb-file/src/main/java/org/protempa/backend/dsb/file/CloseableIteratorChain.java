@@ -241,6 +241,10 @@ class CloseableIteratorChain<E> implements DataStreamingEventIterator<E> {
 
     @Override
     public void close() throws DataSourceReadException {
+        if (currentIterator != null) {
+            currentIterator.close();
+            currentIterator = null;
+        }
         for (Iterator<DataStreamingEventIterator<E>> itr = this.iteratorChain.iterator(); itr.hasNext();) {
             DataStreamingEventIterator<E> next = itr.next();
             next.close();
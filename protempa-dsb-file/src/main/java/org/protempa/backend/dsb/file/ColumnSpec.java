@@ -21,6 +21,7 @@ package org.protempa.backend.dsb.file;
  */
 
 import java.io.IOException;
+import org.protempa.DataSourceReadException;
 
 /**
  *
@@ -28,6 +29,7 @@ import java.io.IOException;
  */
 public abstract class ColumnSpec {
     private String links;
+    private volatile LinkPlan linkPlan;
     
     public String getLinks() {
         return links;
@@ -35,6 +37,23 @@ public abstract class ColumnSpec {
 
     public void setLinks(String links) {
         this.links = links;
+        this.linkPlan = null;
+    }
+
+    /**
+     * Returns this column's links compiled into a plan, compiling them the
+     * first time this is called.
+     *
+     * @return the plan.
+     * @throws DataSourceReadException if the links are invalid.
+     */
+    LinkPlan getLinkPlan() throws DataSourceReadException {
+        LinkPlan result = this.linkPlan;
+        if (result == null) {
+            result = LinkPlan.compile(this.links);
+            this.linkPlan = result;
+        }
+        return result;
     }
 
     abstract void parseDescriptor(String descriptor) throws IOException;
@@ -19,6 +19,7 @@ package org.protempa.backend.dsb.file;
  * limitations under the License.
  * #L%
  */
+import au.com.bytecode.opencsv.CSVParser;
 import java.io.File;
 import java.io.IOException;
 import java.util.Set;
@@ -62,14 +63,25 @@ public class DelimitedFileDataSourceBackend
         File[] files = getFiles();
         DelimitedFileLineIterator[] result
                 = new DelimitedFileLineIterator[files.length];
+        int keyIdIndex = getKeyIdIndex();
         for (int i = 0; i < files.length; i++) {
+            File sortedFile = null;
             try {
-                result[i] = new DelimitedFileLineIterator(this, files[i], getDefaultPositionPerFile(files[i]));
+                CSVParser csvParser = new CSVParser(getDelimiter());
+                sortedFile = sortedCopy(files[i], (String line) -> {
+                    String[] cols = csvParser.parseLine(line);
+                    return keyIdIndex > -1 && keyIdIndex < cols.length ? cols[keyIdIndex] : null;
+                });
+                result[i] = new DelimitedFileLineIterator(this, files[i], sortedFile, getDefaultPositionPerFile(files[i]));
             } catch (IOException ex) {
                 throw new DataSourceReadException(ex);
+            } finally {
+                if (result[i] == null && sortedFile != null) {
+                    sortedFile.delete();
+                }
             }
         }
-        return new CloseableIteratorChain(result);
+        return combine(files, result);
     }
 
     public DelimitedColumnSpec[] getDelimitedColumnSpecs() {
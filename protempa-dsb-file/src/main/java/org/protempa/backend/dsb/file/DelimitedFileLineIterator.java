@@ -35,20 +35,28 @@ class DelimitedFileLineIterator extends AbstractFileLineIterator {
     private final int[] rowSpecs;
     private final DelimitedColumnSpec[] columnSpecs;
     private final String keyId;
-    private final PlainColumnSpec[] keyIdColumnSpecs;
+    private final LinkPlan[] columnLinkPlans;
+    private final LinkPlan[] keyIdLinkPlans;
     private final int keyIdIndex;
     private final CSVParser csvParser;
 
     DelimitedFileLineIterator(DelimitedFileDataSourceBackend backend,
             File file, Long defaultPosition)
             throws DataSourceReadException {
-        super(backend, file, defaultPosition, backend.getKeyId() != null);
+        this(backend, file, null, defaultPosition);
+    }
+
+    DelimitedFileLineIterator(DelimitedFileDataSourceBackend backend,
+            File file, File sortedFile, Long defaultPosition)
+            throws DataSourceReadException {
+        super(backend, file, sortedFile, defaultPosition, backend.getKeyId() != null);
         this.columnSpecs = backend.getDelimitedColumnSpecs();
         this.rowSpecs = backend.getRowSpecs();
         this.keyIdIndex = backend.getKeyIdIndex();
         this.csvParser = new CSVParser(backend.getDelimiter());
         this.keyId = backend.getKeyId();
-        this.keyIdColumnSpecs = backend.getKeyIdColumnSpecs();
+        this.columnLinkPlans = linkPlans(this.columnSpecs);
+        this.keyIdLinkPlans = linkPlans(backend.getKeyIdColumnSpecs());
     }
 
     @Override
@@ -60,18 +68,14 @@ class DelimitedFileLineIterator extends AbstractFileLineIterator {
             if (kId == null) {
                 throw new DataSourceReadException("keyId was never set");
             }
-            if (this.keyIdColumnSpecs != null) {
-                for (PlainColumnSpec colSpec : this.keyIdColumnSpecs) {
-                    parseLinks(kId, colSpec.getLinks(), this.keyId, -1);
-                }
+            for (LinkPlan plan : this.keyIdLinkPlans) {
+                applyLinks(kId, plan, this.keyId, -1);
             }
             int colNum = 0;
             for (int i = 0; i < this.columnSpecs.length; i++) {
                 if (this.rowSpecs.length == 0 || this.rowSpecs[i] == getLineNumber()) {
-                    DelimitedColumnSpec colSpec = this.columnSpecs[i];
-                    String column = line[colSpec.getIndex()].trim();
-                    String links = colSpec.getLinks();
-                    parseLinks(kId, links, column, colNum++);
+                    String column = line[this.columnSpecs[i].getIndex()].trim();
+                    applyLinks(kId, this.columnLinkPlans[i], column, colNum++);
                 }
             }
             return new DataStreamingEvent<>(kId, getData());
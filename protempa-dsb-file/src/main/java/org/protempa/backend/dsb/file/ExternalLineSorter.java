@@ -0,0 +1,364 @@
+package org.protempa.backend.dsb.file;
+
+/*
+ * #%L
+ * Protempa File Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2015 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sorts the lines of a data file by key id with an external merge sort, so
+ * that files that are not sorted by key id can be read by the file data
+ * source backends. Lines are collected until they exceed a memory budget,
+ * and then they are sorted and spilled to a temporary run file. The runs are
+ * merged into a sorted copy of the file with the same header lines and
+ * encoding. The sort is stable, so lines with the same key id stay in file
+ * order.
+ *
+ * @author Andrew Post
+ */
+final class ExternalLineSorter {
+
+    private static final Logger LOGGER = Logger.getLogger(ExternalLineSorter.class.getName());
+
+    /**
+     * The maximum number of runs that are merged at once.
+     */
+    private static final int MAX_FAN_IN = 64;
+
+    /**
+     * Rough per-line overhead of the line and key strings and the entry that
+     * holds them, in bytes.
+     */
+    private static final int LINE_OVERHEAD = 96;
+
+    private static final int RUN_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Gets the key id of a line.
+     */
+    interface KeyExtractor {
+
+        /**
+         * Gets the key id of a line.
+         *
+         * @param line a line.
+         * @return the key id, or <code>null</code> if the line has none.
+         * Lines without a key id sort first.
+         * @throws IOException if the line could not be parsed.
+         */
+        String keyId(String line) throws IOException;
+    }
+
+    private static final class Entry {
+
+        private final String keyId;
+        private final String line;
+
+        Entry(String keyId, String line) {
+            this.keyId = keyId;
+            this.line = line;
+        }
+    }
+
+    private static final Comparator<Entry> BY_KEY_ID
+            = (Entry e1, Entry e2) -> e1.keyId.compareTo(e2.keyId);
+
+    private final Charset charset;
+    private final int skipLines;
+    private final long memoryBudget;
+    private final File tempDirectory;
+    private final KeyExtractor keyExtractor;
+
+    /**
+     * Creates a sorter.
+     *
+     * @param charset the files' encoding.
+     * @param skipLines the number of header lines, which are copied to the
+     * top of the sorted file as is.
+     * @param memoryBudget the approximate number of bytes of lines to hold in
+     * memory before spilling them to disk.
+     * @param tempDirectory where to write the runs and the sorted file. If
+     * <code>null</code>, the system's temporary directory is used.
+     * @param keyExtractor gets the key id of a line.
+     */
+    ExternalLineSorter(Charset charset, int skipLines, long memoryBudget,
+            File tempDirectory, KeyExtractor keyExtractor) {
+        assert charset != null : "charset cannot be null";
+        assert keyExtractor != null : "keyExtractor cannot be null";
+        this.charset = charset;
+        this.skipLines = skipLines;
+        this.memoryBudget = memoryBudget;
+        this.tempDirectory = tempDirectory;
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * Writes a copy of a file with its lines sorted by key id. The caller is
+     * responsible for deleting the copy.
+     *
+     * @param file the file to sort.
+     * @return the sorted copy, a temporary file.
+     * @throws IOException if an error occurred reading the file or writing
+     * the copy.
+     */
+    File sort(File file) throws IOException {
+        long start = System.currentTimeMillis();
+        List<File> runs = new ArrayList<>();
+        File result = null;
+        try {
+            List<String> header = new ArrayList<>(this.skipLines);
+            List<Entry> entries = new ArrayList<>();
+            long lines = 0;
+            try (FileLineReader reader = new FileLineReader(file, this.charset)) {
+                String line;
+                while (header.size() < this.skipLines
+                        && (line = reader.readLine()) != null) {
+                    header.add(line);
+                }
+                long used = 0;
+                while ((line = reader.readLine()) != null) {
+                    String keyId = this.keyExtractor.keyId(line);
+                    if (keyId == null) {
+                        keyId = "";
+                    }
+                    entries.add(new Entry(keyId, line));
+                    lines++;
+                    used += LINE_OVERHEAD + 2L * (line.length() + keyId.length());
+                    if (used >= this.memoryBudget) {
+                        runs.add(writeRun(entries));
+                        entries.clear();
+                        used = 0;
+                    }
+                }
+            }
+            result = createTempFile("sorted");
+            if (runs.isEmpty()) {
+                Collections.sort(entries, BY_KEY_ID);
+                try (Writer writer = newWriter(result, header)) {
+                    for (Entry entry : entries) {
+                        writer.write(entry.line);
+                        writer.write('\n');
+                    }
+                }
+            } else {
+                if (!entries.isEmpty()) {
+                    runs.add(writeRun(entries));
+                    entries.clear();
+                }
+                while (runs.size() > MAX_FAN_IN) {
+                    List<File> merged = new ArrayList<>();
+                    for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+                        List<File> group = runs.subList(i,
+                                Math.min(i + MAX_FAN_IN, runs.size()));
+                        File run = createTempFile("run");
+                        merged.add(run);
+                        try (DataOutputStream out = newRunOutput(run)) {
+                            merge(group, (Entry entry) -> writeEntry(out, entry));
+                        }
+                        deleteAll(group);
+                    }
+                    runs = merged;
+                }
+                try (Writer writer = newWriter(result, header)) {
+                    merge(runs, (Entry entry) -> {
+                        writer.write(entry.line);
+                        writer.write('\n');
+                    });
+                }
+            }
+            LOGGER.log(Level.FINE,
+                    "Sorted {0} lines of {1} in {2} ms with {3} run(s)",
+                    new Object[]{lines, file, System.currentTimeMillis() - start,
+                        Math.max(1, runs.size())});
+            File sorted = result;
+            result = null;
+            return sorted;
+        } finally {
+            deleteAll(runs);
+            if (result != null) {
+                delete(result);
+            }
+        }
+    }
+
+    private interface EntrySink {
+
+        void accept(Entry entry) throws IOException;
+    }
+
+    private static final class RunReader {
+
+        private final int runIndex;
+        private final DataInputStream in;
+        private Entry entry;
+
+        RunReader(int runIndex, File run) throws IOException {
+            this.runIndex = runIndex;
+            this.in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(run), RUN_BUFFER_SIZE));
+        }
+
+        boolean advance() throws IOException {
+            this.entry = readEntry(this.in);
+            return this.entry != null;
+        }
+    }
+
+    /**
+     * Merges runs in key id order. Ties go to the earlier run, which keeps
+     * the sort stable.
+     */
+    private static void merge(List<File> runs, EntrySink sink) throws IOException {
+        PriorityQueue<RunReader> heads = new PriorityQueue<>(runs.size(),
+                (RunReader r1, RunReader r2) -> {
+                    int result = BY_KEY_ID.compare(r1.entry, r2.entry);
+                    return result != 0 ? result
+                            : Integer.compare(r1.runIndex, r2.runIndex);
+                });
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader reader = new RunReader(i, runs.get(i));
+                readers.add(reader);
+                if (reader.advance()) {
+                    heads.add(reader);
+                }
+            }
+            while (!heads.isEmpty()) {
+                RunReader reader = heads.poll();
+                sink.accept(reader.entry);
+                if (reader.advance()) {
+                    heads.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.in.close();
+            }
+        }
+    }
+
+    private File writeRun(List<Entry> entries) throws IOException {
+        Collections.sort(entries, BY_KEY_ID);
+        File run = createTempFile("run");
+        try (DataOutputStream out = newRunOutput(run)) {
+            for (Entry entry : entries) {
+                writeEntry(out, entry);
+            }
+        }
+        return run;
+    }
+
+    private DataOutputStream newRunOutput(File run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(run), RUN_BUFFER_SIZE));
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry)
+            throws IOException {
+        writeString(out, entry.keyId);
+        writeString(out, entry.line);
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException ex) {
+            return null;
+        }
+        String keyId = readString(in, length);
+        String line = readString(in, in.readInt());
+        return new Entry(keyId, line);
+    }
+
+    /**
+     * Writes a string as a length and UTF-8 bytes.
+     * {@link DataOutputStream#writeUTF(java.lang.String) } is not used
+     * because it is limited to 64 KiB.
+     */
+    private static void writeString(DataOutputStream out, String str)
+            throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, int length)
+            throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Writer newWriter(File file, List<String> header) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), this.charset), RUN_BUFFER_SIZE);
+        try {
+            for (String line : header) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (IOException ex) {
+            writer.close();
+            throw ex;
+        }
+        return writer;
+    }
+
+    private File createTempFile(String kind) throws IOException {
+        File file = File.createTempFile("protempa-" + kind, ".tmp",
+                this.tempDirectory);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void deleteAll(List<File> files) {
+        for (File file : files) {
+            delete(file);
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            LOGGER.log(Level.WARNING, "Could not delete temporary file {0}",
+                    file);
+        }
+    }
+}
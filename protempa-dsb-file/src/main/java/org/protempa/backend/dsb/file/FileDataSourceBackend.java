@@ -21,6 +21,7 @@ package org.protempa.backend.dsb.file;
  */
 
 import java.io.File;
+import java.nio.charset.Charset;
 import org.protempa.PropositionDefinition;
 import org.protempa.backend.dsb.DataSourceBackend;
 import org.protempa.proposition.value.Granularity;
@@ -50,6 +51,12 @@ public interface FileDataSourceBackend extends DataSourceBackend {
 
     void parseFiles(String[] pathStrings);
 
+    Charset getCharset();
+
+    void setCharset(Charset charset);
+
+    void parseCharset(String charsetName);
+
     int getSkipLines();
 
     void setSkipLines(Integer skipLines);
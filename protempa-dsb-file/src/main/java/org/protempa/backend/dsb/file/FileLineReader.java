@@ -0,0 +1,152 @@
+package org.protempa.backend.dsb.file;
+
+/*
+ * #%L
+ * Protempa File Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2015 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads lines from a file through a large direct buffer, decoding them with an
+ * explicit charset. Lines are terminated by <code>\n</code>,
+ * <code>\r</code> or <code>\r\n</code>, as with
+ * {@link java.io.BufferedReader#readLine() }. Malformed and unmappable input
+ * is replaced rather than reported, as {@link java.io.FileReader} does.
+ *
+ * @author Andrew Post
+ */
+final class FileLineReader implements Closeable {
+
+    static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    private final char[] charArray;
+    private final CharsetDecoder decoder;
+    private boolean endOfInput;
+    private boolean flushed;
+    private boolean skipLF;
+
+    FileLineReader(File file, Charset charset) throws IOException {
+        this(file, charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    FileLineReader(File file, Charset charset, int bufferSize)
+            throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.bytes = ByteBuffer.allocateDirect(bufferSize);
+        this.charArray = new char[bufferSize];
+        this.chars = CharBuffer.wrap(this.charArray);
+        this.chars.limit(0);
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Reads the next line.
+     *
+     * @return the line without its terminator, or <code>null</code> at the
+     * end of the file.
+     * @throws IOException if an error occurred reading the file.
+     */
+    String readLine() throws IOException {
+        StringBuilder partial = null;
+        for (;;) {
+            if (!this.chars.hasRemaining() && !fill()) {
+                return partial != null ? partial.toString() : null;
+            }
+            int start = this.chars.position();
+            int limit = this.chars.limit();
+            if (this.skipLF) {
+                this.skipLF = false;
+                if (this.charArray[start] == '\n') {
+                    this.chars.position(++start);
+                    continue;
+                }
+            }
+            for (int i = start; i < limit; i++) {
+                char c = this.charArray[i];
+                if (c == '\n' || c == '\r') {
+                    this.chars.position(i + 1);
+                    this.skipLF = c == '\r';
+                    if (partial == null) {
+                        return new String(this.charArray, start, i - start);
+                    } else {
+                        return partial.append(this.charArray, start, i - start).toString();
+                    }
+                }
+            }
+            if (limit > start) {
+                if (partial == null) {
+                    partial = new StringBuilder(2 * (limit - start));
+                }
+                partial.append(this.charArray, start, limit - start);
+            }
+            this.chars.position(limit);
+        }
+    }
+
+    /**
+     * Decodes more of the file into the character buffer, which must be
+     * empty.
+     *
+     * @return whether there are more characters.
+     */
+    private boolean fill() throws IOException {
+        this.chars.clear();
+        while (!this.flushed) {
+            if (!this.endOfInput && this.channel.read(this.bytes) < 0) {
+                this.endOfInput = true;
+            }
+            this.bytes.flip();
+            CoderResult result
+                    = this.decoder.decode(this.bytes, this.chars, this.endOfInput);
+            this.bytes.compact();
+            if (result.isOverflow()) {
+                break;
+            }
+            if (this.endOfInput) {
+                if (this.decoder.flush(this.chars).isOverflow()) {
+                    break;
+                }
+                this.flushed = true;
+            } else if (this.chars.position() > 0) {
+                break;
+            }
+        }
+        this.chars.flip();
+        return this.chars.hasRemaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
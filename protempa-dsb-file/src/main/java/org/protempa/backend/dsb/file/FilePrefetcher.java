@@ -0,0 +1,183 @@
+package org.protempa.backend.dsb.file;
+
+/*
+ * #%L
+ * Protempa File Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2015 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.protempa.DataSourceReadException;
+import org.protempa.DataStreamingEvent;
+import org.protempa.DataStreamingEventIterator;
+import org.protempa.proposition.Proposition;
+
+/**
+ * Parses a file on its own thread into a bounded buffer. Consecutive lines
+ * with the same key id are grouped into one event, so the buffer holds up to
+ * a fixed number of key ids. The thread stops parsing when the buffer is full
+ * and resumes when the merge takes data out of it.
+ *
+ * @author Andrew Post
+ */
+final class FilePrefetcher implements Runnable, DataStreamingEventIterator<Proposition> {
+
+    private static final DataStreamingEvent<Proposition> END
+            = new DataStreamingEvent<>("", Collections.<Proposition>emptyList());
+
+    private final String name;
+    private final DataStreamingEventIterator<Proposition> lines;
+    private final BlockingQueue<DataStreamingEvent<Proposition>> buffer;
+    private Thread thread;
+    private DataStreamingEvent<Proposition> next;
+    private volatile boolean closed;
+    private volatile Exception failure;
+
+    /**
+     * Creates a prefetcher. Call {@link #start() } to start parsing.
+     *
+     * @param name the file's name, for the thread's name.
+     * @param lines the file's line iterator.
+     * @param bufferSize the maximum number of key ids to parse ahead of the
+     * merge.
+     */
+    FilePrefetcher(String name, DataStreamingEventIterator<Proposition> lines,
+            int bufferSize) {
+        assert lines != null : "lines cannot be null";
+        assert bufferSize > 0 : "bufferSize must be positive";
+        this.name = name;
+        this.lines = lines;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+    }
+
+    /**
+     * Starts parsing on a daemon thread.
+     */
+    void start() {
+        this.thread = new Thread(this, "Parse " + this.name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            String keyId = null;
+            List<Proposition> data = null;
+            while (!this.closed && this.lines.hasNext()) {
+                DataStreamingEvent<Proposition> event = this.lines.next();
+                if (keyId != null && keyId.equals(event.getKeyId())) {
+                    data.addAll(event.getData());
+                } else {
+                    if (keyId != null) {
+                        this.buffer.put(new DataStreamingEvent<>(keyId, data));
+                    }
+                    keyId = event.getKeyId();
+                    data = new ArrayList<>(event.getData());
+                }
+            }
+            if (keyId != null && !this.closed) {
+                this.buffer.put(new DataStreamingEvent<>(keyId, data));
+            }
+        } catch (InterruptedException ex) {
+            // closed
+        } catch (DataSourceReadException | RuntimeException ex) {
+            this.failure = ex;
+        } finally {
+            putEnd();
+        }
+    }
+
+    private void putEnd() {
+        while (true) {
+            if (this.closed) {
+                this.buffer.clear();
+            }
+            if (this.buffer.offer(END)) {
+                return;
+            }
+            try {
+                this.buffer.put(END);
+                return;
+            } catch (InterruptedException ex) {
+                // closed, so try again after clearing the buffer
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws DataSourceReadException {
+        if (this.next == null) {
+            try {
+                this.next = this.buffer.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new DataSourceReadException(
+                        "Interrupted while reading " + this.name, ex);
+            }
+        }
+        if (this.next == END) {
+            Exception ex = this.failure;
+            if (ex instanceof DataSourceReadException) {
+                throw (DataSourceReadException) ex;
+            } else if (ex != null) {
+                throw (RuntimeException) ex;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public DataStreamingEvent<Proposition> next() throws DataSourceReadException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        DataStreamingEvent<Proposition> result = this.next;
+        this.next = null;
+        return result;
+    }
+
+    /**
+     * Stops the parsing thread, waits for it to finish, and closes the file.
+     *
+     * @throws DataSourceReadException if an error occurred closing the file.
+     */
+    @Override
+    public void close() throws DataSourceReadException {
+        this.closed = true;
+        if (this.thread != null) {
+            this.thread.interrupt();
+            boolean interrupted = false;
+            while (this.thread.isAlive()) {
+                try {
+                    this.thread.join();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.lines.close();
+    }
+}
@@ -55,14 +55,21 @@ public class FixedWidthFileDataSourceBackend extends AbstractFileDataSourceBacke
     public DataStreamingEventIterator<Proposition> readPropositions(Set<String> keyIds, Set<String> propIds, Filter filters, QueryResultsHandler queryResultsHandler) throws DataSourceReadException {
         File[] files = getFiles();
         FixedWidthFileLineIterator[] result = new FixedWidthFileLineIterator[files.length];
+        int keyIdEnd = this.keyIdOffset + this.keyIdLength;
         for (int i = 0; i < files.length; i++) {
+            File sortedFile = null;
             try {
-                result[i] = new FixedWidthFileLineIterator(this, files[i], getDefaultPositionPerFile(files[i]));
+                sortedFile = sortedCopy(files[i], (String line) -> line.length() >= keyIdEnd ? line.substring(this.keyIdOffset, keyIdEnd) : null);
+                result[i] = new FixedWidthFileLineIterator(this, files[i], sortedFile, getDefaultPositionPerFile(files[i]));
             } catch (IOException ex) {
                 throw new DataSourceReadException(ex);
+            } finally {
+                if (result[i] == null && sortedFile != null) {
+                    sortedFile.delete();
+                }
             }
         }
-        return new CloseableIteratorChain(result);
+        return combine(files, result);
     }
     
     public FixedWidthColumnSpec[] getFixedWidthColumnSpecs() {
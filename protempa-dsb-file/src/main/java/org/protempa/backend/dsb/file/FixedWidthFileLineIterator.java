@@ -32,14 +32,21 @@ class FixedWidthFileLineIterator extends AbstractFileLineIterator {
     private final FixedWidthColumnSpec[] columnSpecs;
     private final int[] rowSpecs;
     private final String keyId;
-    private final PlainColumnSpec[] keyIdColumnSpecs;
+    private final LinkPlan[] columnLinkPlans;
+    private final LinkPlan[] keyIdLinkPlans;
     private final int keyIdLength;
     private final int keyIdOffset;
 
     FixedWidthFileLineIterator(FixedWidthFileDataSourceBackend backend, 
             File file, Long defaultPosition) 
             throws DataSourceReadException {
-        super(backend, file, defaultPosition, backend.getKeyId() != null);
+        this(backend, file, null, defaultPosition);
+    }
+
+    FixedWidthFileLineIterator(FixedWidthFileDataSourceBackend backend,
+            File file, File sortedFile, Long defaultPosition)
+            throws DataSourceReadException {
+        super(backend, file, sortedFile, defaultPosition, backend.getKeyId() != null);
         this.columnSpecs = backend.getFixedWidthColumnSpecs();
         this.rowSpecs = backend.getRowSpecs();
         this.keyIdOffset = backend.getKeyIdOffset();
@@ -54,20 +61,19 @@ class FixedWidthFileLineIterator extends AbstractFileLineIterator {
             setRequiredRowLength(Math.max(spec.getOffset() + 1, getRequiredRowLength()));
         }
         this.keyId = backend.getKeyId();
-        this.keyIdColumnSpecs = backend.getKeyIdColumnSpecs();
+        this.columnLinkPlans = linkPlans(this.columnSpecs);
+        this.keyIdLinkPlans = linkPlans(backend.getKeyIdColumnSpecs());
     }
 
     @Override
     protected DataStreamingEvent<Proposition> dataStreamingEvent() throws DataSourceReadException {
-        char[] charArray = getCurrentLine().toCharArray();
-        String kId = this.keyIdOffset > -1 ? String.copyValueOf(charArray, this.keyIdOffset, this.keyIdLength) : this.keyId;
+        String line = getCurrentLine();
+        String kId = this.keyIdOffset > -1 ? line.substring(this.keyIdOffset, this.keyIdOffset + this.keyIdLength) : this.keyId;
         if (kId == null) {
             throw new DataSourceReadException("keyId was never set");
         }
-        if (this.keyIdColumnSpecs.length > 0) {
-            for (PlainColumnSpec colSpec : this.keyIdColumnSpecs) {
-                parseLinks(kId, colSpec.getLinks(), this.keyId, -1);
-            }
+        for (LinkPlan plan : this.keyIdLinkPlans) {
+            applyLinks(kId, plan, this.keyId, -1);
         }
         int colNum = 0;
         for (int i = 0; i < this.columnSpecs.length; i++) {
@@ -77,9 +83,8 @@ class FixedWidthFileLineIterator extends AbstractFileLineIterator {
                  * Some files don't pad the last column with trailing
                  * whitespace. Hence, we need to check the length of the line.
                  */
-                String column = String.copyValueOf(charArray, colSpec.getOffset(), Math.min(charArray.length - colSpec.getOffset(), colSpec.getLength())).trim();
-                String links = colSpec.getLinks();
-                parseLinks(kId, links, column, colNum++);
+                String column = line.substring(colSpec.getOffset(), colSpec.getOffset() + Math.min(line.length() - colSpec.getOffset(), colSpec.getLength())).trim();
+                applyLinks(kId, this.columnLinkPlans[i], column, colNum++);
             }
         }
         return new DataStreamingEvent(kId, getData());
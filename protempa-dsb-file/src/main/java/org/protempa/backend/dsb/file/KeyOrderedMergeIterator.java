@@ -0,0 +1,173 @@
+package org.protempa.backend.dsb.file;
+
+/*
+ * #%L
+ * Protempa File Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2015 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import org.protempa.DataSourceReadException;
+import org.protempa.DataStreamingEvent;
+import org.protempa.DataStreamingEventIterator;
+import org.protempa.proposition.Proposition;
+
+/**
+ * Merges files that are each sorted by key id into one stream in key id
+ * order. Every file is parsed by its own {@link FilePrefetcher}, so files are
+ * parsed in parallel, and memory is bounded by the prefetchers' buffers. The
+ * data for a key id that appears in more than one file is returned as one
+ * event, in file order.
+ *
+ * @author Andrew Post
+ */
+final class KeyOrderedMergeIterator implements DataStreamingEventIterator<Proposition> {
+
+    private static final class Head implements Comparable<Head> {
+
+        private final int fileIndex;
+        private final FilePrefetcher prefetcher;
+        private DataStreamingEvent<Proposition> event;
+
+        Head(int fileIndex, FilePrefetcher prefetcher) {
+            this.fileIndex = fileIndex;
+            this.prefetcher = prefetcher;
+        }
+
+        /**
+         * Reads the next event of this head's file.
+         *
+         * @return <code>false</code> if the file has no more events.
+         */
+        boolean advance() throws DataSourceReadException {
+            if (this.prefetcher.hasNext()) {
+                this.event = this.prefetcher.next();
+                return true;
+            } else {
+                this.event = null;
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(Head o) {
+            int result = this.event.getKeyId().compareTo(o.event.getKeyId());
+            if (result != 0) {
+                return result;
+            }
+            return Integer.compare(this.fileIndex, o.fileIndex);
+        }
+    }
+
+    private final FilePrefetcher[] prefetchers;
+    private final PriorityQueue<Head> heads;
+    private boolean started;
+
+    /**
+     * Creates a merge of the given line iterators and starts parsing them.
+     *
+     * @param files the files' names, for naming the parsing threads.
+     * @param lines each file's line iterator.
+     * @param bufferSize the maximum number of key ids to parse ahead per file.
+     */
+    KeyOrderedMergeIterator(String[] files,
+            DataStreamingEventIterator<Proposition>[] lines, int bufferSize) {
+        assert files.length == lines.length :
+                "files and lines must have the same length";
+        this.prefetchers = new FilePrefetcher[lines.length];
+        this.heads = new PriorityQueue<>(Math.max(1, lines.length));
+        for (int i = 0; i < lines.length; i++) {
+            this.prefetchers[i] = new FilePrefetcher(files[i], lines[i],
+                    bufferSize);
+        }
+        for (FilePrefetcher prefetcher : this.prefetchers) {
+            prefetcher.start();
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws DataSourceReadException {
+        if (!this.started) {
+            for (int i = 0; i < this.prefetchers.length; i++) {
+                Head head = new Head(i, this.prefetchers[i]);
+                if (head.advance()) {
+                    this.heads.add(head);
+                }
+            }
+            this.started = true;
+        }
+        return !this.heads.isEmpty();
+    }
+
+    @Override
+    public DataStreamingEvent<Proposition> next() throws DataSourceReadException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Head head = this.heads.poll();
+        String keyId = head.event.getKeyId();
+        List<Proposition> data = head.event.getData();
+        if (!this.heads.isEmpty()
+                && keyId.equals(this.heads.peek().event.getKeyId())) {
+            data = new ArrayList<>(data);
+            advance(head);
+            while (!this.heads.isEmpty()
+                    && keyId.equals(this.heads.peek().event.getKeyId())) {
+                Head other = this.heads.poll();
+                data.addAll(other.event.getData());
+                advance(other);
+            }
+        } else {
+            advance(head);
+        }
+        return new DataStreamingEvent<>(keyId, data);
+    }
+
+    private void advance(Head head) throws DataSourceReadException {
+        if (head.advance()) {
+            this.heads.add(head);
+        }
+    }
+
+    /**
+     * Stops parsing and closes every file.
+     *
+     * @throws DataSourceReadException if an error occurred closing a file.
+     * The remaining files are still closed.
+     */
+    @Override
+    public void close() throws DataSourceReadException {
+        this.heads.clear();
+        DataSourceReadException exception = null;
+        for (FilePrefetcher prefetcher : this.prefetchers) {
+            try {
+                prefetcher.close();
+            } catch (DataSourceReadException ex) {
+                if (exception == null) {
+                    exception = ex;
+                } else {
+                    exception.addSuppressed(ex);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package org.protempa.backend.dsb.file;
+
+/*
+ * #%L
+ * Protempa File Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2015 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import au.com.bytecode.opencsv.CSVParser;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import org.protempa.DataSourceReadException;
+import org.protempa.proposition.value.ValueType;
+
+/**
+ * A column's links, compiled once into the steps that a line iterator
+ * executes for every line. The links grammar is a sequence of proposition
+ * specs, <code>[propId type index]</code>, where the type is
+ * <code>Constant</code>, <code>Observation</code> or <code>Event</code> and
+ * the index is optional. A spec may be preceded by
+ * <code>&gt;referenceName[,backReferenceName]</code> to link the previous
+ * proposition to it, and followed by <code>.propertyName$VALUETYPE</code> to
+ * set one of its properties from the column's value.
+ *
+ * @author Andrew Post
+ */
+final class LinkPlan {
+
+    static final LinkPlan EMPTY = new LinkPlan(new Step[0]);
+
+    enum PropositionType {
+        CONSTANT, OBSERVATION, EVENT
+    }
+
+    /**
+     * A step of a plan: either a {@link PropositionStep} or a
+     * {@link ValueStep}.
+     */
+    abstract static class Step {
+    }
+
+    /**
+     * Gets or creates a proposition and optionally links the previous step's
+     * proposition to it.
+     */
+    static final class PropositionStep extends Step {
+
+        private final String propId;
+        private final PropositionType type;
+        private final int index;
+        private final String referenceName;
+        private final String backReferenceName;
+
+        PropositionStep(String propId, PropositionType type, int index,
+                String referenceName, String backReferenceName) {
+            this.propId = propId;
+            this.type = type;
+            this.index = index;
+            this.referenceName = referenceName;
+            this.backReferenceName = backReferenceName;
+        }
+
+        String getPropId() {
+            return propId;
+        }
+
+        PropositionType getType() {
+            return type;
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        String getReferenceName() {
+            return referenceName;
+        }
+
+        String getBackReferenceName() {
+            return backReferenceName;
+        }
+    }
+
+    /**
+     * Sets a property, or the value of an observation, of the previous step's
+     * proposition from the column's value.
+     */
+    static final class ValueStep extends Step {
+
+        private final String propertyName;
+        private final ValueType valueType;
+
+        ValueStep(String propertyName, ValueType valueType) {
+            this.propertyName = propertyName;
+            this.valueType = valueType;
+        }
+
+        String getPropertyName() {
+            return propertyName;
+        }
+
+        ValueType getValueType() {
+            return valueType;
+        }
+    }
+
+    private static final String TOKENS = "[ ]>.$";
+
+    private final Step[] steps;
+
+    private LinkPlan(Step[] steps) {
+        this.steps = steps;
+    }
+
+    Step[] getSteps() {
+        return steps;
+    }
+
+    /**
+     * Compiles a column's links.
+     *
+     * @param links the links. May be <code>null</code>.
+     * @return the plan.
+     * @throws DataSourceReadException if the links are invalid.
+     */
+    static LinkPlan compile(String links) throws DataSourceReadException {
+        if (links == null) {
+            return EMPTY;
+        }
+        List<Step> steps = new ArrayList<>();
+        StringTokenizer st = new StringTokenizer(links, TOKENS, true);
+        CSVParser referenceNameParser = new CSVParser(',');
+        String lastToken = null;
+        String propId = null;
+        String propType = null;
+        int index = 0;
+        String referenceNames = null;
+        String propertyName = null;
+        boolean inPropSpec = false;
+        while (st.hasMoreTokens()) {
+            String nextToken = st.nextToken();
+            if (nextToken.length() == 1 && TOKENS.indexOf(nextToken.charAt(0)) >= 0) {
+                lastToken = nextToken;
+                if (nextToken.charAt(0) == ']') {
+                    inPropSpec = false;
+                    String referenceName = null;
+                    String backReferenceName = null;
+                    if (referenceNames != null) {
+                        String[] parseLine;
+                        try {
+                            parseLine = referenceNameParser.parseLine(referenceNames);
+                        } catch (IOException ioe) {
+                            throw new DataSourceReadException(ioe);
+                        }
+                        if (parseLine.length < 1 || parseLine.length > 2) {
+                            String msg = MessageFormat.format("Invalid reference in links {0}: expected referenceName[,backReferenceName] but was {1}", new Object[]{links, referenceNames});
+                            throw new DataSourceReadException(msg);
+                        }
+                        referenceName = parseLine[0];
+                        backReferenceName = parseLine.length > 1 ? parseLine[1] : null;
+                        if (steps.isEmpty()) {
+                            String msg = MessageFormat.format("Invalid reference in links {0}: reference {1} has no proposition to link from", new Object[]{links, referenceNames});
+                            throw new DataSourceReadException(msg);
+                        }
+                    }
+                    steps.add(new PropositionStep(propId,
+                            parsePropositionType(propType), index,
+                            referenceName, backReferenceName));
+                    propId = null;
+                    propType = null;
+                    index = 0;
+                    referenceNames = null;
+                }
+                continue;
+            }
+            if (lastToken == null) {
+                continue;
+            }
+            switch (lastToken) {
+                case "[":
+                    inPropSpec = true;
+                    propId = nextToken;
+                    break;
+                case " ":
+                    if (inPropSpec) {
+                        if (propType == null) {
+                            propType = nextToken;
+                        } else {
+                            try {
+                                index = Integer.parseInt(nextToken);
+                            } catch (NumberFormatException ex) {
+                                throw new DataSourceReadException("Invalid proposition index " + nextToken, ex);
+                            }
+                        }
+                    }
+                    break;
+                case ">":
+                    referenceNames = nextToken;
+                    break;
+                case ".":
+                    propertyName = nextToken;
+                    break;
+                case "$":
+                    ValueType vt;
+                    try {
+                        vt = ValueType.valueOf(nextToken);
+                    } catch (IllegalArgumentException ex) {
+                        throw new DataSourceReadException("Invalid value type " + nextToken, ex);
+                    }
+                    if (steps.isEmpty()) {
+                        throw new DataSourceReadException("Invalid links " + links + ": value type " + nextToken + " has no proposition");
+                    }
+                    steps.add(new ValueStep(propertyName, vt));
+                    break;
+                default:
+            }
+        }
+        return new LinkPlan(steps.toArray(new Step[steps.size()]));
+    }
+
+    private static PropositionType parsePropositionType(String propType)
+            throws DataSourceReadException {
+        if (propType == null) {
+            throw new DataSourceReadException("Missing proposition type");
+        }
+        switch (propType) {
+            case "Constant":
+                return PropositionType.CONSTANT;
+            case "Observation":
+                return PropositionType.OBSERVATION;
+            case "Event":
+                return PropositionType.EVENT;
+            default:
+                throw new DataSourceReadException("Invalid proposition type " + propType);
+        }
+    }
+}
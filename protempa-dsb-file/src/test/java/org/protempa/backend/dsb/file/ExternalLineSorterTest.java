@@ -0,0 +1,117 @@
+package org.protempa.backend.dsb.file;
+
+/*
+ * #%L
+ * Protempa File Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class ExternalLineSorterTest {
+
+    private static final List<String> HEADER
+            = Arrays.asList("keyId,seq", "# comment");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSortsInMemory() throws IOException {
+        assertSorted(lines(50), Long.MAX_VALUE, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testMergesRuns() throws IOException {
+        assertSorted(lines(50), 400, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Spills each line to its own run, so there are more runs than can be
+     * merged at once.
+     */
+    @Test
+    public void testMergesRunsInSeveralPasses() throws IOException {
+        assertSorted(lines(150), 1, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testKeepsEncoding() throws IOException {
+        assertSorted(lines(50), 400, StandardCharsets.ISO_8859_1);
+        assertSorted(lines(50), 400, StandardCharsets.UTF_16);
+    }
+
+    /**
+     * Returns lines with a few key ids in no particular order, each with a
+     * sequence number so that the order of lines with the same key id can
+     * be checked, and some without a key id.
+     */
+    private static List<String> lines(int count) {
+        String[] keyIds = {"k\u00fc3", "k1", "", "k\u00e910", "k2"};
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(keyIds[(i * 7) % keyIds.length] + "," + i);
+        }
+        return result;
+    }
+
+    private void assertSorted(List<String> lines, long memoryBudget,
+            Charset charset) throws IOException {
+        File tempDirectory = this.folder.newFolder();
+        File file = this.folder.newFile();
+        List<String> contents = new ArrayList<>(HEADER);
+        contents.addAll(lines);
+        Files.write(file.toPath(), contents, charset);
+        ExternalLineSorter sorter = new ExternalLineSorter(charset,
+                HEADER.size(), memoryBudget, tempDirectory,
+                (String line) -> {
+                    String keyId = line.substring(0, line.indexOf(','));
+                    return keyId.isEmpty() ? null : keyId;
+                });
+        File sorted = sorter.sort(file);
+
+        List<String> expected = new ArrayList<>(HEADER);
+        List<String> sortedLines = new ArrayList<>(lines);
+        /*
+         * Collections.sort is stable.
+         */
+        Collections.sort(sortedLines, (String l1, String l2)
+                -> l1.substring(0, l1.indexOf(','))
+                .compareTo(l2.substring(0, l2.indexOf(','))));
+        expected.addAll(sortedLines);
+        Assert.assertEquals(expected,
+                Files.readAllLines(sorted.toPath(), charset));
+        Assert.assertEquals("runs left behind",
+                Collections.singletonList(sorted),
+                Arrays.asList(tempDirectory.listFiles()));
+    }
+}
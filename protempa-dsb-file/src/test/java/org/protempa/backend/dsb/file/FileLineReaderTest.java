@@ -0,0 +1,154 @@
+package org.protempa.backend.dsb.file;
+
+/*
+ * #%L
+ * Protempa File Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.protempa.DataSourceReadException;
+import org.protempa.DataStreamingEvent;
+import org.protempa.proposition.Proposition;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class FileLineReaderTest {
+
+    /**
+     * Smaller than most of the lines, so that lines span several reads.
+     */
+    private static final int SMALL_BUFFER_SIZE = 4;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        Assert.assertEquals(Collections.emptyList(),
+                readLines(new byte[0], StandardCharsets.UTF_8,
+                        FileLineReader.DEFAULT_BUFFER_SIZE));
+    }
+
+    @Test
+    public void testLineTerminators() throws IOException {
+        byte[] bytes = "a\nbcdefgh\r\ni\rjk\r\n\nlast"
+                .getBytes(StandardCharsets.UTF_8);
+        List<String> expected = Arrays.asList("a", "bcdefgh", "i", "jk", "",
+                "last");
+        Assert.assertEquals(expected, readLines(bytes, StandardCharsets.UTF_8,
+                FileLineReader.DEFAULT_BUFFER_SIZE));
+        for (int bufferSize = 1; bufferSize <= 8; bufferSize++) {
+            Assert.assertEquals("buffer size " + bufferSize, expected,
+                    readLines(bytes, StandardCharsets.UTF_8, bufferSize));
+        }
+    }
+
+    @Test
+    public void testTrailingTerminator() throws IOException {
+        Assert.assertEquals(Arrays.asList("a", "b"),
+                readLines("a\r\nb\r\n".getBytes(StandardCharsets.UTF_8),
+                        StandardCharsets.UTF_8, SMALL_BUFFER_SIZE));
+    }
+
+    @Test
+    public void testDecodesCharset() throws IOException {
+        List<String> expected = Arrays.asList("k\u00fc3,Zo\u00eb",
+                "\u65e5\u672c\u8a9e", "plain");
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8,
+            StandardCharsets.UTF_16, StandardCharsets.ISO_8859_1}) {
+            List<String> lines = charset == StandardCharsets.ISO_8859_1
+                    ? expected.subList(0, 1) : expected;
+            byte[] bytes = String.join("\n", lines).getBytes(charset);
+            for (int bufferSize : new int[]{SMALL_BUFFER_SIZE,
+                FileLineReader.DEFAULT_BUFFER_SIZE}) {
+                Assert.assertEquals(charset + ", buffer size " + bufferSize,
+                        lines, readLines(bytes, charset, bufferSize));
+            }
+        }
+    }
+
+    @Test
+    public void testReplacesMalformedInput() throws IOException {
+        byte[] bytes = {'a', (byte) 0xff, 'b', '\n', 'c'};
+        Assert.assertEquals(Arrays.asList("a\ufffdb", "c"),
+                readLines(bytes, StandardCharsets.UTF_8, SMALL_BUFFER_SIZE));
+    }
+
+    /**
+     * The backend's <code>charset</code> property sets the encoding in which
+     * line iterators read data files.
+     */
+    @Test
+    public void testCharsetProperty()
+            throws IOException, DataSourceReadException {
+        File file = this.folder.newFile();
+        Files.write(file.toPath(), Collections.singletonList("k1\tZo\u00eb"),
+                StandardCharsets.ISO_8859_1);
+        DelimitedFileDataSourceBackend backend
+                = new DelimitedFileDataSourceBackend();
+        backend.setId("test");
+        backend.setKeyIdIndex(0);
+        backend.parseDelimitedColumnSpecs(
+                new String[]{"1|[Patient Constant].name$NOMINALVALUE"});
+        backend.parseCharset("ISO-8859-1");
+        Assert.assertEquals(StandardCharsets.ISO_8859_1, backend.getCharset());
+        try (DelimitedFileLineIterator itr
+                = new DelimitedFileLineIterator(backend, file, null)) {
+            DataStreamingEvent<Proposition> event = itr.next();
+            Assert.assertEquals("Zo\u00eb",
+                    event.getData().get(0).getProperty("name").getFormatted());
+        }
+    }
+
+    @Test
+    public void testCharsetPropertyDefault() {
+        DelimitedFileDataSourceBackend backend
+                = new DelimitedFileDataSourceBackend();
+        Assert.assertEquals(Charset.defaultCharset(), backend.getCharset());
+        backend.parseCharset(null);
+        Assert.assertEquals(Charset.defaultCharset(), backend.getCharset());
+    }
+
+    private List<String> readLines(byte[] bytes, Charset charset,
+            int bufferSize) throws IOException {
+        File file = this.folder.newFile();
+        Files.write(file.toPath(), bytes);
+        List<String> result = new ArrayList<>();
+        try (FileLineReader reader
+                = new FileLineReader(file, charset, bufferSize)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,201 @@
+package org.protempa.backend.dsb.file;
+
+/*
+ * #%L
+ * Protempa File Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.protempa.DataSourceReadException;
+import org.protempa.DataStreamingEvent;
+import org.protempa.DataStreamingEventIterator;
+import org.protempa.proposition.DefaultUniqueIdFactory;
+import org.protempa.proposition.PrimitiveParameter;
+import org.protempa.proposition.Proposition;
+import org.protempa.proposition.UniqueIdFactory;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class KeyOrderedMergeIteratorTest {
+
+    private final UniqueIdFactory uidFactory = new DefaultUniqueIdFactory();
+
+    @Test
+    public void testMergesSameKeyIdInFileOrder() throws Exception {
+        ListEvents file0 = new ListEvents(event("k1", "a"), event("k1", "b"),
+                event("k3", "c"));
+        ListEvents file1 = new ListEvents(event("k1", "d"), event("k2", "e"),
+                event("k3", "f"));
+        ListEvents file2 = new ListEvents();
+        KeyOrderedMergeIterator itr = merge(1, file0, file1, file2);
+        try {
+            Assert.assertEquals(Arrays.asList("k1 [a, b, d]", "k2 [e]",
+                    "k3 [c, f]"), drain(itr));
+        } finally {
+            itr.close();
+        }
+        Assert.assertTrue(file0.closed);
+        Assert.assertTrue(file1.closed);
+        Assert.assertTrue(file2.closed);
+    }
+
+    @Test
+    public void testPassesOnParserFailure() throws Exception {
+        DataSourceReadException failure
+                = new DataSourceReadException("bad line");
+        ListEvents file0 = new ListEvents(event("k1", "a"), event("k2", "b"));
+        ListEvents file1 = new ListEvents(event("k1", "c"));
+        file1.failure = failure;
+        KeyOrderedMergeIterator itr = merge(1, file0, file1);
+        try {
+            drain(itr);
+            Assert.fail("expected the parser's failure");
+        } catch (DataSourceReadException ex) {
+            Assert.assertSame(failure, ex);
+        } finally {
+            itr.close();
+        }
+        Assert.assertTrue(file0.closed);
+        Assert.assertTrue(file1.closed);
+    }
+
+    /**
+     * Closes the merge while the parsing threads are blocked on their full
+     * buffers.
+     */
+    @Test(timeout = 10000)
+    public void testCloseStopsBlockedParsers() throws Exception {
+        EndlessEvents file0 = new EndlessEvents();
+        EndlessEvents file1 = new EndlessEvents();
+        KeyOrderedMergeIterator itr = merge(1, file0, file1);
+        Assert.assertTrue(itr.hasNext());
+        itr.next();
+        while (file0.count < 3 || file1.count < 3) {
+            Thread.sleep(10);
+        }
+        itr.close();
+        Assert.assertTrue(file0.closed);
+        Assert.assertTrue(file1.closed);
+        int count0 = file0.count;
+        int count1 = file1.count;
+        Thread.sleep(100);
+        Assert.assertEquals(count0, file0.count);
+        Assert.assertEquals(count1, file1.count);
+    }
+
+    @SafeVarargs
+    private static KeyOrderedMergeIterator merge(int bufferSize,
+            DataStreamingEventIterator<Proposition>... files) {
+        String[] names = new String[files.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "file" + i;
+        }
+        return new KeyOrderedMergeIterator(names, files, bufferSize);
+    }
+
+    private static List<String> drain(KeyOrderedMergeIterator itr)
+            throws DataSourceReadException {
+        List<String> result = new ArrayList<>();
+        while (itr.hasNext()) {
+            DataStreamingEvent<Proposition> event = itr.next();
+            List<String> ids = new ArrayList<>();
+            for (Proposition prop : event.getData()) {
+                ids.add(prop.getId());
+            }
+            result.add(event.getKeyId() + " " + ids);
+        }
+        return result;
+    }
+
+    private DataStreamingEvent<Proposition> event(String keyId,
+            String propId) {
+        return new DataStreamingEvent<>(keyId,
+                Collections.<Proposition>singletonList(
+                        new PrimitiveParameter(propId,
+                                this.uidFactory.getInstance())));
+    }
+
+    /**
+     * A file's events, optionally followed by a failure.
+     */
+    private static final class ListEvents
+            implements DataStreamingEventIterator<Proposition> {
+
+        private final Iterator<DataStreamingEvent<Proposition>> events;
+        private DataSourceReadException failure;
+        private volatile boolean closed;
+
+        @SafeVarargs
+        ListEvents(DataStreamingEvent<Proposition>... events) {
+            this.events = Arrays.asList(events).iterator();
+        }
+
+        @Override
+        public boolean hasNext() throws DataSourceReadException {
+            if (!this.events.hasNext() && this.failure != null) {
+                throw this.failure;
+            }
+            return this.events.hasNext();
+        }
+
+        @Override
+        public DataStreamingEvent<Proposition> next()
+                throws DataSourceReadException {
+            hasNext();
+            return this.events.next();
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+
+    /**
+     * A file with an event for every key id.
+     */
+    private static final class EndlessEvents
+            implements DataStreamingEventIterator<Proposition> {
+
+        private volatile int count;
+        private volatile boolean closed;
+
+        @Override
+        public boolean hasNext() {
+            return true;
+        }
+
+        @Override
+        public DataStreamingEvent<Proposition> next() {
+            return new DataStreamingEvent<>(String.format("k%09d", this.count++),
+                    Collections.<Proposition>emptyList());
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.protempa.backend.dsb.file;
+
+/*
+ * #%L
+ * Protempa File Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.protempa.DataSourceReadException;
+import org.protempa.DataStreamingEvent;
+import org.protempa.proposition.Proposition;
+import org.protempa.proposition.value.ValueType;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class LinkPlanTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testNullIsEmpty() throws DataSourceReadException {
+        Assert.assertSame(LinkPlan.EMPTY, LinkPlan.compile(null));
+    }
+
+    @Test
+    public void testCompilesSteps() throws DataSourceReadException {
+        LinkPlan.Step[] steps = LinkPlan.compile(
+                "[Encounter Event 1]>labs,encounter[Lab Observation].value$NUMERICALVALUE")
+                .getSteps();
+        Assert.assertEquals(3, steps.length);
+        LinkPlan.PropositionStep encounter = (LinkPlan.PropositionStep) steps[0];
+        Assert.assertEquals("Encounter", encounter.getPropId());
+        Assert.assertEquals(LinkPlan.PropositionType.EVENT, encounter.getType());
+        Assert.assertEquals(1, encounter.getIndex());
+        Assert.assertNull(encounter.getReferenceName());
+        LinkPlan.PropositionStep lab = (LinkPlan.PropositionStep) steps[1];
+        Assert.assertEquals("Lab", lab.getPropId());
+        Assert.assertEquals(LinkPlan.PropositionType.OBSERVATION, lab.getType());
+        Assert.assertEquals("labs", lab.getReferenceName());
+        Assert.assertEquals("encounter", lab.getBackReferenceName());
+        LinkPlan.ValueStep value = (LinkPlan.ValueStep) steps[2];
+        Assert.assertEquals("value", value.getPropertyName());
+        Assert.assertEquals(ValueType.NUMERICALVALUE, value.getValueType());
+    }
+
+    @Test
+    public void testIndexResetsForEachPropositionSpec()
+            throws DataSourceReadException {
+        LinkPlan.Step[] steps = LinkPlan.compile(
+                "[Encounter Event 2]>labs[Lab Observation]").getSteps();
+        Assert.assertEquals(2, ((LinkPlan.PropositionStep) steps[0]).getIndex());
+        Assert.assertEquals(0, ((LinkPlan.PropositionStep) steps[1]).getIndex());
+    }
+
+    @Test
+    public void testPropertyNameCarriesOverAfterValueStep()
+            throws DataSourceReadException {
+        LinkPlan.Step[] steps = LinkPlan.compile(
+                "[Encounter Event].type$NOMINALVALUE>patient[Patient Constant]$NOMINALVALUE")
+                .getSteps();
+        Assert.assertEquals(4, steps.length);
+        Assert.assertEquals("type",
+                ((LinkPlan.ValueStep) steps[1]).getPropertyName());
+        Assert.assertEquals("type",
+                ((LinkPlan.ValueStep) steps[3]).getPropertyName());
+    }
+
+    @Test(expected = DataSourceReadException.class)
+    public void testInvalidPropositionType() throws DataSourceReadException {
+        LinkPlan.compile("[Encounter Visit]");
+    }
+
+    @Test(expected = DataSourceReadException.class)
+    public void testInvalidValueType() throws DataSourceReadException {
+        LinkPlan.compile("[Encounter Event].type$TEXT");
+    }
+
+    @Test(expected = DataSourceReadException.class)
+    public void testReferenceWithoutProposition()
+            throws DataSourceReadException {
+        LinkPlan.compile(">labs[Lab Observation]");
+    }
+
+    /**
+     * Invalid links are reported when a line iterator is created, before any
+     * line is read.
+     */
+    @Test
+    public void testInvalidLinksFailIteratorCreation() throws IOException {
+        DelimitedFileDataSourceBackend backend = newBackend(
+                "1|[Encounter Event]", "2|[Lab Visit]");
+        File file = write("k1\tE1\tL1");
+        try {
+            new DelimitedFileLineIterator(backend, file, null).close();
+            Assert.fail("expected a DataSourceReadException");
+        } catch (DataSourceReadException ex) {
+        }
+    }
+
+    /**
+     * An index equal to the number of propositions with the same id creates
+     * another proposition.
+     */
+    @Test
+    public void testIndexAtSizeCreatesProposition()
+            throws IOException, DataSourceReadException {
+        DelimitedFileDataSourceBackend backend = newBackend(
+                "1|[Encounter Event 0].type$NOMINALVALUE",
+                "2|[Encounter Event 1].type$NOMINALVALUE",
+                "3|[Encounter Event 1].type$NOMINALVALUE");
+        File file = write("k1\tINPATIENT\tOUTPATIENT\tEMERGENCY");
+        try (DelimitedFileLineIterator itr
+                = new DelimitedFileLineIterator(backend, file, null)) {
+            Assert.assertTrue(itr.hasNext());
+            DataStreamingEvent<Proposition> event = itr.next();
+            Assert.assertEquals("k1", event.getKeyId());
+            List<Proposition> data = event.getData();
+            Assert.assertEquals(2, data.size());
+            Assert.assertEquals("INPATIENT",
+                    data.get(0).getProperty("type").getFormatted());
+            Assert.assertEquals("EMERGENCY",
+                    data.get(1).getProperty("type").getFormatted());
+        }
+    }
+
+    private DelimitedFileDataSourceBackend newBackend(String... columns)
+            throws IOException {
+        DelimitedFileDataSourceBackend backend
+                = new DelimitedFileDataSourceBackend();
+        backend.setId("test");
+        backend.setKeyIdIndex(0);
+        backend.parseDelimitedColumnSpecs(columns);
+        return backend;
+    }
+
+    private File write(String... lines) throws IOException {
+        File file = this.folder.newFile();
+        Files.write(file.toPath(), Arrays.asList(lines),
+                StandardCharsets.UTF_8);
+        return file;
+    }
+}
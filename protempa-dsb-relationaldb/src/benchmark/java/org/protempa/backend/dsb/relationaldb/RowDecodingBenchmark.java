@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * Protempa Relational Database Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.backend.dsb.relationaldb;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.protempa.proposition.value.Value;
+import org.protempa.proposition.value.ValueType;
+
+/**
+ * Compares reading numeric columns as strings and parsing them with reading
+ * them with the value formats from {@link ColumnDecoders}, against an
+ * in-memory H2 database. It is not a test and is compiled only with the
+ * benchmarks profile. Run with the test classpath:
+ * <pre>
+ * java org.protempa.backend.dsb.relationaldb.RowDecodingBenchmark [rows] [passes]
+ * </pre>
+ * It reports rows per second for each approach.
+ *
+ * @author Andrew Post
+ */
+public class RowDecodingBenchmark {
+
+    private static final String[] COLUMNS = {"INT_VAL", "DECIMAL_VAL", "DOUBLE_VAL"};
+
+    public static void main(String[] args) throws SQLException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        try (Connection connection = DriverManager.getConnection(
+                "jdbc:h2:mem:rowdecoding;DB_CLOSE_DELAY=-1")) {
+            populate(connection, rows);
+            // warm up
+            decode(connection, false);
+            decode(connection, true);
+            long parsing = 0;
+            long typed = 0;
+            for (int i = 0; i < passes; i++) {
+                parsing += decode(connection, false);
+                typed += decode(connection, true);
+            }
+            System.out.printf("getString and parse: %,.0f rows/s%n",
+                    (double) rows * passes / parsing * 1000000000L);
+            System.out.printf("typed getters:       %,.0f rows/s%n",
+                    (double) rows * passes / typed * 1000000000L);
+        }
+    }
+
+    private static void populate(Connection connection, int rows)
+            throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS LABS");
+            stmt.execute("CREATE TABLE LABS (KEY_ID VARCHAR(32), "
+                    + "INT_VAL INTEGER, DECIMAL_VAL DECIMAL(10,2), "
+                    + "DOUBLE_VAL DOUBLE)");
+        }
+        connection.setAutoCommit(false);
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT INTO LABS VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                stmt.setString(1, "K" + (i / 20));
+                stmt.setInt(2, i % 1000);
+                stmt.setBigDecimal(3, BigDecimal.valueOf(i % 100000, 2));
+                stmt.setDouble(4, (i % 5000) / 7.0);
+                stmt.addBatch();
+                if (i % 1000 == 999) {
+                    stmt.executeBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    private static long decode(Connection connection, boolean typed)
+            throws SQLException {
+        long start = System.nanoTime();
+        int nonNull = 0;
+        try (Statement stmt = connection.createStatement();
+                ResultSet resultSet = stmt.executeQuery(
+                        "SELECT KEY_ID, " + String.join(", ", COLUMNS)
+                        + " FROM LABS")) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            int[] columnTypes = new int[metaData.getColumnCount()];
+            JDBCValueFormat[] formats = new JDBCValueFormat[COLUMNS.length];
+            for (int i = 0; i < columnTypes.length; i++) {
+                columnTypes[i] = metaData.getColumnType(i + 1);
+            }
+            for (int i = 0; i < formats.length; i++) {
+                formats[i] = typed
+                        ? ColumnDecoders.forColumn(ValueType.NUMBERVALUE, columnTypes[i + 1])
+                        : ColumnDecoders.parsing(ValueType.NUMBERVALUE);
+            }
+            while (resultSet.next()) {
+                if (resultSet.getString(1) != null) {
+                    nonNull++;
+                }
+                for (int i = 0; i < formats.length; i++) {
+                    Value value = formats[i].toValue(resultSet, i + 2,
+                            columnTypes[i + 1]);
+                    if (value != null) {
+                        nonNull++;
+                    }
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (nonNull == 0) {
+            throw new AssertionError("no rows were read");
+        }
+        return elapsed;
+    }
+}
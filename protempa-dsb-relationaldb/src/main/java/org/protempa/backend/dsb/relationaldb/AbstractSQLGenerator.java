@@ -23,6 +23,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.arp.javautil.arrays.Arrays;
 import org.arp.javautil.collections.Collections;
 import org.arp.javautil.sql.ConnectionSpec;
+import org.arp.javautil.sql.InvalidConnectionSpecArguments;
 import org.protempa.DataSourceReadException;
 import org.protempa.DataStreamingEventIterator;
 import org.protempa.UniqueIdPair;
@@ -35,7 +36,10 @@ import org.protempa.proposition.value.Unit;
 import org.protempa.proposition.value.UnitFactory;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -44,11 +48,14 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -65,7 +72,15 @@ import org.protempa.ProtempaEvent;
 public abstract class AbstractSQLGenerator implements SQLGenerator {
 
     static final int FETCH_SIZE = 10000;
-    private static final int DEFAULT_QUERY_THREAD_COUNT = 4;
+    private static final int MIN_FETCH_SIZE = 100;
+    private static final int DEFAULT_FETCH_MEMORY_BUDGET = 16 * 1024 * 1024;
+    /**
+     * The width assumed for LOBs and for columns of unknown or very large
+     * size, in bytes.
+     */
+    private static final int MAX_COLUMN_WIDTH = 8000;
+    static final int DEFAULT_QUERY_THREAD_COUNT = 4;
+    private static final int DEFAULT_PREFETCH_BUFFER_SIZE = 100;
     private static final String READ_PROPOSITION_SQL = "select {0} from {1} {2}";
     private ConnectionSpec connectionSpec;
     private final Map<String, List<EntitySpec>> primitiveParameterSpecs;
@@ -78,12 +93,18 @@ public abstract class AbstractSQLGenerator implements SQLGenerator {
     private UnitFactory units;
     private RelationalDbDataSourceBackend backend;
     private int queryThreadCount;
+    private int prefetchBufferSize;
+    private int fetchMemoryBudget;
+    private final ConcurrentMap<String, Integer> fetchSizes;
 
     protected AbstractSQLGenerator() {
         this.primitiveParameterSpecs = new HashMap<>();
         this.eventSpecs = new HashMap<>();
         this.constantSpecs = new HashMap<>();
         this.queryThreadCount = DEFAULT_QUERY_THREAD_COUNT;
+        this.prefetchBufferSize = DEFAULT_PREFETCH_BUFFER_SIZE;
+        this.fetchMemoryBudget = DEFAULT_FETCH_MEMORY_BUDGET;
+        this.fetchSizes = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -105,6 +126,14 @@ public abstract class AbstractSQLGenerator implements SQLGenerator {
             if (queryThreadCountSetting != null) {
                 this.queryThreadCount = queryThreadCountSetting;
             }
+            Integer prefetchBufferSizeSetting = backend.getPrefetchBufferSize();
+            if (prefetchBufferSizeSetting != null) {
+                this.prefetchBufferSize = prefetchBufferSizeSetting;
+            }
+            Integer fetchMemoryBudgetSetting = backend.getFetchMemoryBudget();
+            if (fetchMemoryBudgetSetting != null && fetchMemoryBudgetSetting > 0) {
+                this.fetchMemoryBudget = fetchMemoryBudgetSetting;
+            }
         } else {
             throw new IllegalArgumentException(
                     "relationalDatabaseSpec cannot be null");
@@ -143,6 +172,125 @@ public abstract class AbstractSQLGenerator implements SQLGenerator {
         }
     }
 
+    /**
+     * Configures a connection before it is used to stream query results. The
+     * default implementation does nothing. Override it for drivers that
+     * need connection settings to fetch results incrementally rather than
+     * all at once.
+     *
+     * @param connection a connection.
+     * @throws SQLException if an error occurred configuring the connection.
+     */
+    protected void prepareStreamingConnection(Connection connection)
+            throws SQLException {
+    }
+
+    /**
+     * Estimates how many bytes the JDBC driver buffers per row of a query's
+     * results. The default implementation uses each column's SQL type and
+     * display size. Override it for drivers that size their buffers
+     * differently.
+     *
+     * @param metaData the results' metadata.
+     * @return the estimated width of a row, in bytes.
+     * @throws SQLException if an error occurred reading the metadata.
+     */
+    protected int estimateRowWidth(ResultSetMetaData metaData)
+            throws SQLException {
+        long width = 0;
+        for (int i = 1, n = metaData.getColumnCount(); i <= n; i++) {
+            width += columnWidth(metaData.getColumnType(i),
+                    metaData.getColumnDisplaySize(i));
+        }
+        return (int) Math.min(width, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Estimates the width of a column's values.
+     *
+     * @param columnType the column's SQL type, from {@link Types}.
+     * @param size the column's size in characters, or a non-positive number
+     * if unknown.
+     * @return the estimated width in bytes.
+     */
+    protected static int columnWidth(int columnType, int size) {
+        switch (columnType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return 8;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return 22;
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+            case Types.TIME_WITH_TIMEZONE:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return 16;
+            case Types.BLOB:
+            case Types.CLOB:
+            case Types.NCLOB:
+            case Types.LONGVARBINARY:
+            case Types.LONGVARCHAR:
+            case Types.LONGNVARCHAR:
+                return MAX_COLUMN_WIDTH;
+            default:
+                if (size <= 0 || size > MAX_COLUMN_WIDTH / 2) {
+                    return MAX_COLUMN_WIDTH;
+                } else {
+                    return 2 * size;
+                }
+        }
+    }
+
+    /**
+     * Gets the number of rows to fetch at once for an entity spec's query.
+     * It is the size computed from the entity spec's previous query's row
+     * width, or a default size if there is none.
+     *
+     * @param entitySpecName the name of an entity spec.
+     * @return a number of rows.
+     */
+    int getFetchSize(String entitySpecName) {
+        Integer fetchSize = this.fetchSizes.get(entitySpecName);
+        return fetchSize != null ? fetchSize : FETCH_SIZE;
+    }
+
+    /**
+     * Sizes a query's remaining fetches so that each fetch takes about the
+     * fetch memory budget, and remembers the size for the entity spec's next
+     * query.
+     *
+     * @param entitySpecName the name of the query's entity spec.
+     * @param resultSet the query's results.
+     * @throws SQLException if an error occurred reading the results'
+     * metadata.
+     */
+    void adaptFetchSize(String entitySpecName, ResultSet resultSet)
+            throws SQLException {
+        int rowWidth = Math.max(estimateRowWidth(resultSet.getMetaData()), 1);
+        int fetchSize = (int) Math.max(MIN_FETCH_SIZE,
+                Math.min(FETCH_SIZE, (long) this.fetchMemoryBudget / rowWidth));
+        Integer previous = this.fetchSizes.put(entitySpecName, fetchSize);
+        Logger logger = SQLGenUtil.logger();
+        if ((previous == null || previous != fetchSize)
+                && logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE,
+                    "Fetching {0} rows at a time for {1} (about {2} bytes per row)",
+                    new Object[]{fetchSize, entitySpecName, rowWidth});
+        }
+        if (resultSet.getFetchSize() != fetchSize) {
+            resultSet.setFetchSize(fetchSize);
+        }
+    }
+
     private class SQLExecutorCallable implements Callable<List<StreamingIteratorPair>> {
 
         private final Map<EntitySpec, SQLGenResultProcessorFactory> allEntitySpecToResultProcessor;
@@ -176,10 +324,14 @@ public abstract class AbstractSQLGenerator implements SQLGenerator {
                             new Date(), 
                             this.entitySpec.getName()));
             Connection conn;
-            try {
-                conn = connectionSpec.getOrCreate();
-            } catch (SQLException ex) {
-                throw new DataSourceReadException(ex);
+            if (connectionSpec == null) {
+                conn = null;
+            } else {
+                try {
+                    conn = backend.getConnectionPool().getOrCreate();
+                } catch (InvalidConnectionSpecArguments | SQLException ex) {
+                    throw new DataSourceReadException(ex);
+                }
             }
             return processEntitySpecStreaming(this.entitySpec,
                     allEntitySpecToResultProcessor,
@@ -187,7 +339,8 @@ public abstract class AbstractSQLGenerator implements SQLGenerator {
                     propIds,
                     keyIds, new StreamingSQLExecutor(
                             conn, backendNameForMessages(),
-                            backend.getQueryTimeout()));
+                            backend.getQueryTimeout(),
+                            AbstractSQLGenerator.this));
         }
 
     }
@@ -206,7 +359,7 @@ public abstract class AbstractSQLGenerator implements SQLGenerator {
         final List<StreamingIteratorPair> itrs = new ArrayList<>();
         ExecutorService executor = Executors.newFixedThreadPool(this.queryThreadCount);
         List<Future<List<StreamingIteratorPair>>> list = new ArrayList<>();
-        List<Connection> connections = new ArrayList<>();
+        Set<Connection> connections = new LinkedHashSet<>();
         for (EntitySpec entitySpec : entitySpecToPropIds.keySet()) {
             list.add(executor.submit(new SQLExecutorCallable(entitySpec, allEntitySpecToResultProcessor, allEntitySpecs, filters, propIds, keyIds)));
         }
@@ -228,11 +381,26 @@ public abstract class AbstractSQLGenerator implements SQLGenerator {
         List<DataStreamingEventIterator<UniqueIdPair>> refs
                 = new ArrayList<>();
         for (StreamingIteratorPair pair : itrs) {
-            events.add(pair.getProps());
-            refs.addAll(pair.getRefs());
+            List<? extends DataStreamingEventIterator<UniqueIdPair>> pairRefs
+                    = pair.getRefs();
+            if (this.prefetchBufferSize > 0 && pairRefs.size() == 1
+                    && pairRefs.get(0) instanceof InboundReferenceResultSetIterator) {
+                StreamPrefetcher prefetcher = new StreamPrefetcher(
+                        pair.getEntitySpecName(), pair.getProps(),
+                        (InboundReferenceResultSetIterator) pairRefs.get(0),
+                        this.prefetchBufferSize);
+                prefetcher.start();
+                events.add(prefetcher.getProps());
+                refs.add(prefetcher.getRefs());
+            } else {
+                events.add(pair.getProps());
+                refs.addAll(pair.getRefs());
+            }
+            connections.add(pair.getConnection());
         }
         RelationalDbDataReadIterator streamingResults
-                = new RelationalDbDataReadIterator(refs, events, connections);
+                = new RelationalDbDataReadIterator(refs, events,
+                        new ArrayList<>(connections));
 
         return streamingResults;
 
@@ -240,18 +408,25 @@ public abstract class AbstractSQLGenerator implements SQLGenerator {
 
     private class StreamingIteratorPair {
 
+        private final String entitySpecName;
         private final DataStreamingEventIterator<Proposition> props;
         private final List<? extends DataStreamingEventIterator<UniqueIdPair>> refs;
         private final Connection connection;
 
-        StreamingIteratorPair(DataStreamingEventIterator<Proposition> props,
+        StreamingIteratorPair(String entitySpecName,
+                DataStreamingEventIterator<Proposition> props,
                 List<? extends DataStreamingEventIterator<UniqueIdPair>> refs,
                 Connection connection) {
+            this.entitySpecName = entitySpecName;
             this.props = props;
             this.refs = refs;
             this.connection = connection;
         }
 
+        public String getEntitySpecName() {
+            return entitySpecName;
+        }
+
         public DataStreamingEventIterator<Proposition> getProps() {
             return props;
         }
@@ -309,7 +484,8 @@ public abstract class AbstractSQLGenerator implements SQLGenerator {
             List<DataStreamingEventIterator<UniqueIdPair>> refResults
                     = java.util.Collections.singletonList(resultProcessor
                             .getInboundReferenceResults());
-            result.add(new StreamingIteratorPair(results, refResults, executor.getConnection()));
+            result.add(new StreamingIteratorPair(entitySpec.getName(),
+                    results, refResults, executor.getConnection()));
         }
 
         logDoneProcessing(logger, entitySpec);
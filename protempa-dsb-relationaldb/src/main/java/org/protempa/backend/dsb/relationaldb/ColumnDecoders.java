@@ -0,0 +1,155 @@
+/*
+ * #%L
+ * Protempa Relational Database Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.backend.dsb.relationaldb;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import org.protempa.proposition.value.NumberValue;
+import org.protempa.proposition.value.Value;
+import org.protempa.proposition.value.ValueType;
+
+/**
+ * Chooses how to read a column's values from its SQL type and the value
+ * type it is declared to have. Numeric columns are read with the result
+ * set's typed getters, which avoids converting every value to a string and
+ * parsing it back. The values are the same as those from parsing the
+ * column's string value with the declared value type. Other columns are
+ * read as strings and parsed. That includes <code>BIT</code> and
+ * <code>BOOLEAN</code> columns, whose string values differ between drivers
+ * (e.g., <code>t</code> and <code>f</code> in PostgreSQL, <code>1</code> and
+ * <code>0</code> in SQL Server and MySQL), so that they keep parsing into
+ * the same values as before.
+ *
+ * @author Andrew Post
+ */
+final class ColumnDecoders {
+
+    private static final JDBCValueFormat LONG
+            = (ResultSet resultSet, int columnIndex, int columnType) -> {
+                long l = resultSet.getLong(columnIndex);
+                return resultSet.wasNull() ? null : NumberValue.getInstance(l);
+            };
+
+    private static final JDBCValueFormat BIG_DECIMAL
+            = (ResultSet resultSet, int columnIndex, int columnType) -> {
+                BigDecimal bd = resultSet.getBigDecimal(columnIndex);
+                return bd == null ? null : NumberValue.getInstance(bd);
+            };
+
+    private static final JDBCValueFormat DOUBLE
+            = (ResultSet resultSet, int columnIndex, int columnType) -> {
+                double d = resultSet.getDouble(columnIndex);
+                return resultSet.wasNull() ? null : NumberValue.getInstance(d);
+            };
+
+    /*
+     * Uses the float's own decimal representation, as its string value
+     * would, rather than that of the float widened to a double.
+     */
+    private static final JDBCValueFormat FLOAT
+            = (ResultSet resultSet, int columnIndex, int columnType) -> {
+                float f = resultSet.getFloat(columnIndex);
+                return resultSet.wasNull() ? null
+                        : NumberValue.getInstance(new BigDecimal(Float.toString(f)));
+            };
+
+    private ColumnDecoders() {
+    }
+
+    /**
+     * Gets how to read a column.
+     *
+     * @param valueType the column's declared value type.
+     * @param columnType the column's SQL type, from {@link Types}.
+     * @return a value format.
+     */
+    static JDBCValueFormat forColumn(ValueType valueType, int columnType) {
+        switch (valueType) {
+            case VALUE:
+                JDBCValueFormat format = numeric(columnType);
+                if (format != null) {
+                    return nullsParsed(valueType, format);
+                }
+                break;
+            case ORDEREDVALUE:
+            case NUMERICALVALUE:
+            case NUMBERVALUE:
+                JDBCValueFormat numeric = numeric(columnType);
+                if (numeric != null) {
+                    return numeric;
+                }
+                break;
+            default:
+        }
+        return parsing(valueType);
+    }
+
+    /**
+     * Gets a value format that reads a column as a string and parses it with
+     * a value type.
+     *
+     * @param valueType a value type.
+     * @return a value format.
+     */
+    static JDBCValueFormat parsing(ValueType valueType) {
+        return (ResultSet resultSet, int columnIndex, int columnType)
+                -> valueType.parse(resultSet.getString(columnIndex));
+    }
+
+    /**
+     * Wraps a typed value format so that SQL <code>NULL</code>s become
+     * what the value type parses <code>null</code> into, which for
+     * {@link ValueType#VALUE} is a nominal value rather than
+     * <code>null</code>.
+     */
+    private static JDBCValueFormat nullsParsed(ValueType valueType,
+            JDBCValueFormat format) {
+        Value parsedNull = valueType.parse(null);
+        if (parsedNull == null) {
+            return format;
+        }
+        return (ResultSet resultSet, int columnIndex, int columnType) -> {
+            Value value = format.toValue(resultSet, columnIndex, columnType);
+            return value != null ? value : valueType.parse(null);
+        };
+    }
+
+    private static JDBCValueFormat numeric(int columnType) {
+        switch (columnType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return LONG;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return BIG_DECIMAL;
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return DOUBLE;
+            case Types.REAL:
+                return FLOAT;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * #%L
+ * Protempa Relational Database Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.backend.dsb.relationaldb;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.arp.javautil.sql.ConnectionSpec;
+
+/**
+ * Reuses database connections across queries. Connections come from
+ * {@link #getOrCreate() } and go back to the pool when they are closed.
+ * Returned connections are rolled back and restored to their original
+ * autocommit setting. Up to a maximum number of them are kept, most
+ * recently used first, and connections that have been idle too long are
+ * closed. A connection that has been idle for a while is validated before it
+ * is handed out again, and it is replaced if it is no longer valid.
+ *
+ * Optionally, the number of open connections may be capped, in which case
+ * callers wait for a connection to be returned when the cap is reached.
+ * The pool keeps statistics on connection creation and waiting, which
+ * {@link #toString() } reports.
+ *
+ * @author Andrew Post
+ */
+final class ConnectionPool {
+
+    /**
+     * How long a connection may be idle before it is validated, in
+     * nanoseconds.
+     */
+    private static final long VALIDATION_INTERVAL = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * How long to wait for a connection to respond to validation, in
+     * seconds.
+     */
+    private static final int VALIDATION_TIMEOUT = 5;
+
+    private static final class PooledConnection {
+
+        private final Connection connection;
+        private final boolean autoCommit;
+        private long lastUsed;
+
+        PooledConnection(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.autoCommit = connection.getAutoCommit();
+        }
+    }
+
+    private final ConnectionSpec connectionSpec;
+    private final int maxIdle;
+    private final int maxConnections;
+    private final long waitTimeout;
+    private final long idleTimeout;
+    private final Deque<PooledConnection> idle;
+    private int open;
+    private boolean closed;
+    private long borrowed;
+    private long created;
+    private long createNanos;
+    private long discarded;
+    private long waits;
+    private long waitNanos;
+    private long maxWaitNanos;
+
+    /**
+     * Creates a pool.
+     *
+     * @param connectionSpec where to get new connections. Cannot be
+     * <code>null</code>.
+     * @param maxIdle the maximum number of connections to keep for reuse.
+     * @param maxConnections the maximum number of open connections, or
+     * <code>0</code> for no maximum.
+     * @param waitTimeout how long to wait for a connection when the maximum
+     * number are open, in milliseconds.
+     * @param idleTimeout how long a connection may be idle before it is
+     * closed, in milliseconds.
+     */
+    ConnectionPool(ConnectionSpec connectionSpec, int maxIdle,
+            int maxConnections, long waitTimeout, long idleTimeout) {
+        assert connectionSpec != null : "connectionSpec cannot be null";
+        this.connectionSpec = connectionSpec;
+        this.maxIdle = maxIdle;
+        this.maxConnections = maxConnections;
+        this.waitTimeout = TimeUnit.MILLISECONDS.toNanos(waitTimeout);
+        this.idleTimeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        this.idle = new ArrayDeque<>();
+    }
+
+    /**
+     * Gets a connection from the pool, or creates one if none are idle.
+     * Closing the connection returns it to the pool.
+     *
+     * @return a connection.
+     * @throws SQLException if the pool is closed, if no connection became
+     * available within the wait timeout, or if an error occurred creating a
+     * connection.
+     */
+    Connection getOrCreate() throws SQLException {
+        while (true) {
+            PooledConnection pooled;
+            List<PooledConnection> evicted = new ArrayList<>();
+            try {
+                pooled = takeIdleOrReserve(evicted);
+            } finally {
+                closeAll(evicted);
+            }
+            if (pooled == null) {
+                return wrap(create());
+            } else if (isValid(pooled)) {
+                return wrap(pooled);
+            } else {
+                discard(pooled);
+            }
+        }
+    }
+
+    /**
+     * Gets an idle connection, or reserves room for a new connection, waiting
+     * if the maximum number of connections are open.
+     *
+     * @param evicted where to put idle connections that timed out, to be
+     * closed by the caller outside of the pool's lock.
+     * @return an idle connection, or <code>null</code> if the caller should
+     * create one.
+     */
+    private synchronized PooledConnection takeIdleOrReserve(
+            List<PooledConnection> evicted) throws SQLException {
+        long start = System.nanoTime();
+        boolean waited = false;
+        try {
+            while (true) {
+                if (this.closed) {
+                    throw new SQLException("The connection pool is closed");
+                }
+                evictIdle(evicted);
+                PooledConnection pooled = this.idle.pollFirst();
+                if (pooled != null) {
+                    return pooled;
+                }
+                if (this.maxConnections <= 0
+                        || this.open < this.maxConnections) {
+                    this.open++;
+                    return null;
+                }
+                long remaining = start + this.waitTimeout - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SQLException("Timed out after "
+                            + TimeUnit.NANOSECONDS.toMillis(this.waitTimeout)
+                            + " ms waiting for one of " + this.maxConnections
+                            + " database connections");
+                }
+                waited = true;
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException(
+                            "Interrupted while waiting for a database connection",
+                            ex);
+                }
+            }
+        } finally {
+            if (waited) {
+                long waitTime = System.nanoTime() - start;
+                this.waits++;
+                this.waitNanos += waitTime;
+                this.maxWaitNanos = Math.max(this.maxWaitNanos, waitTime);
+            }
+        }
+    }
+
+    private PooledConnection create() throws SQLException {
+        boolean success = false;
+        try {
+            long start = System.nanoTime();
+            Connection connection = this.connectionSpec.getOrCreate();
+            PooledConnection pooled;
+            try {
+                pooled = new PooledConnection(connection);
+            } catch (SQLException ex) {
+                closeQuietly(connection);
+                throw ex;
+            }
+            long createTime = System.nanoTime() - start;
+            synchronized (this) {
+                this.created++;
+                this.createNanos += createTime;
+            }
+            success = true;
+            return pooled;
+        } finally {
+            if (!success) {
+                synchronized (this) {
+                    this.open--;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private static boolean isValid(PooledConnection pooled) {
+        if (System.nanoTime() - pooled.lastUsed < VALIDATION_INTERVAL) {
+            return true;
+        }
+        try {
+            return pooled.connection.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException ex) {
+            SQLGenUtil.logger().log(Level.FINE,
+                    "Error validating a pooled database connection", ex);
+            return false;
+        }
+    }
+
+    private Connection wrap(PooledConnection pooled) {
+        synchronized (this) {
+            this.borrowed++;
+        }
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new Handle(pooled));
+    }
+
+    /**
+     * Puts a connection back in the pool, or closes it if it cannot be
+     * reset, if the pool is full, or if the pool is closed.
+     */
+    private void release(PooledConnection pooled) {
+        boolean reusable;
+        Connection connection = pooled.connection;
+        try {
+            reusable = !connection.isClosed();
+            if (reusable) {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                }
+                if (connection.getAutoCommit() != pooled.autoCommit) {
+                    connection.setAutoCommit(pooled.autoCommit);
+                }
+                connection.clearWarnings();
+            }
+        } catch (SQLException ex) {
+            SQLGenUtil.logger().log(Level.FINE,
+                    "Error resetting a pooled database connection", ex);
+            reusable = false;
+        }
+        List<PooledConnection> evicted = new ArrayList<>();
+        boolean kept;
+        synchronized (this) {
+            kept = reusable && !this.closed
+                    && this.idle.size() < this.maxIdle;
+            if (kept) {
+                pooled.lastUsed = System.nanoTime();
+                this.idle.addFirst(pooled);
+            } else {
+                this.open--;
+                this.discarded++;
+            }
+            evictIdle(evicted);
+            notifyAll();
+        }
+        if (!kept) {
+            closeQuietly(connection);
+        }
+        closeAll(evicted);
+    }
+
+    private void discard(PooledConnection pooled) {
+        synchronized (this) {
+            this.open--;
+            this.discarded++;
+            notifyAll();
+        }
+        closeQuietly(pooled.connection);
+    }
+
+    /**
+     * Removes connections that have been idle longer than the idle timeout.
+     * The least recently used connections are at the end of the deque.
+     */
+    private void evictIdle(List<PooledConnection> evicted) {
+        long now = System.nanoTime();
+        PooledConnection oldest;
+        while ((oldest = this.idle.peekLast()) != null
+                && now - oldest.lastUsed > this.idleTimeout) {
+            evicted.add(this.idle.pollLast());
+            this.open--;
+            this.discarded++;
+        }
+        if (!evicted.isEmpty()) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Closes the idle connections. Connections that are in use are closed
+     * when they are returned.
+     */
+    void close() {
+        List<PooledConnection> idleConnections;
+        synchronized (this) {
+            this.closed = true;
+            idleConnections = new ArrayList<>(this.idle);
+            this.open -= this.idle.size();
+            this.idle.clear();
+            notifyAll();
+        }
+        closeAll(idleConnections);
+    }
+
+    private static void closeAll(List<PooledConnection> connections) {
+        for (PooledConnection pooled : connections) {
+            closeQuietly(pooled.connection);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            SQLGenUtil.logger().log(Level.FINE,
+                    "Error closing a database connection", ex);
+        }
+    }
+
+    /**
+     * Logs the pool's statistics.
+     *
+     * @param logger a logger.
+     * @param level the level at which to log.
+     */
+    void logStatistics(Logger logger, Level level) {
+        if (logger.isLoggable(level)) {
+            logger.log(level, "Connection pool statistics: {0}", this);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "borrowed=" + this.borrowed
+                + ", created=" + this.created
+                + ", avgCreateMillis=" + (this.created > 0
+                        ? TimeUnit.NANOSECONDS.toMillis(this.createNanos / this.created) : 0)
+                + ", discarded=" + this.discarded
+                + ", open=" + this.open
+                + ", idle=" + this.idle.size()
+                + ", waits=" + this.waits
+                + ", totalWaitMillis=" + TimeUnit.NANOSECONDS.toMillis(this.waitNanos)
+                + ", maxWaitMillis=" + TimeUnit.NANOSECONDS.toMillis(this.maxWaitNanos);
+    }
+
+    /**
+     * Forwards calls to a pooled connection, except that closing returns the
+     * connection to the pool. The handle may not be used after it is closed.
+     */
+    private final class Handle implements InvocationHandler {
+
+        private final PooledConnection pooled;
+        private boolean closed;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (markClosed()) {
+                        release(this.pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    if (isHandleClosed()) {
+                        return true;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + this.pooled.connection;
+                default:
+                    if (isHandleClosed()) {
+                        throw new SQLException("The connection is closed");
+                    }
+            }
+            try {
+                return method.invoke(this.pooled.connection, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        private synchronized boolean markClosed() {
+            if (this.closed) {
+                return false;
+            }
+            this.closed = true;
+            return true;
+        }
+
+        private synchronized boolean isHandleClosed() {
+            return this.closed;
+        }
+    }
+}
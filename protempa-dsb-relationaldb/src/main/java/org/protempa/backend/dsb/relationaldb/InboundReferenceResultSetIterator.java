@@ -129,6 +129,17 @@ final class InboundReferenceResultSetIterator implements
         return result;
     }
 
+    /**
+     * Removes and returns the next event if one has been assembled. Unlike
+     * {@link #next() }, it does not make up an empty event when there is
+     * none.
+     *
+     * @return the next event, or <code>null</code> if none is ready.
+     */
+    DataStreamingEvent<UniqueIdPair> poll() {
+        return this.dataStreamingEventQueue.poll();
+    }
+
     private static final class DestructuredUniqueIdPair {
 
         private final String referenceName;
@@ -27,7 +27,6 @@ import org.protempa.UniqueIdPair;
 import org.protempa.proposition.PrimitiveParameter;
 import org.protempa.proposition.UniqueId;
 import org.protempa.proposition.value.Value;
-import org.protempa.proposition.value.ValueType;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -65,7 +64,8 @@ class PrimitiveParameterStreamingResultProcessor extends StreamingMainResultProc
         private final Logger logger;
         private final DataSourceBackendSourceSystem dsType;
         private final Date now;
-        
+        private JDBCValueFormat valueFormat;
+
 
         PrimParamIterator(Statement statement, ResultSet resultSet, 
                 EntitySpec entitySpec, Map<String, ReferenceSpec> inboundRefSpecs, Map<String,
@@ -135,9 +135,12 @@ class PrimitiveParameterStreamingResultProcessor extends StreamingMainResultProc
                         "Could not parse timestamp. Leaving timestamp unset.", e);
             }
 
-            ValueType valueType = entitySpec.getValueType();
-            String cpValStr = resultSet.getString(i++);
-            Value cpVal = valueType.parse(cpValStr);
+            if (this.valueFormat == null) {
+                this.valueFormat = ColumnDecoders.forColumn(
+                        entitySpec.getValueType(), columnTypes[i - 1]);
+            }
+            Value cpVal = this.valueFormat.toValue(resultSet, i, columnTypes[i - 1]);
+            i++;
 
             i = extractPropertyValues(resultSet, i,
                     propertyValues, columnTypes);
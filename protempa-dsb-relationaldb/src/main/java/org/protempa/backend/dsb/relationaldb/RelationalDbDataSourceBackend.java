@@ -22,6 +22,7 @@ package org.protempa.backend.dsb.relationaldb;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -32,6 +33,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -98,6 +100,13 @@ import org.protempa.proposition.Proposition;
 public abstract class RelationalDbDataSourceBackend
         extends AbstractCommonsDataSourceBackend {
 
+    private static final int DEFAULT_KEY_LOADER_BATCH_SIZE = 1000;
+    private static final int DEFAULT_KEY_LOADER_COMMIT_SIZE = 10000;
+    private static final int ORACLE_MAX_IN_LIST_SIZE = 1000;
+    private static final int DEFAULT_CONNECTION_WAIT_TIMEOUT = 60;
+    private static final int DEFAULT_CONNECTION_IDLE_TIMEOUT = 600;
+    private static final String ORACLE_PRODUCT_NAME = "Oracle";
+    private static final String POSTGRESQL_PRODUCT_NAME = "PostgreSQL";
     private static final DataValidationEvent[] EMPTY_VALIDATION_EVENT_ARRAY
             = new DataValidationEvent[0];
     private DatabaseAPI databaseAPI;
@@ -119,6 +128,16 @@ public abstract class RelationalDbDataSourceBackend
     private FromBackendRelationalDatabaseSpecBuilder relationalDatabaseSpecBuilder;
     private MappingsFactory mappingsFactory;
     private Integer queryThreadCount;
+    private Integer prefetchBufferSize;
+    private Integer fetchMemoryBudget;
+    private Integer connectionPoolSize;
+    private Integer maxConnections;
+    private Integer connectionWaitTimeout;
+    private Integer connectionIdleTimeout;
+    private ConnectionPool connectionPool;
+    private Integer keyLoaderBatchSize;
+    private Integer keyLoaderCommitSize;
+    private Boolean keyLoaderBulkLoad;
 
     public RelationalDbDataSourceBackend() {
         this.databaseAPI = DatabaseAPI.DRIVERMANAGER;
@@ -199,9 +218,181 @@ public abstract class RelationalDbDataSourceBackend
 
     @BackendProperty
     public void setQueryThreadCount(Integer queryThreadCount) {
+        closeConnectionPool();
         this.queryThreadCount = queryThreadCount;
     }
 
+    public Integer getPrefetchBufferSize() {
+        return prefetchBufferSize;
+    }
+
+    /**
+     * Sets how many key ids' data to read ahead of the merge for each entity
+     * spec's query. Each query's results are read on their own thread into a
+     * buffer of this size. Set to 0 to read the results on the thread that
+     * merges them. If <code>null</code>, a default size is used.
+     *
+     * @param prefetchBufferSize the buffer size.
+     */
+    @BackendProperty
+    public void setPrefetchBufferSize(Integer prefetchBufferSize) {
+        this.prefetchBufferSize = prefetchBufferSize;
+    }
+
+    public Integer getFetchMemoryBudget() {
+        return fetchMemoryBudget;
+    }
+
+    /**
+     * Sets about how many bytes of rows the JDBC driver may fetch at once for
+     * each entity spec's query. The number of rows per fetch is this budget
+     * divided by the estimated width of the query's rows, up to 10000 rows.
+     * If <code>null</code>, a default budget is used.
+     *
+     * @param fetchMemoryBudget the budget in bytes.
+     */
+    @BackendProperty
+    public void setFetchMemoryBudget(Integer fetchMemoryBudget) {
+        this.fetchMemoryBudget = fetchMemoryBudget;
+    }
+
+    public Integer getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    /**
+     * Sets how many idle database connections to keep for reuse by later
+     * queries. If <code>null</code>, the query thread count is used.
+     *
+     * @param connectionPoolSize the number of connections.
+     */
+    @BackendProperty
+    public void setConnectionPoolSize(Integer connectionPoolSize) {
+        closeConnectionPool();
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    public Integer getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum number of database connections this backend may have
+     * open at once. Each entity spec's query holds a connection until its
+     * results have been read, so this must be at least the number of entity
+     * specs that are read together. If <code>null</code> (the default),
+     * there is no maximum.
+     *
+     * @param maxConnections the number of connections.
+     */
+    @BackendProperty
+    public void setMaxConnections(Integer maxConnections) {
+        closeConnectionPool();
+        this.maxConnections = maxConnections;
+    }
+
+    public Integer getConnectionWaitTimeout() {
+        return connectionWaitTimeout;
+    }
+
+    /**
+     * Sets how long to wait for a database connection when the maximum
+     * number of connections are open. If <code>null</code>, the default is
+     * 60 seconds.
+     *
+     * @param seconds the timeout in seconds.
+     */
+    @BackendProperty
+    public void setConnectionWaitTimeout(Integer seconds) {
+        closeConnectionPool();
+        this.connectionWaitTimeout = seconds;
+    }
+
+    public Integer getConnectionIdleTimeout() {
+        return connectionIdleTimeout;
+    }
+
+    /**
+     * Sets how long a pooled database connection may be idle before it is
+     * closed. If <code>null</code>, the default is 600 seconds.
+     *
+     * @param seconds the timeout in seconds.
+     */
+    @BackendProperty
+    public void setConnectionIdleTimeout(Integer seconds) {
+        closeConnectionPool();
+        this.connectionIdleTimeout = seconds;
+    }
+
+    /**
+     * Returns how many key ids {@link #writeKeys(java.util.Set) } binds to
+     * each insert statement.
+     *
+     * @return a positive number.
+     */
+    public int getKeyLoaderBatchSize() {
+        if (this.keyLoaderBatchSize != null && this.keyLoaderBatchSize > 0) {
+            return this.keyLoaderBatchSize;
+        } else {
+            return DEFAULT_KEY_LOADER_BATCH_SIZE;
+        }
+    }
+
+    /**
+     * Sets how many key ids {@link #writeKeys(java.util.Set) } binds to each
+     * insert statement. On Oracle, it is capped at 1000, the maximum size of
+     * an <code>IN</code> list. If <code>null</code> or not positive, a
+     * default size is used.
+     *
+     * @param keyLoaderBatchSize the batch size.
+     */
+    @BackendProperty
+    public void setKeyLoaderBatchSize(Integer keyLoaderBatchSize) {
+        this.keyLoaderBatchSize = keyLoaderBatchSize;
+    }
+
+    /**
+     * Returns how many key ids {@link #writeKeys(java.util.Set) } writes
+     * between commits.
+     *
+     * @return a positive number.
+     */
+    public int getKeyLoaderCommitSize() {
+        if (this.keyLoaderCommitSize != null && this.keyLoaderCommitSize > 0) {
+            return this.keyLoaderCommitSize;
+        } else {
+            return DEFAULT_KEY_LOADER_COMMIT_SIZE;
+        }
+    }
+
+    /**
+     * Sets how many key ids {@link #writeKeys(java.util.Set) } writes between
+     * commits. If <code>null</code> or not positive, a default size is used.
+     *
+     * @param keyLoaderCommitSize the commit interval.
+     */
+    @BackendProperty
+    public void setKeyLoaderCommitSize(Integer keyLoaderCommitSize) {
+        this.keyLoaderCommitSize = keyLoaderCommitSize;
+    }
+
+    public Boolean getKeyLoaderBulkLoad() {
+        return keyLoaderBulkLoad;
+    }
+
+    /**
+     * Sets whether {@link #writeKeys(java.util.Set) } may use a
+     * database-specific bulk load. Currently only PostgreSQL has one, which
+     * binds key ids as an array rather than as <code>IN</code> lists. If
+     * <code>null</code>, bulk loading is used where available.
+     *
+     * @param keyLoaderBulkLoad whether to bulk load key ids.
+     */
+    @BackendProperty
+    public void setKeyLoaderBulkLoad(Boolean keyLoaderBulkLoad) {
+        this.keyLoaderBulkLoad = keyLoaderBulkLoad;
+    }
+
     public String getKeyLoaderKeyIdTable() {
         if (this.keyLoaderKeyIdTable != null) {
             return this.keyLoaderKeyIdTable;
@@ -305,6 +496,7 @@ public abstract class RelationalDbDataSourceBackend
      */
     public void setDatabaseAPI(DatabaseAPI databaseAPI) {
         this.sqlGenerator = null;
+        closeConnectionPool();
         if (databaseAPI == null) {
             databaseAPI = DatabaseAPI.DRIVERMANAGER;
         }
@@ -341,6 +533,7 @@ public abstract class RelationalDbDataSourceBackend
     @BackendProperty
     public void setDatabaseId(String databaseId) {
         this.sqlGenerator = null;
+        closeConnectionPool();
         this.databaseId = databaseId;
     }
 
@@ -389,6 +582,7 @@ public abstract class RelationalDbDataSourceBackend
     @BackendProperty
     public void setUsername(String user) {
         this.sqlGenerator = null;
+        closeConnectionPool();
         this.username = user;
     }
 
@@ -409,6 +603,7 @@ public abstract class RelationalDbDataSourceBackend
     @BackendProperty
     public void setPassword(String password) {
         this.sqlGenerator = null;
+        closeConnectionPool();
         this.password = password;
     }
 
@@ -452,9 +647,7 @@ public abstract class RelationalDbDataSourceBackend
     public void deleteAllKeys() throws DataSourceWriteException {
         if (isInKeySetMode()) {
             try {
-                ConnectionSpec connectionSpecInstance
-                        = getConnectionSpecInstance();
-                try (Connection con = connectionSpecInstance.getOrCreate()) {
+                try (Connection con = getConnectionPool().getOrCreate()) {
                     try (Statement stmt = con.createStatement()) {
                         StringBuilder stmtBuilder = new StringBuilder();
                         stmtBuilder.append("DELETE FROM ");
@@ -500,72 +693,133 @@ public abstract class RelationalDbDataSourceBackend
         }
     }
 
+    /**
+     * Writes key ids to the key loader table over one connection. Key ids are
+     * bound to a prepared <code>INSERT ... SELECT</code> statement whose
+     * <code>IN</code> list holds up to {@link #getKeyLoaderBatchSize() }
+     * key ids, and the statements are sent to the database in JDBC batches.
+     * The transaction is committed every
+     * {@link #getKeyLoaderCommitSize() } key ids and at the end. On
+     * PostgreSQL, unless {@link #getKeyLoaderBulkLoad() } is
+     * <code>false</code>, each commit interval's key ids are instead bound
+     * as a single array parameter. If writing fails, the current commit
+     * interval is rolled back, and key ids from earlier intervals remain in
+     * the table.
+     *
+     * @param keyIds the key ids to write.
+     * @throws DataSourceWriteException if an error occurred.
+     */
     @Override
     public void writeKeys(Set<String> keyIds) throws DataSourceWriteException {
-        if (isInKeySetMode() && keyIds != null) {
-            for (String keyId : keyIds) {
-                writeKeys(keyId);
-            }
-        }
-    }
-
-    private void writeKeys(String keyId) throws DataSourceWriteException {
-        final int batchSize = 1000;
-        int commitSize = 10000;
-        try {
-            ConnectionSpec connectionSpecInstance
-                    = getConnectionSpecInstance();
-
-            try (Connection con = connectionSpecInstance.getOrCreate()) {
-                try {
-                    int i = 0;
-                    List<String> subKeyIds = new ArrayList<>(batchSize);
-                    String stmt = buildWriteKeysInsertStmt(batchSize);
-                    SQLGenUtil.logger().log(Level.FINER, "Statement for writing keys: {0}", stmt);
-                    try (PreparedStatement prepareStatement = con.prepareStatement(stmt)) {
-                        subKeyIds.add(keyId);
-                        if (++i % batchSize == 0) {
-                            for (int j = 0, n = subKeyIds.size(); j < n; j++) {
-                                prepareStatement.setObject(j + 1, subKeyIds.get(j));
-                            }
-                            prepareStatement.execute();
-                        }
-                        if (i >= commitSize) {
-                            con.commit();
-                            commitSize = 0;
-                        }
-                    }
-                    if (!subKeyIds.isEmpty()) {
-                        stmt = buildWriteKeysInsertStmt(subKeyIds.size());
-                        SQLGenUtil.logger().log(Level.FINER, "Statement for writing keys: {0}", stmt);
-                        i = 0;
-                        try (PreparedStatement prepareStatement = con.prepareStatement(stmt)) {
-                            for (String subKeyId : subKeyIds) {
-                                prepareStatement.setObject(++i, subKeyId);
+        if (isInKeySetMode() && keyIds != null && !keyIds.isEmpty()) {
+            try {
+                try (Connection con = getConnectionPool().getOrCreate()) {
+                    try {
+                        String productName
+                                = con.getMetaData().getDatabaseProductName();
+                        if (!Boolean.FALSE.equals(this.keyLoaderBulkLoad)
+                                && POSTGRESQL_PRODUCT_NAME.equals(productName)) {
+                            writeKeysAsArrays(con, keyIds);
+                        } else {
+                            int batchSize = getKeyLoaderBatchSize();
+                            if (ORACLE_PRODUCT_NAME.equals(productName)) {
+                                batchSize = Math.min(batchSize,
+                                        ORACLE_MAX_IN_LIST_SIZE);
                             }
-                            prepareStatement.execute();
+                            writeKeysAsInLists(con, keyIds, batchSize);
                         }
-                    }
-                    if (i >= commitSize) {
                         con.commit();
-                        commitSize = 0;
-                    }
-                } catch (SQLException ex) {
-                    if (commitSize > 0) {
+                    } catch (SQLException ex) {
                         try {
                             con.rollback();
                         } catch (SQLException ignore) {
                             ex.addSuppressed(ignore);
                         }
+                        throw ex;
                     }
                 }
+            } catch (InvalidConnectionSpecArguments | SQLException ex) {
+                throw new DataSourceWriteException("Could not write key ids in data source backend " + nameForErrors(), ex);
             }
-        } catch (InvalidConnectionSpecArguments | SQLException ex) {
-            throw new DataSourceWriteException("Could not write key ids in data source backend " + nameForErrors(), ex);
         }
     }
 
-    private String buildWriteKeysInsertStmt(int size) {
+    private void writeKeysAsInLists(Connection con, Set<String> keyIds,
+            int batchSize) throws SQLException {
+        int commitSize = getKeyLoaderCommitSize();
+        String stmt = buildWriteKeysInsertStmt(inList(batchSize));
+        SQLGenUtil.logger().log(Level.FINER, "Statement for writing keys: {0}", stmt);
+        List<String> subKeyIds = new ArrayList<>(batchSize);
+        try (PreparedStatement prepareStatement = con.prepareStatement(stmt)) {
+            int uncommitted = 0;
+            for (String keyId : keyIds) {
+                subKeyIds.add(keyId);
+                if (subKeyIds.size() == batchSize) {
+                    for (int j = 0; j < batchSize; j++) {
+                        prepareStatement.setString(j + 1, subKeyIds.get(j));
+                    }
+                    prepareStatement.addBatch();
+                    subKeyIds.clear();
+                    uncommitted += batchSize;
+                    if (uncommitted >= commitSize) {
+                        prepareStatement.executeBatch();
+                        con.commit();
+                        uncommitted = 0;
+                    }
+                }
+            }
+            if (uncommitted > 0) {
+                prepareStatement.executeBatch();
+            }
+        }
+        if (!subKeyIds.isEmpty()) {
+            stmt = buildWriteKeysInsertStmt(inList(subKeyIds.size()));
+            SQLGenUtil.logger().log(Level.FINER, "Statement for writing keys: {0}", stmt);
+            try (PreparedStatement prepareStatement = con.prepareStatement(stmt)) {
+                int i = 0;
+                for (String subKeyId : subKeyIds) {
+                    prepareStatement.setString(++i, subKeyId);
+                }
+                prepareStatement.execute();
+            }
+        }
+    }
+
+    private void writeKeysAsArrays(Connection con, Set<String> keyIds)
+            throws SQLException {
+        int commitSize = getKeyLoaderCommitSize();
+        String stmt = buildWriteKeysInsertStmt("= ANY (?)");
+        SQLGenUtil.logger().log(Level.FINER, "Statement for writing keys: {0}", stmt);
+        try (PreparedStatement prepareStatement = con.prepareStatement(stmt)) {
+            List<String> subKeyIds
+                    = new ArrayList<>(Math.min(commitSize, keyIds.size()));
+            Iterator<String> itr = keyIds.iterator();
+            while (itr.hasNext()) {
+                subKeyIds.add(itr.next());
+                if (subKeyIds.size() == commitSize || !itr.hasNext()) {
+                    Array array = con.createArrayOf("varchar",
+                            subKeyIds.toArray());
+                    try {
+                        prepareStatement.setArray(1, array);
+                        prepareStatement.execute();
+                    } finally {
+                        array.free();
+                    }
+                    subKeyIds.clear();
+                    if (itr.hasNext()) {
+                        con.commit();
+                    }
+                }
+            }
+        }
+    }
+
+    private static String inList(int size) {
+        return "IN (" + StringUtils.join(Collections.nCopies(size, "?"), ',')
+                + ')';
+    }
+
+    private String buildWriteKeysInsertStmt(String keyIdCondition) {
         StringBuilder stmtBuilder = new StringBuilder();
         stmtBuilder.append("INSERT INTO ");
         if (getKeyLoaderKeyIdSchema() != null) {
@@ -590,9 +844,8 @@ public abstract class RelationalDbDataSourceBackend
         stmtBuilder.append(getDefaultKeyIdTable());
         stmtBuilder.append(" WHERE ");
         stmtBuilder.append(getDefaultKeyIdColumn());
-        stmtBuilder.append(" IN (");
-        stmtBuilder.append(StringUtils.join(Collections.nCopies(size, "?"), ','));
-        stmtBuilder.append(')');
+        stmtBuilder.append(' ');
+        stmtBuilder.append(keyIdCondition);
         String stmt = stmtBuilder.toString();
         return stmt;
     }
@@ -672,6 +925,7 @@ public abstract class RelationalDbDataSourceBackend
     @Override
     public void close() throws BackendCloseException {
         this.sqlGenerator = null;
+        closeConnectionPool();
         if (this.mappingsFactory != null) {
             try {
                 this.mappingsFactory.closeAll();
@@ -687,6 +941,47 @@ public abstract class RelationalDbDataSourceBackend
                 this.databaseId, this.username, this.password, false);
     }
 
+    /**
+     * Gets the pool of connections that this backend's queries and key
+     * loading share, creating it if needed. The pool is closed and replaced
+     * when the database or pool settings change.
+     *
+     * @return a connection pool.
+     * @throws InvalidConnectionSpecArguments if the database settings are
+     * invalid.
+     */
+    synchronized ConnectionPool getConnectionPool()
+            throws InvalidConnectionSpecArguments {
+        if (this.connectionPool == null) {
+            int poolSize;
+            if (this.connectionPoolSize != null) {
+                poolSize = this.connectionPoolSize;
+            } else if (this.queryThreadCount != null) {
+                poolSize = this.queryThreadCount;
+            } else {
+                poolSize = AbstractSQLGenerator.DEFAULT_QUERY_THREAD_COUNT;
+            }
+            this.connectionPool = new ConnectionPool(
+                    getConnectionSpecInstance(), poolSize,
+                    this.maxConnections != null ? this.maxConnections : 0,
+                    TimeUnit.SECONDS.toMillis(this.connectionWaitTimeout != null
+                            ? this.connectionWaitTimeout
+                            : DEFAULT_CONNECTION_WAIT_TIMEOUT),
+                    TimeUnit.SECONDS.toMillis(this.connectionIdleTimeout != null
+                            ? this.connectionIdleTimeout
+                            : DEFAULT_CONNECTION_IDLE_TIMEOUT));
+        }
+        return this.connectionPool;
+    }
+
+    private synchronized void closeConnectionPool() {
+        if (this.connectionPool != null) {
+            this.connectionPool.logStatistics(SQLGenUtil.logger(), Level.FINE);
+            this.connectionPool.close();
+            this.connectionPool = null;
+        }
+    }
+
     protected abstract EntitySpec[] constantSpecs(String keyIdSchema, String keyIdTable, String keyIdColumn, String keyIdJoinKey) throws IOException;
 
     protected abstract EntitySpec[] eventSpecs(String keyIdSchema, String keyIdTable, String keyIdColumn, String keyIdJoinKey) throws IOException;
@@ -0,0 +1,329 @@
+/*
+ * #%L
+ * Protempa Relational Database Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.backend.dsb.relationaldb;
+
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.protempa.DataSourceReadException;
+import org.protempa.DataStreamingEvent;
+import org.protempa.DataStreamingEventIterator;
+import org.protempa.UniqueIdPair;
+import org.protempa.proposition.Proposition;
+
+/**
+ * Reads an entity spec's result set on its own thread into a bounded buffer,
+ * so that fetching and decoding rows overlaps with merging the entity specs'
+ * data by key id. The thread stops reading when the buffer is full and
+ * resumes when the merge takes data out of it.
+ *
+ * The inbound references for an entity spec are collected while its
+ * propositions are read, one event per key id in lockstep with the
+ * propositions, so the thread transfers them into a second queue as it goes.
+ * The merge never asks for a key id's references before it has taken that
+ * key id's propositions, so that queue holds at most one more event than the
+ * proposition buffer.
+ *
+ * @author Andrew Post
+ */
+final class StreamPrefetcher implements Runnable {
+
+    private static final DataStreamingEvent<Proposition> END_OF_PROPS
+            = new DataStreamingEvent<>("", Collections.<Proposition>emptyList());
+    private static final DataStreamingEvent<UniqueIdPair> END_OF_REFS
+            = new DataStreamingEvent<>("", Collections.<UniqueIdPair>emptyList());
+
+    private final String entitySpecName;
+    private final DataStreamingEventIterator<Proposition> props;
+    private final InboundReferenceResultSetIterator refs;
+    private final int bufferSize;
+    private final BlockingQueue<DataStreamingEvent<Proposition>> propsBuffer;
+    private final BlockingQueue<DataStreamingEvent<UniqueIdPair>> refsBuffer;
+    private final PrefetchedProps prefetchedProps;
+    private final PrefetchedRefs prefetchedRefs;
+    private Thread thread;
+    private volatile boolean closed;
+    private volatile Exception failure;
+    private volatile int maxDepth;
+    private volatile int producerWaitCount;
+    private volatile int consumerWaitCount;
+    private volatile int eventCount;
+
+    /**
+     * Creates a prefetcher. Call {@link #start() } to start reading.
+     *
+     * @param entitySpecName the name of the entity spec, for logging.
+     * @param props the entity spec's propositions.
+     * @param refs the entity spec's inbound references.
+     * @param bufferSize the maximum number of key ids' propositions to read
+     * ahead of the merge.
+     */
+    StreamPrefetcher(String entitySpecName,
+            DataStreamingEventIterator<Proposition> props,
+            InboundReferenceResultSetIterator refs, int bufferSize) {
+        assert entitySpecName != null : "entitySpecName cannot be null";
+        assert props != null : "props cannot be null";
+        assert refs != null : "refs cannot be null";
+        assert bufferSize > 0 : "bufferSize must be positive";
+        this.entitySpecName = entitySpecName;
+        this.props = props;
+        this.refs = refs;
+        this.bufferSize = bufferSize;
+        this.propsBuffer = new ArrayBlockingQueue<>(bufferSize);
+        this.refsBuffer = new LinkedBlockingQueue<>();
+        this.prefetchedProps = new PrefetchedProps();
+        this.prefetchedRefs = new PrefetchedRefs();
+    }
+
+    /**
+     * Starts reading on a daemon thread.
+     */
+    void start() {
+        this.thread = new Thread(this,
+                "Prefetch " + this.entitySpecName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    DataStreamingEventIterator<Proposition> getProps() {
+        return this.prefetchedProps;
+    }
+
+    DataStreamingEventIterator<UniqueIdPair> getRefs() {
+        return this.prefetchedRefs;
+    }
+
+    /**
+     * Gets the largest number of key ids that were in the buffer at once.
+     *
+     * @return the maximum depth of the buffer.
+     */
+    int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * Gets the number of times that the reading thread had to wait because
+     * the buffer was full.
+     *
+     * @return a count.
+     */
+    int getProducerWaitCount() {
+        return this.producerWaitCount;
+    }
+
+    /**
+     * Gets the number of times that the merge had to wait because the buffer
+     * was empty.
+     *
+     * @return a count.
+     */
+    int getConsumerWaitCount() {
+        return this.consumerWaitCount;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!this.closed && this.props.hasNext()) {
+                DataStreamingEvent<Proposition> event = this.props.next();
+                transferRefs();
+                if (!this.propsBuffer.offer(event)) {
+                    this.producerWaitCount++;
+                    this.propsBuffer.put(event);
+                }
+                this.eventCount++;
+                int depth = this.propsBuffer.size();
+                if (depth > this.maxDepth) {
+                    this.maxDepth = depth;
+                }
+            }
+            transferRefs();
+        } catch (InterruptedException ex) {
+            // closed
+        } catch (DataSourceReadException | RuntimeException ex) {
+            this.failure = ex;
+        } finally {
+            this.refsBuffer.add(END_OF_REFS);
+            putEndOfProps();
+        }
+    }
+
+    private void putEndOfProps() {
+        while (true) {
+            if (this.closed) {
+                this.propsBuffer.clear();
+            }
+            if (this.propsBuffer.offer(END_OF_PROPS)) {
+                return;
+            }
+            try {
+                this.propsBuffer.put(END_OF_PROPS);
+                return;
+            } catch (InterruptedException ex) {
+                // closed, so try again after clearing the buffer
+            }
+        }
+    }
+
+    private void transferRefs() {
+        DataStreamingEvent<UniqueIdPair> ref;
+        while ((ref = this.refs.poll()) != null) {
+            this.refsBuffer.add(ref);
+        }
+    }
+
+    private <E> DataStreamingEvent<E> take(
+            BlockingQueue<DataStreamingEvent<E>> buffer, boolean countWaits)
+            throws DataSourceReadException {
+        DataStreamingEvent<E> result = buffer.poll();
+        if (result == null) {
+            if (countWaits) {
+                this.consumerWaitCount++;
+            }
+            try {
+                result = buffer.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new DataSourceReadException(
+                        "Interrupted while reading " + this.entitySpecName,
+                        ex);
+            }
+        }
+        return result;
+    }
+
+    private void throwFailure() throws DataSourceReadException {
+        Exception ex = this.failure;
+        if (ex instanceof DataSourceReadException) {
+            throw (DataSourceReadException) ex;
+        } else if (ex != null) {
+            throw (RuntimeException) ex;
+        }
+    }
+
+    /**
+     * Stops the reading thread and waits for it to finish, so that the
+     * underlying iterators may be closed safely.
+     */
+    private void stop() {
+        this.closed = true;
+        if (this.thread != null) {
+            this.thread.interrupt();
+            boolean interrupted = false;
+            while (this.thread.isAlive()) {
+                try {
+                    this.thread.join();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void logMetrics() {
+        Logger logger = SQLGenUtil.logger();
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE,
+                    "Prefetch buffer for {0}: {1} key id(s), maximum depth {2} of {3}, merge waited {4} time(s), reader waited {5} time(s)",
+                    new Object[]{this.entitySpecName, this.eventCount,
+                        this.maxDepth, this.bufferSize,
+                        this.consumerWaitCount, this.producerWaitCount});
+        }
+    }
+
+    private final class PrefetchedProps
+            implements DataStreamingEventIterator<Proposition> {
+
+        private DataStreamingEvent<Proposition> next;
+
+        @Override
+        public boolean hasNext() throws DataSourceReadException {
+            if (this.next == null) {
+                this.next = take(propsBuffer, true);
+            }
+            if (this.next == END_OF_PROPS) {
+                throwFailure();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public DataStreamingEvent<Proposition> next()
+                throws DataSourceReadException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            DataStreamingEvent<Proposition> result = this.next;
+            this.next = null;
+            return result;
+        }
+
+        @Override
+        public void close() throws DataSourceReadException {
+            stop();
+            logMetrics();
+            props.close();
+        }
+    }
+
+    private final class PrefetchedRefs
+            implements DataStreamingEventIterator<UniqueIdPair> {
+
+        private DataStreamingEvent<UniqueIdPair> next;
+
+        @Override
+        public boolean hasNext() throws DataSourceReadException {
+            if (this.next == null) {
+                this.next = take(refsBuffer, false);
+            }
+            if (this.next == END_OF_REFS) {
+                throwFailure();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public DataStreamingEvent<UniqueIdPair> next()
+                throws DataSourceReadException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            DataStreamingEvent<UniqueIdPair> result = this.next;
+            this.next = null;
+            return result;
+        }
+
+        @Override
+        public void close() throws DataSourceReadException {
+            stop();
+            refs.close();
+        }
+    }
+}
@@ -35,7 +35,7 @@ import java.util.Map;
 
 abstract class StreamingMainResultProcessor<P extends Proposition>
         extends AbstractResultProcessor implements StreamingResultProcessor<P> {
-    private final ColumnSpec[] lastColumnSpecs;
+    private final JDBCValueFormat[] propertyValueFormats;
     private final PropertySpec[] propertySpecs;
     private final LinkedHashMap<String, ReferenceSpec> inboundRefSpecs;
     private final Map<String, ReferenceSpec> bidirectionalRefSpecs;
@@ -51,7 +51,7 @@ abstract class StreamingMainResultProcessor<P extends Proposition>
         this.propertySpecs = getEntitySpec().getPropertySpecs();
         this.inboundRefSpecs = inboundRefSpecs;
         this.bidirectionalRefSpecs = bidirectionalRefSpecs;
-        this.lastColumnSpecs = new ColumnSpec[this.propertySpecs.length];
+        this.propertyValueFormats = new JDBCValueFormat[this.propertySpecs.length];
     }
 
     protected static String sqlCodeToPropositionId(ColumnSpec codeSpec,
@@ -62,33 +62,46 @@ abstract class StreamingMainResultProcessor<P extends Proposition>
     protected int extractPropertyValues(ResultSet resultSet, int i, 
             Value[] propertyValues, int[] colTypes) throws SQLException {
         for (int j = 0; j < this.propertySpecs.length; j++) {
-            PropertySpec propertySpec = this.propertySpecs[j];
-            ValueType valueType = propertySpec.getValueType();
-            JDBCValueFormat valueFormat = propertySpec.getJDBCValueFormat();
-            Value value;
-            if (valueFormat != null) {
-                value = valueFormat.toValue(resultSet, i, colTypes[i - 1]);
-            } else {
-                ColumnSpec columnSpec = this.lastColumnSpecs[j];
-                if (columnSpec == null) {
-                    ColumnSpec cs = propertySpec.getCodeSpec();
-                    List<ColumnSpec> codeSpecL = cs.asList();
-                    columnSpec = codeSpecL.get(codeSpecL.size() - 1);
-                    this.lastColumnSpecs[j] = columnSpec;
-                }
-                String valAsString = resultSet.getString(i);
-                String propId = columnSpec.getTarget(valAsString);
-                if (propId != null) {
-                    valAsString = propId;
-                }
-                value = valueType.parse(valAsString);
+            JDBCValueFormat valueFormat = this.propertyValueFormats[j];
+            if (valueFormat == null) {
+                valueFormat = propertyValueFormat(this.propertySpecs[j],
+                        colTypes[i - 1]);
+                this.propertyValueFormats[j] = valueFormat;
             }
+            propertyValues[j] = valueFormat.toValue(resultSet, i, colTypes[i - 1]);
             i++;
-            propertyValues[j] = value;
         }
         return i;
     }
 
+    /**
+     * Chooses how to read a property's column. It is the property's value
+     * format if it has one. Otherwise, if the column maps codes to other
+     * values, the column is read as a string, mapped and parsed, and if not,
+     * the column is read according to its SQL type.
+     */
+    private static JDBCValueFormat propertyValueFormat(
+            PropertySpec propertySpec, int columnType) {
+        JDBCValueFormat valueFormat = propertySpec.getJDBCValueFormat();
+        if (valueFormat != null) {
+            return valueFormat;
+        }
+        ValueType valueType = propertySpec.getValueType();
+        List<ColumnSpec> codeSpecL = propertySpec.getCodeSpec().asList();
+        ColumnSpec columnSpec = codeSpecL.get(codeSpecL.size() - 1);
+        if (columnSpec.getMappings() == null) {
+            return ColumnDecoders.forColumn(valueType, columnType);
+        }
+        return (ResultSet resultSet, int columnIndex, int colType) -> {
+            String valAsString = resultSet.getString(columnIndex);
+            String propId = columnSpec.getTarget(valAsString);
+            if (propId != null) {
+                valAsString = propId;
+            }
+            return valueType.parse(valAsString);
+        };
+    }
+
     protected int extractReferenceUniqueIdPairs(
             ResultSet resultSet, UniqueId referredToUniqueId,
             UniqueIdPair[] uniqueIdPairs, int i) throws SQLException {
@@ -35,11 +35,18 @@ public class StreamingSQLExecutor {
 
     private final Connection connection;
     private final String backendNameForMessages;
+    private final Integer timeout;
+    private final AbstractSQLGenerator sqlGenerator;
+    private boolean connectionPrepared;
 
     StreamingSQLExecutor(Connection connection,
-            String backendNameForMessages, Integer timeout) {
+            String backendNameForMessages, Integer timeout,
+            AbstractSQLGenerator sqlGenerator) {
+        assert sqlGenerator != null : "sqlGenerator cannot be null";
         this.connection = connection;
         this.backendNameForMessages = backendNameForMessages;
+        this.timeout = timeout;
+        this.sqlGenerator = sqlGenerator;
     }
     
     Connection getConnection() {
@@ -66,10 +73,20 @@ public class StreamingSQLExecutor {
             }
 
             try {
-                Statement stmt = connection.createStatement();
-                stmt.setFetchSize(AbstractSQLGenerator.FETCH_SIZE);
+                if (!this.connectionPrepared) {
+                    this.sqlGenerator.prepareStreamingConnection(this.connection);
+                    this.connectionPrepared = true;
+                }
+                Statement stmt = connection.createStatement(
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                stmt.setFetchSize(
+                        this.sqlGenerator.getFetchSize(entitySpecName));
+                if (this.timeout != null) {
+                    stmt.setQueryTimeout(this.timeout);
+                }
                 ResultSet resultSet = stmt.executeQuery(query);
                 logger.log(Level.FINE, "Database query execution for {0} has returned", entitySpecName);
+                this.sqlGenerator.adaptFetchSize(entitySpecName, resultSet);
                 resultProcessor.setStatement(stmt);
                 resultProcessor.process(resultSet);
             } catch (SQLException ex) {
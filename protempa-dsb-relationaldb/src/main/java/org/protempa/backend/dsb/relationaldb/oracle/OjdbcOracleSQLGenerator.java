@@ -19,6 +19,9 @@
  */
 package org.protempa.backend.dsb.relationaldb.oracle;
 
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
 import java.util.LinkedHashMap;
 import org.protempa.backend.dsb.filter.Filter;
 
@@ -68,5 +71,36 @@ public class OjdbcOracleSQLGenerator extends AbstractSQLGeneratorWithCompatCheck
                 entitySpecs, inboundRefSpecs, filters, propIds, keyIds, order, resultProcessor,
                 wrapKeyId);
     }
+
+    /**
+     * Estimates row width from the columns' declared sizes. The Oracle JDBC
+     * driver allocates its row prefetch buffers for the declared size of
+     * character columns, not for the size of the values in them, so a query
+     * with wide <code>VARCHAR2</code> columns must prefetch fewer rows.
+     *
+     * @param metaData the results' metadata.
+     * @return the estimated width of a row, in bytes.
+     * @throws SQLException if an error occurred reading the metadata.
+     */
+    @Override
+    protected int estimateRowWidth(ResultSetMetaData metaData)
+            throws SQLException {
+        long width = 0;
+        for (int i = 1, n = metaData.getColumnCount(); i <= n; i++) {
+            int columnType = metaData.getColumnType(i);
+            switch (columnType) {
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                    width += 2L * Math.max(metaData.getPrecision(i), 1);
+                    break;
+                default:
+                    width += columnWidth(columnType,
+                            metaData.getColumnDisplaySize(i));
+            }
+        }
+        return (int) Math.min(width, Integer.MAX_VALUE);
+    }
     
 }
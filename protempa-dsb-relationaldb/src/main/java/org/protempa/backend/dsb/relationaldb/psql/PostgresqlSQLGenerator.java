@@ -20,6 +20,8 @@ package org.protempa.backend.dsb.relationaldb.psql;
  * #L%
  */
 
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
@@ -69,5 +71,21 @@ public class PostgresqlSQLGenerator
                 inboundRefSpecs, filters, propIds, keyIds, order, resultProcessor,
                 wrapKeyId);
     }
+
+    /**
+     * Turns off autocommit, without which the PostgreSQL JDBC driver reads
+     * all of a query's results into memory rather than fetching them with a
+     * cursor.
+     *
+     * @param connection a connection.
+     * @throws SQLException if an error occurred turning off autocommit.
+     */
+    @Override
+    protected void prepareStreamingConnection(Connection connection)
+            throws SQLException {
+        if (connection.getAutoCommit()) {
+            connection.setAutoCommit(false);
+        }
+    }
     
 }
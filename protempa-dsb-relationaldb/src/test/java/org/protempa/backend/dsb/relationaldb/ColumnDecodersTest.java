@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * Protempa Relational Database Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.backend.dsb.relationaldb;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.protempa.proposition.value.BooleanValue;
+import org.protempa.proposition.value.NominalValue;
+import org.protempa.proposition.value.NumberValue;
+import org.protempa.proposition.value.ValueType;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class ColumnDecodersTest {
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        this.connection = DriverManager.getConnection("jdbc:h2:mem:");
+        try (Statement stmt = this.connection.createStatement()) {
+            stmt.execute("CREATE TABLE T (I INTEGER, B BIGINT, D DECIMAL(10,3), "
+                    + "F DOUBLE, R REAL, BOOL BOOLEAN, S VARCHAR(10))");
+            stmt.execute("INSERT INTO T VALUES (42, -7, 3.140, 0.1, 1.1, TRUE, '5.5')");
+            stmt.execute("INSERT INTO T VALUES (NULL, NULL, NULL, NULL, NULL, NULL, NULL)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        this.connection.close();
+    }
+
+    @Test
+    public void testTypedValuesEqualParsedValues() throws SQLException {
+        ValueType[] valueTypes = {ValueType.NUMBERVALUE,
+            ValueType.NUMERICALVALUE, ValueType.VALUE};
+        try (Statement stmt = this.connection.createStatement();
+                ResultSet resultSet = stmt.executeQuery(
+                        "SELECT I, B, D, F, R, S FROM T")) {
+            int[] columnTypes = columnTypes(resultSet);
+            while (resultSet.next()) {
+                for (ValueType valueType : valueTypes) {
+                    for (int i = 1; i <= columnTypes.length; i++) {
+                        Assert.assertEquals(
+                                valueType + " column " + i,
+                                ColumnDecoders.parsing(valueType).toValue(
+                                        resultSet, i, columnTypes[i - 1]),
+                                ColumnDecoders.forColumn(valueType, columnTypes[i - 1])
+                                .toValue(resultSet, i, columnTypes[i - 1]));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBooleanColumn() throws SQLException {
+        try (Statement stmt = this.connection.createStatement();
+                ResultSet resultSet = stmt.executeQuery("SELECT BOOL FROM T")) {
+            int[] columnTypes = columnTypes(resultSet);
+            while (resultSet.next()) {
+                Assert.assertEquals(
+                        ColumnDecoders.parsing(ValueType.BOOLEANVALUE).toValue(
+                                resultSet, 1, columnTypes[0]),
+                        ColumnDecoders.forColumn(ValueType.BOOLEANVALUE, columnTypes[0])
+                        .toValue(resultSet, 1, columnTypes[0]));
+            }
+        }
+    }
+
+    /**
+     * BIT and BOOLEAN columns' string values are <code>t</code> and
+     * <code>f</code> in PostgreSQL, and <code>1</code> and <code>0</code> in
+     * SQL Server and MySQL, and they must parse into the same values as
+     * always.
+     */
+    @Test
+    public void testBooleanColumnsAreParsedForEachDriver() throws SQLException {
+        Object[][] expected = {
+            {"true", BooleanValue.TRUE, BooleanValue.TRUE},
+            {"t", null, NominalValue.getInstance("t")},
+            {"1", null, NumberValue.parse("1")},
+            {"0", null, NumberValue.parse("0")}
+        };
+        for (int columnType : new int[]{Types.BIT, Types.BOOLEAN}) {
+            for (Object[] e : expected) {
+                ResultSet resultSet = resultSet((String) e[0]);
+                Assert.assertEquals(e[0] + " as BOOLEANVALUE", e[1],
+                        ColumnDecoders.forColumn(ValueType.BOOLEANVALUE, columnType)
+                        .toValue(resultSet, 1, columnType));
+                Assert.assertEquals(e[0] + " as VALUE", e[2],
+                        ColumnDecoders.forColumn(ValueType.VALUE, columnType)
+                        .toValue(resultSet, 1, columnType));
+            }
+        }
+    }
+
+    /**
+     * Returns a result set with one boolean column whose
+     * {@link ResultSet#getString(int)} returns the given string, and whose
+     * other getters fail.
+     */
+    private static ResultSet resultSet(String string) {
+        return (ResultSet) Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class},
+                (Object proxy, Method method, Object[] args) -> {
+                    if (method.getName().equals("getString")) {
+                        return string;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static int[] columnTypes(ResultSet resultSet) throws SQLException {
+        int[] result = new int[resultSet.getMetaData().getColumnCount()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = resultSet.getMetaData().getColumnType(i + 1);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * #%L
+ * Protempa Relational Database Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.backend.dsb.relationaldb;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.arp.javautil.sql.DatabaseAPI;
+import org.arp.javautil.sql.InvalidConnectionSpecArguments;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class ConnectionPoolTest {
+
+    private ConnectionPool pool;
+
+    @Before
+    public void setUp() throws InvalidConnectionSpecArguments {
+        this.pool = new ConnectionPool(
+                DatabaseAPI.DRIVERMANAGER.newConnectionSpecInstance(
+                        "jdbc:h2:mem:pool", null, null, false),
+                1, 2, 200, 60000);
+    }
+
+    @After
+    public void tearDown() {
+        this.pool.close();
+    }
+
+    @Test
+    public void testReusesReturnedConnection() throws SQLException {
+        Connection first = this.pool.getOrCreate();
+        Connection physical = first.unwrap(Connection.class);
+        first.close();
+        Assert.assertTrue(first.isClosed());
+        try (Connection second = this.pool.getOrCreate()) {
+            Assert.assertSame(physical, second.unwrap(Connection.class));
+            Assert.assertFalse(second.isClosed());
+        }
+    }
+
+    @Test
+    public void testRollsBackReturnedConnection() throws SQLException {
+        try (Connection con = this.pool.getOrCreate();
+                Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE POOLED (I INTEGER)");
+            con.commit();
+            stmt.execute("INSERT INTO POOLED VALUES (1)");
+        }
+        try (Connection con = this.pool.getOrCreate();
+                Statement stmt = con.createStatement()) {
+            Assert.assertFalse(
+                    stmt.executeQuery("SELECT * FROM POOLED").next());
+            stmt.execute("DROP TABLE POOLED");
+            con.commit();
+        }
+    }
+
+    @Test(expected = SQLException.class)
+    public void testUseAfterCloseFails() throws SQLException {
+        Connection con = this.pool.getOrCreate();
+        con.close();
+        con.createStatement();
+    }
+
+    @Test(expected = SQLException.class)
+    public void testTimesOutAtMaxConnections() throws SQLException {
+        try (Connection first = this.pool.getOrCreate();
+                Connection second = this.pool.getOrCreate()) {
+            this.pool.getOrCreate();
+        }
+    }
+
+    @Test
+    public void testWaitsForReturnedConnection() throws Exception {
+        Connection first = this.pool.getOrCreate();
+        Connection second = this.pool.getOrCreate();
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                first.close();
+            } catch (InterruptedException | SQLException ex) {
+                throw new AssertionError(ex);
+            }
+        });
+        thread.start();
+        try (Connection third = this.pool.getOrCreate()) {
+            Assert.assertFalse(third.isClosed());
+        } finally {
+            second.close();
+            thread.join();
+        }
+    }
+}
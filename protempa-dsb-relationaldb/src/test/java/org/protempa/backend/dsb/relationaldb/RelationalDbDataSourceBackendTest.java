@@ -0,0 +1,196 @@
+/*
+ * #%L
+ * Protempa Relational Database Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.backend.dsb.relationaldb;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.protempa.BackendCloseException;
+import org.protempa.DataSourceWriteException;
+
+/**
+ * Tests writing key ids to the key loader table.
+ *
+ * @author Andrew Post
+ */
+public class RelationalDbDataSourceBackendTest {
+
+    private static final String URL
+            = "jdbc:h2:mem:writekeys;DB_CLOSE_DELAY=-1";
+
+    private Connection con;
+    private RelationalDbDataSourceBackend backend;
+
+    @Before
+    public void setUp() throws SQLException {
+        this.con = DriverManager.getConnection(URL);
+        try (Statement stmt = this.con.createStatement()) {
+            stmt.execute("CREATE TABLE PATIENT (PATIENT_KEY VARCHAR(10), PATIENT_NUM INTEGER)");
+            stmt.execute("CREATE TABLE KEY_IDS (PATIENT_KEY VARCHAR(10) PRIMARY KEY, PATIENT_NUM INTEGER)");
+            for (int i = 0; i < 25; i++) {
+                stmt.execute("INSERT INTO PATIENT VALUES ('" + keyId(i)
+                        + "', " + i + ")");
+            }
+        }
+        this.backend = new KeyLoaderBackend();
+        this.backend.setDatabaseId(URL);
+        this.backend.setDefaultKeyIdTable("PATIENT");
+        this.backend.setDefaultKeyIdColumn("PATIENT_KEY");
+        this.backend.setDefaultKeyIdJoinKey("PATIENT_NUM");
+        this.backend.setKeyLoaderKeyIdTable("KEY_IDS");
+    }
+
+    @After
+    public void tearDown() throws SQLException, BackendCloseException {
+        this.backend.close();
+        try (Statement stmt = this.con.createStatement()) {
+            stmt.execute("DROP TABLE KEY_IDS");
+            stmt.execute("DROP TABLE PATIENT");
+        }
+        this.con.close();
+    }
+
+    @Test
+    public void testWritesNoKeys() throws DataSourceWriteException,
+            SQLException {
+        this.backend.writeKeys(Collections.<String>emptySet());
+        this.backend.writeKeys(null);
+        Assert.assertEquals(Collections.emptySet(), writtenKeyIds());
+    }
+
+    /**
+     * The number of key ids is a multiple of neither the batch size nor the
+     * commit size, so the last batch has a shorter <code>IN</code> list.
+     */
+    @Test
+    public void testWritesPartialBatch() throws DataSourceWriteException,
+            SQLException {
+        this.backend.setKeyLoaderBatchSize(4);
+        this.backend.setKeyLoaderCommitSize(8);
+        Set<String> keyIds = keyIds(0, 23);
+        this.backend.writeKeys(keyIds);
+        Assert.assertEquals(keyIds, writtenKeyIds());
+    }
+
+    @Test
+    public void testWritesFewerKeysThanBatchSize()
+            throws DataSourceWriteException, SQLException {
+        Set<String> keyIds = keyIds(0, 3);
+        this.backend.writeKeys(keyIds);
+        Assert.assertEquals(keyIds, writtenKeyIds());
+    }
+
+    @Test
+    public void testWritesKeysTwiceOverPooledConnection()
+            throws DataSourceWriteException, SQLException {
+        this.backend.setKeyLoaderBatchSize(2);
+        this.backend.writeKeys(keyIds(0, 5));
+        this.backend.deleteAllKeys();
+        this.backend.writeKeys(keyIds(5, 10));
+        Assert.assertEquals(keyIds(5, 10), writtenKeyIds());
+    }
+
+    /**
+     * A key id that is already in the table fails the second commit
+     * interval. The first interval stays committed, the rest of the second
+     * interval is rolled back, and the connection can be used again.
+     */
+    @Test
+    public void testRollsBackFailedCommitInterval() throws SQLException,
+            DataSourceWriteException {
+        try (Statement stmt = this.con.createStatement()) {
+            stmt.execute("INSERT INTO KEY_IDS VALUES ('" + keyId(7)
+                    + "', 7)");
+        }
+        this.backend.setKeyLoaderBatchSize(2);
+        this.backend.setKeyLoaderCommitSize(4);
+        try {
+            this.backend.writeKeys(keyIds(0, 10));
+            Assert.fail("expected a DataSourceWriteException");
+        } catch (DataSourceWriteException ex) {
+            Assert.assertTrue(ex.getCause() instanceof SQLException);
+        }
+        Set<String> expected = keyIds(0, 4);
+        expected.add(keyId(7));
+        Assert.assertEquals(expected, writtenKeyIds());
+
+        this.backend.deleteAllKeys();
+        this.backend.writeKeys(keyIds(10, 15));
+        Assert.assertEquals(keyIds(10, 15), writtenKeyIds());
+    }
+
+    private Set<String> writtenKeyIds() throws SQLException {
+        Set<String> result = new TreeSet<>();
+        try (Statement stmt = this.con.createStatement();
+                ResultSet rs = stmt.executeQuery(
+                        "SELECT PATIENT_KEY, PATIENT_NUM FROM KEY_IDS")) {
+            while (rs.next()) {
+                String keyId = rs.getString(1);
+                Assert.assertEquals(keyId(rs.getInt(2)), keyId);
+                result.add(keyId);
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> keyIds(int from, int to) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = from; i < to; i++) {
+            result.add(keyId(i));
+        }
+        return result;
+    }
+
+    private static String keyId(int i) {
+        return String.format("P%02d", i);
+    }
+
+    private static final class KeyLoaderBackend
+            extends RelationalDbDataSourceBackend {
+
+        @Override
+        protected EntitySpec[] constantSpecs(String keyIdSchema,
+                String keyIdTable, String keyIdColumn, String keyIdJoinKey) {
+            return new EntitySpec[0];
+        }
+
+        @Override
+        protected EntitySpec[] eventSpecs(String keyIdSchema,
+                String keyIdTable, String keyIdColumn, String keyIdJoinKey) {
+            return new EntitySpec[0];
+        }
+
+        @Override
+        protected EntitySpec[] primitiveParameterSpecs(String keyIdSchema,
+                String keyIdTable, String keyIdColumn, String keyIdJoinKey) {
+            return new EntitySpec[0];
+        }
+    }
+}
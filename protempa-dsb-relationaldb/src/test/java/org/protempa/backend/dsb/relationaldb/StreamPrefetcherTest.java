@@ -0,0 +1,153 @@
+/*
+ * #%L
+ * Protempa Relational Database Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.backend.dsb.relationaldb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.protempa.DataSourceReadException;
+import org.protempa.DataStreamingEvent;
+import org.protempa.DataStreamingEventIterator;
+import org.protempa.UniqueIdPair;
+import org.protempa.proposition.Proposition;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class StreamPrefetcherTest {
+
+    @Test
+    public void testPropsAndRefsArriveInOrder() throws DataSourceReadException {
+        List<String> keyIds = Arrays.asList("a", "b", "c", "d", "e");
+        InboundReferenceResultSetIterator refs
+                = new InboundReferenceResultSetIterator("test");
+        StreamPrefetcher prefetcher = new StreamPrefetcher("test",
+                new FakePropsIterator(keyIds, refs, null), refs, 2);
+        prefetcher.start();
+        DataStreamingEventIterator<Proposition> props = prefetcher.getProps();
+        DataStreamingEventIterator<UniqueIdPair> prefetchedRefs
+                = prefetcher.getRefs();
+        List<String> propKeyIds = new ArrayList<>();
+        List<String> refKeyIds = new ArrayList<>();
+        while (props.hasNext()) {
+            propKeyIds.add(props.next().getKeyId());
+            Assert.assertTrue(prefetchedRefs.hasNext());
+            refKeyIds.add(prefetchedRefs.next().getKeyId());
+        }
+        Assert.assertFalse(prefetchedRefs.hasNext());
+        props.close();
+        prefetchedRefs.close();
+        Assert.assertEquals(keyIds, propKeyIds);
+        Assert.assertEquals(keyIds, refKeyIds);
+        Assert.assertTrue(prefetcher.getMaxDepth() <= 2);
+    }
+
+    @Test(expected = StreamingSQLException.class)
+    public void testFailureIsRethrown() throws DataSourceReadException {
+        InboundReferenceResultSetIterator refs
+                = new InboundReferenceResultSetIterator("test");
+        StreamPrefetcher prefetcher = new StreamPrefetcher("test",
+                new FakePropsIterator(Arrays.asList("a", "b"), refs, "b"),
+                refs, 10);
+        prefetcher.start();
+        DataStreamingEventIterator<Proposition> props = prefetcher.getProps();
+        try {
+            while (props.hasNext()) {
+                props.next();
+            }
+        } finally {
+            props.close();
+        }
+    }
+
+    @Test
+    public void testCloseStopsReading() throws DataSourceReadException {
+        List<String> keyIds = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            keyIds.add(String.format("%04d", i));
+        }
+        InboundReferenceResultSetIterator refs
+                = new InboundReferenceResultSetIterator("test");
+        FakePropsIterator fake = new FakePropsIterator(keyIds, refs, null);
+        StreamPrefetcher prefetcher
+                = new StreamPrefetcher("test", fake, refs, 1);
+        prefetcher.start();
+        DataStreamingEventIterator<Proposition> props = prefetcher.getProps();
+        Assert.assertTrue(props.hasNext());
+        props.close();
+        prefetcher.getRefs().close();
+        Assert.assertTrue(fake.closed);
+        Assert.assertTrue(fake.i < keyIds.size());
+    }
+
+    /**
+     * Mimics a proposition result set iterator, which adds each key id's
+     * references to the reference iterator as it reads the key id's rows.
+     */
+    private static class FakePropsIterator
+            implements DataStreamingEventIterator<Proposition> {
+
+        private final List<String> keyIds;
+        private final InboundReferenceResultSetIterator refs;
+        private final String failAt;
+        private int i;
+        private volatile boolean closed;
+
+        FakePropsIterator(List<String> keyIds,
+                InboundReferenceResultSetIterator refs, String failAt) {
+            this.keyIds = keyIds;
+            this.refs = refs;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.i < this.keyIds.size();
+        }
+
+        @Override
+        public DataStreamingEvent<Proposition> next() {
+            String keyId = this.keyIds.get(this.i);
+            if (keyId.equals(this.failAt)) {
+                throw new StreamingSQLException("failed", null);
+            }
+            if (this.i == 0) {
+                this.refs.addUniqueIds(keyId, null);
+            }
+            this.i++;
+            if (this.i < this.keyIds.size()) {
+                this.refs.addUniqueIds(this.keyIds.get(this.i), null);
+            } else {
+                this.refs.resultSetComplete();
+            }
+            return new DataStreamingEvent<>(keyId,
+                    Collections.<Proposition>emptyList());
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+}
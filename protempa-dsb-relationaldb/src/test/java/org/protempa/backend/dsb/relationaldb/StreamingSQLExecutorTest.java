@@ -0,0 +1,266 @@
+/*
+ * #%L
+ * Protempa Relational Database Data Source Backend
+ * %%
+ * Copyright (C) 2012 - 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.backend.dsb.relationaldb;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.protempa.DataSourceReadException;
+import org.protempa.backend.dsb.relationaldb.h2.H2SQLGenerator;
+import org.protempa.backend.dsb.relationaldb.mysql.ConnectorJ5MySQL415Generator;
+import org.protempa.backend.dsb.relationaldb.oracle.OjdbcOracleSQLGenerator;
+import org.protempa.backend.dsb.relationaldb.psql.PostgresqlPre91SQLGenerator;
+import org.protempa.backend.dsb.relationaldb.psql.PostgresqlSQLGenerator;
+
+/**
+ * Tests the statement settings that each SQL generator's streaming queries
+ * use, against a fake connection that records them. The queries return two
+ * <code>VARCHAR</code> columns that are declared 4000 characters wide but
+ * display as 100 characters.
+ *
+ * @author Andrew Post
+ */
+public class StreamingSQLExecutorTest {
+
+    private static final int TIMEOUT = 30;
+
+    /**
+     * The fetch size for the test columns' declared width: a 16 MiB budget
+     * divided by 2 columns of 8000 bytes.
+     */
+    private static final int DECLARED_WIDTH_FETCH_SIZE = 1048;
+
+    @Test
+    public void testH2() throws DataSourceReadException {
+        FakeConnection con = execute(new H2SQLGenerator(), TIMEOUT);
+        assertStatements(con, AbstractSQLGenerator.FETCH_SIZE,
+                AbstractSQLGenerator.FETCH_SIZE);
+        Assert.assertTrue(con.autoCommit);
+        Assert.assertEquals(0, con.autoCommitChanges);
+    }
+
+    @Test
+    public void testMySQL() throws DataSourceReadException {
+        FakeConnection con = execute(new ConnectorJ5MySQL415Generator(),
+                TIMEOUT);
+        assertStatements(con, AbstractSQLGenerator.FETCH_SIZE,
+                AbstractSQLGenerator.FETCH_SIZE);
+        Assert.assertTrue(con.autoCommit);
+        Assert.assertEquals(0, con.autoCommitChanges);
+    }
+
+    /**
+     * Oracle prefetches rows into buffers sized by the columns' declared
+     * width, so the fetch size is reduced on the open result set and used
+     * for the entity spec's next query.
+     */
+    @Test
+    public void testOracle() throws DataSourceReadException {
+        FakeConnection con = execute(new OjdbcOracleSQLGenerator(), TIMEOUT);
+        assertStatements(con, AbstractSQLGenerator.FETCH_SIZE,
+                DECLARED_WIDTH_FETCH_SIZE);
+        Assert.assertEquals(DECLARED_WIDTH_FETCH_SIZE,
+                con.statements.get(0).resultSetFetchSize);
+        Assert.assertTrue(con.autoCommit);
+        Assert.assertEquals(0, con.autoCommitChanges);
+    }
+
+    /**
+     * PostgreSQL only fetches with a cursor with autocommit off, which is
+     * turned off once per connection.
+     */
+    @Test
+    public void testPostgresql() throws DataSourceReadException {
+        FakeConnection con = execute(new PostgresqlSQLGenerator(), TIMEOUT);
+        assertStatements(con, AbstractSQLGenerator.FETCH_SIZE,
+                AbstractSQLGenerator.FETCH_SIZE);
+        Assert.assertFalse(con.autoCommit);
+        Assert.assertEquals(1, con.autoCommitChanges);
+    }
+
+    @Test
+    public void testPostgresqlPre91() throws DataSourceReadException {
+        FakeConnection con = execute(new PostgresqlPre91SQLGenerator(),
+                TIMEOUT);
+        assertStatements(con, AbstractSQLGenerator.FETCH_SIZE,
+                AbstractSQLGenerator.FETCH_SIZE);
+        Assert.assertFalse(con.autoCommit);
+        Assert.assertEquals(1, con.autoCommitChanges);
+    }
+
+    @Test
+    public void testNoTimeout() throws DataSourceReadException {
+        FakeConnection con = execute(new H2SQLGenerator(), null);
+        for (FakeStatement stmt : con.statements) {
+            Assert.assertNull(stmt.queryTimeout);
+        }
+    }
+
+    /**
+     * Runs two queries for the same entity spec over one connection.
+     */
+    private static FakeConnection execute(AbstractSQLGenerator generator,
+            Integer timeout) throws DataSourceReadException {
+        FakeConnection con = new FakeConnection();
+        StreamingSQLExecutor executor = new StreamingSQLExecutor(
+                con.proxy(), "test", timeout, generator);
+        StreamingResultProcessor<?> resultProcessor
+                = (StreamingResultProcessor<?>) Proxy.newProxyInstance(
+                        StreamingResultProcessor.class.getClassLoader(),
+                        new Class<?>[]{StreamingResultProcessor.class},
+                        (Object proxy, Method method, Object[] args) -> null);
+        executor.executeSelect("Labs", "SELECT A, B FROM LABS",
+                resultProcessor);
+        executor.executeSelect("Labs", "SELECT A, B FROM LABS",
+                resultProcessor);
+        return con;
+    }
+
+    private static void assertStatements(FakeConnection con,
+            int firstFetchSize, int secondFetchSize) {
+        Assert.assertEquals(2, con.statements.size());
+        for (FakeStatement stmt : con.statements) {
+            Assert.assertEquals(ResultSet.TYPE_FORWARD_ONLY,
+                    stmt.resultSetType);
+            Assert.assertEquals(ResultSet.CONCUR_READ_ONLY,
+                    stmt.resultSetConcurrency);
+            Assert.assertEquals(Integer.valueOf(TIMEOUT), stmt.queryTimeout);
+        }
+        Assert.assertEquals(firstFetchSize, con.statements.get(0).fetchSize);
+        Assert.assertEquals(secondFetchSize, con.statements.get(1).fetchSize);
+    }
+
+    private static final class FakeConnection {
+
+        private boolean autoCommit = true;
+        private int autoCommitChanges;
+        private final List<FakeStatement> statements = new ArrayList<>();
+
+        Connection proxy() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    (Object proxy, Method method, Object[] args) -> {
+                        switch (method.getName()) {
+                            case "getAutoCommit":
+                                return this.autoCommit;
+                            case "setAutoCommit":
+                                this.autoCommit = (Boolean) args[0];
+                                this.autoCommitChanges++;
+                                return null;
+                            case "createStatement":
+                                Assert.assertEquals(2, args.length);
+                                FakeStatement stmt = new FakeStatement(
+                                        (Integer) args[0], (Integer) args[1]);
+                                this.statements.add(stmt);
+                                return stmt.proxy();
+                            default:
+                                throw new UnsupportedOperationException(
+                                        method.getName());
+                        }
+                    });
+        }
+    }
+
+    private static final class FakeStatement {
+
+        private final int resultSetType;
+        private final int resultSetConcurrency;
+        private int fetchSize;
+        private Integer queryTimeout;
+        private int resultSetFetchSize;
+
+        FakeStatement(int resultSetType, int resultSetConcurrency) {
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+        }
+
+        Statement proxy() {
+            return (Statement) Proxy.newProxyInstance(
+                    Statement.class.getClassLoader(),
+                    new Class<?>[]{Statement.class},
+                    (Object proxy, Method method, Object[] args) -> {
+                        switch (method.getName()) {
+                            case "setFetchSize":
+                                this.fetchSize = (Integer) args[0];
+                                return null;
+                            case "setQueryTimeout":
+                                this.queryTimeout = (Integer) args[0];
+                                return null;
+                            case "executeQuery":
+                                this.resultSetFetchSize = this.fetchSize;
+                                return resultSet();
+                            default:
+                                throw new UnsupportedOperationException(
+                                        method.getName());
+                        }
+                    });
+        }
+
+        private ResultSet resultSet() {
+            return (ResultSet) Proxy.newProxyInstance(
+                    ResultSet.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class},
+                    (Object proxy, Method method, Object[] args) -> {
+                        switch (method.getName()) {
+                            case "getMetaData":
+                                return metaData();
+                            case "getFetchSize":
+                                return this.resultSetFetchSize;
+                            case "setFetchSize":
+                                this.resultSetFetchSize = (Integer) args[0];
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(
+                                        method.getName());
+                        }
+                    });
+        }
+    }
+
+    private static ResultSetMetaData metaData() {
+        return (ResultSetMetaData) Proxy.newProxyInstance(
+                ResultSetMetaData.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class},
+                (Object proxy, Method method, Object[] args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount":
+                            return 2;
+                        case "getColumnType":
+                            return Types.VARCHAR;
+                        case "getColumnDisplaySize":
+                            return 100;
+                        case "getPrecision":
+                            return 4000;
+                        default:
+                            throw new UnsupportedOperationException(
+                                    method.getName());
+                    }
+                });
+    }
+}
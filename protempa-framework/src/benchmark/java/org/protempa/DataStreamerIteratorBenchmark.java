@@ -0,0 +1,128 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2015 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.protempa.proposition.Proposition;
+
+/**
+ * Measures how fast {@link DataStreamerIterator} merges many data streams, as
+ * when a relational data source backend returns an iterator for each entity
+ * spec and reference. It is not a test and is compiled only with the
+ * benchmarks profile. Run with the test classpath:
+ * <pre>
+ * java org.protempa.DataStreamerIteratorBenchmark [keys] [fraction of keys in each stream]
+ * </pre>
+ * It reports the best of five runs in events per second for 10, 25, 50, 100
+ * and 200 streams.
+ *
+ * @author Andrew Post
+ */
+public class DataStreamerIteratorBenchmark {
+
+    private static final int[] STREAM_COUNTS = {10, 25, 50, 100, 200};
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws DataSourceReadException {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        double density = args.length > 1 ? Double.parseDouble(args[1]) : 0.5;
+        String[] keyIds = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            keyIds[i] = String.format("PATIENT%010d", i);
+        }
+        // warm up
+        for (int streamCount : STREAM_COUNTS) {
+            run(newIterators(keyIds, streamCount, density));
+        }
+        for (int streamCount : STREAM_COUNTS) {
+            long best = Long.MAX_VALUE;
+            int events = 0;
+            for (int i = 0; i < RUNS; i++) {
+                List<DataStreamingEventIterator<Proposition>> itrs
+                        = newIterators(keyIds, streamCount, density);
+                long begin = System.nanoTime();
+                events = run(itrs);
+                best = Math.min(best, System.nanoTime() - begin);
+            }
+            System.out.printf("%3d streams: %,.0f events/s%n", streamCount,
+                    (double) events / best * 1000000000L);
+        }
+    }
+
+    private static List<DataStreamingEventIterator<Proposition>> newIterators(
+            String[] keyIds, int streamCount, double density) {
+        Random random = new Random(streamCount);
+        List<DataStreamingEventIterator<Proposition>> itrs
+                = new ArrayList<>(streamCount);
+        for (int i = 0; i < streamCount; i++) {
+            List<String> streamKeyIds = new ArrayList<>();
+            for (String keyId : keyIds) {
+                if (random.nextDouble() < density) {
+                    // Each data stream has its own String instances.
+                    streamKeyIds.add(new String(keyId));
+                }
+            }
+            itrs.add(new KeyIdIterator(streamKeyIds));
+        }
+        return itrs;
+    }
+
+    private static int run(List<DataStreamingEventIterator<Proposition>> itrs)
+            throws DataSourceReadException {
+        DataStreamerIterator<Proposition> itr
+                = new DataStreamerIterator<>(itrs);
+        int events = 0;
+        while (itr.hasNext()) {
+            itr.next();
+            events++;
+        }
+        return events;
+    }
+
+    private static class KeyIdIterator
+            implements DataStreamingEventIterator<Proposition> {
+
+        private final List<String> keyIds;
+        private int i;
+
+        KeyIdIterator(List<String> keyIds) {
+            this.keyIds = keyIds;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.i < this.keyIds.size();
+        }
+
+        @Override
+        public DataStreamingEvent<Proposition> next() {
+            return new DataStreamingEvent<>(this.keyIds.get(this.i++),
+                    Collections.<Proposition>emptyList());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.protempa.proposition.DefaultUniqueIdFactory;
+import org.protempa.proposition.PrimitiveParameter;
+import org.protempa.proposition.Proposition;
+import org.protempa.proposition.TemporalProposition;
+import org.protempa.proposition.UniqueIdFactory;
+import org.protempa.proposition.interval.Relation;
+import org.protempa.proposition.value.AbsoluteTimeGranularity;
+import org.protempa.proposition.value.AbsoluteTimeUnit;
+
+/**
+ * Compares {@link HighLevelAbstractionJoin} with checking the relations of
+ * every combination of candidates, which is what the high-level abstraction
+ * rules did before, on synthetic patient timelines of increasing density. The
+ * definition has three parameters: A followed by B within a week, and B
+ * followed by C within two days. It is not a test and is compiled only with
+ * the benchmarks profile. Run with the test classpath:
+ * <pre>
+ * java org.protempa.HighLevelAbstractionJoinBenchmark [patients] [events per patient...]
+ * </pre>
+ *
+ * @author Andrew Post
+ */
+public class HighLevelAbstractionJoinBenchmark {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    public static void main(String[] args) throws Exception {
+        int patients = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int[] densities;
+        if (args.length > 1) {
+            densities = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                densities[i - 1] = Integer.parseInt(args[i]);
+            }
+        } else {
+            densities = new int[]{30, 150, 300};
+        }
+        HighLevelAbstractionDefinition def
+                = new HighLevelAbstractionDefinition("ABC");
+        TemporalExtendedPropositionDefinition a
+                = new TemporalExtendedPropositionDefinition("A");
+        TemporalExtendedPropositionDefinition b
+                = new TemporalExtendedPropositionDefinition("B");
+        TemporalExtendedPropositionDefinition c
+                = new TemporalExtendedPropositionDefinition("C");
+        def.add(a);
+        def.add(b);
+        def.add(c);
+        def.setRelation(a, b, within(7));
+        def.setRelation(b, c, within(2));
+        Set<ExtendedPropositionDefinition> epdsC
+                = def.getExtendedPropositionDefinitions();
+        ExtendedPropositionDefinition[] epds = epdsC.toArray(
+                new ExtendedPropositionDefinition[epdsC.size()]);
+        List<Set<String>> subtrees = new ArrayList<>(epds.length);
+        for (ExtendedPropositionDefinition epd : epds) {
+            subtrees.add(Collections.singleton(epd.getPropositionId()));
+        }
+        HighLevelAbstractionJoin join
+                = new HighLevelAbstractionJoin(def, epds, subtrees);
+
+        for (int density : densities) {
+            List<List<Proposition>> timelines = newTimelines(patients, density);
+            // warm up
+            long instances = runJoin(join, timelines);
+            long crossInstances = runCrossProduct(def, epds, subtrees,
+                    timelines);
+            if (instances != crossInstances) {
+                throw new AssertionError("join found " + instances
+                        + " instances but the cross product found "
+                        + crossInstances);
+            }
+            long begin = System.nanoTime();
+            runJoin(join, timelines);
+            long joinNanos = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            runCrossProduct(def, epds, subtrees, timelines);
+            long crossNanos = System.nanoTime() - begin;
+            System.out.printf(
+                    "%,5d events/patient: %,8d instances  cross product %,10.1f ms/patient  join %,8.3f ms/patient  (%,.0fx)%n",
+                    density, instances, crossNanos / 1e6 / patients,
+                    joinNanos / 1e6 / patients, (double) crossNanos / joinNanos);
+        }
+    }
+
+    /**
+     * A relation in which the second interval starts between zero and the
+     * given number of days after the first interval finishes.
+     */
+    private static Relation within(int days) {
+        return new Relation(null, null, null, null, null, null, null, null,
+                0, AbsoluteTimeUnit.DAY, days, AbsoluteTimeUnit.DAY,
+                null, null, null, null);
+    }
+
+    private static List<List<Proposition>> newTimelines(int patients,
+            int density) {
+        UniqueIdFactory uidFactory = new DefaultUniqueIdFactory();
+        Random random = new Random(0);
+        String[] propIds = {"A", "B", "C"};
+        // 1990 through 1994
+        long min = 631152000000L;
+        int days = 5 * 365;
+        List<List<Proposition>> result = new ArrayList<>(patients);
+        for (int i = 0; i < patients; i++) {
+            List<Proposition> props = new ArrayList<>(density);
+            for (int j = 0; j < density; j++) {
+                PrimitiveParameter param = new PrimitiveParameter(
+                        propIds[random.nextInt(propIds.length)],
+                        uidFactory.getInstance());
+                param.setPosition(min + random.nextInt(days) * DAY
+                        + random.nextInt(24) * 3600000L);
+                param.setGranularity(AbsoluteTimeGranularity.MINUTE);
+                props.add(param);
+            }
+            result.add(props);
+        }
+        return result;
+    }
+
+    private static long runJoin(HighLevelAbstractionJoin join,
+            List<List<Proposition>> timelines) throws Exception {
+        long result = 0;
+        for (List<Proposition> timeline : timelines) {
+            result += join.find(timeline).size();
+        }
+        return result;
+    }
+
+    /**
+     * Checks every combination of candidates the way the high-level
+     * abstraction rule condition did.
+     */
+    private static long runCrossProduct(HighLevelAbstractionDefinition def,
+            ExtendedPropositionDefinition[] epds, List<Set<String>> subtrees,
+            List<List<Proposition>> timelines) throws Exception {
+        List<List<TemporalExtendedPropositionDefinition>> epdPairs
+                = new ArrayList<>(
+                        def.getTemporalExtendedPropositionDefinitionPairs());
+        Map<List<TemporalExtendedPropositionDefinition>, Relation> epdToRelation
+                = new HashMap<>();
+        for (List<TemporalExtendedPropositionDefinition> pair : epdPairs) {
+            epdToRelation.put(pair, def.getRelation(pair));
+        }
+        long result = 0;
+        for (List<Proposition> timeline : timelines) {
+            List<List<Proposition>> candidates = new ArrayList<>();
+            for (int i = 0; i < epds.length; i++) {
+                List<Proposition> matches = new ArrayList<>();
+                for (Proposition prop : timeline) {
+                    if (epds[i].getMatches(prop, subtrees.get(i))) {
+                        matches.add(prop);
+                    }
+                }
+                candidates.add(matches);
+            }
+            result += crossProduct(epds, candidates, new Proposition[epds.length],
+                    0, epdToRelation, epdPairs);
+        }
+        return result;
+    }
+
+    private static long crossProduct(ExtendedPropositionDefinition[] epds,
+            List<List<Proposition>> candidates, Proposition[] tuple, int k,
+            Map<List<TemporalExtendedPropositionDefinition>, Relation> epdToRelation,
+            List<List<TemporalExtendedPropositionDefinition>> epdPairs) {
+        if (k == epds.length) {
+            for (int i = 0; i < k; i++) {
+                for (int j = i + 1; j < k; j++) {
+                    if (tuple[i].equals(tuple[j])) {
+                        return 0;
+                    }
+                }
+            }
+            Map<TemporalExtendedPropositionDefinition, TemporalProposition> map
+                    = new HashMap<>();
+            for (int i = 0; i < epds.length; i++) {
+                map.put((TemporalExtendedPropositionDefinition) epds[i],
+                        (TemporalProposition) tuple[i]);
+            }
+            for (List<TemporalExtendedPropositionDefinition> pair : epdPairs) {
+                if (!epdToRelation.get(pair).hasRelation(
+                        map.get(pair.get(0)).getInterval(),
+                        map.get(pair.get(1)).getInterval())) {
+                    return 0;
+                }
+            }
+            return 1;
+        }
+        long result = 0;
+        for (Proposition prop : candidates.get(k)) {
+            tuple[k] = prop;
+            result += crossProduct(epds, candidates, tuple, k + 1,
+                    epdToRelation, epdPairs);
+        }
+        return result;
+    }
+}
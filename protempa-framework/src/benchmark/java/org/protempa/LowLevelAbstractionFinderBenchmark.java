@@ -0,0 +1,163 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.drools.RuleBase;
+import org.drools.RuleBaseFactory;
+import org.drools.StatefulSession;
+import org.drools.rule.Package;
+import org.protempa.backend.asb.java.StateAlgorithm;
+import org.protempa.proposition.DefaultUniqueIdFactory;
+import org.protempa.proposition.PrimitiveParameter;
+import org.protempa.proposition.Sequence;
+import org.protempa.proposition.UniqueIdFactory;
+import org.protempa.proposition.value.NominalValue;
+import org.protempa.proposition.value.NumberValue;
+import org.protempa.proposition.value.ValueComparator;
+
+/**
+ * Compares searching a patient's whole history for low-level abstractions
+ * every time a value is added, which is what the low-level abstraction rules
+ * did before, with resuming the previous search. The definition finds runs of
+ * high and low values. It is not a test and is compiled only with the
+ * benchmarks profile. Run with the test classpath:
+ * <pre>
+ * java org.protempa.LowLevelAbstractionFinderBenchmark [values added] [values in history...]
+ * </pre>
+ *
+ * @author Andrew Post
+ */
+public class LowLevelAbstractionFinderBenchmark {
+
+    private static final ObjectAsserter NO_OP_ASSERTER = new ObjectAsserter() {
+
+        @Override
+        public void assertObject(Object obj) {
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        int added = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int[] sizes;
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        } else {
+            sizes = new int[]{1000, 5000, 20000};
+        }
+        RuleBase ruleBase = RuleBaseFactory.newRuleBase();
+        Package rules = new Package("benchmark");
+        WorkingMemoryGlobals.addAll(rules);
+        ruleBase.addPackage(rules);
+        StatefulSession workingMemory = ruleBase.newStatefulSession();
+        workingMemory.setGlobal(WorkingMemoryGlobals.KEY_ID, "benchmark");
+
+        Algorithm algorithm = new StateAlgorithm(new Algorithms(),
+                "stateDetector");
+        LowLevelAbstractionDefinition def =
+                new LowLevelAbstractionDefinition("HIGH_LOW");
+        def.addPrimitiveParameterId("LAB");
+        def.setAlgorithmId("stateDetector");
+        def.setSlidingWindowWidthMode(SlidingWindowWidthMode.DEFAULT);
+        LowLevelAbstractionValueDefinition high =
+                new LowLevelAbstractionValueDefinition(def, "HIGH");
+        high.setValue(NominalValue.getInstance("HIGH"));
+        high.setParameterValue("minThreshold", NumberValue.getInstance(5));
+        high.setParameterComp("minThreshold", ValueComparator.GREATER_THAN);
+        LowLevelAbstractionValueDefinition low =
+                new LowLevelAbstractionValueDefinition(def, "LOW");
+        low.setValue(NominalValue.getInstance("LOW"));
+        low.setParameterValue("maxThreshold", NumberValue.getInstance(5));
+        low.setParameterComp("maxThreshold",
+                ValueComparator.LESS_THAN_OR_EQUAL_TO);
+
+        try {
+            for (int size : sizes) {
+                List<PrimitiveParameter> history = newValues(size + added);
+                run(def, algorithm, workingMemory, history, size, added, true);
+                run(def, algorithm, workingMemory, history, size, added, false);
+                long begin = System.nanoTime();
+                int abstractions = run(def, algorithm, workingMemory, history,
+                        size, added, true);
+                long resumeNanos = System.nanoTime() - begin;
+                begin = System.nanoTime();
+                int fullAbstractions = run(def, algorithm, workingMemory,
+                        history, size, added, false);
+                long fullNanos = System.nanoTime() - begin;
+                if (abstractions != fullAbstractions) {
+                    throw new AssertionError("resuming found " + abstractions
+                            + " abstractions but searching from scratch found "
+                            + fullAbstractions);
+                }
+                System.out.printf(
+                        "%,7d values: %,6d abstractions  from scratch %,9.3f ms/value  resumed %,7.3f ms/value  (%,.0fx)%n",
+                        size, abstractions, fullNanos / 1e6 / added,
+                        resumeNanos / 1e6 / added,
+                        (double) fullNanos / resumeNanos);
+            }
+        } finally {
+            workingMemory.dispose();
+        }
+    }
+
+    /**
+     * Adds values to a history one at a time and searches the history after
+     * each one.
+     *
+     * @return the number of abstractions found in the last search.
+     */
+    private static int run(LowLevelAbstractionDefinition def,
+            Algorithm algorithm, StatefulSession workingMemory,
+            List<PrimitiveParameter> values, int size, int added,
+            boolean resume) throws Exception {
+        LowLevelAbstractionFinder.Run run = null;
+        for (int i = size; i <= size + added; i++) {
+            Sequence<PrimitiveParameter> seq = new Sequence<>(
+                    def.getAbstractedFrom(), values.subList(0, i));
+            run = LowLevelAbstractionFinder.process(seq, def, algorithm,
+                    NO_OP_ASSERTER, new DerivationsBuilder(), workingMemory,
+                    resume ? run : null);
+        }
+        return run.getAssertedCount();
+    }
+
+    private static List<PrimitiveParameter> newValues(int count) {
+        UniqueIdFactory uidFactory = new DefaultUniqueIdFactory();
+        Random random = new Random(count);
+        List<PrimitiveParameter> result = new ArrayList<>(count);
+        int value = 5;
+        for (int i = 0; i < count; i++) {
+            value = Math.max(0, Math.min(10, value + random.nextInt(3) - 1));
+            PrimitiveParameter param = new PrimitiveParameter("LAB",
+                    uidFactory.getInstance());
+            param.setSourceSystem(
+                    DataSourceBackendSourceSystem.getInstance("benchmark"));
+            param.setPosition(i * 60000L);
+            param.setValue(NumberValue.getInstance(value));
+            result.add(param);
+        }
+        return result;
+    }
+}
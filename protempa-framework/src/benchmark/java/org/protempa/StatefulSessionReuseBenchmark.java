@@ -0,0 +1,179 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.protempa.backend.asb.AlgorithmSourceBackend;
+import org.protempa.proposition.DefaultUniqueIdFactory;
+import org.protempa.proposition.PrimitiveParameter;
+import org.protempa.proposition.Proposition;
+import org.protempa.proposition.UniqueIdFactory;
+import org.protempa.proposition.interval.Relation;
+import org.protempa.proposition.value.AbsoluteTimeGranularity;
+import org.protempa.query.Query;
+import org.protempa.query.QueryMode;
+
+/**
+ * Measures the per-key latency of {@link StatefulExecutionStrategy} for keys
+ * with little data, with one stateful session that is reset between keys and
+ * with a new session per key ({@link
+ * StatefulExecutionStrategy#NEW_SESSION_PER_KEY_PROPERTY}). The rule base has
+ * the given number of high-level abstraction definitions, each over a pair of
+ * primitive parameters. It is not a test and is compiled only with the
+ * benchmarks profile. Run with the test classpath:
+ * <pre>
+ * java org.protempa.StatefulSessionReuseBenchmark [keys] [propositions per key] [abstraction definitions]
+ * </pre>
+ *
+ * @author Andrew Post
+ */
+public class StatefulSessionReuseBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int propsPerKey = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int abstractionCount = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        List<PropositionDefinition> propDefs
+                = newPropositionDefinitions(abstractionCount);
+        List<List<Proposition>> data
+                = newData(keys, propsPerKey, abstractionCount);
+        // warm up
+        run(false, propDefs, data);
+        run(true, propDefs, data);
+        report("reused session", run(false, propDefs, data));
+        report("new session", run(true, propDefs, data));
+    }
+
+    private static void report(String name, long[] latencies) {
+        Arrays.sort(latencies);
+        long total = 0;
+        for (long latency : latencies) {
+            total += latency;
+        }
+        System.out.printf(
+                "%-15s mean %,8.1f us/key  p50 %,8.1f us  p99 %,8.1f us%n",
+                name, total / 1000.0 / latencies.length,
+                latencies[latencies.length / 2] / 1000.0,
+                latencies[(int) (latencies.length * 0.99)] / 1000.0);
+    }
+
+    /**
+     * @return the nanoseconds spent on each key, including draining the
+     * results and closing the working memory.
+     */
+    private static long[] run(boolean newSessionPerKey,
+            List<PropositionDefinition> propDefs, List<List<Proposition>> data)
+            throws Exception {
+        System.setProperty(
+                StatefulExecutionStrategy.NEW_SESSION_PER_KEY_PROPERTY,
+                Boolean.toString(newSessionPerKey));
+        Path dir = Files.createTempDirectory("protempa-benchmark");
+        String[] propIds = new String[propDefs.size() / 3];
+        for (int i = 0; i < propIds.length; i++) {
+            propIds[i] = "AB" + i;
+        }
+        Query query = new Query("benchmark", null, null, null, propIds,
+                propDefs.toArray(new PropositionDefinition[propDefs.size()]),
+                QueryMode.REPLACE, dir.resolve("benchmark").toString());
+        StatefulExecutionStrategy strategy = new StatefulExecutionStrategy(
+                new AlgorithmSourceImpl(new AlgorithmSourceBackend[0]),
+                query);
+        long[] latencies = new long[data.size()];
+        try {
+            strategy.initialize(new PropositionDefinitionCache(propDefs));
+            for (int i = 0; i < latencies.length; i++) {
+                long begin = System.nanoTime();
+                try {
+                    Iterator<Proposition> itr = strategy.execute("key" + i,
+                            data.get(i).iterator());
+                    while (itr.hasNext()) {
+                        itr.next();
+                    }
+                } finally {
+                    strategy.closeCurrentWorkingMemory();
+                }
+                latencies[i] = System.nanoTime() - begin;
+            }
+        } finally {
+            strategy.shutdown();
+            deleteRecursively(dir);
+        }
+        return latencies;
+    }
+
+    private static List<PropositionDefinition> newPropositionDefinitions(
+            int abstractionCount) {
+        List<PropositionDefinition> result = new ArrayList<>();
+        for (int i = 0; i < abstractionCount; i++) {
+            result.add(new PrimitiveParameterDefinition("A" + i));
+            result.add(new PrimitiveParameterDefinition("B" + i));
+            HighLevelAbstractionDefinition hla
+                    = new HighLevelAbstractionDefinition("AB" + i);
+            TemporalExtendedPropositionDefinition a
+                    = new TemporalExtendedPropositionDefinition("A" + i);
+            TemporalExtendedPropositionDefinition b
+                    = new TemporalExtendedPropositionDefinition("B" + i);
+            hla.add(a);
+            hla.add(b);
+            hla.setRelation(a, b, new Relation());
+            result.add(hla);
+        }
+        return result;
+    }
+
+    private static List<List<Proposition>> newData(int keys, int propsPerKey,
+            int abstractionCount) {
+        UniqueIdFactory uidFactory = new DefaultUniqueIdFactory();
+        List<List<Proposition>> result = new ArrayList<>(keys);
+        for (int i = 0; i < keys; i++) {
+            List<Proposition> props = new ArrayList<>(propsPerKey);
+            for (int j = 0; j < propsPerKey; j++) {
+                String propId = ((j & 1) == 0 ? "A" : "B")
+                        + ((i + j / 2) % abstractionCount);
+                PrimitiveParameter param = new PrimitiveParameter(propId,
+                        uidFactory.getInstance());
+                param.setPosition(j * 3600000L);
+                param.setGranularity(AbsoluteTimeGranularity.MINUTE);
+                props.add(param);
+            }
+            result.add(props);
+        }
+        return result;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> children
+                    = Files.newDirectoryStream(path)) {
+                for (Path child : children) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
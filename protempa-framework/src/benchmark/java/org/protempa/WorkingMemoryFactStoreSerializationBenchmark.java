@@ -0,0 +1,172 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2015 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.protempa.proposition.DefaultUniqueIdFactory;
+import org.protempa.proposition.Event;
+import org.protempa.proposition.Proposition;
+import org.protempa.proposition.UniqueIdFactory;
+import org.protempa.proposition.interval.IntervalFactory;
+import org.protempa.proposition.value.AbsoluteTimeGranularity;
+
+/**
+ * Compares the serialized size and the serialization and deserialization time
+ * of {@link WorkingMemoryFactStore} with Java's default serialized form of
+ * the same fields, which is what stateful queries stored before the compact
+ * form. The BDB data store serializes values this way on put and deserializes
+ * them on get. It is not a test and is compiled only with the benchmarks
+ * profile. Run with the test classpath:
+ * <pre>
+ * java org.protempa.WorkingMemoryFactStoreSerializationBenchmark [keys] [propositions per key]
+ * </pre>
+ *
+ * @author Andrew Post
+ */
+public class WorkingMemoryFactStoreSerializationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int propsPerKey = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        List<WorkingMemoryFactStore> factStores = new ArrayList<>(keys);
+        List<DefaultFormFactStore> defaultFormFactStores
+                = new ArrayList<>(keys);
+        UniqueIdFactory uidFactory = new DefaultUniqueIdFactory();
+        IntervalFactory intervalFactory = new IntervalFactory();
+        for (int i = 0; i < keys; i++) {
+            WorkingMemoryFactStore factStore
+                    = newFactStore(propsPerKey, uidFactory, intervalFactory);
+            factStores.add(factStore);
+            defaultFormFactStores.add(new DefaultFormFactStore(factStore));
+        }
+        // warm up
+        run(factStores);
+        run(defaultFormFactStores);
+        report("compact", factStores, keys);
+        report("default", defaultFormFactStores, keys);
+    }
+
+    private static void report(String name, List<?> factStores, int keys)
+            throws IOException, ClassNotFoundException {
+        long[] result = run(factStores);
+        System.out.printf(
+                "%-8s %,10d bytes/key %,10.1f us/key put %,10.1f us/key get%n",
+                name, result[0] / keys, result[1] / 1000.0 / keys,
+                result[2] / 1000.0 / keys);
+    }
+
+    /**
+     * @return total bytes, total serialization nanoseconds and total
+     * deserialization nanoseconds.
+     */
+    private static long[] run(List<?> factStores)
+            throws IOException, ClassNotFoundException {
+        long bytes = 0;
+        long writeNanos = 0;
+        long readNanos = 0;
+        for (Object factStore : factStores) {
+            long begin = System.nanoTime();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                oos.writeObject(factStore);
+            }
+            byte[] serialized = baos.toByteArray();
+            writeNanos += System.nanoTime() - begin;
+            bytes += serialized.length;
+            begin = System.nanoTime();
+            try (ObjectInputStream ois = new ObjectInputStream(
+                    new ByteArrayInputStream(serialized))) {
+                ois.readObject();
+            }
+            readNanos += System.nanoTime() - begin;
+        }
+        return new long[]{bytes, writeNanos, readNanos};
+    }
+
+    /*
+     * Half of the propositions are raw data. Each of the rest is derived from
+     * two of the raw data propositions.
+     */
+    private static WorkingMemoryFactStore newFactStore(int propsPerKey,
+            UniqueIdFactory uidFactory, IntervalFactory intervalFactory) {
+        List<Proposition> props = new ArrayList<>(propsPerKey);
+        Map<Proposition, Set<Proposition>> forward = new HashMap<>();
+        Map<Proposition, Set<Proposition>> backward = new HashMap<>();
+        int numRaw = Math.max(2, propsPerKey / 2);
+        for (int i = 0; i < propsPerKey; i++) {
+            Event event = new Event(i < numRaw ? "RAW" : "DERIVED",
+                    uidFactory.getInstance());
+            event.setInterval(intervalFactory.getInstance(i * 86400000L,
+                    AbsoluteTimeGranularity.DAY));
+            props.add(event);
+            if (i >= numRaw) {
+                Set<Proposition> sources = new HashSet<>();
+                sources.add(props.get(i % numRaw));
+                sources.add(props.get((i + 1) % numRaw));
+                backward.put(event, sources);
+                for (Proposition source : sources) {
+                    Set<Proposition> derived = forward.get(source);
+                    if (derived == null) {
+                        derived = new HashSet<>();
+                        forward.put(source, derived);
+                    }
+                    derived.add(event);
+                }
+            }
+        }
+        Map<String, Integer> instanceNums = new HashMap<>();
+        instanceNums.put("DERIVED", propsPerKey - numRaw);
+        WorkingMemoryFactStore factStore = new WorkingMemoryFactStore();
+        factStore.setPropositions(props);
+        factStore.setForwardDerivations(forward);
+        factStore.setBackwardDerivations(backward);
+        factStore.setInstanceNums(instanceNums);
+        return factStore;
+    }
+
+    private static class DefaultFormFactStore implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Proposition> propositions;
+        private final Map<Proposition, Set<Proposition>> forwardDerivations;
+        private final Map<Proposition, Set<Proposition>> backwardDerivations;
+        private final Map<String, Integer> instanceNums;
+
+        DefaultFormFactStore(WorkingMemoryFactStore factStore) {
+            this.propositions = factStore.getPropositions();
+            this.forwardDerivations = factStore.getForwardDerivations();
+            this.backwardDerivations = factStore.getBackwardDerivations();
+            this.instanceNums = factStore.getInstanceNums();
+        }
+    }
+}
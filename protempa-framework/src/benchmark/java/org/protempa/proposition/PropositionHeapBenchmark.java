@@ -0,0 +1,125 @@
+package org.protempa.proposition;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.protempa.proposition.value.NumberValue;
+import org.protempa.proposition.value.Value;
+
+/**
+ * Measures the heap footprint of the properties and references of
+ * propositions. It is not a test and is compiled only with the benchmarks
+ * profile. Run with the test classpath and a fixed heap so that the
+ * measurements are stable:
+ * <pre>
+ * java -Xms4g -Xmx4g org.protempa.proposition.PropositionHeapBenchmark [propositions] [properties]
+ * </pre>
+ * It reports how many bytes per proposition it takes to give
+ * {@link Constant}s the given number of properties and one reference, and
+ * how many it takes to hold the same properties and reference in a pair of
+ * <code>LinkedHashMap</code>s, which is how propositions used to store them.
+ *
+ * @author Andrew Post
+ */
+public class PropositionHeapBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int propertyCount = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        String[] propertyNames = new String[propertyCount];
+        Value[] values = new Value[propertyCount];
+        for (int i = 0; i < propertyCount; i++) {
+            propertyNames[i] = ("property" + i).intern();
+            values[i] = NumberValue.getInstance(i);
+        }
+        UniqueIdFactory uidFactory = new DefaultUniqueIdFactory();
+        UniqueId[] uids = new UniqueId[count];
+        for (int i = 0; i < count; i++) {
+            uids[i] = uidFactory.getInstance();
+        }
+        UniqueId ref = uidFactory.getInstance();
+
+        long before = usedMemory();
+        List<Constant> constants = newConstants(uids, null, null, null);
+        long bareBytes = usedMemory() - before;
+        constants = null;
+
+        before = usedMemory();
+        constants = newConstants(uids, propertyNames, values, ref);
+        long propositionBytes = usedMemory() - before - bareBytes;
+        int constantCount = constants.size();
+        constants = null;
+
+        before = usedMemory();
+        List<Object[]> maps = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Value> properties = new LinkedHashMap<>();
+            for (int j = 0; j < propertyCount; j++) {
+                properties.put(propertyNames[j], values[j]);
+            }
+            Map<String, List<UniqueId>> references = new LinkedHashMap<>();
+            List<UniqueId> refs = new ArrayList<>(100);
+            refs.add(ref);
+            references.put("ref", refs);
+            maps.add(new Object[]{properties, references});
+        }
+        long mapBytes = usedMemory() - before;
+
+        System.out.printf("%,d propositions with %d properties and 1 reference%n",
+                count, propertyCount);
+        System.out.printf("proposition storage:   %,d bytes each%n",
+                propositionBytes / count);
+        System.out.printf("LinkedHashMap storage: %,d bytes each%n",
+                mapBytes / count);
+        // keep the measured objects reachable until here
+        if (constantCount + maps.size() != 2 * count) {
+            throw new AssertionError();
+        }
+    }
+
+    private static List<Constant> newConstants(UniqueId[] uids,
+            String[] propertyNames, Value[] values, UniqueId ref) {
+        List<Constant> result = new ArrayList<>(uids.length);
+        for (UniqueId uid : uids) {
+            Constant constant = new Constant("Benchmark", uid);
+            if (propertyNames != null) {
+                for (int j = 0; j < propertyNames.length; j++) {
+                    constant.setProperty(propertyNames[j], values[j]);
+                }
+            }
+            if (ref != null) {
+                constant.addReference("ref", ref);
+            }
+            result.add(constant);
+        }
+        return result;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,90 @@
+package org.protempa.proposition.interval;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.protempa.proposition.value.AbsoluteTimeGranularity;
+
+/**
+ * Measures {@link IntervalFactory} throughput when many threads create
+ * intervals at once, as the do process threads do. It is not a test and is
+ * compiled only with the benchmarks profile. Run with the test classpath:
+ * <pre>
+ * java org.protempa.proposition.interval.IntervalFactoryContentionBenchmark [iterations] [distinct intervals]
+ * </pre>
+ * It reports intervals per second for 1, 2, 4, 8, 16 and 32 threads.
+ *
+ * @author Andrew Post
+ */
+public class IntervalFactoryContentionBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32};
+
+    public static void main(String[] args) throws InterruptedException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int distinct = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        // warm up
+        run(4, iterations / 10, distinct);
+        for (int threadCount : THREAD_COUNTS) {
+            long elapsed = run(threadCount, iterations, distinct);
+            double perSecond = (double) iterations * threadCount
+                    / elapsed * 1000000000L;
+            System.out.printf("%2d threads: %,.0f intervals/s%n",
+                    threadCount, perSecond);
+        }
+    }
+
+    private static long run(int threadCount, final int iterations,
+            final int distinct) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            final long offset = i * 7919L;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    IntervalFactory factory = new IntervalFactory();
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int j = 0; j < iterations; j++) {
+                        long position = ((j + offset) % distinct) * 60000L;
+                        factory.getInstance(position,
+                                AbsoluteTimeGranularity.MINUTE,
+                                position + 3600000L,
+                                AbsoluteTimeGranularity.MINUTE);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - begin;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2013 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.proposition.value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of the calendar arithmetic of {@link
+ * AbsoluteTimeGranularity} and {@link AbsoluteTimeUnit} with 1, 8 and 32
+ * threads, or with the given thread counts. Each operation is a mix of the
+ * calls that intervals and relations make: earliest, latest, minimum and
+ * maximum distance, distance in months, and adding months. It is not a test
+ * and is compiled only with the benchmarks profile. Run with the test
+ * classpath:
+ * <pre>
+ * java org.protempa.proposition.value.AbsoluteTimeGranularityBenchmark [seconds per run] [thread counts...]
+ * </pre>
+ * It runs in the default time zone. Set it to compare a zone with daylight
+ * saving time, in which more of the arithmetic is done with calendars:
+ * <pre>
+ * java -Duser.timezone=America/New_York org.protempa.proposition.value.AbsoluteTimeGranularityBenchmark
+ * </pre>
+ *
+ * @author Andrew Post
+ */
+public class AbsoluteTimeGranularityBenchmark {
+
+    private static final int POSITIONS = 1 << 16;
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int[] threadCounts;
+        if (args.length > 1) {
+            threadCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                threadCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        } else {
+            threadCounts = new int[]{1, 8, 32};
+        }
+        long[] positions = new long[POSITIONS];
+        Random random = new Random(0);
+        // 1990 through 2030
+        long min = 631152000000L;
+        long range = 1262304000000L;
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = min + (long) (random.nextDouble() * range);
+        }
+        System.out.println(TimeZone.getDefault().getID());
+        // warm up
+        run(positions, threadCounts[threadCounts.length - 1], 1);
+        for (int threads : threadCounts) {
+            long ops = run(positions, threads, seconds);
+            System.out.printf("%2d thread(s): %,12d ops/s  %,10d ops/s/thread%n",
+                    threads, ops / seconds, ops / seconds / threads);
+        }
+    }
+
+    private static long run(long[] positions, int threadCount, int seconds)
+            throws InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong ops = new AtomicLong();
+        AtomicLong sink = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            int offset = t * 7919;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                long count = 0;
+                long result = 0;
+                int i = offset;
+                while (!stop.get()) {
+                    long position = positions[i++ & (POSITIONS - 1)];
+                    result += operation(position);
+                    count++;
+                }
+                ops.addAndGet(count);
+                sink.addAndGet(result);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (sink.get() == 42) {
+            System.out.println();
+        }
+        return ops.get();
+    }
+
+    private static long operation(long position) {
+        AbsoluteTimeGranularity day = AbsoluteTimeGranularity.DAY;
+        AbsoluteTimeGranularity month = AbsoluteTimeGranularity.MONTH;
+        long start = day.earliest(position);
+        long finish = month.latest(position + 400L * 24 * 60 * 60 * 1000);
+        return start + finish
+                + day.minimumDistance(position, 3, AbsoluteTimeUnit.MONTH)
+                + day.maximumDistance(position, 3, AbsoluteTimeUnit.MONTH)
+                + day.distance(start, finish, day, AbsoluteTimeUnit.MONTH)
+                + AbsoluteTimeUnit.MONTH.addToPosition(position, 6);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2013 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.proposition.value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of getting interned {@link NumberValue}s and {@link
+ * NominalValue}s with 1, 8 and 32 threads, or with the given thread counts.
+ * Each operation gets a number value from a <code>long</code>, one from a
+ * <code>double</code>, and a nominal value, drawn from a few thousand
+ * distinct values so that nearly all lookups hit the caches. It is not a test
+ * and is compiled only with the benchmarks profile. Run with the test
+ * classpath:
+ * <pre>
+ * java org.protempa.proposition.value.ValueCacheBenchmark [seconds per run] [thread counts...]
+ * </pre>
+ *
+ * @author Andrew Post
+ */
+public class ValueCacheBenchmark {
+
+    private static final int VALUES = 1 << 12;
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int[] threadCounts;
+        if (args.length > 1) {
+            threadCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                threadCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        } else {
+            threadCounts = new int[]{1, 8, 32};
+        }
+        long[] longs = new long[VALUES];
+        double[] doubles = new double[VALUES];
+        String[] strings = new String[VALUES];
+        Random random = new Random(0);
+        for (int i = 0; i < VALUES; i++) {
+            longs[i] = random.nextInt(100000);
+            doubles[i] = Math.round(random.nextDouble() * 10000) / 10.0;
+            strings[i] = "code" + random.nextInt(VALUES);
+        }
+        // warm up
+        run(longs, doubles, strings, threadCounts[threadCounts.length - 1], 1);
+        for (int threads : threadCounts) {
+            long ops = run(longs, doubles, strings, threads, seconds);
+            System.out.printf("%2d thread(s): %,12d ops/s  %,10d ops/s/thread%n",
+                    threads, ops / seconds, ops / seconds / threads);
+        }
+        System.out.printf("number values:  %,d entries, %.4f hit rate%n",
+                NumberValue.getCacheSize(), NumberValue.getCacheHitRate());
+        System.out.printf("nominal values: %,d entries, %.4f hit rate%n",
+                NominalValue.getCacheSize(), NominalValue.getCacheHitRate());
+    }
+
+    private static long run(long[] longs, double[] doubles, String[] strings,
+            int threadCount, int seconds) throws InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong ops = new AtomicLong();
+        AtomicLong sink = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            int offset = t * 7919;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                long count = 0;
+                long result = 0;
+                int i = offset;
+                while (!stop.get()) {
+                    int j = i++ & (VALUES - 1);
+                    result += System.identityHashCode(
+                            NumberValue.getInstance(longs[j]))
+                            + System.identityHashCode(
+                                    NumberValue.getInstance(doubles[j]))
+                            + System.identityHashCode(
+                                    NominalValue.getInstance(strings[j]));
+                    count++;
+                }
+                ops.addAndGet(count);
+                sink.addAndGet(result);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (sink.get() == 42) {
+            System.out.println();
+        }
+        return ops.get();
+    }
+}
@@ -84,7 +84,8 @@ abstract class AbstractExecutionStrategy implements ExecutionStrategy {
     
     /**
      * Called by {@link #initialize(java.util.Collection) }.
-     * @return a newly created rule creator instance.
+     * @return a newly created rule creator instance. Its rules are created
+     * by {@link JBossRuleBaseFactory} unless they are cached.
      * @throws ExecutionStrategyInitializationException 
      */
     protected abstract JBossRuleCreator newRuleCreator() throws ExecutionStrategyInitializationException;
@@ -21,7 +21,11 @@ package org.protempa;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import org.protempa.proposition.Proposition;
 
 /**
@@ -29,17 +33,34 @@ import org.protempa.proposition.Proposition;
  * iterator. While {@link DataStreamer} implements pushing data from a data
  * source to the caller, this iterator supports pulling data from the data 
  * source.
+ * 
+ * The iterators' current elements are grouped by key id in a hash map, and
+ * the key ids are kept in a priority queue. Getting the next element
+ * usually costs a hash lookup of the key id of the element that replaces it,
+ * and a key id comparison only happens when a key id that none of the other
+ * iterators is on enters the priority queue. For a given key id, elements
+ * are returned in the order of the iterators in the list, and if an
+ * iterator has more than one element for a key id, its second one is
+ * returned after every other iterator's first one, and so on.
+ * 
  * @author Andrew Post
  */
 final class DataStreamerIterator<E extends Proposition> implements AutoCloseable {
 
+    private static final Comparator<Head<?>> HEAD_COMPARATOR
+            = new Comparator<Head<?>>() {
+        @Override
+        public int compare(Head<?> o1, Head<?> o2) {
+            return o1.index < o2.index ? -1 : (o1.index == o2.index ? 0 : 1);
+        }
+    };
+
     private final List<DataStreamingEventIterator<E>> itrs;
-    private final List<DataStreamingEvent<E>> currentElt;
-    private boolean hasNext;
+    private final Map<String, KeyGroup<E>> keyGroups;
+    private final PriorityQueue<KeyGroup<E>> keyIds;
+    private KeyGroup<E> current;
     private DataStreamingEvent<E> result;
     private boolean hasNextComputed;
-    private int i = 0;
-    private DataStreamingEvent<E> currentMin;
     private String nextKeyId;
 
     /**
@@ -54,33 +75,11 @@ final class DataStreamerIterator<E extends Proposition> implements AutoCloseable
             throws DataSourceReadException {
         assert itrs != null : "itrs cannot be null";
         this.itrs = itrs;
-        this.currentElt = new ArrayList<>(itrs.size());
         int itrsSize = itrs.size();
+        this.keyGroups = new HashMap<>();
+        this.keyIds = new PriorityQueue<>(Math.max(1, itrsSize));
         for (int j = 0; j < itrsSize; j++) {
-            this.currentElt.add(null);
-        }
-        /*
-         * Stores the most recent element retrieved from each iterator.
-         */
-        /*
-         * Stores the most recent element retrieved from each iterator.
-         */
-        for (int j = 0; j < itrsSize; j++) {
-            advance(j);
-        }
-        /*
-         * If the iterators have no elements, cut to the chase and arrange for
-         * {@link #hasNext()} to return immediately.
-         */
-        /*
-         * If the iterators have no elements, cut to the chase and arrange for
-         * {@link #hasNext()} to return immediately.
-         */
-        for (DataStreamingEvent<E> event : this.currentElt) {
-            if (event != null) {
-                this.hasNext = true;
-                break;
-            }
+            advance(new Head<E>(j));
         }
     }
 
@@ -89,9 +88,8 @@ final class DataStreamerIterator<E extends Proposition> implements AutoCloseable
     }
 
     /**
-     * We loop through the iterators passed into the constructor and return
-     * whether the the next item in at least one iterator is for the right
-     * keyId.
+     * Returns whether any of the iterators passed into the constructor has
+     * another element.
      *
      * @return
      * <code>true</code> or
@@ -99,55 +97,24 @@ final class DataStreamerIterator<E extends Proposition> implements AutoCloseable
      */
     boolean hasNext() throws DataSourceReadException {
         if (!hasNextComputed) {
-            boolean stayInLoop;
-            do {
-                stayInLoop = false;
-                /*
-                 * Prior to reading the first iterator, we loop through all of
-                 * the iterators to determine the minimum keyId. The minimum
-                 * keyId, stored in currentMin, is used for data retrieval. The
-                 * value of currentMin will be null if there is no data to
-                 * retrieve.
-                 */
-                if (i == 0) {
-                    this.currentMin = null;
-                    for (DataStreamingEvent<E> elt : this.currentElt) {
-                        currentMin = min(elt);
-                    }
+            if (this.current == null || this.current.isDone()) {
+                if (this.current != null) {
+                    this.keyGroups.remove(this.current.keyId);
                 }
-                /*
-                 * If there is no data to retrieve, we'll return false. If there
-                 * is data to retrieve, we'll loop through the iterators and
-                 * pull data for the current keyId, which is the keyId field of
-                 * currentMin. If there's no data for the current keyId, this
-                 * should loop through all of the iterators until their ends,
-                 * and set hasNext to false.
-                 */
-                if (currentMin == null) {
-                    this.hasNext = false;
-                } else {
-                    int n = this.currentElt.size();
-                    for (; i < n; i++) {
-                        DataStreamingEvent<E> elt = this.currentElt.get(i);
-                        if (elt != null && elt.getKeyId().equals(
-                                this.currentMin != null 
-                                ? this.currentMin.getKeyId() : null)) {
-                            this.result = elt;
-                            this.nextKeyId = elt.getKeyId();
-                            advance(i);
-                            i++;
-                            break;
-                        }
-                    }
-                    if (this.i == n && this.result == null) {
-                        this.i = 0;
-                        stayInLoop = true;
-                    }
+                this.current = this.keyIds.poll();
+                if (this.current != null) {
+                    this.current.heads.sort(HEAD_COMPARATOR);
                 }
-            } while (this.hasNext && stayInLoop);
+            }
+            if (this.current != null) {
+                Head<E> head = this.current.heads.get(this.current.pos++);
+                this.result = head.event;
+                this.nextKeyId = this.current.keyId;
+                advance(head);
+            }
             this.hasNextComputed = true;
         }
-        return hasNext;
+        return this.result != null;
     }
 
     DataStreamingEvent<E> next() {
@@ -159,29 +126,73 @@ final class DataStreamerIterator<E extends Proposition> implements AutoCloseable
         return r;
     }
 
-    private void advance(int j) 
+    /**
+     * Moves the given head to its iterator's next element, and adds it to the
+     * group for that element's key id.
+     * 
+     * @param head the head.
+     */
+    private void advance(Head<E> head) 
             throws DataSourceReadException {
-        DataStreamingEventIterator<E> itr = this.itrs.get(j);
+        DataStreamingEventIterator<E> itr = this.itrs.get(head.index);
         if (itr.hasNext()) {
-            DataStreamingEvent<E> next = itr.next();
-            this.currentElt.set(j, next);
+            head.event = itr.next();
+            String keyId = head.event.getKeyId();
+            KeyGroup<E> keyGroup = this.keyGroups.get(keyId);
+            if (keyGroup == null) {
+                keyGroup = new KeyGroup<>(keyId);
+                this.keyGroups.put(keyId, keyGroup);
+                this.keyIds.add(keyGroup);
+            }
+            /*
+             * If the key id is the one that we are returning elements for,
+             * the head goes after the heads that are already in the group,
+             * which is where it belongs.
+             */
+            keyGroup.heads.add(head);
         } else {
-            this.currentElt.set(j, null);
+            head.event = null;
         }
     }
 
-    private DataStreamingEvent min(DataStreamingEvent elt2) {
-        DataStreamingEvent elt1 = this.currentMin;
-        if (elt1 == null) {
-            return elt2;
-        } else if (elt2 == null) {
-            return elt1;
-        } else {
-            return elt1.getKeyId().compareTo(elt2.getKeyId()) < 0 ? elt1 : elt2;
-        }
-    }
-    
     public void close() {
         
     }
+
+    /**
+     * The current element of one of the iterators.
+     */
+    private static final class Head<E> {
+
+        private final int index;
+        private DataStreamingEvent<E> event;
+
+        Head(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * The iterators whose current elements have the same key id.
+     */
+    private static final class KeyGroup<E> implements Comparable<KeyGroup<E>> {
+
+        private final String keyId;
+        private final List<Head<E>> heads;
+        private int pos;
+
+        KeyGroup(String keyId) {
+            this.keyId = keyId;
+            this.heads = new ArrayList<>();
+        }
+
+        boolean isDone() {
+            return this.pos == this.heads.size();
+        }
+
+        @Override
+        public int compareTo(KeyGroup<E> o) {
+            return this.keyId.compareTo(o.keyId);
+        }
+    }
 }
@@ -25,6 +25,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.drools.event.DefaultWorkingMemoryEventListener;
 import org.drools.event.ObjectRetractedEvent;
+import org.drools.rule.Rule;
 import org.protempa.proposition.Proposition;
 
 /**
@@ -59,8 +60,13 @@ final class DeletedWorkingMemoryEventListener extends DefaultWorkingMemoryEventL
      */
     @Override
     public void objectRetracted(ObjectRetractedEvent ore) {
-        String name = ore.getPropagationContext().getRuleOrigin().getName();
-        if (name.equals("DELETE_PROPOSITION")) {
+        /*
+         * Facts that are retracted outside of a rule, such as when a working
+         * memory is reset for the next key id, have no rule origin.
+         */
+        Rule ruleOrigin = ore.getPropagationContext().getRuleOrigin();
+        if (ruleOrigin != null
+                && ruleOrigin.getName().equals("DELETE_PROPOSITION")) {
             Proposition prop = (Proposition) ore.getOldObject();
             LOGGER.log(Level.FINEST, "Deleted proposition {0}", prop);
             prop.accept(this.setDeleteDatePropVisitor);
@@ -92,6 +92,27 @@ final class DerivationsBuilder implements Serializable {
         return this.backwardDerivations.remove(proposition);
     }
 
+    /**
+     * Removes the derivations of a derived proposition that is no longer in
+     * working memory.
+     *
+     * @param proposition the derived proposition.
+     */
+    void propositionRetracted(Proposition proposition) {
+        Set<Proposition> props = this.backwardDerivations.remove(proposition);
+        if (props != null) {
+            for (Proposition prop : props) {
+                Set<Proposition> derived = this.forwardDerivations.get(prop);
+                if (derived != null) {
+                    derived.remove(proposition);
+                    if (derived.isEmpty()) {
+                        this.forwardDerivations.remove(prop);
+                    }
+                }
+            }
+        }
+    }
+
     void propositionAsserted(Proposition oldProposition,
             Proposition newProposition) {
         assert oldProposition != null : "old proposition cannot be null";
@@ -0,0 +1,148 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import org.protempa.proposition.Proposition;
+
+/**
+ * Hands out the data on the do process queue to one or more do process
+ * threads. The retrieve data thread puts keys on the queue in batches, and
+ * each batch is numbered in the order in which the data source returned it,
+ * so that the query results handler thread can restore that order. The number
+ * of batches that have been taken off the queue but not yet passed to the
+ * query results handler is bounded, which in turn bounds the number of
+ * results that the query results handler thread has to hold onto while it
+ * waits for a slow batch.
+ *
+ * @author Andrew Post
+ */
+final class DoProcessQueueReader {
+
+    private final MemoryBoundedQueue<List<DataStreamingEvent<Proposition>>> queue;
+    private final List<DataStreamingEvent<Proposition>> poisonPill;
+    private final ReentrantLock lock;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private long nextSequenceNumber;
+    private volatile boolean done;
+
+    /**
+     * Creates a reader.
+     *
+     * @param queue the do process queue.
+     * @param poisonPill the batch that the retrieve data thread puts on the
+     * queue after the last key.
+     * @param maxInFlight the maximum number of batches that may be taken off
+     * the queue and not yet handled by the query results handler. Must be at
+     * least the number of do process threads.
+     */
+    DoProcessQueueReader(MemoryBoundedQueue<List<DataStreamingEvent<Proposition>>> queue,
+            List<DataStreamingEvent<Proposition>> poisonPill, int maxInFlight) {
+        assert queue != null : "queue cannot be null";
+        assert poisonPill != null : "poisonPill cannot be null";
+        assert maxInFlight > 0 : "maxInFlight must be positive";
+        this.queue = queue;
+        this.poisonPill = poisonPill;
+        this.lock = new ReentrantLock();
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Takes the next batch of keys off of the queue, waiting if necessary.
+     *
+     * @return the next batch, or <code>null</code> if the retrieve data
+     * thread is done or {@link #stop() } was called.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    SequencedBatch take() throws InterruptedException {
+        this.inFlight.acquire();
+        boolean taken = false;
+        try {
+            this.lock.lockInterruptibly();
+            try {
+                if (this.done) {
+                    return null;
+                }
+                List<DataStreamingEvent<Proposition>> batch
+                        = this.queue.take();
+                if (batch == this.poisonPill || this.done) {
+                    this.done = true;
+                    return null;
+                }
+                taken = true;
+                return new SequencedBatch(this.nextSequenceNumber++, batch);
+            } finally {
+                this.lock.unlock();
+            }
+        } finally {
+            if (!taken) {
+                this.inFlight.release();
+            }
+        }
+    }
+
+    /**
+     * Called by the query results handler thread each time it is done with a
+     * batch, whether or not the processing of its keys succeeded.
+     */
+    void batchHandled() {
+        this.inFlight.release();
+    }
+
+    /**
+     * Makes all subsequent calls to {@link #take() } return
+     * <code>null</code>, including a call that is currently waiting for the
+     * queue or for a batch to be handled. Called when a do process thread
+     * fails so that its siblings do not wait forever for data from a retrieve
+     * data thread that has stopped, or for a batch that will never be
+     * handled.
+     */
+    void stop() {
+        this.done = true;
+        this.queue.clear();
+        this.queue.offer(this.poisonPill);
+        this.inFlight.release(this.maxInFlight);
+    }
+
+    static final class SequencedBatch {
+
+        private final long sequenceNumber;
+        private final List<DataStreamingEvent<Proposition>> events;
+
+        private SequencedBatch(long sequenceNumber,
+                List<DataStreamingEvent<Proposition>> events) {
+            this.sequenceNumber = sequenceNumber;
+            this.events = events;
+        }
+
+        long getSequenceNumber() {
+            return sequenceNumber;
+        }
+
+        List<DataStreamingEvent<Proposition>> getEvents() {
+            return events;
+        }
+
+    }
+}
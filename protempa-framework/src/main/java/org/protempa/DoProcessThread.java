@@ -25,7 +25,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.protempa.proposition.Proposition;
@@ -38,8 +37,9 @@ import org.protempa.query.Query;
  */
 abstract class DoProcessThread<E extends ExecutionStrategy> extends AbstractThread {
 
-    private final BlockingQueue<QueueObject> hqrQueue;
-    private final QueueObject hqrPoisonPill;
+    private final MemoryBoundedQueue<List<QueueObject>> hqrQueue;
+    private final List<QueueObject> hqrPoisonPill;
+    private List<QueueObject> pendingResults;
     private final Thread producer;
     private E executionStrategy;
     private final List<QueryException> exceptions;
@@ -49,8 +49,8 @@ abstract class DoProcessThread<E extends ExecutionStrategy> extends AbstractThre
     private final AlgorithmSource algorithmSource;
 
     DoProcessThread(
-            BlockingQueue<QueueObject> hqrQueue,
-            QueueObject hqrPoisonPill, Query query,
+            MemoryBoundedQueue<List<QueueObject>> hqrQueue,
+            List<QueueObject> hqrPoisonPill, Query query,
             Thread producer,
             KnowledgeSource knowledgeSource,
             PropositionDefinitionCache propositionDefinitionCache,
@@ -60,6 +60,7 @@ abstract class DoProcessThread<E extends ExecutionStrategy> extends AbstractThre
         this.hqrQueue = hqrQueue;
         this.producer = producer;
         this.hqrPoisonPill = hqrPoisonPill;
+        this.pendingResults = new ArrayList<>();
         this.exceptions = new ArrayList<>();
         this.knowledgeSource = knowledgeSource;
         this.propositionDefinitionCache = propositionDefinitionCache;
@@ -94,8 +95,17 @@ abstract class DoProcessThread<E extends ExecutionStrategy> extends AbstractThre
         return algorithmSource;
     }
 
-    final void doProcessData(String keyId, Iterator<Proposition> dataItr, int sizeHint, Query query) throws InterruptedException {
+    /**
+     * Processes one key's data and adds the results to the batch of results
+     * that the next call to {@link #flushResults() } puts on the query
+     * results handler queue.
+     *
+     * @param sequenceNumber the sequence number of the batch that the key is
+     * in.
+     */
+    final void doProcessData(long sequenceNumber, String keyId, Iterator<Proposition> dataItr, int sizeHint, Query query) {
         Iterator<Proposition> resultsItr;
+        boolean handedOff = false;
         try {
             if (this.executionStrategy != null) {
                 resultsItr = this.executionStrategy.execute(keyId, dataItr);
@@ -117,18 +127,57 @@ abstract class DoProcessThread<E extends ExecutionStrategy> extends AbstractThre
                 log(Level.FINEST, "Backward derivations: {0}", backwardDerivations);
                 log(Level.FINEST, "References: {0}", refs);
             }
-            this.hqrQueue.put(new QueueObject(keyId, filteredPropositions,
-                    forwardDerivations, backwardDerivations, refs));
-            log(Level.FINER, "Results put on query result handler queue");
+            this.pendingResults.add(new QueueObject(sequenceNumber, keyId,
+                    filteredPropositions, forwardDerivations,
+                    backwardDerivations, refs));
+            handedOff = true;
         } catch (ExecutionStrategyExecutionException ex) {
             this.exceptions.add(new QueryException(query.getName(), ex));
         } finally {
             this.derivationsBuilder.reset();
         }
+        if (!handedOff) {
+            this.pendingResults.add(new QueueObject(sequenceNumber, keyId));
+        }
+    }
+
+    /**
+     * Puts the results of the keys that have been processed since the last
+     * call on the query results handler queue as one batch, waiting for space
+     * if necessary. Does nothing if no keys have been processed.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    final void flushResults() throws InterruptedException {
+        if (!this.pendingResults.isEmpty()) {
+            this.hqrQueue.put(this.pendingResults);
+            this.pendingResults = new ArrayList<>();
+            log(Level.FINER, "Results put on query result handler queue");
+        }
+    }
+
+    /**
+     * Returns the number of keys that have been processed since the last call
+     * to {@link #flushResults() }.
+     *
+     * @return a number of keys.
+     */
+    final int getPendingResultCount() {
+        return this.pendingResults.size();
     }
 
     abstract void doProcessDataLoop() throws InterruptedException;
 
+    /**
+     * Called when this thread fails with a runtime exception or error, after
+     * the producer thread has been interrupted. Subclasses that share their
+     * input with other do process threads should override this method to make
+     * those threads stop waiting for more input. This implementation does
+     * nothing.
+     */
+    void stopSiblings() {
+    }
+
     /**
      * Called by the constructor to setup the execution strategy.
      *
@@ -190,6 +239,7 @@ abstract class DoProcessThread<E extends ExecutionStrategy> extends AbstractThre
         if (producer != null) {
             producer.interrupt();
         }
+        stopSiblings();
         try {
             swallowHQRPoisonPill();
         } catch (InterruptedException ignore) {
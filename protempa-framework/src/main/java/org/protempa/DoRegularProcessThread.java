@@ -21,7 +21,6 @@ package org.protempa;
  */
 
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.protempa.proposition.Proposition;
@@ -35,36 +34,42 @@ public class DoRegularProcessThread extends DoProcessThread<ExecutionStrategy> {
     
     private static final Logger LOGGER = Logger.getLogger(DoRegularProcessThread.class.getName());
     
-    private final BlockingQueue<DataStreamingEvent<Proposition>> doProcessQueue;
-    private final DataStreamingEvent<Proposition> doProcessPoisonPill;
+    private final DoProcessQueueReader doProcessQueueReader;
 
-    DoRegularProcessThread(BlockingQueue<DataStreamingEvent<Proposition>> doProcessQueue, 
-            BlockingQueue<QueueObject> hqrQueue, 
-            DataStreamingEvent<Proposition> doProcessPoisonPill, 
-            QueueObject hqrPoisonPill, Query query, Thread producer, 
+    DoRegularProcessThread(DoProcessQueueReader doProcessQueueReader, 
+            MemoryBoundedQueue<List<QueueObject>> hqrQueue, 
+            List<QueueObject> hqrPoisonPill, Query query, Thread producer, 
             AlgorithmSource algorithmSource, KnowledgeSource knowledgeSource, 
             PropositionDefinitionCache propositionDefinitionCache) throws QueryException {
         super(hqrQueue, hqrPoisonPill, query, producer, 
                 knowledgeSource, propositionDefinitionCache, algorithmSource, LOGGER);
-        this.doProcessQueue = doProcessQueue;
-        this.doProcessPoisonPill = doProcessPoisonPill;
+        this.doProcessQueueReader = doProcessQueueReader;
     }
     
     @Override
     protected void doProcessDataLoop() throws InterruptedException {
         int count = 0;
-        DataStreamingEvent<Proposition> dse;
-        while (!isInterrupted() && ((dse = doProcessQueue.take()) != doProcessPoisonPill)) {
-            try {
-                List<Proposition> data = dse.getData();
-                doProcessData(dse.getKeyId(), data.iterator(), data.size(), getQuery());
-                count++;
-            } finally {
-                closeWorkingMemory();
+        DoProcessQueueReader.SequencedBatch sb;
+        while (!isInterrupted() && ((sb = doProcessQueueReader.take()) != null)) {
+            for (DataStreamingEvent<Proposition> dse : sb.getEvents()) {
+                try {
+                    List<Proposition> data = dse.getData();
+                    doProcessData(sb.getSequenceNumber(), dse.getKeyId(), 
+                            data.iterator(), data.size(), getQuery());
+                    count++;
+                } finally {
+                    closeWorkingMemory();
+                }
             }
+            flushResults();
         }
         log(Level.INFO, "Processed {0} keys", count);
     }
+
+    @Override
+    void stopSiblings() {
+        this.doProcessQueueReader.stop();
+    }
     
     @Override
     ExecutionStrategy selectExecutionStrategy() {
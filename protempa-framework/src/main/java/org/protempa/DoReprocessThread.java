@@ -20,7 +20,7 @@ package org.protempa;
  * #L%
  */
 import java.util.Iterator;
-import java.util.concurrent.BlockingQueue;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.protempa.query.Query;
@@ -33,29 +33,39 @@ public class DoReprocessThread extends DoProcessThread<StatefulExecutionStrategy
 
     private static final Logger LOGGER = Logger.getLogger(DoReprocessThread.class.getName());
 
+    private final int batchSize;
+
     DoReprocessThread(
-            BlockingQueue<QueueObject> hqrQueue,
-            QueueObject hqrPoisonPill, Query query,
+            MemoryBoundedQueue<List<QueueObject>> hqrQueue,
+            List<QueueObject> hqrPoisonPill, int batchSize, Query query,
             AlgorithmSource algorithmSource, KnowledgeSource knowledgeSource,
             PropositionDefinitionCache propositionDefinitionCache) throws QueryException {
         super(hqrQueue, hqrPoisonPill, query, null,
                 knowledgeSource, propositionDefinitionCache, algorithmSource, LOGGER);
+        assert batchSize > 0 : "batchSize must be positive";
+        this.batchSize = batchSize;
     }
 
     @Override
     protected void doProcessDataLoop() throws InterruptedException {
         int count = 0;
+        long batchNumber = 0;
         StatefulExecutionStrategy executionStrategy = getExecutionStrategy();
         Iterator<String> iterator = executionStrategy.getDataStore().keySet().iterator();
         while (!isInterrupted() && iterator.hasNext()) {
             String keyId = iterator.next();
             try {
-                doProcessData(keyId, null, -1, getQuery());
+                doProcessData(batchNumber, keyId, null, -1, getQuery());
                 count++;
             } finally {
                 closeWorkingMemory();
             }
+            if (getPendingResultCount() >= this.batchSize) {
+                flushResults();
+                batchNumber++;
+            }
         }
+        flushResults();
         log(Level.INFO, "Processed {0} keys", count);
     }
 
@@ -20,12 +20,11 @@ package org.protempa;
  * #L%
  */
 import java.text.MessageFormat;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang3.StringUtils;
@@ -47,6 +46,46 @@ import org.protempa.query.QueryMode;
 final class Executor implements AutoCloseable {
 
     private static final Logger LOGGER = Logger.getLogger(Executor.class.getName());
+    
+    /**
+     * System property for the number of threads that process keys in 
+     * parallel. Each thread has its own rule base and working memory. The 
+     * default is 1. Queries with a database path (stateful processing) 
+     * always use one thread.
+     */
+    static final String PROCESS_THREAD_COUNT_PROPERTY = "protempa.executor.processThreadCount";
+    
+    /**
+     * System property for the estimated size in bytes of the data that may
+     * wait on each of the queues between the threads that retrieve data,
+     * process it and pass results to the query results handler. The default
+     * is one eighth of the maximum heap size.
+     */
+    static final String QUEUE_MEMORY_PROPERTY = "protempa.executor.queueMemory";
+
+    /**
+     * System property for the maximum number of keys that are passed from one
+     * thread to the next at a time. The default is 100.
+     */
+    static final String BATCH_SIZE_PROPERTY = "protempa.executor.batchSize";
+
+    /**
+     * System property for the estimated size in bytes at which a batch of
+     * keys is passed to the next thread even if it has fewer keys than the
+     * batch size. The default is 1 MiB.
+     */
+    static final String BATCH_MEMORY_PROPERTY = "protempa.executor.batchMemory";
+
+    /**
+     * A rough estimate of the memory used by a proposition, including its
+     * properties, interval and unique id.
+     */
+    static final long ESTIMATED_PROPOSITION_BYTES = 512L;
+
+    private static final long ESTIMATED_KEY_BYTES = 128L;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long DEFAULT_BATCH_MEMORY = 1024L * 1024L;
+    private static final int QUEUE_CAPACITY = 1000;
     private final Set<String> propIds;
     private final Filter filters;
     private final PropositionDefinition[] propDefs;
@@ -58,6 +97,8 @@ final class Executor implements AutoCloseable {
     private QueryResultsHandler resultsHandler;
     private final MessageFormat logMessageFormat;
     private HandleQueryResultThread handleQueryResultThread;
+    private MemoryBoundedQueue<List<DataStreamingEvent<Proposition>>> doProcessQueue;
+    private MemoryBoundedQueue<List<QueueObject>> hqrQueue;
     private boolean canceled;
     private QueryException exception;
 
@@ -108,46 +149,75 @@ final class Executor implements AutoCloseable {
     void execute() throws QueryException {
         try {
             RetrieveDataThread retrieveDataThread;
-            DoProcessThread doProcessThread;
+            List<DoProcessThread> doProcessThreads = new ArrayList<>();
             synchronized (this) {
                 if (this.canceled) {
                     return;
                 }
                 log(Level.INFO, "Processing data");
-                BlockingQueue<DataStreamingEvent<Proposition>> doProcessQueue
-                        = new ArrayBlockingQueue<>(1000);
-                QueueObject hqrPoisonPill = new QueueObject();
-                BlockingQueue<QueueObject> hqrQueue = new ArrayBlockingQueue<>(1000);
+                long queueMemory = getQueueMemory();
+                int batchSize = getBatchSize();
+                long batchMemory = getBatchMemory();
+                List<QueueObject> hqrPoisonPill = new ArrayList<>(0);
+                this.hqrQueue = new MemoryBoundedQueue<>(QUEUE_CAPACITY,
+                        queueMemory, Executor::estimateResultBytes);
+                DoProcessQueueReader doProcessQueueReader;
                 QueryMode queryMode = this.query.getQueryMode();
                 if (Arrays.contains(QueryMode.etlModes(), queryMode)) {
-                    DataStreamingEvent doProcessPoisonPill
-                            = new DataStreamingEvent("poison", Collections.emptyList());
-                    retrieveDataThread = new RetrieveDataThread(doProcessQueue,
-                            doProcessPoisonPill, this.query,
+                    this.doProcessQueue = new MemoryBoundedQueue<>(
+                            QUEUE_CAPACITY, queueMemory,
+                            Executor::estimateDataBytes);
+                    List<DataStreamingEvent<Proposition>> doProcessPoisonPill
+                            = new ArrayList<>(0);
+                    retrieveDataThread = new RetrieveDataThread(
+                            this.doProcessQueue, doProcessPoisonPill,
+                            batchSize, batchMemory, this.query,
                             this.abstractionFinder.getDataSource(),
                             this.propositionDefinitionCache,
                             this.filters, this.resultsHandler);
-                    doProcessThread = new DoRegularProcessThread(doProcessQueue, hqrQueue,
-                            doProcessPoisonPill, hqrPoisonPill, this.query,
-                            retrieveDataThread, this.abstractionFinder.getAlgorithmSource(),
-                            this.abstractionFinder.getKnowledgeSource(),
-                            this.propositionDefinitionCache);
+                    int processThreadCount = getProcessThreadCount();
+                    /*
+                     * Batches that are being processed or are waiting for a
+                     * slow batch ahead of them are not on either queue, so 
+                     * bound their number by the queue memory too.
+                     */
+                    int maxInFlight = (int) Math.min(QUEUE_CAPACITY,
+                            Math.max(1L, queueMemory / batchMemory));
+                    doProcessQueueReader = new DoProcessQueueReader(
+                            this.doProcessQueue, doProcessPoisonPill,
+                            Math.max(maxInFlight, processThreadCount));
+                    for (int i = 0; i < processThreadCount; i++) {
+                        DoProcessThread doProcessThread = new DoRegularProcessThread(
+                                doProcessQueueReader, this.hqrQueue,
+                                hqrPoisonPill, this.query,
+                                retrieveDataThread, this.abstractionFinder.getAlgorithmSource(),
+                                this.abstractionFinder.getKnowledgeSource(),
+                                this.propositionDefinitionCache);
+                        if (processThreadCount > 1) {
+                            doProcessThread.setName(doProcessThread.getName() + "-" + i);
+                        }
+                        doProcessThreads.add(doProcessThread);
+                    }
                 } else {
                     retrieveDataThread = null;
-                    doProcessThread = new DoReprocessThread(hqrQueue,
-                            hqrPoisonPill, this.query,
+                    doProcessQueueReader = null;
+                    doProcessThreads.add(new DoReprocessThread(this.hqrQueue,
+                            hqrPoisonPill, batchSize, this.query,
                             this.abstractionFinder.getAlgorithmSource(),
                             this.abstractionFinder.getKnowledgeSource(),
-                            this.propositionDefinitionCache);
+                            this.propositionDefinitionCache));
 
                 }
                 this.handleQueryResultThread
-                        = new HandleQueryResultThread(hqrQueue, hqrPoisonPill,
-                                doProcessThread, this.query, this.resultsHandler, this.propositionDefinitionCache);
+                        = new HandleQueryResultThread(this.hqrQueue, hqrPoisonPill,
+                                doProcessThreads, doProcessQueueReader, this.query,
+                                this.resultsHandler, this.propositionDefinitionCache);
                 if (retrieveDataThread != null) {
                     retrieveDataThread.start();
                 }
-                doProcessThread.start();
+                for (DoProcessThread doProcessThread : doProcessThreads) {
+                    doProcessThread.start();
+                }
                 this.handleQueryResultThread.start();
             }
 
@@ -168,13 +238,15 @@ final class Executor implements AutoCloseable {
                 }
             }
             try {
-                doProcessThread.join();
-                for (Iterator<QueryException> itr = doProcessThread.getExceptions().iterator(); itr.hasNext();) {
-                    QueryException e = itr.next();
-                    if (this.exception == null) {
-                        this.exception = e;
-                    } else {
-                        this.exception.addSuppressed(e);
+                for (DoProcessThread doProcessThread : doProcessThreads) {
+                    doProcessThread.join();
+                    for (Iterator<QueryException> itr = doProcessThread.getExceptions().iterator(); itr.hasNext();) {
+                        QueryException e = itr.next();
+                        if (this.exception == null) {
+                            this.exception = e;
+                        } else {
+                            this.exception.addSuppressed(e);
+                        }
                     }
                 }
                 log(Level.INFO, "Done processing data");
@@ -194,6 +266,7 @@ final class Executor implements AutoCloseable {
             } catch (InterruptedException ex) {
                 log(Level.FINER, "Protempa consumer thread join interrupted", ex);
             }
+            logQueueMetrics();
 
             if (exception != null) {
                 throw exception;
@@ -236,6 +309,124 @@ final class Executor implements AutoCloseable {
         }
     }
 
+    private int getProcessThreadCount() {
+        int processThreadCount = Integer.getInteger(PROCESS_THREAD_COUNT_PROPERTY, 1);
+        if (processThreadCount < 1) {
+            log(Level.WARNING, "Invalid value {0} for " + PROCESS_THREAD_COUNT_PROPERTY + "; using 1", processThreadCount);
+            processThreadCount = 1;
+        } else if (processThreadCount > 1 && this.query.getDatabasePath() != null) {
+            log(Level.INFO, "Stateful processing uses one process thread; ignoring " + PROCESS_THREAD_COUNT_PROPERTY);
+            processThreadCount = 1;
+        }
+        log(Level.FINE, "Using {0} process thread(s)", processThreadCount);
+        return processThreadCount;
+    }
+
+    /**
+     * Returns the occupancy statistics of the queue between the retrieve data
+     * thread and the do process threads.
+     *
+     * @return the queue, or <code>null</code> if the query has not been
+     * executed or does not retrieve data.
+     */
+    synchronized MemoryBoundedQueue<?> getDoProcessQueue() {
+        return this.doProcessQueue;
+    }
+
+    /**
+     * Returns the occupancy statistics of the queue between the do process
+     * threads and the query results handler thread.
+     *
+     * @return the queue, or <code>null</code> if the query has not been
+     * executed.
+     */
+    synchronized MemoryBoundedQueue<?> getQueryResultsHandlerQueue() {
+        return this.hqrQueue;
+    }
+
+    /**
+     * Estimates the memory used by a key's propositions.
+     *
+     * @param propositionCount the number of propositions.
+     * @return a number of bytes.
+     */
+    static long estimateBytes(int propositionCount) {
+        return ESTIMATED_KEY_BYTES
+                + propositionCount * ESTIMATED_PROPOSITION_BYTES;
+    }
+
+    private static long estimateDataBytes(
+            List<DataStreamingEvent<Proposition>> batch) {
+        long result = 0L;
+        for (DataStreamingEvent<Proposition> dse : batch) {
+            result += estimateBytes(dse.getData().size());
+        }
+        return result;
+    }
+
+    private static long estimateResultBytes(List<QueueObject> batch) {
+        long result = 0L;
+        for (QueueObject qo : batch) {
+            if (qo.propositions != null) {
+                /*
+                 * Derived propositions are in the list too, so the 
+                 * derivations and references only add map entries.
+                 */
+                result += estimateBytes(qo.propositions.size())
+                        + 32L * (qo.refs.size() 
+                        + qo.forwardDerivations.size()
+                        + qo.backwardDerivations.size());
+            } else {
+                result += ESTIMATED_KEY_BYTES;
+            }
+        }
+        return result;
+    }
+
+    private void logQueueMetrics() {
+        if (isLoggable(Level.FINE)) {
+            MemoryBoundedQueue<?> dpq = getDoProcessQueue();
+            if (dpq != null) {
+                log(Level.FINE, "Do process queue: {0}", dpq);
+            }
+            MemoryBoundedQueue<?> hqrq = getQueryResultsHandlerQueue();
+            if (hqrq != null) {
+                log(Level.FINE, "Query results handler queue: {0}", hqrq);
+            }
+        }
+    }
+
+    private long getQueueMemory() {
+        long defaultQueueMemory = Runtime.getRuntime().maxMemory() / 8;
+        long queueMemory = Long.getLong(QUEUE_MEMORY_PROPERTY, defaultQueueMemory);
+        if (queueMemory < 1) {
+            log(Level.WARNING, "Invalid value {0} for " + QUEUE_MEMORY_PROPERTY + "; using " + defaultQueueMemory, queueMemory);
+            queueMemory = defaultQueueMemory;
+        }
+        log(Level.FINE, "Using queue memory of {0} bytes", queueMemory);
+        return queueMemory;
+    }
+
+    private int getBatchSize() {
+        int batchSize = Integer.getInteger(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE);
+        if (batchSize < 1) {
+            log(Level.WARNING, "Invalid value {0} for " + BATCH_SIZE_PROPERTY + "; using " + DEFAULT_BATCH_SIZE, batchSize);
+            batchSize = DEFAULT_BATCH_SIZE;
+        }
+        log(Level.FINE, "Using batch size of {0} keys", batchSize);
+        return batchSize;
+    }
+
+    private long getBatchMemory() {
+        long batchMemory = Long.getLong(BATCH_MEMORY_PROPERTY, DEFAULT_BATCH_MEMORY);
+        if (batchMemory < 1) {
+            log(Level.WARNING, "Invalid value {0} for " + BATCH_MEMORY_PROPERTY + "; using " + DEFAULT_BATCH_MEMORY, batchMemory);
+            batchMemory = DEFAULT_BATCH_MEMORY;
+        }
+        log(Level.FINE, "Using batch memory of {0} bytes", batchMemory);
+        return batchMemory;
+    }
+
     private void extractPropositionDefinitionCache() throws KnowledgeSourceReadException {
         this.propositionDefinitionCache = new PropositionDefinitionCache(this.ks.collectPropDefDescendantsUsingAllNarrower(false, this.propIds.toArray(new String[this.propIds.size()])));
 
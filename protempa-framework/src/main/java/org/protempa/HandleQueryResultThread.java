@@ -20,8 +20,9 @@ package org.protempa;
  * #L%
  */
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.protempa.dest.QueryResultsHandler;
@@ -37,24 +38,44 @@ class HandleQueryResultThread extends AbstractThread {
 
     private static final Logger LOGGER = Logger.getLogger(HandleQueryResultThread.class.getName());
 
-    private final BlockingQueue<QueueObject> queue;
-    private final Thread producerThread;
-    private final QueueObject poisonPill;
+    private final MemoryBoundedQueue<List<QueueObject>> queue;
+    private final List<? extends Thread> producerThreads;
+    private final List<QueueObject> poisonPill;
     private final List<QueryException> exceptions;
     private final QueryResultsHandler queryResultsHandler;
     private final PropositionDefinitionCache cache;
+    private final DoProcessQueueReader doProcessQueueReader;
 
-    HandleQueryResultThread(BlockingQueue<QueueObject> queue,
-            QueueObject poisonPill, Thread producerThread, Query query,
+    /**
+     * Creates a thread for passing processed data to a query results handler.
+     * 
+     * @param queue the queue of processed data. Each producer thread puts its
+     * results on the queue in numbered batches of one or more keys.
+     * @param poisonPill the batch that each producer thread puts on the queue
+     * when it is done.
+     * @param producerThreads the threads that put processed data on the 
+     * queue.
+     * @param doProcessQueueReader the reader that the producer threads use to
+     * get their input, if any. It is notified each time a batch is handled.
+     * @param query the query.
+     * @param queryResultsHandler the query results handler.
+     * @param cache the proposition definitions that were queried.
+     */
+    HandleQueryResultThread(MemoryBoundedQueue<List<QueueObject>> queue,
+            List<QueueObject> poisonPill, List<? extends Thread> producerThreads, 
+            DoProcessQueueReader doProcessQueueReader, Query query,
             QueryResultsHandler queryResultsHandler,
             PropositionDefinitionCache cache) {
         super(query, LOGGER, "protempa.executor.HandleQueryResultThread");
+        assert producerThreads != null && !producerThreads.isEmpty() : 
+                "producerThreads cannot be null or empty";
         this.queue = queue;
-        this.producerThread = producerThread;
+        this.producerThreads = producerThreads;
         this.poisonPill = poisonPill;
         this.exceptions = new ArrayList<>();
         this.queryResultsHandler = queryResultsHandler;
         this.cache = cache;
+        this.doProcessQueueReader = doProcessQueueReader;
     }
 
     public List<QueryException> getExceptions() {
@@ -65,42 +86,43 @@ class HandleQueryResultThread extends AbstractThread {
     public void run() {
         log(Level.FINER, "Start handle query results thread");
         Query query = getQuery();
-        QueueObject qo;
+        List<QueueObject> batch;
         boolean closed = false;
         try {
             this.queryResultsHandler.start(this.cache);
             log(Level.FINE, "Query results handler started");
+            boolean keyOrderSensitive = 
+                    this.queryResultsHandler.isKeyOrderSensitive();
+            Map<Long, List<QueueObject>> outOfOrder = 
+                    keyOrderSensitive ? new HashMap<>() : null;
+            long nextSequenceNumber = 0;
+            int producersRemaining = this.producerThreads.size();
             log(Level.FINE, "Query results handler waiting for results...");
-            while ((qo = queue.take()) != poisonPill) {
-                log(Level.FINER, "Handling some results");
-                try {
-                    this.queryResultsHandler.handleQueryResult(qo.keyId,
-                            qo.propositions, qo.forwardDerivations,
-                            qo.backwardDerivations, qo.refs);
-                } catch (QueryResultsHandlerProcessingException ex) {
-                    log(Level.FINER, "Handle query results threw QueryResultsHandlerProcessingException", ex);
-                    exceptions.add(new QueryException(query.getName(), ex));
-                    producerThread.interrupt();
-                    break;
-                } catch (Error | RuntimeException t) {
-                    log(Level.FINER, "Handle query results threw exception", t);
-                    exceptions.add(new QueryException(query.getName(),
-                            new QueryResultsHandlerProcessingException(t)));
-                    producerThread.interrupt();
-                    break;
+            boolean failed = false;
+            while (!failed && producersRemaining > 0) {
+                batch = queue.take();
+                if (batch == poisonPill) {
+                    producersRemaining--;
+                } else if (keyOrderSensitive) {
+                    outOfOrder.put(batch.get(0).sequenceNumber, batch);
+                    while (!failed && (batch = outOfOrder.remove(nextSequenceNumber)) != null) {
+                        nextSequenceNumber++;
+                        failed = !handleQueryResults(batch);
+                    }
+                } else {
+                    failed = !handleQueryResults(batch);
                 }
-                log(Level.FINER, "Results passed to query result handler");
             }
             this.queryResultsHandler.finish();
             this.queryResultsHandler.close();
             closed = true;
         } catch (InterruptedException ex) {
             log(Level.FINER, "Handle query results thread interrupted", ex);
-            producerThread.interrupt();
+            interruptProducers();
         } catch (QueryResultsHandlerProcessingException ex) {
             log(Level.FINER, "Query results handler threw exception", ex);
             exceptions.add(new QueryException(query.getName(), ex));
-            producerThread.interrupt();
+            interruptProducers();
         } catch (QueryResultsHandlerCloseException ex) {
             log(Level.FINER, "Query results handler close threw exception", ex);
             exceptions.add(new QueryException(query.getName(), ex));
@@ -117,4 +139,69 @@ class HandleQueryResultThread extends AbstractThread {
         log(Level.FINER, "End handle query results thread");
     }
 
+    /**
+     * Passes a batch of processed data to the query results handler, one key
+     * at a time.
+     * 
+     * @param batch the processed data.
+     * @return <code>true</code> if successful, <code>false</code> if the 
+     * query results handler threw an exception, in which case the producer 
+     * threads have been interrupted.
+     */
+    private boolean handleQueryResults(List<QueueObject> batch) {
+        try {
+            for (QueueObject qo : batch) {
+                if (!handleQueryResult(qo)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            if (this.doProcessQueueReader != null) {
+                this.doProcessQueueReader.batchHandled();
+            }
+        }
+    }
+
+    /**
+     * Passes one key's processed data to the query results handler.
+     * 
+     * @param qo the processed data.
+     * @return <code>true</code> if successful, <code>false</code> if the 
+     * query results handler threw an exception, in which case the producer 
+     * threads have been interrupted.
+     */
+    private boolean handleQueryResult(QueueObject qo) {
+        Query query = getQuery();
+        try {
+            if (qo.skipped) {
+                log(Level.FINER, "Skipping key {0} that failed processing", qo.keyId);
+                return true;
+            }
+            log(Level.FINER, "Handling some results");
+            this.queryResultsHandler.handleQueryResult(qo.keyId,
+                    qo.propositions, qo.forwardDerivations,
+                    qo.backwardDerivations, qo.refs);
+        } catch (QueryResultsHandlerProcessingException ex) {
+            log(Level.FINER, "Handle query results threw QueryResultsHandlerProcessingException", ex);
+            exceptions.add(new QueryException(query.getName(), ex));
+            interruptProducers();
+            return false;
+        } catch (Error | RuntimeException t) {
+            log(Level.FINER, "Handle query results threw exception", t);
+            exceptions.add(new QueryException(query.getName(),
+                    new QueryResultsHandlerProcessingException(t)));
+            interruptProducers();
+            return false;
+        }
+        log(Level.FINER, "Results passed to query result handler");
+        return true;
+    }
+
+    private void interruptProducers() {
+        for (Thread producerThread : this.producerThreads) {
+            producerThread.interrupt();
+        }
+    }
+
 }
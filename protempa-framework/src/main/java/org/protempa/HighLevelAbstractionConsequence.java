@@ -27,7 +27,6 @@ import java.util.logging.Logger;
 import org.drools.WorkingMemory;
 import org.drools.spi.Consequence;
 import org.drools.spi.KnowledgeHelper;
-import org.drools.spi.Tuple;
 import org.protempa.proposition.AbstractParameter;
 import org.protempa.proposition.Proposition;
 import org.protempa.proposition.ProviderBasedUniqueIdFactory;
@@ -37,6 +36,9 @@ import org.protempa.proposition.TemporalProposition;
 import org.protempa.proposition.UniqueIdFactory;
 
 /**
+ * Asserts the instances of a high level abstraction definition that it finds
+ * among the propositions collected by its rule.
+ *
  * @author Andrew Post
  */
 class HighLevelAbstractionConsequence implements Consequence {
@@ -44,69 +46,87 @@ class HighLevelAbstractionConsequence implements Consequence {
     private static final long serialVersionUID = -833609244124008166L;
     private static final Logger LOGGER = Logger.getLogger(HighLevelAbstractionConsequence.class.getName());
     private final HighLevelAbstractionDefinition cad;
-    private final int columns;
-    private final ExtendedPropositionDefinition[] epds;
+    private final HighLevelAbstractionJoin join;
+    private final TemporalExtendedPropositionDefinition[] tepds;
     private final DerivationsBuilder derivationsBuilder;
 
     /**
      *
      * @param def a {@link HighLevelAbstractionDefinition}, cannot be
      * <code>null</code>.
-     * @param columns the number of parameters, must be greater than zero.
+     * @param epds the extended proposition definitions of <code>def</code>,
+     * in the order that <code>join</code> returns propositions.
+     * @param join finds instances of <code>def</code>, cannot be
+     * <code>null</code>.
      */
     HighLevelAbstractionConsequence(HighLevelAbstractionDefinition def,
             ExtendedPropositionDefinition[] epds,
+            HighLevelAbstractionJoin join,
             DerivationsBuilder derivationsBuilder) {
         assert def != null : "def cannot be null";
         assert epds != null : "epds cannot be null";
-        int col = epds.length;
-        assert col > 0 : "columns must be > 0, was " + col;
+        assert epds.length > 0 : "epds must be > 0, was " + epds.length;
+        assert join != null : "join cannot be null";
         this.cad = def;
-        this.columns = col;
-        this.epds = epds;
+        this.join = join;
+        List<TemporalExtendedPropositionDefinition> tepdsL
+                = new ArrayList<>();
+        for (ExtendedPropositionDefinition epd : epds) {
+            if (epd instanceof TemporalExtendedPropositionDefinition) {
+                tepdsL.add((TemporalExtendedPropositionDefinition) epd);
+            }
+        }
+        this.tepds = tepdsL.toArray(
+                new TemporalExtendedPropositionDefinition[tepdsL.size()]);
         this.derivationsBuilder = derivationsBuilder;
     }
 
     @Override
     public void evaluate(KnowledgeHelper kh, WorkingMemory wm)
             throws Exception {
-        List<Proposition> ps = parameters(kh.getTuple(), wm);
-        List<TemporalProposition> tps = extractTemporalPropositions(ps);
-        List<TemporalExtendedPropositionDefinition> tepdsL
-                = extractTemporalExtendedPropositionDefinitions();
-        TemporalExtendedPropositionDefinition[] tepds
-                = tepdsL.toArray(
-                        new TemporalExtendedPropositionDefinition[tepdsL.size()]);
-        Segment<TemporalProposition> segment
-                = new Segment<>(
-                        new Sequence<>(cad.getPropositionId(), tps));
+        @SuppressWarnings("unchecked")
+        List<Proposition> ps = (List<Proposition>) kh.get(
+                kh.getDeclaration("result"));
+        List<Proposition[]> instances = this.join.find(ps);
+        HighLevelAbstractionState state
+                = HighLevelAbstractionState.get(wm, cad.getPropositionId());
         TemporalPatternOffset temporalOffset = cad.getTemporalOffset();
-        JBossRulesDerivedLocalUniqueIdValuesProvider provider = new JBossRulesDerivedLocalUniqueIdValuesProvider(wm, cad.getPropositionId());
-        UniqueIdFactory factory = new ProviderBasedUniqueIdFactory(provider);
-        AbstractParameter result
-                = AbstractParameterFactory.getFromAbstraction(cad.getPropositionId(), 
-                        factory.getInstance(),
-                        segment, tps, null, temporalOffset, tepds, null);
-        kh.insertLogical(result);
-        for (Proposition proposition : segment) {
-            this.derivationsBuilder.propositionAsserted(proposition, result);
+        UniqueIdFactory factory = null;
+        for (Proposition[] instance : instances) {
+            List<TemporalProposition> tps = extractTemporalPropositions(instance);
+            AbstractParameter result = state.previousInstance(instance);
+            if (result == null) {
+                if (factory == null) {
+                    factory = new ProviderBasedUniqueIdFactory(
+                            new JBossRulesDerivedLocalUniqueIdValuesProvider(
+                                    wm, cad.getPropositionId()));
+                }
+                Segment<TemporalProposition> segment
+                        = new Segment<>(
+                                new Sequence<>(cad.getPropositionId(), tps));
+                result = AbstractParameterFactory.getFromAbstraction(
+                        cad.getPropositionId(), factory.getInstance(),
+                        segment, tps, null, temporalOffset, this.tepds, null);
+            }
+            kh.insertLogical(result);
+            for (Proposition proposition : tps) {
+                this.derivationsBuilder.propositionAsserted(proposition, result);
+            }
+            state.addInstance(instance, result);
+            LOGGER.log(Level.FINER, "Asserted derived proposition {0}", result);
         }
-        LOGGER.log(Level.FINER, "Asserted derived proposition {0}", result);
-    }
-
-    private List<Proposition> parameters(Tuple arg0,
-            WorkingMemory arg1) {
-        List<Proposition> sequences
-                = new ArrayList<>(columns);
-        for (int i = 0; i < columns; i++) {
-            sequences.add((Proposition) arg1.getObject(arg0.get(i)));
+        /*
+         * The rule engine retracted the instances from the last time that
+         * this rule fired. Those that were not found again are gone.
+         */
+        for (AbstractParameter result : state.finishInstances()) {
+            this.derivationsBuilder.propositionRetracted(result);
         }
-        return sequences;
     }
 
-    private List<TemporalProposition> extractTemporalPropositions(
-            List<Proposition> ps) {
-        List<TemporalProposition> tps = new ArrayList<>();
+    private static List<TemporalProposition> extractTemporalPropositions(
+            Proposition[] ps) {
+        List<TemporalProposition> tps = new ArrayList<>(ps.length);
         for (Proposition prop : ps) {
             if (prop instanceof TemporalProposition) {
                 tps.add((TemporalProposition) prop);
@@ -114,15 +134,4 @@ class HighLevelAbstractionConsequence implements Consequence {
         }
         return tps;
     }
-
-    private List<TemporalExtendedPropositionDefinition> extractTemporalExtendedPropositionDefinitions() {
-        List<TemporalExtendedPropositionDefinition> tepdsL
-                = new ArrayList<>();
-        for (ExtendedPropositionDefinition epd : epds) {
-            if (epd instanceof TemporalExtendedPropositionDefinition) {
-                tepdsL.add((TemporalExtendedPropositionDefinition) epd);
-            }
-        }
-        return tepdsL;
-    }
 }
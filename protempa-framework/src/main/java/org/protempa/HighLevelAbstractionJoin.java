@@ -0,0 +1,464 @@
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2013 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import org.protempa.proposition.Proposition;
+import org.protempa.proposition.TemporalProposition;
+import org.protempa.proposition.interval.Interval;
+import org.protempa.proposition.interval.Relation;
+import org.protempa.proposition.value.Unit;
+
+/**
+ * Finds the instances of a high level abstraction definition among the
+ * propositions that match its extended proposition definitions. Rather than
+ * checking the relations of every combination of propositions, it sorts the
+ * candidates for each temporal extended proposition definition by interval
+ * start, binds the definitions one at a time, and turns each relation's
+ * distance bounds into a range of starts to scan for the next definition.
+ * Candidates in range are then checked with
+ * {@link Relation#hasRelation(org.protempa.proposition.interval.Interval, org.protempa.proposition.interval.Interval) },
+ * so the ranges only need to be conservative.
+ *
+ * @author Andrew Post
+ */
+final class HighLevelAbstractionJoin implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * A relation between an extended proposition definition and another one.
+     */
+    private static final class Link implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private final int other;
+        private final boolean lhs;
+        private final Relation relation;
+
+        /**
+         * @param other the index of the other extended proposition definition.
+         * @param lhs whether the extended proposition definition with this
+         * link is the left-hand side of the relation.
+         * @param relation the relation.
+         */
+        Link(int other, boolean lhs, Relation relation) {
+            this.other = other;
+            this.lhs = lhs;
+            this.relation = relation;
+        }
+
+        boolean hasRelation(Interval interval, Interval otherInterval) {
+            return this.lhs ? this.relation.hasRelation(interval, otherInterval)
+                    : this.relation.hasRelation(otherInterval, interval);
+        }
+    }
+
+    private static final Comparator<Proposition> BY_MINIMUM_START
+            = (Proposition p1, Proposition p2) -> Long.compare(
+                    ((TemporalProposition) p1).getInterval().minimumStart(),
+                    ((TemporalProposition) p2).getInterval().minimumStart());
+
+    private final ExtendedPropositionDefinition[] epds;
+    private final List<Set<String>> subtrees;
+    private final boolean[] temporal;
+    private final Link[][] links;
+
+    /**
+     * Creates a join for a high level abstraction definition.
+     *
+     * @param def the {@link HighLevelAbstractionDefinition}.
+     * @param epds its extended proposition definitions, in the order of the
+     * propositions in the instances that are returned by
+     * {@link #find(java.util.Collection) }.
+     * @param subtrees for each extended proposition definition, the ids of
+     * the propositions that it may match.
+     */
+    HighLevelAbstractionJoin(HighLevelAbstractionDefinition def,
+            ExtendedPropositionDefinition[] epds,
+            List<Set<String>> subtrees) {
+        assert def != null : "def cannot be null";
+        assert epds != null : "epds cannot be null";
+        assert subtrees != null && subtrees.size() == epds.length :
+                "subtrees must have one set per epd";
+        this.epds = epds.clone();
+        this.subtrees = new ArrayList<>(subtrees);
+        this.temporal = new boolean[epds.length];
+        List<List<Link>> linkLists = new ArrayList<>(epds.length);
+        for (int i = 0; i < epds.length; i++) {
+            this.temporal[i]
+                    = epds[i] instanceof TemporalExtendedPropositionDefinition;
+            linkLists.add(new ArrayList<>());
+        }
+        for (List<TemporalExtendedPropositionDefinition> pair
+                : def.getTemporalExtendedPropositionDefinitionPairs()) {
+            int lhs = indexOf(pair.get(0));
+            int rhs = indexOf(pair.get(1));
+            assert lhs >= 0 && rhs >= 0 :
+                    "relation between epds that are not in the definition";
+            Relation relation = def.getRelation(pair);
+            linkLists.get(lhs).add(new Link(rhs, true, relation));
+            if (lhs != rhs) {
+                linkLists.get(rhs).add(new Link(lhs, false, relation));
+            }
+        }
+        this.links = new Link[epds.length][];
+        for (int i = 0; i < epds.length; i++) {
+            List<Link> linkList = linkLists.get(i);
+            this.links[i] = linkList.toArray(new Link[linkList.size()]);
+        }
+    }
+
+    /**
+     * Returns whether a proposition matches any of the extended proposition
+     * definitions.
+     *
+     * @param proposition a {@link Proposition}.
+     * @return <code>true</code> if it matches at least one.
+     * @throws KnowledgeSourceReadException if an error occurred matching the
+     * proposition.
+     */
+    boolean matchesAny(Proposition proposition)
+            throws KnowledgeSourceReadException {
+        for (int i = 0; i < this.epds.length; i++) {
+            if (this.epds[i].getMatches(proposition, this.subtrees.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the instances of the high level abstraction definition.
+     *
+     * @param propositions the candidate {@link Proposition}s.
+     * @return the instances, each an array with one proposition for each
+     * extended proposition definition, in the order of the extended
+     * proposition definitions given to the constructor. An instance never has
+     * the same proposition twice.
+     * @throws KnowledgeSourceReadException if an error occurred matching the
+     * propositions.
+     */
+    List<Proposition[]> find(Collection<?> propositions)
+            throws KnowledgeSourceReadException {
+        int n = this.epds.length;
+        List<List<Proposition>> candidateLists = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            candidateLists.add(new ArrayList<>());
+        }
+        for (Object obj : propositions) {
+            Proposition proposition = (Proposition) obj;
+            for (int i = 0; i < n; i++) {
+                if (this.epds[i].getMatches(proposition,
+                        this.subtrees.get(i))) {
+                    candidateLists.get(i).add(proposition);
+                }
+            }
+        }
+        Index[] indices = new Index[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            List<Proposition> candidates = candidateLists.get(i);
+            if (candidates.isEmpty()) {
+                return Collections.emptyList();
+            }
+            indices[i] = new Index(candidates, this.temporal[i]);
+            order[i] = i;
+        }
+        /*
+         * Bind the definitions with the fewest candidates first, so that the
+         * definitions with many candidates are scanned with the narrowest
+         * ranges.
+         */
+        Arrays.sort(order, (Integer i1, Integer i2)
+                -> Integer.compare(indices[i1].size(), indices[i2].size()));
+        Search search = new Search(indices, order);
+        search.bind(0);
+        return search.instances;
+    }
+
+    private int indexOf(TemporalExtendedPropositionDefinition tepd) {
+        for (int i = 0; i < this.epds.length; i++) {
+            if (this.epds[i].equals(tepd)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The candidates for an extended proposition definition. The candidates
+     * of temporal extended proposition definitions are sorted by minimum
+     * start.
+     */
+    private static final class Index {
+
+        private final Proposition[] propositions;
+        private final long[] starts;
+
+        Index(List<Proposition> candidates, boolean temporal) {
+            this.propositions
+                    = candidates.toArray(new Proposition[candidates.size()]);
+            if (temporal) {
+                Arrays.sort(this.propositions, BY_MINIMUM_START);
+                this.starts = new long[this.propositions.length];
+                for (int i = 0; i < this.starts.length; i++) {
+                    this.starts[i] = ((TemporalProposition) this.propositions[i])
+                            .getInterval().minimumStart();
+                }
+            } else {
+                this.starts = null;
+            }
+        }
+
+        int size() {
+            return this.propositions.length;
+        }
+
+        /**
+         * Returns the index of the first candidate with a minimum start of at
+         * least the given position.
+         */
+        int from(long minStart) {
+            if (this.starts == null || minStart == Long.MIN_VALUE) {
+                return 0;
+            }
+            int low = 0;
+            int high = this.starts.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.starts[mid] < minStart) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Returns whether the candidate at the given index has a minimum start
+         * of at most the given position.
+         */
+        boolean inRange(int i, long maxStart) {
+            return this.starts == null || this.starts[i] <= maxStart;
+        }
+    }
+
+    private final class Search {
+
+        private final Index[] indices;
+        private final Integer[] order;
+        private final Proposition[] instance;
+        private final boolean[] bound;
+        private final List<Proposition[]> instances;
+
+        Search(Index[] indices, Integer[] order) {
+            this.indices = indices;
+            this.order = order;
+            this.instance = new Proposition[indices.length];
+            this.bound = new boolean[indices.length];
+            this.instances = new ArrayList<>();
+        }
+
+        void bind(int k) {
+            if (k == this.order.length) {
+                this.instances.add(this.instance.clone());
+                return;
+            }
+            int i = this.order[k];
+            Index index = this.indices[i];
+            long minStart = Long.MIN_VALUE;
+            long maxStart = Long.MAX_VALUE;
+            for (Link link : links[i]) {
+                if (link.other != i && this.bound[link.other]) {
+                    Interval other = ((TemporalProposition)
+                            this.instance[link.other]).getInterval();
+                    minStart = Math.max(minStart,
+                            minStartBound(link, other));
+                    maxStart = Math.min(maxStart,
+                            maxStartBound(link, other));
+                }
+            }
+            if (minStart > maxStart) {
+                return;
+            }
+            Proposition[] candidates = index.propositions;
+            for (int c = index.from(minStart);
+                    c < candidates.length && index.inRange(c, maxStart);
+                    c++) {
+                Proposition candidate = candidates[c];
+                if (isBound(candidate) || !hasRelations(i, candidate)) {
+                    continue;
+                }
+                this.instance[i] = candidate;
+                this.bound[i] = true;
+                bind(k + 1);
+                this.bound[i] = false;
+                this.instance[i] = null;
+            }
+        }
+
+        private boolean isBound(Proposition candidate) {
+            for (int j = 0; j < this.instance.length; j++) {
+                if (this.bound[j] && this.instance[j].equals(candidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean hasRelations(int i, Proposition candidate) {
+            Link[] candidateLinks = links[i];
+            if (candidateLinks.length == 0) {
+                return true;
+            }
+            Interval interval
+                    = ((TemporalProposition) candidate).getInterval();
+            for (Link link : candidateLinks) {
+                if (link.other == i) {
+                    if (!link.relation.hasRelation(interval, interval)) {
+                        return false;
+                    }
+                } else if (this.bound[link.other]
+                        && !link.hasRelation(interval,
+                                ((TemporalProposition) this.instance[link.other])
+                                        .getInterval())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Computes a lower bound on the minimum start of a candidate from the
+     * relation's distances from the other interval's start or finish to the
+     * candidate's start.
+     */
+    private static long minStartBound(Link link, Interval other) {
+        long result = Long.MIN_VALUE;
+        if (!link.lhs) {
+            Relation r = link.relation;
+            result = Math.max(result, lowerBound(other.minimumStart(),
+                    r.getMinDistanceBetweenStarts(),
+                    r.getMinDistanceBetweenStartsUnits()));
+            result = Math.max(result, lowerBound(other.minimumFinish(),
+                    r.getMinDistanceBetween(),
+                    r.getMinDistanceBetweenUnits()));
+        }
+        return result;
+    }
+
+    /**
+     * Computes an upper bound on the minimum start of a candidate from the
+     * relation's distances between the candidate's start and the other
+     * interval. The candidate's minimum start is at most its maximum start,
+     * so bounds on the maximum start also apply.
+     */
+    private static long maxStartBound(Link link, Interval other) {
+        long result = Long.MAX_VALUE;
+        Relation r = link.relation;
+        if (link.lhs) {
+            Integer d = r.getMinDistanceBetweenStarts();
+            if (d != null) {
+                result = Math.min(result, upperBound(other.minimumStart(),
+                        Long.MIN_VALUE, -(long) d,
+                        r.getMinDistanceBetweenStartsUnits()));
+            }
+            d = r.getMinSpan();
+            if (d != null) {
+                result = Math.min(result, upperBound(other.minimumFinish(),
+                        Long.MIN_VALUE, -(long) d, r.getMinSpanUnits()));
+            }
+        } else {
+            Integer d = r.getMaxDistanceBetweenStarts();
+            if (d != null) {
+                result = Math.min(result, upperBound(other.maximumStart(),
+                        Long.MAX_VALUE, d,
+                        r.getMaxDistanceBetweenStartsUnits()));
+            }
+            d = r.getMaxDistanceBetween();
+            if (d != null) {
+                result = Math.min(result, upperBound(other.maximumFinish(),
+                        Long.MAX_VALUE, d, r.getMaxDistanceBetweenUnits()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a position at or before every position that is at least the
+     * given distance after the given position. With units, the distance is
+     * widened by one unit, because adding calendar units does not always
+     * round trip.
+     */
+    private static long lowerBound(long position, Integer distance,
+            Unit unit) {
+        if (distance == null || position == Long.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        if (unit == null) {
+            return add(position, distance);
+        } else if (distance == Integer.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        } else {
+            return unit.addToPosition(position, distance - 1);
+        }
+    }
+
+    /**
+     * Returns a position at or after every position that is at most the
+     * given distance after the given position, widened by one unit like
+     * {@link #lowerBound(long, java.lang.Integer, org.protempa.proposition.value.Unit) }.
+     *
+     * @param unbounded the value of <code>position</code> when it is
+     * unbounded, in which case there is no bound.
+     */
+    private static long upperBound(long position, long unbounded,
+            long distance, Unit unit) {
+        if (position == unbounded) {
+            return Long.MAX_VALUE;
+        }
+        if (unit == null) {
+            return add(position, distance);
+        } else if (distance >= Integer.MAX_VALUE
+                || distance < Integer.MIN_VALUE) {
+            return Long.MAX_VALUE;
+        } else {
+            return unit.addToPosition(position, (int) distance + 1);
+        }
+    }
+
+    private static long add(long position, long distance) {
+        long result = position + distance;
+        if (((position ^ result) & (distance ^ result)) < 0) {
+            return distance < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return result;
+    }
+}
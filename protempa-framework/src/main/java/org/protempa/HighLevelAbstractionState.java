@@ -0,0 +1,165 @@
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2013 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.drools.WorkingMemory;
+import org.protempa.proposition.AbstractParameter;
+import org.protempa.proposition.Proposition;
+
+/**
+ * The instances that a high-level abstraction definition's rule asserted the
+ * last time it fired in a working memory, by the propositions that each was
+ * found from. When candidates are inserted or retracted, the rule fires
+ * again, and the rule engine retracts every instance that it asserted. The
+ * instances that are found again are asserted again as the same objects,
+ * with the same unique ids, rather than as new ones.
+ *
+ * @author Andrew Post
+ */
+final class HighLevelAbstractionState {
+
+    private Map<Instance, AbstractParameter> instances;
+    private Map<Instance, AbstractParameter> newInstances;
+
+    private HighLevelAbstractionState() {
+        this.instances = new HashMap<>();
+        this.newInstances = new HashMap<>();
+    }
+
+    /**
+     * Gets the state of a high-level abstraction definition in a working
+     * memory, creating it if the definition's rule has not fired yet.
+     *
+     * @param workingMemory a working memory.
+     * @param propId the high-level abstraction definition's id.
+     * @return the state.
+     */
+    @SuppressWarnings("unchecked")
+    static HighLevelAbstractionState get(WorkingMemory workingMemory,
+            String propId) {
+        Map<String, HighLevelAbstractionState> states =
+                (Map<String, HighLevelAbstractionState>) workingMemory.getGlobal(
+                WorkingMemoryGlobals.HIGH_LEVEL_ABSTRACTION_STATES);
+        if (states == null) {
+            states = new HashMap<>();
+            workingMemory.setGlobal(
+                    WorkingMemoryGlobals.HIGH_LEVEL_ABSTRACTION_STATES, states);
+        }
+        HighLevelAbstractionState state = states.get(propId);
+        if (state == null) {
+            state = new HighLevelAbstractionState();
+            states.put(propId, state);
+        }
+        return state;
+    }
+
+    /**
+     * Gets the instance that the rule asserted the last time it fired for
+     * the same propositions.
+     *
+     * @param props the propositions that an instance was found from, in the
+     * order that {@link HighLevelAbstractionJoin} returns them.
+     * @return the instance, or <code>null</code> if there is none.
+     */
+    AbstractParameter previousInstance(Proposition[] props) {
+        return this.instances.get(new Instance(props));
+    }
+
+    /**
+     * Keeps an instance for the next time the rule fires.
+     *
+     * @param props the propositions that the instance was found from, in
+     * the order that {@link HighLevelAbstractionJoin} returns them.
+     * @param instance the instance.
+     */
+    void addInstance(Proposition[] props, AbstractParameter instance) {
+        this.newInstances.put(new Instance(props), instance);
+    }
+
+    /**
+     * Replaces the instances from the last time the rule fired with the ones
+     * kept by {@link #addInstance} since.
+     *
+     * @return the instances from the last time the rule fired that were not
+     * kept again.
+     */
+    List<AbstractParameter> finishInstances() {
+        Map<Instance, AbstractParameter> oldInstances = this.instances;
+        this.instances = this.newInstances;
+        List<AbstractParameter> result = new ArrayList<>();
+        for (Map.Entry<Instance, AbstractParameter> me
+                : oldInstances.entrySet()) {
+            if (this.instances.get(me.getKey()) != me.getValue()) {
+                result.add(me.getValue());
+            }
+        }
+        oldInstances.clear();
+        this.newInstances = oldInstances;
+        return result;
+    }
+
+    /**
+     * The propositions that an instance was found from, compared by
+     * identity.
+     */
+    private static final class Instance {
+
+        private final Proposition[] props;
+        private final int hashCode;
+
+        Instance(Proposition[] props) {
+            this.props = props;
+            int hash = 1;
+            for (Proposition prop : props) {
+                hash = 31 * hash + System.identityHashCode(prop);
+            }
+            this.hashCode = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Instance)) {
+                return false;
+            }
+            Proposition[] otherProps = ((Instance) obj).props;
+            if (this.props.length != otherProps.length) {
+                return false;
+            }
+            for (int i = 0; i < this.props.length; i++) {
+                if (this.props[i] != otherProps[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
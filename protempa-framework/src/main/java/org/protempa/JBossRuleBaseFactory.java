@@ -19,6 +19,9 @@
  */
 package org.protempa;
 
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.drools.RuleBase;
 import org.drools.RuleBaseConfiguration;
 import org.drools.RuleBaseFactory;
@@ -26,35 +29,95 @@ import org.drools.rule.Package;
 import org.drools.rule.Rule;
 
 /**
- * Factory for creating Drools rule execution sets.
+ * Factory for creating Drools rule execution sets. If a
+ * {@link RuleBaseCache} is configured, the rules are read from it when
+ * possible, and are stored in it otherwise.
  * 
  * @author Andrew Post
  */
 class JBossRuleBaseFactory {
 
+    private static final Logger LOGGER = Logger.getLogger(JBossRuleBaseFactory.class.getName());
+
     private final JBossRuleCreator ruleCreator;
+    private final RuleBaseCache ruleBaseCache;
 
     /**
-     * Provides a knowledge source and an algorithm source.
+     * Creates a factory that uses the rule base cache that is configured with
+     * system properties, if any.
      *
-     * @param knowledgeSource
-     *            the <code>KnowledgeSource</code> to use.
-     * @param algorithmSource
-     *            the <code>AlgorithmSource</code> to use.
+     * @param ruleCreator the rule creator. Its rules must not have been
+     * created yet.
      */
     JBossRuleBaseFactory(JBossRuleCreator ruleCreator) {
+        this(ruleCreator, RuleBaseCache.getInstance());
+    }
+
+    /**
+     * Creates a factory.
+     *
+     * @param ruleCreator the rule creator. Its rules must not have been
+     * created yet.
+     * @param ruleBaseCache the rule base cache to use, or <code>null</code>
+     * to always create the rules.
+     */
+    JBossRuleBaseFactory(JBossRuleCreator ruleCreator,
+            RuleBaseCache ruleBaseCache) {
         assert ruleCreator != null : "ruleCreator cannot be null";
         this.ruleCreator = ruleCreator;
+        this.ruleBaseCache = ruleBaseCache;
     }
 
     RuleBase newInstance() throws RuleBaseInstantiationException {
-        return newRuleBase(this.ruleCreator.getRuleBaseConfiguration(), newPackage());
+        String fingerprint = null;
+        if (this.ruleBaseCache != null) {
+            long start = System.currentTimeMillis();
+            fingerprint = this.ruleBaseCache.fingerprint(this.ruleCreator);
+            RuleBaseCache.CachedRules cachedRules = this.ruleBaseCache.get(
+                    fingerprint, this.ruleCreator.getDerivationsBuilder());
+            if (cachedRules != null) {
+                LOGGER.log(Level.FINE, "Read cached rules in {0} ms",
+                        System.currentTimeMillis() - start);
+                return newRuleBase(
+                        newRuleBaseConfiguration(
+                                cachedRules.getConflictResolver()),
+                        newPackage(cachedRules.getRules()));
+            }
+        }
+        try {
+            this.ruleCreator.createRules();
+        } catch (ProtempaException ex) {
+            throw new RuleBaseInstantiationException(
+                    "Could not create rules", ex);
+        }
+        List<Rule> rules = this.ruleCreator.getRules();
+        PROTEMPAConflictResolver conflictResolver
+                = this.ruleCreator.newConflictResolver();
+        if (fingerprint != null) {
+            /*
+             * Adding the rules to a rule base modifies them, so cache them
+             * first.
+             */
+            this.ruleBaseCache.put(fingerprint,
+                    new RuleBaseCache.CachedRules(rules, conflictResolver));
+        }
+        return newRuleBase(newRuleBaseConfiguration(conflictResolver),
+                newPackage(rules));
+    }
+
+    private static RuleBaseConfiguration newRuleBaseConfiguration(
+            PROTEMPAConflictResolver conflictResolver) {
+        RuleBaseConfiguration config = new RuleBaseConfiguration();
+        config.setShadowProxy(false);
+        config.setConflictResolver(conflictResolver);
+        config.setAssertBehaviour(RuleBaseConfiguration.AssertBehaviour.EQUALITY);
+        return config;
     }
     
-    private Package newPackage() {
+    private static Package newPackage(List<Rule> ruleList) {
         org.drools.rule.Package rules =
                 new org.drools.rule.Package(ProtempaUtil.DROOLS_PACKAGE_NAME);
-        for (Rule rule : this.ruleCreator.getRules()) {
+        for (Rule rule : ruleList) {
             rules.addRule(rule);
         }
         return rules;
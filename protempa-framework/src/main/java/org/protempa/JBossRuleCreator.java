@@ -20,20 +20,19 @@
 package org.protempa;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.drools.RuleBaseConfiguration;
 
 import org.drools.WorkingMemory;
 import org.drools.base.ClassObjectType;
 import org.drools.base.SalienceInteger;
 import org.drools.rule.Collect;
 import org.drools.rule.Declaration;
-import org.drools.rule.EvalCondition;
 import org.drools.rule.InvalidRuleException;
 import org.drools.rule.Pattern;
 import org.drools.rule.PredicateConstraint;
@@ -91,16 +90,59 @@ class JBossRuleCreator extends AbstractPropositionDefinitionCheckedVisitor {
     private final Map<Rule, TemporalPropositionDefinition> ruleToAbstractionDefinition;
     private final DerivationsBuilder derivationsBuilder;
     private final PropositionDefinitionCache cache;
+    private final Collection<? extends PropositionDefinition> propDefs;
 
+    /**
+     * Creates a rule creator. Call {@link #createRules() } to translate the
+     * given proposition definitions into rules.
+     *
+     * @param algorithms the algorithms of the low-level abstraction 
+     * definitions.
+     * @param derivationsBuilder the derivations builder for the rules'
+     * consequences to record derived propositions in.
+     * @param cache all of the proposition definitions that the rules may
+     * need. Cannot be <code>null</code>.
+     * @param propDefs the proposition definitions to translate into rules.
+     * Cannot be <code>null</code>.
+     */
     JBossRuleCreator(Map<LowLevelAbstractionDefinition, Algorithm> algorithms,
             DerivationsBuilder derivationsBuilder, 
-            PropositionDefinitionCache cache) {
+            PropositionDefinitionCache cache,
+            Collection<? extends PropositionDefinition> propDefs) {
         assert cache != null : "cache cannot be null";
+        assert propDefs != null : "propDefs cannot be null";
         this.algorithms = algorithms;
         this.rules = new ArrayList<>();
         this.ruleToAbstractionDefinition = new HashMap<>();
         this.derivationsBuilder = derivationsBuilder;
         this.cache = cache;
+        this.propDefs = propDefs;
+    }
+
+    /**
+     * Translates the proposition definitions that were passed into the
+     * constructor into rules.
+     *
+     * @throws ProtempaException if an error occurs.
+     */
+    void createRules() throws ProtempaException {
+        visit(this.propDefs);
+    }
+
+    Map<LowLevelAbstractionDefinition, Algorithm> getAlgorithms() {
+        return this.algorithms;
+    }
+
+    DerivationsBuilder getDerivationsBuilder() {
+        return this.derivationsBuilder;
+    }
+
+    PropositionDefinitionCache getCache() {
+        return this.cache;
+    }
+
+    Collection<? extends PropositionDefinition> getPropositionDefinitions() {
+        return this.propDefs;
     }
 
     /**
@@ -267,18 +309,30 @@ class JBossRuleCreator extends AbstractPropositionDefinitionCheckedVisitor {
                 rule.setSalience(TWO_SALIENCE);
                 ExtendedPropositionDefinition[] epds = epdsC
                         .toArray(new ExtendedPropositionDefinition[epdsC.size()]);
-                for (int i = 0; i < epds.length; i++) {
-                    Pattern p = new Pattern(i, PROP_OT);
-                    GetMatchesPredicateExpression matchesPredicateExpression = new GetMatchesPredicateExpression(epds[i], this.cache);
-                    Constraint c = new PredicateConstraint(
-                            matchesPredicateExpression);
-                    p.addConstraint(c);
-                    rule.addPattern(p);
+                /*
+                 * Collect the candidates for all of the extended proposition
+                 * definitions and find the instances in the consequence,
+                 * rather than have the rule engine join every combination of
+                 * candidates and check each one's relations.
+                 */
+                List<Set<String>> subtrees = new ArrayList<>(epds.length);
+                for (ExtendedPropositionDefinition epd : epds) {
+                    subtrees.add(this.cache.collectPropIdDescendantsUsingInverseIsA(
+                            epd.getPropositionId()));
                 }
-                rule.addPattern(new EvalCondition(
-                        new HighLevelAbstractionCondition(def, epds), null));
+                HighLevelAbstractionJoin join
+                        = new HighLevelAbstractionJoin(def, epds, subtrees);
+                Pattern sourceP = new Pattern(2, 1, PROP_OT, "");
+                sourceP.addConstraint(new PredicateConstraint(
+                        new MatchesAnyPredicateExpression(join)));
+                Pattern resultP = new Pattern(1, 1, ARRAY_LIST_OT, "result");
+                resultP.setSource(new Collect(sourceP, new Pattern(1, 1,
+                        ARRAY_LIST_OT, "result")));
+                resultP.addConstraint(new PredicateConstraint(
+                        new CollectionSizeExpression(epds.length)));
+                rule.addPattern(resultP);
                 rule.setConsequence(new HighLevelAbstractionConsequence(def,
-                        epds, this.derivationsBuilder));
+                        epds, join, this.derivationsBuilder));
                 this.ruleToAbstractionDefinition.put(rule, def);
                 rules.add(rule);
                 ABSTRACTION_COMBINER.toRules(def, rules, this.derivationsBuilder);
@@ -434,19 +488,22 @@ class JBossRuleCreator extends AbstractPropositionDefinitionCheckedVisitor {
         return rulesToReturn;
     }
     
-    RuleBaseConfiguration getRuleBaseConfiguration()
+    /**
+     * Creates a conflict resolver for the rules that were created.
+     *
+     * @return a conflict resolver.
+     * @throws RuleBaseInstantiationException if the abstraction definitions
+     * have a cycle.
+     */
+    PROTEMPAConflictResolver newConflictResolver()
             throws RuleBaseInstantiationException {
-        RuleBaseConfiguration config = new RuleBaseConfiguration();
-        config.setShadowProxy(false);
         try {
-            config.setConflictResolver(new PROTEMPAConflictResolver(
-                    this.cache.getAll(), getRuleToTPDMap()));
+            return new PROTEMPAConflictResolver(
+                    this.cache.getAll(), getRuleToTPDMap());
         } catch (CycleDetectedException ex) {
             throw new RuleBaseInstantiationException(
                     "Problem creating data processing rules", ex);
         }
-        config.setAssertBehaviour(RuleBaseConfiguration.AssertBehaviour.EQUALITY);
-        return config;
     }
     
     /**
@@ -454,6 +511,30 @@ class JBossRuleCreator extends AbstractPropositionDefinitionCheckedVisitor {
      * if an instance of this predicate expression is serialized, it would
      * also force serialization of the enclosing class.
      */
+    private static final class MatchesAnyPredicateExpression implements
+            PredicateExpression {
+
+        private static final long serialVersionUID = 1L;
+        private final HighLevelAbstractionJoin join;
+
+        private MatchesAnyPredicateExpression(HighLevelAbstractionJoin join) {
+            assert join != null : "join cannot be null";
+            this.join = join;
+        }
+
+        @Override
+        public boolean evaluate(Object arg0, Tuple arg1, Declaration[] arg2,
+                Declaration[] arg3, WorkingMemory arg4, Object context)
+                throws Exception {
+            return this.join.matchesAny((Proposition) arg0);
+        }
+
+        @Override
+        public Object createContext() {
+            return null;
+        }
+    }
+
     private static final class GetMatchesPredicateExpression implements
             PredicateExpression {
 
@@ -23,8 +23,10 @@ import org.protempa.valueset.ValueSet;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -47,6 +49,14 @@ public final class KnowledgeSourceImpl
     
     private static final Logger LOGGER = Logger.getLogger(KnowledgeSourceImpl.class.getName());
 
+    /**
+     * System property for the maximum number of proposition definitions, and
+     * of each kind of relationship, that are cached after being read from the
+     * backends. Set to 0 to turn off caching. The default is 10000.
+     */
+    static final String CACHE_SIZE_PROPERTY = "protempa.knowledgeSource.cacheSize";
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+
     /**
      * PROTEMPA knowledge base.
      */
@@ -54,15 +64,33 @@ public final class KnowledgeSourceImpl
     private final AbstractionDefinitionReader abstractionDefReader;
     private final ContextDefinitionReader contextDefReader;
     private final TemporalPropositionDefinitionReader tempPropDefReader;
+    private final KnowledgeSourceReadCache<String[]> isACache;
+    private final KnowledgeSourceReadCache<String[]> abstractedIntoCache;
+    private final KnowledgeSourceReadCache<String[]> inducesCache;
+    private final KnowledgeSourceReadCache<String[]> subContextOfsCache;
     private SubtreePropositionDefinitionGetterRegular inDataSourceGetter;
     private SubtreePropositionDefinitionGetterRegular collectSubtreeGetter;
 
     public KnowledgeSourceImpl(KnowledgeSourceBackend... backends) {
         super(backends);
-        this.propDefReader = new PropositionDefinitionReader();
-        this.abstractionDefReader = new AbstractionDefinitionReader();
-        this.contextDefReader = new ContextDefinitionReader();
-        this.tempPropDefReader = new TemporalPropositionDefinitionReader();
+        int cacheSize = getCacheSize();
+        this.propDefReader = new PropositionDefinitionReader(cacheSize);
+        this.abstractionDefReader = new AbstractionDefinitionReader(cacheSize);
+        this.contextDefReader = new ContextDefinitionReader(cacheSize);
+        this.tempPropDefReader = new TemporalPropositionDefinitionReader(cacheSize);
+        this.isACache = new KnowledgeSourceReadCache<>(cacheSize);
+        this.abstractedIntoCache = new KnowledgeSourceReadCache<>(cacheSize);
+        this.inducesCache = new KnowledgeSourceReadCache<>(cacheSize);
+        this.subContextOfsCache = new KnowledgeSourceReadCache<>(cacheSize);
+    }
+
+    private static int getCacheSize() {
+        int cacheSize = Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE);
+        if (cacheSize < 0) {
+            LOGGER.log(Level.WARNING, "Invalid value {0} for " + CACHE_SIZE_PROPERTY + "; using " + DEFAULT_CACHE_SIZE, cacheSize);
+            cacheSize = DEFAULT_CACHE_SIZE;
+        }
+        return cacheSize;
     }
 
     /**
@@ -153,11 +181,9 @@ public final class KnowledgeSourceImpl
         if (id == null) {
             throw new IllegalArgumentException("id cannot be null");
         }
-        Set<String> isAs = new HashSet<>();
-        for (KnowledgeSourceBackend backend : getBackends()) {
-            Arrays.addAll(isAs, backend.readIsA(id));
-        }
-        return readPropositionDefinitions(isAs.toArray(new String[isAs.size()]));
+        String[] isAs = readRelation(this.isACache, id,
+                KnowledgeSourceBackend::readIsA);
+        return readPropositionDefinitions(isAs);
     }
 
     @Override
@@ -166,11 +192,9 @@ public final class KnowledgeSourceImpl
         if (id == null) {
             throw new IllegalArgumentException("id cannot be null");
         }
-        Set<String> isAs = new HashSet<>();
-        for (KnowledgeSourceBackend backend : getBackends()) {
-            Arrays.addAll(isAs, backend.readIsA(id));
-        }
-        return new ArrayList<>(isAs);
+        String[] isAs = readRelation(this.isACache, id,
+                KnowledgeSourceBackend::readIsA);
+        return asList(isAs);
     }
 
     @Override
@@ -229,12 +253,9 @@ public final class KnowledgeSourceImpl
         if (id == null) {
             throw new IllegalArgumentException("id cannot be null");
         }
-        Set<String> abstractedIntos = new HashSet<>();
-        for (KnowledgeSourceBackend backend : getBackends()) {
-            Arrays.addAll(abstractedIntos,
-                    backend.readAbstractedInto(id));
-        }
-        return readAbstractionDefinitions(abstractedIntos.toArray(new String[abstractedIntos.size()]));
+        String[] abstractedIntos = readRelation(this.abstractedIntoCache, id,
+                KnowledgeSourceBackend::readAbstractedInto);
+        return readAbstractionDefinitions(abstractedIntos);
     }
 
     @Override
@@ -243,12 +264,9 @@ public final class KnowledgeSourceImpl
         if (id == null) {
             throw new IllegalArgumentException("id cannot be null");
         }
-        Set<String> abstractedIntos = new HashSet<>();
-        for (KnowledgeSourceBackend backend : getBackends()) {
-            Arrays.addAll(abstractedIntos,
-                    backend.readAbstractedInto(id));
-        }
-        return new ArrayList<>(abstractedIntos);
+        String[] abstractedIntos = readRelation(this.abstractedIntoCache, id,
+                KnowledgeSourceBackend::readAbstractedInto);
+        return asList(abstractedIntos);
     }
 
     @Override
@@ -279,12 +297,9 @@ public final class KnowledgeSourceImpl
         if (id == null) {
             throw new IllegalArgumentException("id cannot be null");
         }
-        Set<String> induces = new HashSet<>();
-        for (KnowledgeSourceBackend backend : getBackends()) {
-            Arrays.addAll(induces,
-                    backend.readInduces(id));
-        }
-        return readContextDefinitions(induces.toArray(new String[induces.size()]));
+        String[] induces = readRelation(this.inducesCache, id,
+                KnowledgeSourceBackend::readInduces);
+        return readContextDefinitions(induces);
     }
 
     @Override
@@ -293,12 +308,9 @@ public final class KnowledgeSourceImpl
         if (id == null) {
             throw new IllegalArgumentException("id cannot be null");
         }
-        Set<String> induces = new HashSet<>();
-        for (KnowledgeSourceBackend backend : getBackends()) {
-            Arrays.addAll(induces,
-                    backend.readInduces(id));
-        }
-        return new ArrayList<>(induces);
+        String[] induces = readRelation(this.inducesCache, id,
+                KnowledgeSourceBackend::readInduces);
+        return asList(induces);
     }
 
     @Override
@@ -307,12 +319,9 @@ public final class KnowledgeSourceImpl
         if (id == null) {
             throw new IllegalArgumentException("id cannot be null");
         }
-        Set<String> subContextOfs = new HashSet<>();
-        for (KnowledgeSourceBackend backend : getBackends()) {
-            Arrays.addAll(subContextOfs,
-                    backend.readSubContextOfs(id));
-        }
-        return readContextDefinitions(subContextOfs.toArray(new String[subContextOfs.size()]));
+        String[] subContextOfs = readRelation(this.subContextOfsCache, id,
+                KnowledgeSourceBackend::readSubContextOfs);
+        return readContextDefinitions(subContextOfs);
     }
 
     @Override
@@ -321,12 +330,9 @@ public final class KnowledgeSourceImpl
         if (id == null) {
             throw new IllegalArgumentException("id cannot be null");
         }
-        Set<String> subContextOfs = new HashSet<>();
-        for (KnowledgeSourceBackend backend : getBackends()) {
-            Arrays.addAll(subContextOfs,
-                    backend.readSubContextOfs(id));
-        }
-        return new ArrayList<>(subContextOfs);
+        String[] subContextOfs = readRelation(this.subContextOfsCache, id,
+                KnowledgeSourceBackend::readSubContextOfs);
+        return asList(subContextOfs);
     }
 
     @Override
@@ -485,36 +491,73 @@ public final class KnowledgeSourceImpl
         return this.tempPropDefReader.read(propIds);
     }
 
+    private interface Relation {
+
+        String[] read(KnowledgeSourceBackend backend, String id)
+                throws KnowledgeSourceReadException;
+    }
+
+    private String[] readRelation(KnowledgeSourceReadCache<String[]> cache,
+            String id, Relation relation) throws KnowledgeSourceReadException {
+        return cache.get(id, (String propId) -> {
+            Set<String> result = new HashSet<>();
+            for (KnowledgeSourceBackend backend : getBackends()) {
+                Arrays.addAll(result, relation.read(backend, propId));
+            }
+            return result.toArray(new String[result.size()]);
+        });
+    }
+
+    private static List<String> asList(String[] propIds) {
+        List<String> result = new ArrayList<>(propIds.length);
+        Collections.addAll(result, propIds);
+        return result;
+    }
+
     private abstract class AbstractDefinitionReader<E extends PropositionDefinition> {
 
+        private final KnowledgeSourceReadCache<E> cache;
+
+        AbstractDefinitionReader(int cacheSize) {
+            this.cache = new KnowledgeSourceReadCache<>(cacheSize);
+        }
+
         final E read(String id) throws KnowledgeSourceReadException {
             if (id == null) {
                 throw new IllegalArgumentException("id cannot be null");
             }
             initializeIfNeeded("reading the proposition definition {0}", id);
 
-            E result = null;
-            if (result == null) {
+            return this.cache.get(id, (String propId) -> {
                 for (KnowledgeSourceBackend backend : getBackends()) {
-                    result = readFromBackend(id, backend);
+                    E result = readFromBackend(propId, backend);
                     if (result != null) {
                         return result;
                     }
                 }
-            }
-            return result;
+                return null;
+            });
         }
 
         final List<E> read(String[] ids) throws KnowledgeSourceReadException {
             assert ids != null : "ids cannot be null";
             initializeIfNeeded("reading the proposition definitions {0}", ids);
 
-            List<E> result = new ArrayList<>();
-
-            for (KnowledgeSourceBackend backend : getBackends()) {
-                result.addAll(readFromBackend(Arrays.asList(ids), backend));
-            }
-            return result;
+            return this.cache.getAll(ids, (List<String> propIds) -> {
+                Map<String, E> result = new HashMap<>();
+                List<String> remaining = propIds;
+                for (KnowledgeSourceBackend backend : getBackends()) {
+                    if (remaining.isEmpty()) {
+                        break;
+                    }
+                    for (E propDef : readFromBackend(remaining, backend)) {
+                        result.putIfAbsent(propDef.getId(), propDef);
+                    }
+                    remaining = new ArrayList<>(remaining);
+                    remaining.removeAll(result.keySet());
+                }
+                return result;
+            });
         }
 
         final boolean has(String id) throws KnowledgeSourceReadException {
@@ -524,6 +567,18 @@ public final class KnowledgeSourceImpl
             return read(id) != null;
         }
 
+        final void clear() {
+            this.cache.clear();
+        }
+
+        final long getHitCount() {
+            return this.cache.getHitCount();
+        }
+
+        final long getMissCount() {
+            return this.cache.getMissCount();
+        }
+
         protected abstract E readFromBackend(String id,
                 KnowledgeSourceBackend backend)
                 throws KnowledgeSourceReadException;
@@ -536,6 +591,10 @@ public final class KnowledgeSourceImpl
 
     private final class PropositionDefinitionReader extends AbstractDefinitionReader<PropositionDefinition> {
 
+        PropositionDefinitionReader(int cacheSize) {
+            super(cacheSize);
+        }
+
         @Override
         protected PropositionDefinition readFromBackend(String id,
                 KnowledgeSourceBackend backend)
@@ -552,6 +611,10 @@ public final class KnowledgeSourceImpl
     private final class AbstractionDefinitionReader
             extends AbstractDefinitionReader<AbstractionDefinition> {
 
+        AbstractionDefinitionReader(int cacheSize) {
+            super(cacheSize);
+        }
+
         @Override
         protected AbstractionDefinition readFromBackend(String id,
                 KnowledgeSourceBackend backend)
@@ -569,6 +632,10 @@ public final class KnowledgeSourceImpl
     private final class ContextDefinitionReader
             extends AbstractDefinitionReader<ContextDefinition> {
 
+        ContextDefinitionReader(int cacheSize) {
+            super(cacheSize);
+        }
+
         @Override
         protected ContextDefinition readFromBackend(String id, KnowledgeSourceBackend backend) throws KnowledgeSourceReadException {
             return backend.readContextDefinition(id);
@@ -584,6 +651,10 @@ public final class KnowledgeSourceImpl
     private final class TemporalPropositionDefinitionReader
             extends AbstractDefinitionReader<TemporalPropositionDefinition> {
 
+        TemporalPropositionDefinitionReader(int cacheSize) {
+            super(cacheSize);
+        }
+
         @Override
         protected TemporalPropositionDefinition readFromBackend(String id, KnowledgeSourceBackend backend) throws KnowledgeSourceReadException {
             return backend.readTemporalPropositionDefinition(id);
@@ -685,12 +756,60 @@ public final class KnowledgeSourceImpl
 
     @Override
     public void close() throws SourceCloseException {
+        LOGGER.log(Level.FINE, "Knowledge source cache hits: {0}; misses: {1}",
+                new Object[]{getCacheHitCount(), getCacheMissCount()});
         clear();
         super.close();
     }
 
+    /**
+     * Discards the proposition definitions and relationships that have been
+     * cached. This is called automatically when a backend is updated.
+     */
     @Override
     public void clear() {
+        this.propDefReader.clear();
+        this.abstractionDefReader.clear();
+        this.contextDefReader.clear();
+        this.tempPropDefReader.clear();
+        this.isACache.clear();
+        this.abstractedIntoCache.clear();
+        this.inducesCache.clear();
+        this.subContextOfsCache.clear();
+    }
+
+    /**
+     * Returns how many lookups of proposition definitions and relationships
+     * were answered from the cache.
+     *
+     * @return the number of cache hits.
+     */
+    public long getCacheHitCount() {
+        return this.propDefReader.getHitCount()
+                + this.abstractionDefReader.getHitCount()
+                + this.contextDefReader.getHitCount()
+                + this.tempPropDefReader.getHitCount()
+                + this.isACache.getHitCount()
+                + this.abstractedIntoCache.getHitCount()
+                + this.inducesCache.getHitCount()
+                + this.subContextOfsCache.getHitCount();
+    }
+
+    /**
+     * Returns how many lookups of proposition definitions and relationships
+     * were read from the backends.
+     *
+     * @return the number of cache misses.
+     */
+    public long getCacheMissCount() {
+        return this.propDefReader.getMissCount()
+                + this.abstractionDefReader.getMissCount()
+                + this.contextDefReader.getMissCount()
+                + this.tempPropDefReader.getMissCount()
+                + this.isACache.getMissCount()
+                + this.abstractedIntoCache.getMissCount()
+                + this.inducesCache.getMissCount()
+                + this.subContextOfsCache.getMissCount();
     }
 
     @Override
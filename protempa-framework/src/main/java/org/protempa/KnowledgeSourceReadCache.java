@@ -0,0 +1,224 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded read-through cache of values read from knowledge source backends,
+ * keyed by proposition id. Ids that the backends do not have are cached too,
+ * so that repeated lookups of them do not go to the backends. The cache is
+ * split into independently locked segments, each of which evicts its least
+ * recently used entries when full.
+ *
+ * @author Andrew Post
+ */
+final class KnowledgeSourceReadCache<V> {
+
+    /**
+     * Reads one value from the knowledge source backends.
+     */
+    interface Loader<V> {
+
+        /**
+         * @param id a proposition id.
+         * @return the value, or <code>null</code> if the backends have none.
+         */
+        V load(String id) throws KnowledgeSourceReadException;
+    }
+
+    /**
+     * Reads many values from the knowledge source backends at once.
+     */
+    interface BulkLoader<V> {
+
+        /**
+         * @param ids proposition ids.
+         * @return the values that the backends have, keyed by id.
+         */
+        Map<String, V> load(List<String> ids)
+                throws KnowledgeSourceReadException;
+    }
+
+    private static final int SEGMENT_COUNT = 16;
+    private static final Object ABSENT = new Object();
+
+    private final Segment[] segments;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private volatile long generation;
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxSize the maximum number of entries. If less than 1, nothing is
+     * cached.
+     */
+    KnowledgeSourceReadCache(int maxSize) {
+        int segmentMaxSize = maxSize > 0
+                ? Math.max(1, maxSize / SEGMENT_COUNT) : 0;
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            this.segments[i] = new Segment(segmentMaxSize);
+        }
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Returns the cached value for an id, reading it with the loader if it is
+     * not cached.
+     *
+     * @param id a proposition id. Cannot be <code>null</code>.
+     * @param loader reads the value on a cache miss.
+     * @return the value, or <code>null</code> if the backends have none.
+     * @throws KnowledgeSourceReadException if the loader failed.
+     */
+    V get(String id, Loader<V> loader) throws KnowledgeSourceReadException {
+        Segment segment = segmentFor(id);
+        Object cached = segment.get(id);
+        if (cached != null) {
+            this.hits.incrementAndGet();
+            return unmask(cached);
+        }
+        this.misses.incrementAndGet();
+        long gen = this.generation;
+        V result = loader.load(id);
+        put(segment, id, result, gen);
+        return result;
+    }
+
+    /**
+     * Returns the cached values for some ids, reading the ones that are not
+     * cached with the loader in one call.
+     *
+     * @param ids proposition ids. Cannot be <code>null</code>.
+     * @param loader reads the values on cache misses.
+     * @return the values that the backends have, in the order of the ids.
+     * @throws KnowledgeSourceReadException if the loader failed.
+     */
+    List<V> getAll(String[] ids, BulkLoader<V> loader)
+            throws KnowledgeSourceReadException {
+        List<V> result = new ArrayList<>(ids.length);
+        List<String> missing = null;
+        for (String id : ids) {
+            Object cached = segmentFor(id).get(id);
+            if (cached != null) {
+                this.hits.incrementAndGet();
+                if (cached != ABSENT) {
+                    result.add(unmask(cached));
+                }
+            } else {
+                this.misses.incrementAndGet();
+                if (missing == null) {
+                    missing = new ArrayList<>();
+                }
+                missing.add(id);
+            }
+        }
+        if (missing != null) {
+            long gen = this.generation;
+            Map<String, V> loaded = loader.load(missing);
+            for (String id : missing) {
+                V value = loaded.get(id);
+                put(segmentFor(id), id, value, gen);
+                if (value != null) {
+                    result.add(value);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes all entries. Values that are being loaded when this is called
+     * are not cached.
+     */
+    void clear() {
+        this.generation++;
+        for (Segment segment : this.segments) {
+            segment.clear();
+        }
+    }
+
+    long getHitCount() {
+        return this.hits.get();
+    }
+
+    long getMissCount() {
+        return this.misses.get();
+    }
+
+    private void put(Segment segment, String id, V value, long gen) {
+        synchronized (segment) {
+            if (gen == this.generation) {
+                segment.put(id, value != null ? value : ABSENT);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V unmask(Object cached) {
+        return cached != ABSENT ? (V) cached : null;
+    }
+
+    private Segment segmentFor(String id) {
+        int h = id.hashCode();
+        h ^= (h >>> 16);
+        return this.segments[h & (SEGMENT_COUNT - 1)];
+    }
+
+    private static final class Segment {
+
+        private final int maxSize;
+        private final LinkedHashMap<String, Object> map;
+
+        Segment(final int maxSize) {
+            this.maxSize = maxSize;
+            this.map = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Object> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized Object get(String id) {
+            return this.map.get(id);
+        }
+
+        synchronized void put(String id, Object value) {
+            if (this.maxSize > 0) {
+                this.map.put(id, value);
+            }
+        }
+
+        synchronized void clear() {
+            this.map.clear();
+        }
+    }
+}
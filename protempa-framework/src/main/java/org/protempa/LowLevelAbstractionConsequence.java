@@ -21,8 +21,6 @@ package org.protempa;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -50,10 +48,16 @@ final class LowLevelAbstractionConsequence implements Consequence {
     private final DerivationsBuilder derivationsBuilder;
     private transient MyObjectAsserter objAsserter;
 
-    private void doProcess(KnowledgeHelper knowledgeHelper, Sequence<PrimitiveParameter> subSeq) throws AlgorithmProcessingException, AlgorithmInitializationException {
+    private void doProcess(KnowledgeHelper knowledgeHelper,
+            LowLevelAbstractionState state,
+            Sequence<PrimitiveParameter> subSeq)
+            throws AlgorithmProcessingException,
+            AlgorithmInitializationException {
         objAsserter.knowledgeHelper = knowledgeHelper;
-        LowLevelAbstractionFinder.process(subSeq, this.def, this.algorithm,
-                objAsserter, this.derivationsBuilder, knowledgeHelper.getWorkingMemory());
+        state.addRun(LowLevelAbstractionFinder.process(subSeq, this.def,
+                this.algorithm, objAsserter, this.derivationsBuilder,
+                knowledgeHelper.getWorkingMemory(),
+                state.previousRun(subSeq)));
         objAsserter.knowledgeHelper = null;
     }
 
@@ -83,49 +87,53 @@ final class LowLevelAbstractionConsequence implements Consequence {
         List<PrimitiveParameter> pl =
                 (List<PrimitiveParameter>) kh.get(
                 kh.getDeclaration("result"));
+        LowLevelAbstractionState state =
+                LowLevelAbstractionState.get(wm, this.def.getPropositionId());
+        Sequence<PrimitiveParameter> seq =
+                state.sequence(this.def.getAbstractedFrom(), pl);
         Declaration declaration = kh.getDeclaration("result2");
-        Sequence<PrimitiveParameter> seq = 
-                new Sequence<>(this.def.getAbstractedFrom(), pl);
         if (declaration != null) {
             List<Context> contexts =
-                    (List<Context>) kh.get(kh.getDeclaration("result2"));
+                    (List<Context>) kh.get(declaration);
 
             Sequence<Context> contextSeq =
                     new Sequence<>(this.def.getContextId(), contexts);
-            LinkedList<PrimitiveParameter> ll = new LinkedList<>(seq);
+            /*
+             * Each context gets the first run of primitive parameters that
+             * are related to it among those that earlier contexts did not
+             * get.
+             */
+            boolean[] taken = new boolean[seq.size()];
+            int firstNotTaken = 0;
 
             for (Context context : contextSeq) {
+                while (firstNotTaken < taken.length && taken[firstNotTaken]) {
+                    firstNotTaken++;
+                }
                 boolean in = false;
-                Iterator<PrimitiveParameter> itr = ll.iterator();
-                PrimitiveParameter tp = itr.next();
                 Sequence<PrimitiveParameter> subSeq =
                         new Sequence<>(seq.getPropositionIds());
-                while (true) {
+                for (int i = firstNotTaken; i < taken.length; i++) {
+                    if (taken[i]) {
+                        continue;
+                    }
+                    PrimitiveParameter tp = seq.get(i);
                     if (REL.hasRelation(tp.getInterval(), context.getInterval())) {
                         subSeq.add(tp);
                         in = true;
-                        itr.remove();
+                        taken[i] = true;
                     } else if (in) {
-                        in = false;
-                        break;
-                    }
-                    
-                    if (itr.hasNext()) {
-                        tp = itr.next();
-                    } else {
                         break;
                     }
-
                 }
                 if (!subSeq.isEmpty()) {
-                    doProcess(kh, subSeq);
-                    subSeq.clear();
+                    doProcess(kh, state, subSeq);
                 }
             }
         } else {
-            doProcess(kh, seq);
+            doProcess(kh, state, seq);
         }
-
+        state.finishRuns();
     }
 
     private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
@@ -20,6 +20,8 @@
 package org.protempa;
 
 
+import java.util.ArrayList;
+import java.util.List;
 import org.drools.WorkingMemory;
 import org.protempa.proposition.interval.Interval;
 import org.protempa.proposition.PrimitiveParameter;
@@ -59,7 +61,7 @@ public final class LowLevelAbstractionFinder {
      * @return a <code>Segment</code> of <code>PrimitiveParameter</code>
      *         objects.
      */
-    private static Segment<PrimitiveParameter> firstSegment(
+    private static ScanSegment firstSegment(
             PatternFinderUser def, Sequence<PrimitiveParameter> sequence,
             Algorithm algorithm, int maxPatternLength) {
         int size = sequence.size();
@@ -68,9 +70,11 @@ public final class LowLevelAbstractionFinder {
             int x = 0;
             int y = minPatternLength < 1 ? size - 1 : minPatternLength - 1;
             if (x <= y) {
-                return resetSegmentHelper(def, sequence, x, y,
-                        new Segment<>(sequence, x, y),
-                        algorithm, maxPatternLength);
+                ScanSegment seg = new ScanSegment(sequence, x, y);
+                if (resetSegmentHelper(def, sequence, x, y, seg, algorithm,
+                        maxPatternLength) != null) {
+                    return seg;
+                }
             }
         }
         return null;
@@ -284,19 +288,216 @@ public final class LowLevelAbstractionFinder {
         return nextSeg;
     }
 
-    static void process(Sequence<PrimitiveParameter> seq,
+    /**
+     * The scan of a sequence that the finder did most recently, kept so that
+     * the scan of a changed sequence can resume where the two sequences
+     * start to differ rather than start over.
+     */
+    static final class Run {
+
+        private final Sequence<PrimitiveParameter> sequence;
+        private final boolean resumable;
+        private final List<Checkpoint> checkpoints;
+        private final List<Proposition> asserted;
+        private final List<int[]> assertedBounds;
+
+        private Run(Sequence<PrimitiveParameter> sequence, boolean resumable) {
+            this.sequence = sequence;
+            this.resumable = resumable;
+            this.checkpoints = new ArrayList<>();
+            this.asserted = new ArrayList<>();
+            this.assertedBounds = new ArrayList<>();
+        }
+
+        /**
+         * Returns the sequence that was scanned.
+         *
+         * @return a {@link Sequence}.
+         */
+        Sequence<PrimitiveParameter> getSequence() {
+            return this.sequence;
+        }
+
+        /**
+         * Returns the number of low-level abstractions that the scan found.
+         *
+         * @return a number.
+         */
+        int getAssertedCount() {
+            return this.asserted.size();
+        }
+
+        private void asserted(Proposition proposition,
+                Segment<PrimitiveParameter> segment) {
+            this.asserted.add(proposition);
+            this.assertedBounds.add(new int[]{segment.getFirstIndex(),
+                segment.getLastIndex()});
+        }
+
+        /**
+         * Returns the last checkpoint at which the scan had not looked at any
+         * value at or after the given index.
+         */
+        private Checkpoint lastCheckpointBefore(int index) {
+            if (!this.resumable) {
+                return null;
+            }
+            int low = 0;
+            int high = this.checkpoints.size() - 1;
+            Checkpoint result = null;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                Checkpoint checkpoint = this.checkpoints.get(mid);
+                if (checkpoint.reach < index) {
+                    result = checkpoint;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The state of a scan at the start of a row.
+     */
+    private static final class Checkpoint {
+
+        private final int index;
+        private final int x;
+        private final int y;
+        private final int lastX;
+        private final int lastY;
+        private final LowLevelAbstractionValueDefinition prevFoundValue;
+        private final int asserted;
+        private final int reach;
+
+        Checkpoint(int index, ScanSegment seg,
+                Segment<PrimitiveParameter> lastSeg,
+                LowLevelAbstractionValueDefinition prevFoundValue,
+                int asserted) {
+            this.index = index;
+            this.x = seg.getFirstIndex();
+            this.y = seg.getLastIndex();
+            if (lastSeg != null) {
+                this.lastX = lastSeg.getFirstIndex();
+                this.lastY = lastSeg.getLastIndex();
+            } else {
+                this.lastX = -1;
+                this.lastY = -1;
+            }
+            this.prevFoundValue = prevFoundValue;
+            this.asserted = asserted;
+            this.reach = seg.reach;
+        }
+    }
+
+    /**
+     * The segment that a scan moves along its sequence. It remembers the
+     * highest index that the scan has asked for, whether or not the sequence
+     * has a value there, because every decision that the scan has made so far
+     * depends only on the values up to that index.
+     */
+    private static final class ScanSegment extends Segment<PrimitiveParameter> {
+
+        /*
+         * Not initialized here, because the superclass constructor calls
+         * resetState before this class' field initializers would run.
+         */
+        private int reach;
+
+        ScanSegment(Sequence<PrimitiveParameter> seq, int firstIndex,
+                int lastIndex) {
+            super(seq, firstIndex, lastIndex);
+        }
+
+        @Override
+        public Segment<PrimitiveParameter> resetState(
+                Sequence<PrimitiveParameter> sequence, int firstIndex,
+                int lastIndex) {
+            this.reach = Math.max(this.reach, lastIndex);
+            return super.resetState(sequence, firstIndex, lastIndex);
+        }
+    }
+
+    /**
+     * Finds the low-level abstractions in a sequence.
+     *
+     * @param seq the sequence.
+     * @param def the low-level abstraction definition.
+     * @param algorithm the definition's algorithm, if any.
+     * @param objAsserter asserts the found abstractions.
+     * @param derivationsBuilder records what the abstractions were derived
+     * from.
+     * @param workingMemory the working memory, for the abstractions' unique
+     * ids.
+     * @param previous the run that {@link #process} returned for an earlier
+     * version of the same sequence, or <code>null</code>. The abstractions
+     * that it found before the first value that is different in
+     * <code>seq</code> are asserted again as is, and the scan resumes from
+     * there.
+     * @return the run, to pass to the next call for the same sequence.
+     * @throws AlgorithmInitializationException if the algorithm could not be
+     * initialized.
+     * @throws AlgorithmProcessingException if the algorithm failed.
+     */
+    static Run process(Sequence<PrimitiveParameter> seq,
             LowLevelAbstractionDefinition def, Algorithm algorithm,
             ObjectAsserter objAsserter, DerivationsBuilder derivationsBuilder,
-            WorkingMemory workingMemory)
+            WorkingMemory workingMemory, Run previous)
             throws AlgorithmInitializationException,
             AlgorithmProcessingException {
         if (def == null || seq == null) {
-            return;
+            return null;
         }
         int minPatternLength = minPatternLength(algorithm, def);
         int maxPatternLength = maxPatternLength(algorithm, def);
-        Segment<PrimitiveParameter> seg = firstSegment(def, seq, algorithm,
-                maxPatternLength);
+
+        /*
+         * Every row of a sliding window scan looks at values starting at or
+         * after where the previous row started, so the rows before the first
+         * changed value are the same as last time unless their windows
+         * reached it. When the width mode is ALL, the only window is the
+         * whole sequence, which depends on the sequence's size.
+         */
+        Run run = new Run(seq, minPatternLength >= 1);
+        Checkpoint checkpoint = null;
+        if (previous != null) {
+            Sequence<PrimitiveParameter> prevSeq = previous.sequence;
+            int diff = firstDifference(prevSeq, seq);
+            if (diff == seq.size() && diff == prevSeq.size()) {
+                reassert(previous, previous.asserted.size(), seq, objAsserter,
+                        derivationsBuilder);
+                return previous;
+            }
+            checkpoint = previous.lastCheckpointBefore(diff);
+            if (checkpoint != null) {
+                reassert(previous, checkpoint.asserted, seq, objAsserter,
+                        derivationsBuilder);
+                run.checkpoints.addAll(
+                        previous.checkpoints.subList(0, checkpoint.index));
+                run.asserted.addAll(
+                        previous.asserted.subList(0, checkpoint.asserted));
+                run.assertedBounds.addAll(
+                        previous.assertedBounds.subList(0, checkpoint.asserted));
+            }
+        }
+
+        ScanSegment seg;
+        Segment<PrimitiveParameter> lastSeg = null;
+        LowLevelAbstractionValueDefinition prevFoundValue = null;
+        if (checkpoint != null) {
+            seg = new ScanSegment(seq, checkpoint.x, checkpoint.y);
+            seg.reach = checkpoint.reach;
+            if (checkpoint.lastX >= 0) {
+                lastSeg = new Segment<>(seq, checkpoint.lastX,
+                        checkpoint.lastY);
+            }
+            prevFoundValue = checkpoint.prevFoundValue;
+        } else {
+            seg = firstSegment(def, seq, algorithm, maxPatternLength);
+        }
 
         String id = def.getPropositionId();
         JBossRulesDerivedLocalUniqueIdValuesProvider provider = new JBossRulesDerivedLocalUniqueIdValuesProvider(workingMemory, id);
@@ -304,10 +505,10 @@ public final class LowLevelAbstractionFinder {
         GapFunction gf = def.getGapFunction();
 
         if (seg != null) {
-            Segment<PrimitiveParameter> lastSeg = null;
-            LowLevelAbstractionValueDefinition prevFoundValue = null;
             LowLevelAbstractionValueDefinition foundValue = null;
             do {
+                run.checkpoints.add(new Checkpoint(run.checkpoints.size(), seg,
+                        lastSeg, prevFoundValue, run.asserted.size()));
                 if ((foundValue = def.satisfiedBy(seg, algorithm)) != null) {
                     Segment<PrimitiveParameter> nextSeg = null;
                     do {
@@ -322,15 +523,9 @@ public final class LowLevelAbstractionFinder {
                                     seg.getLastIndex()));
                         } else {
                             if (lastSeg != null) {
-                                Proposition proposition = AbstractParameterFactory.getFromAbstraction(id,
-                                        factory.getInstance(),
-                                        lastSeg, null, prevFoundValue.getValue(),
-                                        null, null, def.getContextId());
-                                
-                                objAsserter.assertObject(proposition);
-                                for (Proposition prop : lastSeg) {
-                                    derivationsBuilder.propositionAsserted(prop, proposition);
-                                }
+                                assertAbstraction(id, factory, lastSeg,
+                                        prevFoundValue, def, objAsserter,
+                                        derivationsBuilder, run);
                             }
                             lastSeg = new Segment<>(seg);
                         }
@@ -343,19 +538,62 @@ public final class LowLevelAbstractionFinder {
             } while (advanceRow(def, seg, lastSeg, algorithm, minPatternLength,
                     maxPatternLength) != null);
             if (lastSeg != null) {
-                Proposition proposition = 
-                        AbstractParameterFactory.getFromAbstraction(id,
-                                factory.getInstance(),
-                        lastSeg, null, prevFoundValue.getValue(), null, null,
-                        def.getContextId());
-                
-                objAsserter.assertObject(proposition);
-                for (Proposition prop : lastSeg) {
-                    derivationsBuilder.propositionAsserted(prop, proposition);
-                }
-                
+                assertAbstraction(id, factory, lastSeg, prevFoundValue, def,
+                        objAsserter, derivationsBuilder, run);
                 lastSeg = null;
             }
         }
+        return run;
+    }
+
+    private static void assertAbstraction(String id, UniqueIdFactory factory,
+            Segment<PrimitiveParameter> lastSeg,
+            LowLevelAbstractionValueDefinition foundValue,
+            LowLevelAbstractionDefinition def, ObjectAsserter objAsserter,
+            DerivationsBuilder derivationsBuilder, Run run) {
+        Proposition proposition =
+                AbstractParameterFactory.getFromAbstraction(id,
+                        factory.getInstance(),
+                lastSeg, null, foundValue.getValue(), null, null,
+                def.getContextId());
+
+        objAsserter.assertObject(proposition);
+        for (Proposition prop : lastSeg) {
+            derivationsBuilder.propositionAsserted(prop, proposition);
+        }
+        run.asserted(proposition, lastSeg);
+    }
+
+    /**
+     * Asserts the first abstractions of a previous run again, with the same
+     * unique ids, because the rule engine retracted them when the sequence
+     * changed.
+     */
+    private static void reassert(Run previous, int count,
+            Sequence<PrimitiveParameter> seq, ObjectAsserter objAsserter,
+            DerivationsBuilder derivationsBuilder) {
+        for (int i = 0; i < count; i++) {
+            Proposition proposition = previous.asserted.get(i);
+            objAsserter.assertObject(proposition);
+            int[] bounds = previous.assertedBounds.get(i);
+            for (int j = bounds[0]; j <= bounds[1]; j++) {
+                derivationsBuilder.propositionAsserted(seq.get(j), proposition);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the first value that is not the same object in
+     * two sequences, or the size of the shorter sequence if it is a prefix
+     * of the longer one.
+     */
+    private static int firstDifference(Sequence<PrimitiveParameter> seq1,
+            Sequence<PrimitiveParameter> seq2) {
+        int n = Math.min(seq1.size(), seq2.size());
+        int i = 0;
+        while (i < n && seq1.get(i) == seq2.get(i)) {
+            i++;
+        }
+        return i;
     }
 }
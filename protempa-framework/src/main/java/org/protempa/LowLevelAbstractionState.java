@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2013 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.drools.WorkingMemory;
+import org.protempa.proposition.PrimitiveParameter;
+import org.protempa.proposition.Sequence;
+
+/**
+ * What a low-level abstraction definition's rule did the last time it fired
+ * in a working memory: the primitive parameters it collected, in temporal
+ * order, and the finder's runs over them, by the first primitive parameter
+ * of each run's sequence. When more primitive parameters are inserted or
+ * some are retracted, the rule fires again, and only the windows at and
+ * after the first change are searched again.
+ *
+ * @author Andrew Post
+ */
+final class LowLevelAbstractionState {
+
+    private final TemporalPropositionIndex<PrimitiveParameter> index;
+    private Map<PrimitiveParameter, LowLevelAbstractionFinder.Run> runs;
+    private Map<PrimitiveParameter, LowLevelAbstractionFinder.Run> newRuns;
+
+    private LowLevelAbstractionState() {
+        this.index = new TemporalPropositionIndex<>();
+        this.runs = new IdentityHashMap<>();
+        this.newRuns = new IdentityHashMap<>();
+    }
+
+    /**
+     * Gets the state of a low-level abstraction definition in a working
+     * memory, creating it if the definition's rule has not fired yet.
+     *
+     * @param workingMemory a working memory.
+     * @param propId the low-level abstraction definition's id.
+     * @return the state.
+     */
+    @SuppressWarnings("unchecked")
+    static LowLevelAbstractionState get(WorkingMemory workingMemory,
+            String propId) {
+        Map<String, LowLevelAbstractionState> states =
+                (Map<String, LowLevelAbstractionState>) workingMemory.getGlobal(
+                WorkingMemoryGlobals.LOW_LEVEL_ABSTRACTION_STATES);
+        if (states == null) {
+            states = new HashMap<>();
+            workingMemory.setGlobal(
+                    WorkingMemoryGlobals.LOW_LEVEL_ABSTRACTION_STATES, states);
+        }
+        LowLevelAbstractionState state = states.get(propId);
+        if (state == null) {
+            state = new LowLevelAbstractionState();
+            states.put(propId, state);
+        }
+        return state;
+    }
+
+    /**
+     * Returns the collected primitive parameters as a sequence.
+     *
+     * @param propIds the ids of the primitive parameters.
+     * @param collected the collected primitive parameters, in any order.
+     * @return a sequence.
+     */
+    Sequence<PrimitiveParameter> sequence(Set<String> propIds,
+            List<PrimitiveParameter> collected) {
+        this.newRuns.clear();
+        Sequence<PrimitiveParameter> seq = new Sequence<>(propIds);
+        for (PrimitiveParameter param : this.index.update(collected)) {
+            seq.add(param);
+        }
+        return seq;
+    }
+
+    /**
+     * Gets the run from the last time the rule fired whose sequence started
+     * with the same primitive parameter as a new sequence.
+     *
+     * @param seq a new sequence.
+     * @return the run, or <code>null</code> if there is none.
+     */
+    LowLevelAbstractionFinder.Run previousRun(
+            Sequence<PrimitiveParameter> seq) {
+        return seq.isEmpty() ? null : this.runs.get(seq.get(0));
+    }
+
+    /**
+     * Keeps a run for the next time the rule fires.
+     *
+     * @param run a run, or <code>null</code>.
+     */
+    void addRun(LowLevelAbstractionFinder.Run run) {
+        if (run != null && !run.getSequence().isEmpty()) {
+            this.newRuns.put(run.getSequence().get(0), run);
+        }
+    }
+
+    /**
+     * Replaces the runs from the last time the rule fired with the ones kept
+     * by {@link #addRun} since.
+     */
+    void finishRuns() {
+        Map<PrimitiveParameter, LowLevelAbstractionFinder.Run> oldRuns =
+                this.runs;
+        this.runs = this.newRuns;
+        oldRuns.clear();
+        this.newRuns = oldRuns;
+    }
+}
@@ -0,0 +1,296 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A blocking FIFO queue between two stages of the query pipeline that is
+ * bounded by both the number of elements and their estimated size in bytes.
+ * An element is always accepted when the queue is empty, so that a single
+ * element that is larger than the memory bound does not block forever. The
+ * queue keeps simple occupancy statistics for logging.
+ *
+ * @param <E> the type of element.
+ * @author Andrew Post
+ */
+final class MemoryBoundedQueue<E> {
+
+    /**
+     * Estimates the size of an element in bytes.
+     *
+     * @param <E> the type of element.
+     */
+    interface Weigher<E> {
+
+        long weigh(E element);
+    }
+
+    private final ArrayDeque<Entry<E>> elements;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private final int capacity;
+    private final long memoryCapacity;
+    private final Weigher<? super E> weigher;
+    private long bytes;
+    private int maxSize;
+    private long maxBytes;
+    private long putCount;
+    private long putWaitCount;
+    private long takeWaitCount;
+
+    /**
+     * Creates a queue.
+     *
+     * @param capacity the maximum number of elements. Must be positive.
+     * @param memoryCapacity the maximum estimated size of the elements in
+     * bytes. Must be positive.
+     * @param weigher estimates the size of each element. Cannot be
+     * <code>null</code>.
+     */
+    MemoryBoundedQueue(int capacity, long memoryCapacity,
+            Weigher<? super E> weigher) {
+        assert capacity > 0 : "capacity must be positive";
+        assert memoryCapacity > 0 : "memoryCapacity must be positive";
+        assert weigher != null : "weigher cannot be null";
+        this.elements = new ArrayDeque<>();
+        this.lock = new ReentrantLock();
+        this.notEmpty = this.lock.newCondition();
+        this.notFull = this.lock.newCondition();
+        this.capacity = capacity;
+        this.memoryCapacity = memoryCapacity;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Adds an element to the tail of the queue, waiting for space if
+     * necessary.
+     *
+     * @param element the element. Cannot be <code>null</code>.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    void put(E element) throws InterruptedException {
+        assert element != null : "element cannot be null";
+        long weight = Math.max(0L, this.weigher.weigh(element));
+        this.lock.lockInterruptibly();
+        try {
+            if (!hasRoomFor(weight)) {
+                this.putWaitCount++;
+                do {
+                    this.notFull.await();
+                } while (!hasRoomFor(weight));
+            }
+            enqueue(element, weight);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an element to the tail of the queue if there is space for it.
+     *
+     * @param element the element. Cannot be <code>null</code>.
+     * @return <code>true</code> if the element was added, <code>false</code>
+     * if the queue is full.
+     */
+    boolean offer(E element) {
+        assert element != null : "element cannot be null";
+        long weight = Math.max(0L, this.weigher.weigh(element));
+        this.lock.lock();
+        try {
+            if (!hasRoomFor(weight)) {
+                return false;
+            }
+            enqueue(element, weight);
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the element at the head of the queue, waiting for one if
+     * necessary.
+     *
+     * @return the element.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    E take() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            if (this.elements.isEmpty()) {
+                this.takeWaitCount++;
+                do {
+                    this.notEmpty.await();
+                } while (this.elements.isEmpty());
+            }
+            Entry<E> entry = this.elements.poll();
+            this.bytes -= entry.weight;
+            this.notFull.signalAll();
+            return entry.element;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all of the elements from the queue.
+     */
+    void clear() {
+        this.lock.lock();
+        try {
+            this.elements.clear();
+            this.bytes = 0L;
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    int size() {
+        this.lock.lock();
+        try {
+            return this.elements.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the estimated size in bytes of the elements in the queue.
+     *
+     * @return a number of bytes.
+     */
+    long getBytes() {
+        this.lock.lock();
+        try {
+            return this.bytes;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    int getMaxSize() {
+        this.lock.lock();
+        try {
+            return this.maxSize;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    long getMaxBytes() {
+        this.lock.lock();
+        try {
+            return this.maxBytes;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of elements that have been added to the queue.
+     *
+     * @return a number of elements.
+     */
+    long getPutCount() {
+        this.lock.lock();
+        try {
+            return this.putCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of times that a producer waited for space.
+     *
+     * @return a number of waits.
+     */
+    long getPutWaitCount() {
+        this.lock.lock();
+        try {
+            return this.putWaitCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of times that a consumer waited for an element.
+     *
+     * @return a number of waits.
+     */
+    long getTakeWaitCount() {
+        this.lock.lock();
+        try {
+            return this.takeWaitCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        this.lock.lock();
+        try {
+            return "puts=" + this.putCount + ", maxSize=" + this.maxSize
+                    + "/" + this.capacity + ", maxBytes=" + this.maxBytes
+                    + "/" + this.memoryCapacity + ", producerWaits="
+                    + this.putWaitCount + ", consumerWaits="
+                    + this.takeWaitCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private boolean hasRoomFor(long weight) {
+        return this.elements.isEmpty()
+                || (this.elements.size() < this.capacity
+                && this.bytes + weight <= this.memoryCapacity);
+    }
+
+    private void enqueue(E element, long weight) {
+        this.elements.add(new Entry<>(element, weight));
+        this.bytes += weight;
+        this.putCount++;
+        if (this.elements.size() > this.maxSize) {
+            this.maxSize = this.elements.size();
+        }
+        if (this.bytes > this.maxBytes) {
+            this.maxBytes = this.bytes;
+        }
+        this.notEmpty.signal();
+    }
+
+    private static final class Entry<E> {
+
+        private final E element;
+        private final long weight;
+
+        Entry(E element, long weight) {
+            this.element = element;
+            this.weight = weight;
+        }
+    }
+}
@@ -87,15 +87,31 @@ class PropositionCopier extends AbstractPropositionVisitor implements Serializab
      */
     void grab(KnowledgeHelper kh) {
         assert kh != null : "kh cannot be null";
+        grab(kh, new ProviderBasedUniqueIdFactory(
+                new JBossRulesDerivedLocalUniqueIdValuesProvider(
+                kh.getWorkingMemory(), this.propId)));
+    }
+
+    /**
+     * Grabs this copier for use by a Drools consequence that already has a
+     * factory for the copies' unique ids.
+     * 
+     * @param kh the consequence's {@link KnowledgeHelper}. Cannot be
+     * <code>null</code>.
+     * @param uniqueIdFactory a factory for unique ids of this copier's
+     * proposition id in the consequence's working memory. Cannot be
+     * <code>null</code>.
+     */
+    void grab(KnowledgeHelper kh, UniqueIdFactory uniqueIdFactory) {
+        assert kh != null : "kh cannot be null";
+        assert uniqueIdFactory != null : "uniqueIdFactory cannot be null";
         assert this.kh == null : "The previous user of this copier forgot to call release!";
         if (this.kh != null) {
             LOGGER.log(Level.WARNING, 
                     "The previous user of this copier forgot to call release. This causes a memory leak!");
         }
         this.kh = kh;
-        this.uniqueIdProvider = 
-                new ProviderBasedUniqueIdFactory(new JBossRulesDerivedLocalUniqueIdValuesProvider(this.kh.getWorkingMemory(), 
-                        this.propId));
+        this.uniqueIdProvider = uniqueIdFactory;
     }
     
     /**
@@ -103,6 +119,7 @@ class PropositionCopier extends AbstractPropositionVisitor implements Serializab
      */
     void release() {
         this.kh = null;
+        this.uniqueIdProvider = null;
     }
 
     /**
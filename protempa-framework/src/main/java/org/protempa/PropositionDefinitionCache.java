@@ -37,6 +37,7 @@ import java.util.Set;
 public class PropositionDefinitionCache {
 
     private final Map<String, PropositionDefinition> cache;
+    private long version;
 
     public PropositionDefinitionCache(Collection<? extends PropositionDefinition> propDefs) {
         this.cache = new HashMap<>();
@@ -54,7 +55,9 @@ public class PropositionDefinitionCache {
     public void merge(PropositionDefinitionCache otherCache) {
         if (otherCache != null) {
             for (Map.Entry<String, PropositionDefinition> me : otherCache.cache.entrySet()) {
-                this.cache.putIfAbsent(me.getKey(), me.getValue());
+                if (this.cache.putIfAbsent(me.getKey(), me.getValue()) == null) {
+                    this.version++;
+                }
             }
         }
     }
@@ -77,7 +80,23 @@ public class PropositionDefinitionCache {
     }
     
     public PropositionDefinition remove(String id) {
-        return this.cache.remove(id);
+        PropositionDefinition result = this.cache.remove(id);
+        if (result != null) {
+            this.version++;
+        }
+        return result;
+    }
+
+    /**
+     * Gets a number that changes every time proposition definitions are
+     * added to or removed from this cache. Callers that persist the cache may
+     * use it to skip writing a cache that has not changed since they last
+     * wrote it.
+     *
+     * @return the version.
+     */
+    public long getVersion() {
+        return this.version;
     }
 
     public Set<String> collectPropIdDescendantsUsingInverseIsA(String... propIds) throws QueryException {
@@ -36,10 +36,13 @@ final class QueueObject {
     Map<Proposition, Set<Proposition>> backwardDerivations;
     String keyId;
     Map<UniqueId, Proposition> refs;
+    long sequenceNumber;
+    boolean skipped;
 
-    QueueObject(String keyId, List<Proposition> propositions, 
+    QueueObject(long sequenceNumber, String keyId, List<Proposition> propositions, 
             Map<Proposition, Set<Proposition>> forwardDerivations, 
             Map<Proposition, Set<Proposition>> backwardDerivations, Map<UniqueId, Proposition> refs) {
+        this.sequenceNumber = sequenceNumber;
         this.propositions = propositions;
         this.forwardDerivations = forwardDerivations;
         this.backwardDerivations = backwardDerivations;
@@ -47,6 +50,19 @@ final class QueueObject {
         this.refs = refs;
     }
 
+    /**
+     * Creates a placeholder for a key that failed processing, so that the
+     * query results handler thread does not wait for it.
+     * 
+     * @param sequenceNumber the key's position in the data source's output.
+     * @param keyId the key id.
+     */
+    QueueObject(long sequenceNumber, String keyId) {
+        this.sequenceNumber = sequenceNumber;
+        this.keyId = keyId;
+        this.skipped = true;
+    }
+
     QueueObject() {
     }
     
@@ -23,7 +23,6 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang3.StringUtils;
@@ -41,23 +40,44 @@ class RetrieveDataThread extends AbstractThread {
 
     private static final Logger LOGGER = Logger.getLogger(RetrieveDataThread.class.getName());
 
-    private final BlockingQueue<DataStreamingEvent<Proposition>> queue;
-    private final DataStreamingEvent<Proposition> poisonPill;
+    private final MemoryBoundedQueue<List<DataStreamingEvent<Proposition>>> queue;
+    private final List<DataStreamingEvent<Proposition>> poisonPill;
+    private final int batchSize;
+    private final long batchMemory;
     private final List<QueryException> exceptions;
     private final PropositionDefinitionCache propositionDefinitionCache;
     private final DataSource dataSource;
     private final QueryResultsHandler queryResultsHandler;
     private final Filter filters;
 
-    RetrieveDataThread(BlockingQueue<DataStreamingEvent<Proposition>> queue,
-            DataStreamingEvent<Proposition> poisonPill, Query query,
+    /**
+     * Creates a thread for retrieving data from the data source. Keys are put
+     * on the queue in batches, so that keys with little data do not each pay
+     * the cost of a hand-off to the do process threads. A batch is put on the
+     * queue as soon as it has <code>batchSize</code> keys or its estimated
+     * size reaches <code>batchMemory</code> bytes, so a key with a lot of data
+     * usually gets a batch to itself.
+     *
+     * @param queue the do process queue.
+     * @param poisonPill the batch to put on the queue after the last key.
+     * @param batchSize the maximum number of keys in a batch.
+     * @param batchMemory the estimated size in bytes at which a batch is put
+     * on the queue even if it has fewer than <code>batchSize</code> keys.
+     */
+    RetrieveDataThread(MemoryBoundedQueue<List<DataStreamingEvent<Proposition>>> queue,
+            List<DataStreamingEvent<Proposition>> poisonPill,
+            int batchSize, long batchMemory, Query query,
             DataSource dataSource, 
             PropositionDefinitionCache propositionDefinitionCache,
             Filter filters,
             QueryResultsHandler queryResultsHandler) throws QueryException {
         super(query, LOGGER, "protempa.executor.RetrieveDataThread");
+        assert batchSize > 0 : "batchSize must be positive";
+        assert batchMemory > 0 : "batchMemory must be positive";
         this.queue = queue;
         this.poisonPill = poisonPill;
+        this.batchSize = batchSize;
+        this.batchMemory = batchMemory;
         this.exceptions = new ArrayList<>();
         this.dataSource = dataSource;
         this.propositionDefinitionCache = propositionDefinitionCache;
@@ -76,8 +96,21 @@ class RetrieveDataThread extends AbstractThread {
         DataStreamingEventIterator<Proposition> itr = null;
         try {
             itr = newDataIterator();
+            List<DataStreamingEvent<Proposition>> batch = new ArrayList<>();
+            long batchBytes = 0L;
             while (!isInterrupted() && itr.hasNext()) {
-                queue.put(itr.next());
+                DataStreamingEvent<Proposition> dse = itr.next();
+                batch.add(dse);
+                batchBytes += Executor.estimateBytes(dse.getData().size());
+                if (batch.size() >= this.batchSize
+                        || batchBytes >= this.batchMemory) {
+                    queue.put(batch);
+                    batch = new ArrayList<>();
+                    batchBytes = 0L;
+                }
+            }
+            if (!batch.isEmpty()) {
+                queue.put(batch);
             }
             itr.close();
             queue.put(poisonPill);
@@ -0,0 +1,570 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.drools.rule.Rule;
+import org.protempa.proposition.interval.Relation;
+
+/**
+ * Stores the rules that {@link JBossRuleCreator} creates on disk, so that a
+ * later query with the same proposition definitions and algorithms can skip
+ * translating them into rules. Caching is enabled by setting the
+ * {@link #DIRECTORY_PROPERTY} system property.
+ *
+ * The cached rules are stored under a fingerprint of the rule creator's
+ * input: the proposition definitions to translate, all of the proposition
+ * definitions that the rules may refer to, and the low-level abstraction
+ * definitions' algorithms. The fingerprint is computed from the contents of
+ * those objects, not their serialized form, so that it does not depend on
+ * the iteration order of hash-based collections or on when the knowledge
+ * source read the definitions. Changing any definition or algorithm changes
+ * the fingerprint, and the rules are then created anew. The fingerprint also
+ * includes a digest of Protempa's class files, so that rules are created anew
+ * when the code that creates them changes. If the class files cannot be read,
+ * rules are not cached.
+ *
+ * The rules are stored together with the conflict resolver, which refers to
+ * them. Their consequences refer to the {@link DerivationsBuilder} of the
+ * execution strategy that created them, which is replaced with the
+ * derivations builder of the execution strategy that reads them.
+ *
+ * @author Andrew Post
+ */
+final class RuleBaseCache {
+
+    private static final Logger LOGGER = Logger.getLogger(RuleBaseCache.class.getName());
+
+    /**
+     * System property for the directory in which to cache rules. If not set,
+     * rules are not cached.
+     */
+    static final String DIRECTORY_PROPERTY = "protempa.ruleBaseCache.dir";
+
+    /**
+     * The package whose class files are digested into the fingerprint.
+     */
+    private static final String CODE_PACKAGE = "org/protempa/";
+
+    private static final String FILE_SUFFIX = ".rules";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static byte[] codeDigest;
+    private static boolean codeDigested;
+
+    private final Path directory;
+
+    /**
+     * Returns the cache in the directory that the {@link #DIRECTORY_PROPERTY}
+     * system property specifies.
+     *
+     * @return a cache, or <code>null</code> if the system property is not
+     * set or Protempa's class files cannot be read.
+     */
+    static RuleBaseCache getInstance() {
+        String dir = System.getProperty(DIRECTORY_PROPERTY);
+        if (dir == null || dir.isEmpty()) {
+            return null;
+        }
+        if (codeDigest() == null) {
+            return null;
+        }
+        return new RuleBaseCache(Paths.get(dir));
+    }
+
+    RuleBaseCache(Path directory) {
+        assert directory != null : "directory cannot be null";
+        this.directory = directory;
+    }
+
+    /**
+     * Digests the class files in Protempa's package and its subpackages, in
+     * the jar file or directory from which they were loaded. The digest is
+     * computed once.
+     *
+     * @return the digest, or <code>null</code> if the class files could not
+     * be read.
+     */
+    static synchronized byte[] codeDigest() {
+        if (!codeDigested) {
+            codeDigested = true;
+            try {
+                CodeSource codeSource = JBossRuleCreator.class
+                        .getProtectionDomain().getCodeSource();
+                if (codeSource == null || codeSource.getLocation() == null) {
+                    LOGGER.log(Level.WARNING,
+                            "Could not locate Protempa's class files; not caching rules");
+                    return null;
+                }
+                Path location = Paths.get(codeSource.getLocation().toURI());
+                MessageDigest md = newMessageDigest();
+                if (Files.isDirectory(location)) {
+                    digestDirectory(md, location);
+                } else {
+                    digestJarFile(md, location);
+                }
+                codeDigest = md.digest();
+            } catch (IOException | URISyntaxException
+                    | IllegalArgumentException ex) {
+                LOGGER.log(Level.WARNING,
+                        "Could not read Protempa's class files; not caching rules",
+                        ex);
+            }
+        }
+        return codeDigest;
+    }
+
+    private static void digestDirectory(MessageDigest md, Path root)
+            throws IOException {
+        Path dir = root.resolve(CODE_PACKAGE);
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            files = paths.filter(p -> p.toString().endsWith(".class"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            Fingerprinter.updateString(md,
+                    root.relativize(file).toString().replace('\\', '/'));
+            md.update(Files.readAllBytes(file));
+        }
+    }
+
+    private static void digestJarFile(MessageDigest md, Path jar)
+            throws IOException {
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            List<JarEntry> entries = new ArrayList<>();
+            for (Enumeration<JarEntry> e = jarFile.entries();
+                    e.hasMoreElements();) {
+                JarEntry entry = e.nextElement();
+                String name = entry.getName();
+                if (name.startsWith(CODE_PACKAGE) && name.endsWith(".class")) {
+                    entries.add(entry);
+                }
+            }
+            entries.sort(Comparator.comparing(JarEntry::getName));
+            byte[] buf = new byte[8192];
+            for (JarEntry entry : entries) {
+                Fingerprinter.updateString(md, entry.getName());
+                try (InputStream in = jarFile.getInputStream(entry)) {
+                    int n;
+                    while ((n = in.read(buf)) != -1) {
+                        md.update(buf, 0, n);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a rule creator's input.
+     *
+     * @param ruleCreator a rule creator. Cannot be <code>null</code>.
+     * @return the fingerprint, as a string of hexadecimal digits.
+     */
+    String fingerprint(JBossRuleCreator ruleCreator) {
+        MessageDigest md = newMessageDigest();
+        Fingerprinter fingerprinter = new Fingerprinter();
+        byte[] code = codeDigest();
+        if (code != null) {
+            md.update(code);
+        }
+        fingerprinter.updateUnordered(md,
+                ruleCreator.getPropositionDefinitions());
+        fingerprinter.updateUnordered(md, ruleCreator.getCache().getAll());
+        Map<LowLevelAbstractionDefinition, Algorithm> algorithms
+                = ruleCreator.getAlgorithms();
+        if (algorithms != null) {
+            fingerprinter.update(md, algorithms);
+        }
+        return toHex(md.digest());
+    }
+
+    /**
+     * Reads cached rules.
+     *
+     * @param fingerprint the fingerprint of the rule creator's input.
+     * @param derivationsBuilder the derivations builder for the rules'
+     * consequences to use.
+     * @return the cached rules, or <code>null</code> if there are none or
+     * they could not be read.
+     */
+    CachedRules get(String fingerprint,
+            DerivationsBuilder derivationsBuilder) {
+        Path file = this.directory.resolve(fingerprint + FILE_SUFFIX);
+        try (InputStream in = new BufferedInputStream(
+                Files.newInputStream(file));
+                ObjectInputStream ois
+                = new DerivationsBuilderResolvingInputStream(in,
+                        derivationsBuilder)) {
+            CachedRules result = (CachedRules) ois.readObject();
+            LOGGER.log(Level.FINE, "Read cached rules from {0}", file);
+            return result;
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            LOGGER.log(Level.WARNING,
+                    "Could not read cached rules from " + file
+                    + "; creating them anew", ex);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignore) {
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Caches rules. Failure to cache is logged and otherwise ignored.
+     *
+     * @param fingerprint the fingerprint of the rule creator's input.
+     * @param cachedRules the rules. They must not have been added to a rule
+     * base yet.
+     */
+    void put(String fingerprint, CachedRules cachedRules) {
+        Path file = this.directory.resolve(fingerprint + FILE_SUFFIX);
+        Path tmpFile = null;
+        try {
+            Files.createDirectories(this.directory);
+            tmpFile = Files.createTempFile(this.directory, fingerprint,
+                    ".tmp");
+            try (OutputStream out = new BufferedOutputStream(
+                    Files.newOutputStream(tmpFile));
+                    ObjectOutputStream oos = new ObjectOutputStream(out)) {
+                oos.writeObject(cachedRules);
+            }
+            try {
+                Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmpFile, file,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmpFile = null;
+            LOGGER.log(Level.FINE, "Cached rules in {0}", file);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not cache rules in " + file, ex);
+        } finally {
+            if (tmpFile != null) {
+                try {
+                    Files.deleteIfExists(tmpFile);
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new AssertionError("SHA-256 is not available", ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /**
+     * The rules and the conflict resolver that refers to them.
+     */
+    static final class CachedRules implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Rule> rules;
+        private final PROTEMPAConflictResolver conflictResolver;
+
+        CachedRules(List<Rule> rules,
+                PROTEMPAConflictResolver conflictResolver) {
+            this.rules = rules;
+            this.conflictResolver = conflictResolver;
+        }
+
+        List<Rule> getRules() {
+            return rules;
+        }
+
+        PROTEMPAConflictResolver getConflictResolver() {
+            return conflictResolver;
+        }
+    }
+
+    private static final class DerivationsBuilderResolvingInputStream
+            extends ObjectInputStream {
+
+        private final DerivationsBuilder derivationsBuilder;
+
+        DerivationsBuilderResolvingInputStream(InputStream in,
+                DerivationsBuilder derivationsBuilder) throws IOException {
+            super(in);
+            this.derivationsBuilder = derivationsBuilder;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (obj instanceof DerivationsBuilder) {
+                return this.derivationsBuilder;
+            }
+            return obj;
+        }
+    }
+
+    /**
+     * Feeds the contents of an object graph to a message digest. Objects are
+     * traversed by reflection, except for strings, boxed primitives, enums,
+     * dates, arrays, collections and maps, and other classes in the
+     * <code>java</code> and <code>javax</code> packages, which contribute
+     * their string representation. The elements of sets and the entries of
+     * maps are digested separately and fed in sorted order. Static and
+     * transient fields are skipped, as are cached hash codes and when a
+     * proposition definition was accessed or downloaded. The state that
+     * high-level abstraction definitions and compound low-level abstraction
+     * definitions keep in transient fields is fed through their accessors.
+     */
+    private static final class Fingerprinter {
+
+        private static final byte NULL = 0;
+        private static final byte CYCLE = 1;
+        private static final byte OBJECT = 2;
+        private static final Comparator<byte[]> DIGEST_COMPARATOR
+                = (byte[] d1, byte[] d2) -> {
+                    for (int i = 0; i < d1.length; i++) {
+                        int c = Byte.compare(d1[i], d2[i]);
+                        if (c != 0) {
+                            return c;
+                        }
+                    }
+                    return 0;
+                };
+        private static final Map<Class<?>, Field[]> FIELDS
+                = new ConcurrentHashMap<>();
+
+        private final IdentityHashMap<Object, Boolean> inProgress;
+
+        Fingerprinter() {
+            this.inProgress = new IdentityHashMap<>();
+        }
+
+        void update(MessageDigest md, Object o) {
+            if (o == null) {
+                md.update(NULL);
+                return;
+            }
+            Class<?> cls = o.getClass();
+            md.update(OBJECT);
+            updateString(md, cls.getName());
+            if (o instanceof String || o instanceof Number
+                    || o instanceof Boolean || o instanceof Character) {
+                updateString(md, o.toString());
+            } else if (o instanceof Enum) {
+                updateString(md, ((Enum<?>) o).name());
+            } else if (o instanceof Class) {
+                updateString(md, ((Class<?>) o).getName());
+            } else if (o instanceof Date) {
+                updateString(md, Long.toString(((Date) o).getTime()));
+            } else if (this.inProgress.put(o, Boolean.TRUE) != null) {
+                md.update(CYCLE);
+            } else {
+                try {
+                    if (cls.isArray()) {
+                        int length = Array.getLength(o);
+                        updateString(md, Integer.toString(length));
+                        for (int i = 0; i < length; i++) {
+                            update(md, Array.get(o, i));
+                        }
+                    } else if (o instanceof Set) {
+                        updateUnordered(md, (Set<?>) o);
+                    } else if (o instanceof Map) {
+                        updateUnordered(md, (Map<?, ?>) o);
+                    } else if (o instanceof Collection) {
+                        Collection<?> c = (Collection<?>) o;
+                        updateString(md, Integer.toString(c.size()));
+                        for (Object e : c) {
+                            update(md, e);
+                        }
+                    } else if (isJavaClass(cls)) {
+                        updateString(md, o.toString());
+                    } else {
+                        for (Field field : fieldsOf(cls)) {
+                            update(md, field.get(o));
+                        }
+                        updateTransientState(md, o);
+                    }
+                } catch (IllegalAccessException ex) {
+                    throw new AssertionError(ex);
+                } finally {
+                    this.inProgress.remove(o);
+                }
+            }
+        }
+
+        private void updateTransientState(MessageDigest md, Object o) {
+            if (o instanceof HighLevelAbstractionDefinition) {
+                HighLevelAbstractionDefinition def
+                        = (HighLevelAbstractionDefinition) o;
+                updateUnordered(md, def.getExtendedPropositionDefinitions());
+                Map<List<TemporalExtendedPropositionDefinition>, Relation> relations
+                        = new HashMap<>();
+                for (List<TemporalExtendedPropositionDefinition> pair
+                        : def.getTemporalExtendedPropositionDefinitionPairs()) {
+                    relations.put(pair, def.getRelation(pair));
+                }
+                updateUnordered(md, relations);
+            } else if (o instanceof CompoundLowLevelAbstractionDefinition) {
+                update(md, ((CompoundLowLevelAbstractionDefinition) o)
+                        .getValueClassifications());
+            }
+        }
+
+        void updateUnordered(MessageDigest md, Collection<?> c) {
+            byte[][] digests = new byte[c.size()][];
+            int i = 0;
+            for (Object e : c) {
+                MessageDigest elementMd = newMessageDigest();
+                update(elementMd, e);
+                digests[i++] = elementMd.digest();
+            }
+            updateSorted(md, digests);
+        }
+
+        private void updateUnordered(MessageDigest md, Map<?, ?> m) {
+            byte[][] digests = new byte[m.size()][];
+            int i = 0;
+            for (Map.Entry<?, ?> me : m.entrySet()) {
+                MessageDigest entryMd = newMessageDigest();
+                update(entryMd, me.getKey());
+                update(entryMd, me.getValue());
+                digests[i++] = entryMd.digest();
+            }
+            updateSorted(md, digests);
+        }
+
+        private static void updateSorted(MessageDigest md, byte[][] digests) {
+            Arrays.sort(digests, DIGEST_COMPARATOR);
+            updateString(md, Integer.toString(digests.length));
+            for (byte[] digest : digests) {
+                md.update(digest);
+            }
+        }
+
+        static void updateString(MessageDigest md, String str) {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            int length = bytes.length;
+            md.update(new byte[]{(byte) (length >>> 24),
+                (byte) (length >>> 16), (byte) (length >>> 8),
+                (byte) length});
+            md.update(bytes);
+        }
+
+        private static boolean isJavaClass(Class<?> cls) {
+            String name = cls.getName();
+            return name.startsWith("java.") || name.startsWith("javax.")
+                    || name.startsWith("sun.") || name.startsWith("jdk.");
+        }
+
+        private static Field[] fieldsOf(Class<?> cls) {
+            Field[] result = FIELDS.get(cls);
+            if (result == null) {
+                List<Field> fields = new ArrayList<>();
+                for (Class<?> c = cls; c != null && c != Object.class;
+                        c = c.getSuperclass()) {
+                    Field[] declared = c.getDeclaredFields();
+                    Arrays.sort(declared,
+                            Comparator.comparing(Field::getName));
+                    for (Field field : declared) {
+                        if (isFingerprinted(field)) {
+                            field.setAccessible(true);
+                            fields.add(field);
+                        }
+                    }
+                }
+                result = fields.toArray(new Field[fields.size()]);
+                FIELDS.put(cls, result);
+            }
+            return result;
+        }
+
+        private static boolean isFingerprinted(Field field) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers)
+                    || Modifier.isTransient(modifiers)
+                    || field.isSynthetic()) {
+                return false;
+            }
+            String name = field.getName();
+            if (name.equals("hashCode")) {
+                return false;
+            }
+            return !(field.getDeclaringClass() == AbstractPropositionDefinition.class
+                    && (name.equals("accessed") || name.equals("downloaded")));
+        }
+    }
+}
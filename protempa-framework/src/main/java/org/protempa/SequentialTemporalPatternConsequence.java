@@ -19,14 +19,9 @@
  */
 package org.protempa;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.arp.javautil.arrays.Arrays;
 import org.drools.FactException;
 
 import org.drools.WorkingMemory;
@@ -35,7 +30,6 @@ import org.drools.spi.KnowledgeHelper;
 import org.protempa.SequentialTemporalPatternDefinition.SubsequentTemporalExtendedPropositionDefinition;
 import org.protempa.proposition.AbstractParameter;
 import org.protempa.proposition.Proposition;
-import org.protempa.proposition.ProviderBasedUniqueIdFactory;
 import org.protempa.proposition.Segment;
 import org.protempa.proposition.Sequence;
 import org.protempa.proposition.TemporalProposition;
@@ -53,9 +47,12 @@ class SequentialTemporalPatternConsequence implements Consequence {
     private final SequentialTemporalPatternDefinition def;
     private final TemporalExtendedPropositionDefinition[] epds;
     private final DerivationsBuilder derivationsBuilder;
-    private int parameterMapCapacity;
-    private List<List<TemporalExtendedPropositionDefinition>> epdPairs;
-    private Map<List<TemporalExtendedPropositionDefinition>, Relation> epdToRelation;
+    /*
+     * The proposition id that each position of the pattern must have, and
+     * the relation between each position and the next.
+     */
+    private final String[] propIds;
+    private final Relation[] relations;
 
     /**
      *
@@ -74,103 +71,87 @@ class SequentialTemporalPatternConsequence implements Consequence {
         assert epds != null : "epds cannot be null";
         assert epds.length > 0 : "epds must be > 0";
         epds[0] = def.getFirstTemporalExtendedPropositionDefinition();
+        assert epds[0] != null : 
+                "mainTemporalExtendedPropositionDefinition cannot be null";
+        this.relations = new Relation[relatedTemporalExtendedPropositionDefinitions.length];
         for (int i = 1; i < epds.length; i++) {
             epds[i] = 
                     relatedTemporalExtendedPropositionDefinitions[i - 1].getRelatedTemporalExtendedPropositionDefinition();
+            this.relations[i - 1] =
+                    relatedTemporalExtendedPropositionDefinitions[i - 1].getRelation();
         }
         this.epds = epds;
-        this.derivationsBuilder = derivationsBuilder;
-        this.parameterMapCapacity = this.epds.length * 4 / 3 + 1;
-        this.epdPairs = 
-                new ArrayList<>();
-        this.epdToRelation = 
-                new HashMap<>(
-                this.parameterMapCapacity);
-        TemporalExtendedPropositionDefinition lhs = 
-                def.getFirstTemporalExtendedPropositionDefinition();
-        assert lhs != null : 
-                "mainTemporalExtendedPropositionDefinition cannot be null";
-        for (SubsequentTemporalExtendedPropositionDefinition rhsr :
-                def.getSubsequentTemporalExtendedPropositionDefinitions()) {
-            TemporalExtendedPropositionDefinition rhs = 
-                    rhsr.getRelatedTemporalExtendedPropositionDefinition();
-            List<TemporalExtendedPropositionDefinition> asList =
-                    Arrays.asList(
-                    new TemporalExtendedPropositionDefinition[]{
-                        lhs,
-                        rhs
-                    });
-            this.epdPairs.add(asList);
-            this.epdToRelation.put(asList, rhsr.getRelation());
-            lhs = rhs;
+        this.propIds = new String[epds.length];
+        for (int i = 0; i < epds.length; i++) {
+            this.propIds[i] = epds[i].getPropositionId();
         }
+        this.derivationsBuilder = derivationsBuilder;
     }
 
     @Override
     public void evaluate(KnowledgeHelper knowledgeHelper, WorkingMemory arg1)
             throws Exception {
         @SuppressWarnings("unchecked")
-        List<TemporalProposition> tps = 
+        List<TemporalProposition> collected = 
                 (List<TemporalProposition>) knowledgeHelper
                 .get(knowledgeHelper.getDeclaration("result"));
-        Collections.sort(tps, ProtempaUtil.TEMP_PROP_COMP);
+        TemporalPropositionIndex<TemporalProposition> index =
+                TemporalPropositionIndex.get(arg1, this.def.getPropositionId());
+        List<TemporalProposition> tps = index.update(collected);
+        UniqueIdFactory factory =
+                index.getUniqueIdFactory(arg1, this.def.getPropositionId());
 
         int i = 0;
-        Map<TemporalExtendedPropositionDefinition, TemporalProposition> propositionMap =
-                    new HashMap<>(this.parameterMapCapacity);
-        
-        JBossRulesDerivedLocalUniqueIdValuesProvider provider = new JBossRulesDerivedLocalUniqueIdValuesProvider(arg1, def.getPropositionId());
-        UniqueIdFactory factory = new ProviderBasedUniqueIdFactory(provider);
+        int l = this.epds.length;
         
         TOP_LEVEL:
-        for (int l = this.epds.length, n = tps.size() - l + 1; i < n; i++) {
-            List<TemporalProposition> subList = tps.subList(i, i + l);
-
+        for (int n = tps.size() - l + 1; i < n; i++) {
             /*
-             * For constructing a map of extended proposition definition to actual
-             * temporal proposition.
-             */
-            
-            /*
-             * Populate the map.
+             * Check that each proposition in the window has its position's
+             * proposition id and has the specified temporal relation with the
+             * next one.
              */
             for (int j = 0; j < l; j++) {
-                TemporalProposition p = subList.get(j);
-                if (!p.getId().equals(epds[j].getPropositionId())) {
+                if (!tps.get(i + j).getId().equals(this.propIds[j])) {
                     continue TOP_LEVEL;
                 }
-                propositionMap.put(epds[j], p);
             }
-
-            /*
-             * Check for the presence of the specified temporal relations.
-             */
-            if (HighLevelAbstractionFinder.find(this.epdToRelation,
-                    this.epdPairs, propositionMap)) {
-                assertProposition(subList, knowledgeHelper, factory.getInstance());
+            if (hasRelations(tps, i, l)) {
+                assertProposition(tps.subList(i, i + l), knowledgeHelper,
+                        factory.getInstance());
             }
         }
         
         if (this.def.isAllowPartialMatches()) {
-            List<TemporalProposition> subList = tps.subList(i, tps.size());
-            propositionMap.clear();
-            for (int j = 0, n = subList.size(); j < n; j++) {
-                propositionMap.put(epds[j], subList.get(j));
+            int n = tps.size() - i;
+            if (hasRelations(tps, i, n)) {
+                assertProposition(tps.subList(i, i + n), knowledgeHelper,
+                        factory.getInstance());
             }
-            for (int j = 0, n = this.epdPairs.size(); j < n; j++) {
-                List<TemporalExtendedPropositionDefinition> pair = 
-                        this.epdPairs.get(j);
-                TemporalProposition a1 = propositionMap.get(pair.get(0));
-                TemporalProposition a2 = propositionMap.get(pair.get(1));
-                if (a1 != null && a2 != null) {
-                    if (!this.epdToRelation.get(pair).hasRelation(
-                            a1.getInterval(), a2.getInterval())) {
-                        return;
-                    }
-                }
+        }
+    }
+
+    /**
+     * Checks the temporal relations between the propositions in a window of
+     * a time-ordered list and the pattern's first positions.
+     *
+     * @param tps the time-ordered propositions.
+     * @param offset the index of the window's first proposition.
+     * @param length the number of propositions in the window, at most the
+     * number of positions in the pattern.
+     * @return <code>true</code> if every proposition in the window has the
+     * specified temporal relation with the next one.
+     */
+    private boolean hasRelations(List<TemporalProposition> tps, int offset,
+            int length) {
+        for (int j = 0; j < length - 1; j++) {
+            if (!this.relations[j].hasRelation(
+                    tps.get(offset + j).getInterval(),
+                    tps.get(offset + j + 1).getInterval())) {
+                return false;
             }
-            assertProposition(subList, knowledgeHelper, factory.getInstance());
         }
+        return true;
     }
 
     private void assertProposition(List<TemporalProposition> subList, 
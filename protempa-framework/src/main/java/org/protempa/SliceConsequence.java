@@ -20,17 +20,13 @@
 package org.protempa;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.ListIterator;
 
 import org.drools.WorkingMemory;
 import org.drools.spi.Consequence;
 import org.drools.spi.KnowledgeHelper;
 import org.protempa.proposition.AbstractParameter;
 import org.protempa.proposition.Proposition;
-import org.protempa.proposition.ProviderBasedUniqueIdFactory;
 import org.protempa.proposition.Segment;
 import org.protempa.proposition.Sequence;
 import org.protempa.proposition.TemporalProposition;
@@ -54,7 +50,7 @@ final class SliceConsequence implements Consequence {
     /*
      * A sublist index range for performing the slice. This will not necessarily
      * be the same as the {@link SliceDefinition}'s index range. If the slice
-     * definition's min index is negative, the input propositions are sorted in
+     * definition's min index is negative, the input propositions are read in
      * reverse chronological order, and these two fields will store the index
      * range to be sliced for the reversed propositions. See the constructor for
      * the logic that is performed.
@@ -63,10 +59,8 @@ final class SliceConsequence implements Consequence {
     private final int maxIndex;
 
     /*
-     * Whether or not to sort the propositions in reverse or forward
-     * chronological order. We don't just store the comparator to use because
-     * this class implements {@link Serializable} and the comparator may not be
-     * serializable.
+     * Whether or not to read the propositions in reverse or forward
+     * chronological order.
      */
     private final boolean reverse;
 
@@ -125,36 +119,40 @@ final class SliceConsequence implements Consequence {
         @SuppressWarnings("unchecked")
         List<TemporalProposition> pl = (List<TemporalProposition>) arg0
                 .get(arg0.getDeclaration("result"));
-        Comparator<TemporalProposition> comp;
-        if (this.reverse) {
-            comp = ProtempaUtil.REVERSE_TEMP_PROP_COMP;
-        } else {
-            comp = ProtempaUtil.TEMP_PROP_COMP;
-        }
-        Collections.sort(pl, comp);
-        this.copier.grab(arg0);
+        TemporalPropositionIndex<TemporalProposition> index =
+                TemporalPropositionIndex.get(arg1, this.def.getPropositionId());
+        List<TemporalProposition> sorted = index.update(pl);
+        UniqueIdFactory factory =
+                index.getUniqueIdFactory(arg1, this.def.getPropositionId());
+        List<TemporalProposition> slice = slice(sorted);
         if (this.merged) {
-            mergedInterval(arg0, pl);
+            mergedInterval(arg0, slice, factory);
         } else {
-            for (ListIterator<TemporalProposition> itr = pl
-                    .listIterator(this.minIndex); itr.hasNext()
-                    && itr.nextIndex() < this.maxIndex;) {
-                TemporalProposition o = itr.next();
-                o.accept(this.copier);
+            this.copier.grab(arg0, factory);
+            for (int i = this.minIndex, n = slice.size(); i < n; i++) {
+                slice.get(i).accept(this.copier);
             }
+            this.copier.release();
         }
-        this.copier.release();
     }
 
-    private void mergedInterval(KnowledgeHelper kh, List<TemporalProposition> pl) {
-        JBossRulesDerivedLocalUniqueIdValuesProvider provider = 
-                new JBossRulesDerivedLocalUniqueIdValuesProvider(kh.getWorkingMemory(), def.getPropositionId());
-        UniqueIdFactory factory = new ProviderBasedUniqueIdFactory(provider);
-        List<TemporalProposition> slice = new ArrayList<>();
-        for (ListIterator<TemporalProposition> itr = pl.listIterator(); itr
-                .hasNext() && itr.nextIndex() < this.maxIndex;) {
-            slice.add(itr.next());
+    /**
+     * Gets the propositions up to the max index in chronological order, or
+     * in reverse chronological order if the slice definition's min index is
+     * negative.
+     */
+    private List<TemporalProposition> slice(
+            List<TemporalProposition> sorted) {
+        if (this.reverse) {
+            return TemporalPropositionIndex.reverse(sorted, this.maxIndex);
+        } else {
+            return new ArrayList<>(sorted.subList(0,
+                    Math.min(this.maxIndex, sorted.size())));
         }
+    }
+
+    private void mergedInterval(KnowledgeHelper kh,
+            List<TemporalProposition> slice, UniqueIdFactory factory) {
         Segment<TemporalProposition> segment = new Segment<>(
                 new Sequence<>(def.getPropositionId(), slice));
         AbstractParameter result = AbstractParameterFactory.getFromAbstraction(
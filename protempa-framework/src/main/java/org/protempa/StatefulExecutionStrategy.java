@@ -40,6 +40,7 @@ import java.util.stream.Collectors;
 import org.apache.commons.collections4.iterators.IteratorChain;
 import org.arp.javautil.arrays.Arrays;
 import org.drools.FactException;
+import org.drools.FactHandle;
 import org.drools.StatefulSession;
 
 import org.eurekaclinical.datastore.DataStore;
@@ -52,6 +53,15 @@ class StatefulExecutionStrategy extends AbstractExecutionStrategy {
 
     private static final Logger LOGGER = Logger.getLogger(StatefulExecutionStrategy.class.getName());
 
+    /**
+     * System property that, if <code>true</code>, makes this execution
+     * strategy create a new stateful session for each key id as it used to.
+     * By default, one session is created and is reset between key ids by
+     * retracting its facts, which leaves the Rete network's node memories
+     * empty without rebuilding them.
+     */
+    static final String NEW_SESSION_PER_KEY_PROPERTY = "protempa.statefulExecution.newSessionPerKey";
+
     private final Path databasePath;
     private DataStore<String, WorkingMemoryFactStore> dataStore;
     private WorkingMemoryDataStores workingMemoryDataStores;
@@ -60,6 +70,8 @@ class StatefulExecutionStrategy extends AbstractExecutionStrategy {
     private List<Proposition> propsToDelete;
     private final String databaseName;
     private final Path databaseDir;
+    private final boolean newSessionPerKey;
+    private boolean workingMemoryReusable;
 
     StatefulExecutionStrategy(AlgorithmSource algorithmSource, Query query) {
         super(algorithmSource, query);
@@ -71,6 +83,7 @@ class StatefulExecutionStrategy extends AbstractExecutionStrategy {
         this.databaseName = this.databasePath.getFileName().toString();
         this.workingMemoryEventListener = new DeletedWorkingMemoryEventListener();
         this.propsToDelete = new ArrayList<>();
+        this.newSessionPerKey = Boolean.getBoolean(NEW_SESSION_PER_KEY_PROPERTY);
     }
 
     @Override
@@ -86,17 +99,36 @@ class StatefulExecutionStrategy extends AbstractExecutionStrategy {
         updateWorkingMemory(keyId, objects);
         fireAllRules();
         cleanupAndPersistWorkingMemory(keyId);
+        this.workingMemoryReusable = !this.newSessionPerKey;
         return getWorkingMemoryIterator();
     }
 
+    /**
+     * Resets the current working memory for the next key id, or disposes it
+     * if it cannot be reused because processing of the key failed or
+     * {@link #NEW_SESSION_PER_KEY_PROPERTY} is set.
+     */
     @Override
     public void closeCurrentWorkingMemory() {
-        this.workingMemory.dispose();
+        if (this.workingMemory != null) {
+            if (this.workingMemoryReusable) {
+                resetWorkingMemory();
+            } else {
+                this.workingMemory.dispose();
+                this.workingMemory = null;
+            }
+        }
+        this.workingMemoryReusable = false;
+        this.workingMemoryEventListener.clear();
         this.propsToDelete = new ArrayList<>();
     }
 
     @Override
     public void shutdown() throws ExecutionStrategyShutdownException {
+        if (this.workingMemory != null) {
+            this.workingMemory.dispose();
+            this.workingMemory = null;
+        }
         ExecutionStrategyShutdownException exception1 = closeDataStore();
         ExecutionStrategyShutdownException exception2 = closeDataStoreManager();
         if (exception1 != null && exception2 != null) {
@@ -186,15 +218,8 @@ class StatefulExecutionStrategy extends AbstractExecutionStrategy {
         } catch (ProtempaException ex) {
             throw new ExecutionStrategyInitializationException(ex);
         }
-        JBossRuleCreator ruleCreator = new JBossRuleCreator(
-                visitor.getAlgorithms(), getDerivationsBuilder(),
-                cache);
-        try {
-            ruleCreator.visit(propDefs);
-        } catch (ProtempaException ex) {
-            throw new ExecutionStrategyInitializationException(ex);
-        }
-        return ruleCreator;
+        return new JBossRuleCreator(visitor.getAlgorithms(),
+                getDerivationsBuilder(), cache, propDefs);
     }
 
     private PropositionDefinitionCache newCacheWithPropDefsThatWeNeedToCompute(Collection<PropositionDefinition> propDefs) {
@@ -260,13 +285,56 @@ class StatefulExecutionStrategy extends AbstractExecutionStrategy {
     }
 
     private void getOrCreateWorkingMemoryInstance(String keyId) {
-        createWorkingMemory(keyId);
-        this.workingMemory.addEventListener(
-                this.workingMemoryEventListener);
+        if (this.workingMemory == null) {
+            this.workingMemory = getRuleBase().newStatefulSession(true);
+            this.workingMemory.addEventListener(
+                    this.workingMemoryEventListener);
+        }
+        initWorkingMemoryGlobals(keyId);
+    }
+
+    /**
+     * Empties the current working memory so that it may be used for another
+     * key id. Retracting every fact, including the logically inserted ones,
+     * propagates through the Rete network and leaves its node memories and
+     * the agenda as they are in a new session.
+     */
+    private void resetWorkingMemory() {
+        List<FactHandle> factHandles = new ArrayList<>();
+        for (Iterator<?> itr = this.workingMemory.iterateFactHandles();
+                itr.hasNext();) {
+            factHandles.add((FactHandle) itr.next());
+        }
+        /*
+         * Retracting a fact may retract facts that were logically inserted
+         * because of it. Drools ignores retracting those again.
+         */
+        for (FactHandle factHandle : factHandles) {
+            this.workingMemory.retract(factHandle);
+        }
+        /*
+         * Drools does not allow setting a global to null. A new session's
+         * counts, low-level and high-level abstraction states and temporal
+         * proposition indexes are null, which is the same as empty to
+         * JBossRulesDerivedLocalUniqueIdValuesProvider,
+         * LowLevelAbstractionState, HighLevelAbstractionState and
+         * TemporalPropositionIndex.
+         */
+        this.workingMemory.setGlobal(
+                WorkingMemoryGlobals.DERIVED_UNIQUE_ID_COUNTS,
+                new HashMap<String, Integer>());
+        this.workingMemory.setGlobal(
+                WorkingMemoryGlobals.LOW_LEVEL_ABSTRACTION_STATES,
+                new HashMap<String, LowLevelAbstractionState>());
+        this.workingMemory.setGlobal(
+                WorkingMemoryGlobals.HIGH_LEVEL_ABSTRACTION_STATES,
+                new HashMap<String, HighLevelAbstractionState>());
+        this.workingMemory.setGlobal(
+                WorkingMemoryGlobals.TEMPORAL_PROPOSITION_INDEXES,
+                new HashMap<String, TemporalPropositionIndex<?>>());
     }
 
-    private void createWorkingMemory(String keyId) {
-        this.workingMemory = getRuleBase().newStatefulSession(true);
+    private void initWorkingMemoryGlobals(String keyId) {
         this.workingMemory.setGlobal(WorkingMemoryGlobals.KEY_ID, keyId);
         if (this.dataStore != null) {
             WorkingMemoryFactStore factStore = this.dataStore.get(keyId);
@@ -322,7 +390,6 @@ class StatefulExecutionStrategy extends AbstractExecutionStrategy {
     }
 
     private void cleanupAndPersistWorkingMemory(String keyId) throws ExecutionStrategyExecutionException {
-        this.workingMemory.removeEventListener(this.workingMemoryEventListener);
         this.workingMemoryEventListener.clear();
         LOGGER.log(Level.FINEST,
                 "Persisting working memory for key ID {0}", keyId);
@@ -352,12 +419,18 @@ class StatefulExecutionStrategy extends AbstractExecutionStrategy {
         factStore.removeAll(realPropsToDelete);
         factStore.setPropositions(facts);
         factStore.setInstanceNums((Map<String, Integer>) this.workingMemory.getGlobal(WorkingMemoryGlobals.DERIVED_UNIQUE_ID_COUNTS));
-        this.dataStore.put(keyId, factStore);
+        /*
+         * Only writes the proposition definitions the first time through (or
+         * if they changed), and does so before the key's facts are stored so
+         * that the stored-propdefs file always covers what is in the data
+         * store.
+         */
         try {
             this.workingMemoryDataStores.finish();
         } catch (IOException ex) {
             throw new ExecutionStrategyExecutionException(ex);
         }
+        this.dataStore.put(keyId, factStore);
         LOGGER.log(Level.FINEST,
                 "Persisted working memory for key ID {0}", keyId);
     }
@@ -20,6 +20,7 @@
 package org.protempa;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import org.apache.commons.collections4.iterators.IteratorChain;
@@ -50,6 +51,7 @@ class StatelessExecutionStrategy extends AbstractExecutionStrategy {
     @SuppressWarnings("unchecked")
     public Iterator<Proposition> execute(String keyId, Iterator<? extends Proposition> props) {
         this.statelessSession.setGlobal(WorkingMemoryGlobals.KEY_ID, keyId);
+        resetGlobals();
         this.statelessSession.addEventListener(this.workingMemoryEventListener);
         StatelessSessionResult result = this.statelessSession
                 .executeWithResults(Iterators.asCollection(props));
@@ -78,15 +80,30 @@ class StatelessExecutionStrategy extends AbstractExecutionStrategy {
         } catch (ProtempaException ex) {
             throw new ExecutionStrategyInitializationException(ex);
         }
-        JBossRuleCreator ruleCreator = new JBossRuleCreator(
-                visitor.getAlgorithms(), getDerivationsBuilder(),
-                cache);
-        try {
-            ruleCreator.visit(propDefs);
-        } catch (ProtempaException ex) {
-            throw new ExecutionStrategyInitializationException(ex);
-        }
-        return ruleCreator;
+        return new JBossRuleCreator(visitor.getAlgorithms(),
+                getDerivationsBuilder(), cache, propDefs);
+    }
+
+    /**
+     * Gives the next key id empty derived unique id counts, low-level and
+     * high-level abstraction states and temporal proposition indexes, as a
+     * new stateful session would have. A stateless session keeps its
+     * globals from one call to the next, so otherwise derived propositions
+     * would get unique ids made for an earlier key id, and earlier key ids'
+     * propositions would stay in memory.
+     */
+    private void resetGlobals() {
+        this.statelessSession.setGlobal(
+                WorkingMemoryGlobals.DERIVED_UNIQUE_ID_COUNTS,
+                new HashMap<String, Integer>());
+        this.statelessSession.setGlobal(
+                WorkingMemoryGlobals.LOW_LEVEL_ABSTRACTION_STATES,
+                new HashMap<String, LowLevelAbstractionState>());
+        this.statelessSession.setGlobal(
+                WorkingMemoryGlobals.HIGH_LEVEL_ABSTRACTION_STATES,
+                new HashMap<String, HighLevelAbstractionState>());
+        this.statelessSession.setGlobal(
+                WorkingMemoryGlobals.TEMPORAL_PROPOSITION_INDEXES,
+                new HashMap<String, TemporalPropositionIndex<?>>());
     }
-    
 }
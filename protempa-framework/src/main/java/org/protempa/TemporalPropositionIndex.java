@@ -0,0 +1,196 @@
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2013 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.drools.WorkingMemory;
+import org.protempa.proposition.ProviderBasedUniqueIdFactory;
+import org.protempa.proposition.TemporalProposition;
+import org.protempa.proposition.UniqueIdFactory;
+
+/**
+ * The temporal propositions that a rule collected the last time it fired in
+ * a working memory, in temporal order. When the rule fires again because
+ * propositions were inserted or retracted, only the inserted ones are
+ * sorted, and they are merged with the ones that are still there, rather
+ * than sorting all of them again.
+ *
+ * @author Andrew Post
+ */
+final class TemporalPropositionIndex<T extends TemporalProposition> {
+
+    private List<T> sorted;
+    private Map<T, Integer> members;
+    private UniqueIdFactory uniqueIdFactory;
+
+    TemporalPropositionIndex() {
+        this.sorted = Collections.emptyList();
+        this.members = new IdentityHashMap<>();
+    }
+
+    /**
+     * Gets the index of the propositions that a derived proposition's rule
+     * collects in a working memory, creating it if the rule has not fired
+     * yet.
+     *
+     * @param workingMemory a working memory.
+     * @param propId the id of the derived proposition.
+     * @return the index.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends TemporalProposition> TemporalPropositionIndex<T> get(
+            WorkingMemory workingMemory, String propId) {
+        Map<String, TemporalPropositionIndex<?>> indexes =
+                (Map<String, TemporalPropositionIndex<?>>) workingMemory.getGlobal(
+                WorkingMemoryGlobals.TEMPORAL_PROPOSITION_INDEXES);
+        if (indexes == null) {
+            indexes = new HashMap<>();
+            workingMemory.setGlobal(
+                    WorkingMemoryGlobals.TEMPORAL_PROPOSITION_INDEXES, indexes);
+        }
+        TemporalPropositionIndex<T> index =
+                (TemporalPropositionIndex<T>) indexes.get(propId);
+        if (index == null) {
+            index = new TemporalPropositionIndex<>();
+            indexes.put(propId, index);
+        }
+        return index;
+    }
+
+    /**
+     * Updates this index with the propositions that the rule collected this
+     * time. Propositions that are temporally equal are returned in the order
+     * in which they were collected, as sorting the collected propositions
+     * with {@link ProtempaUtil#TEMP_PROP_COMP} would return them.
+     *
+     * @param collected the collected propositions, in any order.
+     * @return the collected propositions in temporal order, as an
+     * unmodifiable list.
+     */
+    List<T> update(List<? extends T> collected) {
+        Map<T, Integer> current = new IdentityHashMap<>(collected.size());
+        List<T> added = new ArrayList<>();
+        int position = 0;
+        for (T prop : collected) {
+            if (current.putIfAbsent(prop, position++) == null
+                    && !this.members.containsKey(prop)) {
+                added.add(prop);
+            }
+        }
+        Comparator<TemporalProposition> order =
+                ProtempaUtil.TEMP_PROP_COMP.thenComparing(current::get);
+        boolean changed =
+                !added.isEmpty() || current.size() != this.sorted.size();
+        if (changed) {
+            Collections.sort(added, order);
+            List<T> result = new ArrayList<>(current.size());
+            int i = 0;
+            for (T prop : this.sorted) {
+                if (current.containsKey(prop)) {
+                    while (i < added.size()
+                            && order.compare(added.get(i), prop) < 0) {
+                        result.add(added.get(i++));
+                    }
+                    result.add(prop);
+                }
+            }
+            while (i < added.size()) {
+                result.add(added.get(i++));
+            }
+            this.sorted = result;
+        }
+        sortTies(order, changed);
+        this.members = current;
+        return Collections.unmodifiableList(this.sorted);
+    }
+
+    /**
+     * Puts temporally equal propositions that were kept from the last time
+     * the rule fired into the order in which they were collected this time.
+     * The list is copied before it is reordered unless it was just created,
+     * so that lists that were returned earlier do not change.
+     */
+    private void sortTies(Comparator<TemporalProposition> order,
+            boolean created) {
+        for (int i = 1, n = this.sorted.size(); i < n; i++) {
+            if (order.compare(this.sorted.get(i - 1), this.sorted.get(i)) > 0) {
+                if (!created) {
+                    this.sorted = new ArrayList<>(this.sorted);
+                }
+                Collections.sort(this.sorted, order);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the last propositions of a list that {@link #update} returned, in
+     * reverse temporal order. Propositions that are temporally equal stay in
+     * the order in which they were collected, as sorting the collected
+     * propositions with {@link ProtempaUtil#REVERSE_TEMP_PROP_COMP} would
+     * return them.
+     *
+     * @param sorted a list that {@link #update} returned.
+     * @param n the maximum number of propositions to get.
+     * @return the propositions.
+     */
+    static <T extends TemporalProposition> List<T> reverse(List<T> sorted,
+            int n) {
+        List<T> result = new ArrayList<>(Math.min(n, sorted.size()));
+        int end = sorted.size();
+        while (end > 0 && result.size() < n) {
+            T last = sorted.get(end - 1);
+            int start = end - 1;
+            while (start > 0 && ProtempaUtil.TEMP_PROP_COMP.compare(
+                    sorted.get(start - 1), last) == 0) {
+                start--;
+            }
+            for (int i = start; i < end && result.size() < n; i++) {
+                result.add(sorted.get(i));
+            }
+            end = start;
+        }
+        return result;
+    }
+
+    /**
+     * Gets a factory for the unique ids of the derived proposition, which
+     * is created the first time that the rule fires and reused after that.
+     *
+     * @param workingMemory the working memory.
+     * @param propId the id of the derived proposition.
+     * @return a unique id factory.
+     */
+    UniqueIdFactory getUniqueIdFactory(WorkingMemory workingMemory,
+            String propId) {
+        if (this.uniqueIdFactory == null) {
+            this.uniqueIdFactory = new ProviderBasedUniqueIdFactory(
+                    new JBossRulesDerivedLocalUniqueIdValuesProvider(
+                    workingMemory, propId));
+        }
+        return this.uniqueIdFactory;
+    }
+}
@@ -19,10 +19,16 @@ package org.protempa;
  * limitations under the License.
  * #L%
  */
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -34,6 +40,14 @@ import org.arp.javautil.arrays.Arrays;
 import org.protempa.proposition.Proposition;
 
 /**
+ * The propositions and derivations of one key, persisted between stateful
+ * queries.
+ *
+ * Instances are serialized compactly: each proposition is written once, and
+ * the propositions list and derivations refer to propositions by their index
+ * in that table rather than writing out the maps and sets themselves. The
+ * form is versioned. Instances that were serialized with the default form
+ * before there was a version still can be read.
  *
  * @author Andrew Post
  */
@@ -41,6 +55,26 @@ public class WorkingMemoryFactStore implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The current version of the serialized form. Version 0 is Java's default
+     * serialized form of this class's fields.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /*
+     * The fields of the default serialized form, kept so that version 0
+     * instances can be read, plus the format version.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("propositions", List.class),
+        new ObjectStreamField("forwardDerivations", Map.class),
+        new ObjectStreamField("backwardDerivations", Map.class),
+        new ObjectStreamField("instanceNums", Map.class),
+        new ObjectStreamField("formatVersion", Integer.TYPE)
+    };
+
+    private static final int NULL_INDEX = -1;
+
     private List<Proposition> propositions;
     private Map<Proposition, Set<Proposition>> forwardDerivations;
     private Map<Proposition, Set<Proposition>> backwardDerivations;
@@ -156,4 +190,188 @@ public class WorkingMemoryFactStore implements Serializable {
         return removedProps;
     }
 
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        ObjectOutputStream.PutField fields = s.putFields();
+        fields.put("formatVersion", FORMAT_VERSION);
+        s.writeFields();
+
+        Map<Proposition, Integer> indices = new HashMap<>();
+        List<Proposition> table = new ArrayList<>();
+        if (this.propositions != null) {
+            addToTable(this.propositions, indices, table);
+        }
+        addToTable(this.forwardDerivations, indices, table);
+        addToTable(this.backwardDerivations, indices, table);
+
+        s.writeInt(table.size());
+        for (Proposition prop : table) {
+            s.writeObject(prop);
+        }
+        if (this.propositions == null) {
+            s.writeInt(NULL_INDEX);
+        } else {
+            writeIndices(s, this.propositions, indices);
+        }
+        writeDerivations(s, this.forwardDerivations, indices);
+        writeDerivations(s, this.backwardDerivations, indices);
+
+        if (this.instanceNums == null) {
+            s.writeInt(NULL_INDEX);
+        } else {
+            s.writeInt(this.instanceNums.size());
+            for (Map.Entry<String, Integer> me : this.instanceNums.entrySet()) {
+                s.writeObject(me.getKey());
+                s.writeObject(me.getValue());
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream s) throws IOException,
+            ClassNotFoundException {
+        ObjectInputStream.GetField fields = s.readFields();
+        int formatVersion = fields.get("formatVersion", 0);
+        switch (formatVersion) {
+            case 0:
+                this.propositions = (List<Proposition>) fields.get("propositions", null);
+                this.forwardDerivations = (Map<Proposition, Set<Proposition>>) fields.get("forwardDerivations", null);
+                this.backwardDerivations = (Map<Proposition, Set<Proposition>>) fields.get("backwardDerivations", null);
+                this.instanceNums = (Map<String, Integer>) fields.get("instanceNums", null);
+                break;
+            case 1:
+                int tableSize = readCount(s);
+                Proposition[] table = new Proposition[tableSize];
+                for (int i = 0; i < tableSize; i++) {
+                    table[i] = (Proposition) s.readObject();
+                }
+                int numProps = s.readInt();
+                if (numProps != NULL_INDEX) {
+                    checkCount(numProps);
+                    this.propositions = new ArrayList<>(numProps);
+                    for (int i = 0; i < numProps; i++) {
+                        this.propositions.add(readProposition(s, table));
+                    }
+                }
+                this.forwardDerivations = readDerivations(s, table);
+                this.backwardDerivations = readDerivations(s, table);
+                int numInstanceNums = s.readInt();
+                if (numInstanceNums != NULL_INDEX) {
+                    checkCount(numInstanceNums);
+                    this.instanceNums = new HashMap<>();
+                    for (int i = 0; i < numInstanceNums; i++) {
+                        String key = (String) s.readObject();
+                        Integer value = (Integer) s.readObject();
+                        this.instanceNums.put(key, value);
+                    }
+                }
+                break;
+            default:
+                throw new InvalidObjectException(
+                        "Can't restore. Unsupported format version: "
+                        + formatVersion);
+        }
+    }
+
+    private static void addToTable(Map<Proposition, Set<Proposition>> derivations,
+            Map<Proposition, Integer> indices, List<Proposition> table) {
+        if (derivations != null) {
+            for (Map.Entry<Proposition, Set<Proposition>> me : derivations.entrySet()) {
+                addToTable(Collections.singleton(me.getKey()), indices, table);
+                if (me.getValue() != null) {
+                    addToTable(me.getValue(), indices, table);
+                }
+            }
+        }
+    }
+
+    private static void addToTable(Collection<Proposition> props,
+            Map<Proposition, Integer> indices, List<Proposition> table) {
+        for (Proposition prop : props) {
+            if (prop != null && !indices.containsKey(prop)) {
+                indices.put(prop, table.size());
+                table.add(prop);
+            }
+        }
+    }
+
+    private static void writeIndices(ObjectOutputStream s,
+            Collection<Proposition> props, Map<Proposition, Integer> indices)
+            throws IOException {
+        s.writeInt(props.size());
+        for (Proposition prop : props) {
+            s.writeInt(prop != null ? indices.get(prop) : NULL_INDEX);
+        }
+    }
+
+    private static void writeDerivations(ObjectOutputStream s,
+            Map<Proposition, Set<Proposition>> derivations,
+            Map<Proposition, Integer> indices) throws IOException {
+        if (derivations == null) {
+            s.writeInt(NULL_INDEX);
+        } else {
+            s.writeInt(derivations.size());
+            for (Map.Entry<Proposition, Set<Proposition>> me : derivations.entrySet()) {
+                Proposition key = me.getKey();
+                s.writeInt(key != null ? indices.get(key) : NULL_INDEX);
+                Set<Proposition> value = me.getValue();
+                if (value == null) {
+                    s.writeInt(NULL_INDEX);
+                } else {
+                    writeIndices(s, value, indices);
+                }
+            }
+        }
+    }
+
+    private static Map<Proposition, Set<Proposition>> readDerivations(
+            ObjectInputStream s, Proposition[] table) throws IOException {
+        int size = s.readInt();
+        if (size == NULL_INDEX) {
+            return null;
+        }
+        checkCount(size);
+        Map<Proposition, Set<Proposition>> result = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            Proposition key = readProposition(s, table);
+            int numValues = s.readInt();
+            Set<Proposition> value;
+            if (numValues == NULL_INDEX) {
+                value = null;
+            } else {
+                checkCount(numValues);
+                value = new HashSet<>();
+                for (int j = 0; j < numValues; j++) {
+                    value.add(readProposition(s, table));
+                }
+            }
+            result.put(key, value);
+        }
+        return result;
+    }
+
+    private static Proposition readProposition(ObjectInputStream s,
+            Proposition[] table) throws IOException {
+        int index = s.readInt();
+        if (index == NULL_INDEX) {
+            return null;
+        }
+        if (index < 0 || index >= table.length) {
+            throw new InvalidObjectException(
+                    "Can't restore. Invalid proposition index: " + index);
+        }
+        return table[index];
+    }
+
+    private static int readCount(ObjectInputStream s) throws IOException {
+        int count = s.readInt();
+        checkCount(count);
+        return count;
+    }
+
+    private static void checkCount(int count) throws InvalidObjectException {
+        if (count < 0) {
+            throw new InvalidObjectException(
+                    "Negative count. Can't restore");
+        }
+    }
+
 }
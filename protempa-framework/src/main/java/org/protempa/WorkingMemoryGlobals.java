@@ -32,6 +32,9 @@ class WorkingMemoryGlobals {
     static void addAll(Package rules) {
         rules.addGlobal(KEY_ID, String.class);
         rules.addGlobal(DERIVED_UNIQUE_ID_COUNTS, Map.class);
+        rules.addGlobal(LOW_LEVEL_ABSTRACTION_STATES, Map.class);
+        rules.addGlobal(HIGH_LEVEL_ABSTRACTION_STATES, Map.class);
+        rules.addGlobal(TEMPORAL_PROPOSITION_INDEXES, Map.class);
     }
     private WorkingMemoryGlobals() {}
     
@@ -39,4 +42,13 @@ class WorkingMemoryGlobals {
     
     static final String DERIVED_UNIQUE_ID_COUNTS = "derivedUniqueIdCounts";
     
+    static final String LOW_LEVEL_ABSTRACTION_STATES =
+            "lowLevelAbstractionStates";
+    
+    static final String HIGH_LEVEL_ABSTRACTION_STATES =
+            "highLevelAbstractionStates";
+    
+    static final String TEMPORAL_PROPOSITION_INDEXES =
+            "temporalPropositionIndexes";
+    
 }
@@ -22,8 +22,10 @@ package org.protempa.datastore;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -51,6 +53,7 @@ public final class WorkingMemoryDataStores implements DataStores {
     private PropositionDefinitionCache cache;
     private Path storedPropDefsFile;
     private String databaseName;
+    private long persistedVersion;
 
     /**
      * Constructs a working memory creator.
@@ -95,6 +98,7 @@ public final class WorkingMemoryDataStores implements DataStores {
 
         this.databaseName = name;
         this.cache = cache;
+        this.persistedVersion = -1;
     }
 
     public PropositionDefinitionCache getPropositionDefinitionsInStores() {
@@ -119,15 +123,39 @@ public final class WorkingMemoryDataStores implements DataStores {
         return this.storeFactory.getInstance(this.databaseName);
     }
 
+    /**
+     * Writes the proposition definitions to the stored-propdefs file, unless
+     * they have not changed since the last call. It is cheap to call after
+     * every key. The file is written to a temporary file first and then moved
+     * into place, so a crash while writing leaves the previous version of the
+     * file intact.
+     *
+     * @throws IOException if an error occurred writing the file.
+     */
     @Override
     public void finish() throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(this.storedPropDefsFile))) {
+        long version = this.cache.getVersion();
+        if (version == this.persistedVersion) {
+            return;
+        }
+        Path tmpFile = this.storedPropDefsFile.resolveSibling(
+                this.storedPropDefsFile.getFileName() + ".tmp");
+        try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(tmpFile))) {
             Collection<PropositionDefinition> all = cache.getAll();
             oos.writeInt(all.size());
             for (PropositionDefinition pd : all) {
                 oos.writeObject(pd);
             }
         }
+        try {
+            Files.move(tmpFile, this.storedPropDefsFile,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmpFile, this.storedPropDefsFile,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.persistedVersion = version;
     }
 
     @Override
@@ -84,6 +84,22 @@ public interface QueryResultsHandler extends AutoCloseable {
     void validate()
             throws QueryResultsHandlerValidationFailedException;
     
+    /**
+     * Returns whether this query results handler must receive query results
+     * in the order in which the data source returned the keys. When Protempa
+     * processes keys on more than one thread, it restores that order before
+     * calling {@link #handleQueryResult(java.lang.String, java.util.List, java.util.Map, java.util.Map, java.util.Map) }
+     * if this method returns <code>true</code>, and otherwise passes results
+     * along as soon as they are available. The default implementation
+     * returns <code>true</code>.
+     * 
+     * @return <code>true</code> if key order matters to this handler,
+     * <code>false</code> otherwise.
+     */
+    default boolean isKeyOrderSensitive() {
+        return true;
+    }
+    
     /**
      * Called by Protempa prior to the first invocation of
      * {@link #handleQueryResult(java.lang.String, java.util.List, java.util.Map, java.util.Map, java.util.Map) }. 
@@ -74,6 +74,11 @@ public final class DeidentifiedQueryResultsHandler
         this.handler.validate();
     }
 
+    @Override
+    public boolean isKeyOrderSensitive() {
+        return this.handler.isKeyOrderSensitive();
+    }
+
     @Override
     public void start(PropositionDefinitionCache cache) throws QueryResultsHandlerProcessingException {
         this.propDefCache = cache;
@@ -74,6 +74,11 @@ public class KeyLoaderQueryResultsHandler extends AbstractQueryResultsHandler {
         return this.id != null ? this.id : super.getId();
     }
 
+    @Override
+    public boolean isKeyOrderSensitive() {
+        return false;
+    }
+
     @Override
     public void start(PropositionDefinitionCache cache) throws QueryResultsHandlerProcessingException {
         try {
@@ -98,12 +103,10 @@ public class KeyLoaderQueryResultsHandler extends AbstractQueryResultsHandler {
             Map<UniqueId, Proposition> references) throws QueryResultsHandlerProcessingException {
         try {
             if (this.criteria == null || this.criteria.evaluate(propositions)) {
-                i++;
-                if (this.i % this.batchSize == 0) {
+                this.keyIds.add(keyId);
+                if (++this.i % this.batchSize == 0) {
                     this.dataSource.writeKeys(this.keyIds);
                     this.keyIds = new HashSet<>();
-                } else {
-                    this.keyIds.add(keyId);
                 }
             }
         } catch (CriteriaEvaluateException | DataSourceWriteException ex) {
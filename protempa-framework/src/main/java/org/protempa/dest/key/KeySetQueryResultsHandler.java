@@ -65,6 +65,11 @@ public class KeySetQueryResultsHandler extends AbstractQueryResultsHandler {
         return this.id != null ? this.id : super.getId();
     }
 
+    @Override
+    public boolean isKeyOrderSensitive() {
+        return false;
+    }
+
     @Override
     public void start(PropositionDefinitionCache cache) throws QueryResultsHandlerProcessingException {
     }
@@ -56,6 +56,17 @@ public final class MapQueryResultsHandler extends AbstractQueryResultsHandler {
     
     
 
+    /**
+     * Returns <code>false</code> because results are stored in a map keyed by
+     * key id.
+     *
+     * @return <code>false</code>.
+     */
+    @Override
+    public boolean isKeyOrderSensitive() {
+        return false;
+    }
+
     /**
      * Puts handled keys and propositions into the map returned by
      * {@link #getResultMap()}.
@@ -24,12 +24,10 @@ import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.protempa.SourceSystem;
@@ -45,13 +43,25 @@ public abstract class AbstractProposition implements Proposition {
     private static final int DEFAULT_REFERENCE_LIST_SIZE = 100;
     private static final SourceSystem DEFAULT_SOURCE_SYSTEM =
             SourceSystem.UNKNOWN;
+    /**
+     * Marks a property that was set to <code>null</code>, as opposed to one
+     * that was never set.
+     */
+    private static final Object NULL_VALUE = new Object();
     /**
      * An identification
      * <code>String</code> for this proposition.
      */
     private String id;
-    private Map<String, Value> properties;
-    private Map<String, List<UniqueId>> references;
+    /*
+     * Properties and references are stored in arrays indexed by the slots of
+     * schemas that are shared by all propositions with this proposition's id.
+     * A null array element is a property or reference that is not set.
+     */
+    private SlotSchema propertySchema;
+    private Object[] properties;
+    private SlotSchema referenceSchema;
+    private Object[] references;
     private UniqueId uniqueId; // not final because of custom deserialization
     // but there is no public modification access
     private SourceSystem sourceSystem;
@@ -105,14 +115,78 @@ public abstract class AbstractProposition implements Proposition {
 
     protected void initializeProperties() {
         if (this.properties == null) {
-            this.properties = new LinkedHashMap<>();
+            this.propertySchema = SlotSchema.forProperties(schemaKey());
+            this.properties = new Object[this.propertySchema.size()];
         }
     }
 
     protected void initializeReferences() {
         if (this.references == null) {
-            this.references = new LinkedHashMap<>();
+            this.referenceSchema = SlotSchema.forReferences(schemaKey());
+            this.references = new Object[this.referenceSchema.size()];
+        }
+    }
+
+    private String schemaKey() {
+        return this.id != null ? this.id : "";
+    }
+
+    /**
+     * Gets the slot of a property, adding the property to this proposition's
+     * schema if needed.
+     */
+    private int propertySlot(String name) {
+        int slot = this.propertySchema.slot(name);
+        if (slot < 0) {
+            this.propertySchema = this.propertySchema.withName(name.intern());
+            slot = this.propertySchema.slot(name);
+            if (slot >= this.properties.length) {
+                this.properties = Arrays.copyOf(this.properties,
+                        this.propertySchema.size());
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Gets the slot of a reference, adding the reference to this
+     * proposition's schema if needed.
+     */
+    private int referenceSlot(String name) {
+        int slot = this.referenceSchema.slot(name);
+        if (slot < 0) {
+            this.referenceSchema = this.referenceSchema.withName(name.intern());
+            slot = this.referenceSchema.slot(name);
+            if (slot >= this.references.length) {
+                this.references = Arrays.copyOf(this.references,
+                        this.referenceSchema.size());
+            }
+        }
+        return slot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<UniqueId> referenceList(int slot) {
+        return (List<UniqueId>) this.references[slot];
+    }
+
+    private static String[] names(SlotSchema schema, Object[] slots) {
+        if (slots == null) {
+            return ArrayUtils.EMPTY_STRING_ARRAY;
+        }
+        int count = 0;
+        for (Object o : slots) {
+            if (o != null) {
+                count++;
+            }
         }
+        String[] result = new String[count];
+        for (int i = 0, j = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                result[j++] = schema.name(i);
+            }
+        }
+        return result;
     }
 
     @Override
@@ -125,7 +199,8 @@ public abstract class AbstractProposition implements Proposition {
             throw new IllegalArgumentException("name cannot be null");
         }
         initializeProperties();
-        this.properties.put(name.intern(), value);
+        int slot = propertySlot(name);
+        this.properties[slot] = value != null ? value : NULL_VALUE;
     }
 
     @Override
@@ -136,19 +211,19 @@ public abstract class AbstractProposition implements Proposition {
             if (this.properties == null) {
                 return null;
             } else {
-                return this.properties.get(name);
+                int slot = this.propertySchema.slot(name);
+                if (slot < 0 || slot >= this.properties.length) {
+                    return null;
+                }
+                Object value = this.properties[slot];
+                return value != NULL_VALUE ? (Value) value : null;
             }
         }
     }
 
     @Override
     public final String[] getPropertyNames() {
-        if (this.properties == null) {
-            return ArrayUtils.EMPTY_STRING_ARRAY;
-        } else {
-            Set<String> propNames = this.properties.keySet();
-            return propNames.toArray(new String[propNames.size()]);
-        }
+        return names(this.propertySchema, this.properties);
     }
 
     @Override
@@ -174,7 +249,8 @@ public abstract class AbstractProposition implements Proposition {
             throw new IllegalArgumentException("name cannot be null");
         }
         initializeReferences();
-        this.references.put(name.intern(), new ArrayList<>(refs));
+        int slot = referenceSlot(name);
+        this.references[slot] = new ArrayList<>(refs);
     }
 
     public final void addReference(String name, UniqueId ref) {
@@ -185,11 +261,12 @@ public abstract class AbstractProposition implements Proposition {
             throw new IllegalArgumentException("ref cannot be null");
         }
         initializeReferences();
-        List<UniqueId> refs = this.references.get(name);
+        int slot = referenceSlot(name);
+        List<UniqueId> refs = referenceList(slot);
         if (refs == null) {
             refs = new ArrayList<>(DEFAULT_REFERENCE_LIST_SIZE);
             refs.add(ref);
-            this.references.put(name.intern(), refs);
+            this.references[slot] = refs;
         } else {
             refs.add(ref);
         }
@@ -203,7 +280,9 @@ public abstract class AbstractProposition implements Proposition {
         if (this.references == null) {
             return Collections.emptyList();
         } else {
-            List<UniqueId> result = this.references.get(name);
+            int slot = this.referenceSchema.slot(name);
+            List<UniqueId> result = slot >= 0 && slot < this.references.length
+                    ? referenceList(slot) : null;
             if (result != null) {
                 return Collections.unmodifiableList(result);
             } else {
@@ -214,12 +293,7 @@ public abstract class AbstractProposition implements Proposition {
 
     @Override
     public final String[] getReferenceNames() {
-        if (this.references == null) {
-            return ArrayUtils.EMPTY_STRING_ARRAY;
-        } else {
-            Set<String> refNames = this.references.keySet();
-            return refNames.toArray(new String[refNames.size()]);
-        }
+        return names(this.referenceSchema, this.references);
     }
 
     @Override
@@ -252,9 +326,35 @@ public abstract class AbstractProposition implements Proposition {
         AbstractProposition p = (AbstractProposition) other;
         return (id == p.id || id.equals(p.id))
                 && this.properties == p.properties
-                || (this.properties != null && this.properties
-                .equals(p.properties));
+                || (this.properties != null && propertiesEqual(p));
+
+    }
 
+    /**
+     * Returns whether another proposition has the same properties set to the
+     * same values as this one, regardless of slot order.
+     */
+    private boolean propertiesEqual(AbstractProposition p) {
+        if (p.properties == null) {
+            return false;
+        }
+        String[] names = getPropertyNames();
+        if (names.length != p.getPropertyNames().length) {
+            return false;
+        }
+        for (String name : names) {
+            int otherSlot = p.propertySchema.slot(name);
+            if (otherSlot < 0 || otherSlot >= p.properties.length
+                    || p.properties[otherSlot] == null) {
+                return false;
+            }
+            Value value = getProperty(name);
+            Value otherValue = p.getProperty(name);
+            if (value == null ? otherValue != null : !value.equals(otherValue)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -290,26 +390,22 @@ public abstract class AbstractProposition implements Proposition {
         s.writeObject(this.id);
         s.writeObject(this.uniqueId);
 
-        if (this.properties == null) {
-            s.writeInt(0);
-        } else {
-            s.writeInt(this.properties.size());
-            for (Map.Entry<String, Value> me : this.properties.entrySet()) {
-                String propertyName = me.getKey();
-                Value val = me.getValue();
-                s.writeObject(propertyName);
-                s.writeObject(val);
-            }
+        String[] propertyNames = getPropertyNames();
+        s.writeInt(propertyNames.length);
+        for (String propertyName : propertyNames) {
+            s.writeObject(propertyName);
+            s.writeObject(getProperty(propertyName));
         }
 
         if (this.references == null) {
             s.writeInt(0);
         } else {
-            s.writeInt(this.references.size());
-            for (Map.Entry<String, List<UniqueId>> me : this.references
-                    .entrySet()) {
-                s.writeObject(me.getKey());
-                List<UniqueId> val = me.getValue();
+            String[] referenceNames = getReferenceNames();
+            s.writeInt(referenceNames.length);
+            for (String referenceName : referenceNames) {
+                s.writeObject(referenceName);
+                List<UniqueId> val
+                        = referenceList(this.referenceSchema.slot(referenceName));
                 if (val == null) {
                     s.writeInt(0);
                 } else {
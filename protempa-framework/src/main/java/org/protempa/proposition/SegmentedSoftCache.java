@@ -0,0 +1,331 @@
+package org.protempa.proposition;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent hash table of softly referenced values, for the caches that
+ * intern values and intervals. The table is split into independently locked
+ * segments, and lookups of values that are already in the table do not lock
+ * at all. Values are held with soft references so that the garbage collector
+ * may reclaim them when memory is low, and entries whose values have been
+ * reclaimed are removed the next time a value is added.
+ *
+ * The table does not know the keys. Callers subclass {@link Entry} with their
+ * key fields, compute the hash of a key, and look up values by walking the
+ * chain from {@link #getFirst(int) }, so that they can look up values by
+ * primitive fields without allocating a key object. Adding a value takes a
+ * {@link Key}, which matches existing entries and creates the new one.
+ *
+ * @author Andrew Post
+ * @param <V> the type of the values.
+ */
+public final class SegmentedSoftCache<V> {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final Segment<V>[] segments;
+    private final int segmentShift;
+    private final ReferenceQueue<V> queue;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param segmentCount the number of segments, a power of two.
+     * @param initialSegmentCapacity the initial number of buckets of each
+     * segment, a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    public SegmentedSoftCache(int segmentCount, int initialSegmentCapacity) {
+        if (segmentCount < 1 || Integer.bitCount(segmentCount) != 1) {
+            throw new IllegalArgumentException(
+                    "segmentCount must be a power of two");
+        }
+        if (initialSegmentCapacity < 1
+                || Integer.bitCount(initialSegmentCapacity) != 1) {
+            throw new IllegalArgumentException(
+                    "initialSegmentCapacity must be a power of two");
+        }
+        this.segments = (Segment<V>[]) new Segment<?>[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment<>(initialSegmentCapacity);
+        }
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.queue = new ReferenceQueue<>();
+    }
+
+    /**
+     * Gets the first entry of the chain that entries with the given hash are
+     * in, without locking. Callers walk the chain with
+     * {@link Entry#getNext() } and compare the entries' hashes and keys. An
+     * entry whose value has been reclaimed returns <code>null</code> from
+     * {@link Entry#get() }.
+     *
+     * @param hash the hash of a key. Its high bits select the segment and its
+     * low bits the bucket, so it should depend on all of the key's fields in
+     * both.
+     * @return the first entry, or <code>null</code> if the chain is empty.
+     */
+    public Entry<V> getFirst(int hash) {
+        Entry<V>[] tab = segmentFor(hash).table;
+        return tab[hash & (tab.length - 1)];
+    }
+
+    /**
+     * Adds a value unless another thread added a value with an equal key
+     * first.
+     *
+     * @param hash the hash of the key, see {@link #getFirst(int) }.
+     * @param key matches the entries with an equal key and creates the new
+     * entry. Cannot be <code>null</code>.
+     * @param value the value to add. Cannot be <code>null</code>.
+     * @return the value that is in the cache after this call returns, which
+     * is <code>value</code> unless another thread won the race.
+     */
+    public V putIfAbsent(int hash, Key<V> key, V value) {
+        assert key != null : "key cannot be null";
+        assert value != null : "value cannot be null";
+        expungeClearedEntries();
+        Segment<V> segment = segmentFor(hash);
+        segment.lock();
+        try {
+            Entry<V>[] tab = segment.table;
+            int index = hash & (tab.length - 1);
+            for (Entry<V> e = tab[index]; e != null; e = e.next) {
+                if (e.hash == hash && key.matches(e)) {
+                    V result = e.get();
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            }
+            if (segment.count + 1 > segment.threshold) {
+                tab = segment.rehash(this.queue);
+                index = hash & (tab.length - 1);
+            }
+            tab[index] = key.newEntry(value, this.queue, hash, tab[index]);
+            segment.count++;
+            segment.table = tab;
+            return value;
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of entries in the cache, including any whose values
+     * have been reclaimed but not yet removed.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        int result = 0;
+        for (Segment<V> segment : this.segments) {
+            segment.lock();
+            try {
+                result += segment.count;
+            } finally {
+                segment.unlock();
+            }
+        }
+        return result;
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return this.segments[(hash >>> this.segmentShift)
+                & (this.segments.length - 1)];
+    }
+
+    private void expungeClearedEntries() {
+        Reference<? extends V> ref;
+        while ((ref = this.queue.poll()) != null) {
+            @SuppressWarnings("unchecked")
+            Entry<V> entry = (Entry<V>) ref;
+            Segment<V> segment = segmentFor(entry.hash);
+            segment.lock();
+            try {
+                segment.remove(entry, this.queue);
+            } finally {
+                segment.unlock();
+            }
+        }
+    }
+
+    /**
+     * Matches the entries with a key and creates the entry for it.
+     *
+     * @param <V> the type of the values.
+     */
+    public interface Key<V> {
+
+        /**
+         * Returns whether an entry with the same hash as this key has an
+         * equal key.
+         *
+         * @param entry an entry.
+         * @return whether the keys are equal.
+         */
+        boolean matches(Entry<V> entry);
+
+        /**
+         * Creates an entry with this key.
+         *
+         * @param value the value.
+         * @param queue the queue to pass to the entry's constructor.
+         * @param hash the hash to pass to the entry's constructor.
+         * @param next the next entry to pass to the entry's constructor.
+         * @return a new entry.
+         */
+        Entry<V> newEntry(V value, ReferenceQueue<? super V> queue, int hash,
+                Entry<V> next);
+    }
+
+    /**
+     * A hash chain entry. Entries are immutable so that they may be read
+     * without locking, and are removed by copying the entries ahead of them
+     * in the chain. Subclasses add final key fields.
+     *
+     * @param <V> the type of the values.
+     */
+    public abstract static class Entry<V> extends SoftReference<V> {
+
+        private final int hash;
+        private final Entry<V> next;
+
+        protected Entry(V value, ReferenceQueue<? super V> queue, int hash,
+                Entry<V> next) {
+            super(value, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+
+        public final int getHash() {
+            return this.hash;
+        }
+
+        public final Entry<V> getNext() {
+            return this.next;
+        }
+
+        /**
+         * Creates an entry with the same key as this one and a different
+         * next entry.
+         *
+         * @param value this entry's value.
+         * @param queue the queue to pass to the entry's constructor.
+         * @param next the next entry of the copy.
+         * @return a new entry.
+         */
+        protected abstract Entry<V> copy(V value,
+                ReferenceQueue<? super V> queue, Entry<V> next);
+
+        private Entry<V> copyOrSkip(Entry<V> newNext,
+                ReferenceQueue<? super V> queue) {
+            V value = get();
+            if (value == null) {
+                return newNext;
+            }
+            return copy(value, queue, newNext);
+        }
+    }
+
+    private static final class Segment<V> extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        private volatile Entry<V>[] table;
+        private int count;
+        private int threshold;
+
+        Segment(int initialCapacity) {
+            setTable(newTable(initialCapacity));
+        }
+
+        /**
+         * Doubles the size of the table, dropping entries whose values have
+         * been reclaimed. Must be called with the lock held.
+         *
+         * @param queue the cache's reference queue.
+         * @return the new table.
+         */
+        Entry<V>[] rehash(ReferenceQueue<V> queue) {
+            Entry<V>[] oldTable = this.table;
+            Entry<V>[] newTable = newTable(oldTable.length << 1);
+            int newCount = 0;
+            for (Entry<V> head : oldTable) {
+                for (Entry<V> e = head; e != null; e = e.next) {
+                    int index = e.hash & (newTable.length - 1);
+                    Entry<V> copy = e.copyOrSkip(newTable[index], queue);
+                    if (copy != newTable[index]) {
+                        newTable[index] = copy;
+                        newCount++;
+                    }
+                }
+            }
+            this.count = newCount;
+            setTable(newTable);
+            return newTable;
+        }
+
+        /**
+         * Removes an entry whose value has been reclaimed. Must be called with
+         * the lock held.
+         *
+         * @param entry the entry to remove.
+         * @param queue the cache's reference queue.
+         */
+        void remove(Entry<V> entry, ReferenceQueue<V> queue) {
+            Entry<V>[] tab = this.table;
+            int index = entry.hash & (tab.length - 1);
+            Entry<V> first = tab[index];
+            for (Entry<V> e = first; e != null; e = e.next) {
+                if (e == entry) {
+                    Entry<V> newFirst = e.next;
+                    int removed = 1;
+                    for (Entry<V> p = first; p != e; p = p.next) {
+                        Entry<V> copy = p.copyOrSkip(newFirst, queue);
+                        if (copy == newFirst) {
+                            removed++;
+                        }
+                        newFirst = copy;
+                    }
+                    tab[index] = newFirst;
+                    this.count -= removed;
+                    this.table = tab;
+                    return;
+                }
+            }
+        }
+
+        private void setTable(Entry<V>[] newTable) {
+            this.threshold = (int) (newTable.length * LOAD_FACTOR);
+            this.table = newTable;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> Entry<V>[] newTable(int capacity) {
+            return (Entry<V>[]) new Entry<?>[capacity];
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.protempa.proposition;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The property or reference names of the propositions with a given id, each
+ * assigned a slot. Propositions store their property values and references
+ * in arrays indexed by slot, and all propositions with the same id share the
+ * schema, rather than each holding its own map.
+ *
+ * Schemas are immutable. When a proposition gets a name that its schema does
+ * not have, it switches to a schema with the name appended. All schemas for
+ * a proposition id form a chain in which each schema is a prefix of the
+ * next, so a name keeps its slot as the schema grows, and propositions
+ * created later start with the longest schema in the chain.
+ *
+ * @author Andrew Post
+ */
+final class SlotSchema {
+
+    private static final class Chain {
+
+        private volatile SlotSchema latest;
+    }
+
+    private static final ConcurrentMap<String, Chain> PROPERTY_CHAINS
+            = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Chain> REFERENCE_CHAINS
+            = new ConcurrentHashMap<>();
+
+    private final Chain chain;
+    private final String[] names;
+    private final Map<String, Integer> slots;
+
+    private SlotSchema(Chain chain, String[] names) {
+        this.chain = chain;
+        this.names = names;
+        this.slots = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            this.slots.put(names[i], i);
+        }
+    }
+
+    /**
+     * Gets the current property schema of the propositions with the given
+     * id.
+     *
+     * @param propId a proposition id.
+     * @return a schema.
+     */
+    static SlotSchema forProperties(String propId) {
+        return latest(PROPERTY_CHAINS, propId);
+    }
+
+    /**
+     * Gets the current reference schema of the propositions with the given
+     * id.
+     *
+     * @param propId a proposition id.
+     * @return a schema.
+     */
+    static SlotSchema forReferences(String propId) {
+        return latest(REFERENCE_CHAINS, propId);
+    }
+
+    private static SlotSchema latest(ConcurrentMap<String, Chain> chains,
+            String propId) {
+        Chain chain = chains.get(propId);
+        if (chain == null) {
+            Chain newChain = new Chain();
+            newChain.latest = new SlotSchema(newChain, new String[0]);
+            chain = chains.putIfAbsent(propId, newChain);
+            if (chain == null) {
+                chain = newChain;
+            }
+        }
+        return chain.latest;
+    }
+
+    /**
+     * Gets the slot of a name.
+     *
+     * @param name a name.
+     * @return the slot, or <code>-1</code> if this schema does not have the
+     * name.
+     */
+    int slot(String name) {
+        Integer slot = this.slots.get(name);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * Gets the name in a slot.
+     *
+     * @param slot a slot.
+     * @return the name.
+     */
+    String name(int slot) {
+        return this.names[slot];
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the number of slots.
+     */
+    int size() {
+        return this.names.length;
+    }
+
+    /**
+     * Gets a schema that has a name, which is this schema if it already has
+     * the name. Otherwise, it is a schema later in this schema's chain, with
+     * the same slots as this schema for this schema's names.
+     *
+     * @param name an interned name.
+     * @return a schema.
+     */
+    SlotSchema withName(String name) {
+        if (this.slots.containsKey(name)) {
+            return this;
+        }
+        synchronized (this.chain) {
+            SlotSchema latest = this.chain.latest;
+            if (!latest.slots.containsKey(name)) {
+                String[] names = Arrays.copyOf(latest.names,
+                        latest.names.length + 1);
+                names[latest.names.length] = name;
+                latest = new SlotSchema(this.chain, names);
+                this.chain.latest = latest;
+            }
+            return latest;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(this.names);
+    }
+}
@@ -82,17 +82,14 @@ public final class DefaultInterval extends Interval {
                 computeLength();
                 if (cn == null) {
                     cn = new ConstraintNetwork(1);
-                    if (v[0] == null || v[1] == null || v[2] == null
-                            || v[3] == null || v[4] != null || v[5] != null
-                            || v[2].compareTo(v[1]) <= 0) {
-                        cn.addInterval(this);
-                    } else {
-                        simple = true;
-                    }
+                    // The minimum length is always bounded (it defaults
+                    // to 0), so a new network always gets the interval.
+                    cn.addInterval(this);
                 } else {
                     cn.clear();
-                    if (v[0] == null || v[1] == null || v[2] == null
-                            || v[3] == null || v[2].compareTo(v[1]) <= 0) {
+                    if (v0 == Long.MIN_VALUE || v1 == Long.MAX_VALUE
+                            || v2 == Long.MIN_VALUE || v3 == Long.MAX_VALUE
+                            || v2 <= v1) {
                         cn.addInterval(this);
                     } else {
                         simple = true;
@@ -117,16 +114,16 @@ public final class DefaultInterval extends Interval {
     /*
      * (non-Javadoc)
      *
-     * @see org.virginia.pbhs.parameters.Interval#getMinimumStart()
+     * @see org.virginia.pbhs.parameters.Interval#minimumStart()
      */
     @Override
-    public Long getMinimumStart() {
+    public long minimumStart() {
         calculator();
         if (simple) {
-            return v[0];
+            return v0;
         } else {
             Weight minStart = cn.getMinimumStart();
-            return minStart.isInfinity() ? null : minStart.value();
+            return minStart.isInfinity() ? Long.MIN_VALUE : minStart.value();
         }
     }
 
@@ -139,16 +136,16 @@ public final class DefaultInterval extends Interval {
     /*
      * (non-Javadoc)
      *
-     * @see org.virginia.pbhs.parameters.Interval#getMaximumStart()
+     * @see org.virginia.pbhs.parameters.Interval#maximumStart()
      */
     @Override
-    public Long getMaximumStart() {
+    public long maximumStart() {
         calculator();
         if (simple) {
-            return v[1];
+            return v1;
         } else {
             Weight maxStart = cn.getMaximumStart();
-            return maxStart.isInfinity() ? null : maxStart.value();
+            return maxStart.isInfinity() ? Long.MAX_VALUE : maxStart.value();
         }
     }
 
@@ -161,16 +158,16 @@ public final class DefaultInterval extends Interval {
     /*
      * (non-Javadoc)
      *
-     * @see org.virginia.pbhs.parameters.Interval#getMinimumFinish()
+     * @see org.virginia.pbhs.parameters.Interval#minimumFinish()
      */
     @Override
-    public Long getMinimumFinish() {
+    public long minimumFinish() {
         calculator();
         if (simple) {
-            return v[2];
+            return v2;
         } else {
             Weight minFinish = cn.getMinimumFinish();
-            return minFinish.isInfinity() ? null : minFinish.value();
+            return minFinish.isInfinity() ? Long.MIN_VALUE : minFinish.value();
         }
     }
 
@@ -183,16 +180,16 @@ public final class DefaultInterval extends Interval {
     /*
      * (non-Javadoc)
      *
-     * @see org.virginia.pbhs.parameters.Interval#getMaximumFinish()
+     * @see org.virginia.pbhs.parameters.Interval#maximumFinish()
      */
     @Override
-    public Long getMaximumFinish() {
+    public long maximumFinish() {
         calculator();
         if (simple) {
-            return v[3];
+            return v3;
         } else {
             Weight maxFinish = cn.getMaximumFinish();
-            return maxFinish.isInfinity() ? null : maxFinish.value();
+            return maxFinish.isInfinity() ? Long.MAX_VALUE : maxFinish.value();
         }
     }
 
@@ -211,7 +208,7 @@ public final class DefaultInterval extends Interval {
     public Long getMinimumLength() {
         calculator();
         if (simple) {
-            return v[2] - v[1];
+            return v2 - v1;
         } else {
             Weight minDur = cn.getMinimumDuration();
             return minDur.isInfinity() ? null : minDur.value();
@@ -233,7 +230,7 @@ public final class DefaultInterval extends Interval {
     public Long getMaximumLength() {
         calculator();
         if (simple) {
-            return v[3] - v[0];
+            return v3 - v0;
         } else {
             Weight maxDur = cn.getMaximumDuration();
             return maxDur.isInfinity() ? null : maxDur.value();
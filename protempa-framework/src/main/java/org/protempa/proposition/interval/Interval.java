@@ -58,19 +58,38 @@ public abstract class Interval implements Comparable<Interval> {
         }
     }
     private static final WeightFactory weightFactory = new WeightFactory();
-    private Long minStart;
-    private Long maxStart;
+    /**
+     * Marks a length that was not specified. Lengths are never negative.
+     */
+    private static final long NO_LENGTH = -1L;
+    /*
+     * Bounds are stored as primitives. An unbounded minimum is stored as
+     * Long.MIN_VALUE and an unbounded maximum as Long.MAX_VALUE, which
+     * preserves their ordering relative to bounded values.
+     */
+    private long minStart;
+    private long maxStart;
     private Granularity startGranularity;
-    private Long minFinish;
-    private Long maxFinish;
+    private long minFinish;
+    private long maxFinish;
     private Granularity finishGranularity;
-    private Long minLength;
-    private Long maxLength;
+    private long minLength;
+    private long maxLength;
     private Unit lengthUnit;
     //Compute these
-    private Start start;
-    private Finish finish;
-    protected Long[] v;
+    private volatile Start start;
+    private volatile Finish finish;
+    /*
+     * The minimum start, maximum start, minimum finish, maximum finish,
+     * minimum length and maximum length in internal PROTEMPA units, using the
+     * same sentinels as above.
+     */
+    long v0;
+    long v1;
+    long v2;
+    long v3;
+    long v4;
+    long v5;
     private Weight[] vw;
     private volatile int hashCode;
     private boolean minLengthComputed;
@@ -124,58 +143,31 @@ public abstract class Interval implements Comparable<Interval> {
                     "maxLength must be positive or 0 but was " + maxLength);
         }
 
-        this.minStart = minStart;
-        this.maxStart = maxStart;
+        this.minStart = minStart != null ? minStart : Long.MIN_VALUE;
+        this.maxStart = maxStart != null ? maxStart : Long.MAX_VALUE;
         this.startGranularity = startGranularity;
-        this.minFinish = minFinish;
-        this.maxFinish = maxFinish;
+        this.minFinish = minFinish != null ? minFinish : Long.MIN_VALUE;
+        this.maxFinish = maxFinish != null ? maxFinish : Long.MAX_VALUE;
         this.finishGranularity = finishGranularity;
-        this.minLength = minLength;
-        this.maxLength = maxLength;
+        this.minLength = minLength != null ? minLength : NO_LENGTH;
+        this.maxLength = maxLength != null ? maxLength : NO_LENGTH;
         this.lengthUnit = lengthUnit;
 
         initComputed();
     }
 
     protected void initComputed() throws IllegalArgumentException {
-        this.start = new Start(this);
-        this.finish = new Finish(this);
-
-        Long w0 = null;
-        Long w1 = null;
-        Long w2 = null;
-        Long w3 = null;
-        Long w4 = 0L;
-        Long w5 = null;
-        if (startGranularity != null) {
-            if (minStart != null) {
-                w0 = minStart;
-            }
-            if (maxStart != null) {
-                w1 = startGranularity.latest(maxStart);
-            }
-        } else {
-            if (minStart != null) {
-                w0 = minStart;
-            }
-            if (maxStart != null) {
-                w1 = maxStart;
-            }
-        }
-        if (finishGranularity != null) {
-            if (minFinish != null) {
-                w2 = minFinish;
-            }
-            if (maxFinish != null) {
-                w3 = finishGranularity.latest(maxFinish);
-            }
-        } else {
-            if (minFinish != null) {
-                w2 = minFinish;
-            }
-            if (maxFinish != null) {
-                w3 = maxFinish;
-            }
+        long w0 = this.minStart;
+        long w1 = this.maxStart;
+        long w2 = this.minFinish;
+        long w3 = this.maxFinish;
+        long w4 = 0L;
+        long w5 = Long.MAX_VALUE;
+        if (startGranularity != null && maxStart != Long.MAX_VALUE) {
+            w1 = startGranularity.latest(maxStart);
+        }
+        if (finishGranularity != null && maxFinish != Long.MAX_VALUE) {
+            w3 = finishGranularity.latest(maxFinish);
         }
         Granularity g1 = null;
         if (startGranularity != null && finishGranularity != null) {
@@ -189,33 +181,44 @@ public abstract class Interval implements Comparable<Interval> {
         } else {
             g1 = finishGranularity;
         }
-        if (minLength != null) {
+        if (minLength != NO_LENGTH) {
             if (g1 != null) {
-                w4 = g1.minimumDistance(maxStart, minLength, lengthUnit);
-            } else if (minFinish != null && maxStart != null) {
-                w4 = minLength.longValue();
+                if (maxStart != Long.MAX_VALUE) {
+                    w4 = g1.minimumDistance(maxStart, minLength, lengthUnit);
+                }
+            } else if (minFinish != Long.MIN_VALUE
+                    && maxStart != Long.MAX_VALUE) {
+                w4 = minLength;
             }
             this.minLengthComputed = true;
         }
-        if (maxLength != null) {
+        if (maxLength != NO_LENGTH) {
             if (g1 != null) {
-                w5 = g1.maximumDistance(minStart, maxLength, lengthUnit);
-            } else if (maxFinish != null && minStart != null) {
-                w5 = minLength.longValue();
+                if (minStart != Long.MIN_VALUE) {
+                    w5 = g1.maximumDistance(minStart, maxLength, lengthUnit);
+                }
+            } else if (maxFinish != Long.MAX_VALUE
+                    && minStart != Long.MIN_VALUE) {
+                w5 = minLength;
             }
             this.maxLengthComputed = true;
         }
-        v = new Long[]{w0, w1, w2, w3, w4, w5};
-        if ((v[0] != null && v[1] != null && v[0].compareTo(v[1]) > 0) || (v[2] != null && v[3] != null && v[2].compareTo(v[3]) > 0) || (v[4] != null && v[5] != null && v[4].compareTo(v[5]) > 0)) {
+        if (w0 > w1 || w2 > w3 || w4 > w5) {
             throw new IllegalArgumentException("Illegal values for interval");
         }
+        this.v0 = w0;
+        this.v1 = w1;
+        this.v2 = w2;
+        this.v3 = w3;
+        this.v4 = w4;
+        this.v5 = w5;
     }
 
     protected void computeLength() {
         if (!this.minLengthComputed || !this.maxLengthComputed) {
             //set default min and max length
-            Long w4 = 0L;
-            Long w5 = null;
+            long w4 = 0L;
+            long w5 = Long.MAX_VALUE;
 
             //set granularities
             Granularity g1 = null;
@@ -236,56 +239,62 @@ public abstract class Interval implements Comparable<Interval> {
 
             //set min length
             if (!this.minLengthComputed) {
-                if (this.minLength == null) {
+                if (this.minLength == NO_LENGTH) {
                     if (g1 != null) {
                         lengthUnit = g1.getCorrespondingUnit();
-                        if (maxStart != null && minFinish != null) {
+                        if (maxStart != Long.MAX_VALUE
+                                && minFinish != Long.MIN_VALUE) {
                             minLength = g1.distance(maxStart, minFinish, g2,
                                     lengthUnit);
                         }
-                    } else if (minFinish != null && maxStart != null) {
+                    } else if (minFinish != Long.MIN_VALUE
+                            && maxStart != Long.MAX_VALUE) {
                         minLength = minFinish - maxStart;
                     }
                 }
                 if (g1 != null) {
-                    if (maxStart != null && minLength != null) {
+                    if (maxStart != Long.MAX_VALUE && minLength != NO_LENGTH) {
                         w4 = g1.minimumDistance(maxStart, minLength,
                                 lengthUnit);
                     }
-                } else if (minFinish != null && maxStart != null) {
-                    w4 = minLength.longValue();
+                } else if (minFinish != Long.MIN_VALUE
+                        && maxStart != Long.MAX_VALUE) {
+                    w4 = minLength;
                 }
                 minLengthComputed = true;
             }
 
             //set max length
             if (!this.maxLengthComputed) {
-                if (this.maxLength == null) {
+                if (this.maxLength == NO_LENGTH) {
                     if (g1 != null) {
                         lengthUnit = g1.getCorrespondingUnit();
-                        if (minStart != null && maxFinish != null) {
+                        if (minStart != Long.MIN_VALUE
+                                && maxFinish != Long.MAX_VALUE) {
                             maxLength = g1.distance(minStart, maxFinish, g2,
                                     lengthUnit);
                         }
 
-                    } else if (maxFinish != null && minStart != null) {
+                    } else if (maxFinish != Long.MAX_VALUE
+                            && minStart != Long.MIN_VALUE) {
                         maxLength = maxFinish - minStart;
                     }
                 }
                 if (g1 != null) {
-                    if (minStart != null && maxLength != null) {
+                    if (minStart != Long.MIN_VALUE && maxLength != NO_LENGTH) {
                         w5 = g1.maximumDistance(minStart, maxLength,
                                 lengthUnit);
                     }
-                } else if (maxFinish != null && minStart != null) {
-                    w5 = minLength.longValue();
+                } else if (maxFinish != Long.MAX_VALUE
+                        && minStart != Long.MIN_VALUE) {
+                    w5 = minLength;
                 }
                 this.maxLengthComputed = true;
             }
 
             //set min and max length
-            this.v[4] = w4;
-            this.v[5] = w5;
+            this.v4 = w4;
+            this.v5 = w5;
         }
     }
 
@@ -295,7 +304,7 @@ public abstract class Interval implements Comparable<Interval> {
      * @return a {@link Long}.
      */
     public Long getMinimumStart() {
-        return v[0];
+        return boxMinimum(minimumStart());
     }
 
     /**
@@ -304,7 +313,7 @@ public abstract class Interval implements Comparable<Interval> {
      * @return a {@link Long}.
      */
     public Long getMaximumStart() {
-        return v[1];
+        return boxMaximum(maximumStart());
     }
 
     /**
@@ -313,7 +322,7 @@ public abstract class Interval implements Comparable<Interval> {
      * @return a {@link Long}.
      */
     public Long getMinimumFinish() {
-        return v[2];
+        return boxMinimum(minimumFinish());
     }
 
     /**
@@ -322,7 +331,47 @@ public abstract class Interval implements Comparable<Interval> {
      * @return a {@link Long}.
      */
     public Long getMaximumFinish() {
-        return v[3];
+        return boxMaximum(maximumFinish());
+    }
+
+    /**
+     * Gets the minimum start in internal PROTEMPA units without boxing it.
+     *
+     * @return the minimum start, or {@link Long#MIN_VALUE} if it is
+     * unbounded.
+     */
+    public long minimumStart() {
+        return v0;
+    }
+
+    /**
+     * Gets the maximum start in internal PROTEMPA units without boxing it.
+     *
+     * @return the maximum start, or {@link Long#MAX_VALUE} if it is
+     * unbounded.
+     */
+    public long maximumStart() {
+        return v1;
+    }
+
+    /**
+     * Gets the minimum finish in internal PROTEMPA units without boxing it.
+     *
+     * @return the minimum finish, or {@link Long#MIN_VALUE} if it is
+     * unbounded.
+     */
+    public long minimumFinish() {
+        return v2;
+    }
+
+    /**
+     * Gets the maximum finish in internal PROTEMPA units without boxing it.
+     *
+     * @return the maximum finish, or {@link Long#MAX_VALUE} if it is
+     * unbounded.
+     */
+    public long maximumFinish() {
+        return v3;
     }
 
     /**
@@ -332,7 +381,7 @@ public abstract class Interval implements Comparable<Interval> {
      */
     public Long getMinimumLength() {
         computeLength();
-        return v[4];
+        return v4;
     }
 
     /**
@@ -342,17 +391,17 @@ public abstract class Interval implements Comparable<Interval> {
      */
     public Long getMaximumLength() {
         computeLength();
-        return v[5];
+        return boxMaximum(v5);
     }
 
     private void initVw() {
         this.vw = new Weight[]{
-            v[0] != null ? weightFactory.getInstance(v[0]) : WeightFactory.NEG_INFINITY,
-            v[1] != null ? weightFactory.getInstance(v[1]) : WeightFactory.POS_INFINITY,
-            v[2] != null ? weightFactory.getInstance(v[2]) : WeightFactory.NEG_INFINITY,
-            v[3] != null ? weightFactory.getInstance(v[3]) : WeightFactory.POS_INFINITY,
-            v[4] != null ? weightFactory.getInstance(v[4]) : WeightFactory.ZERO,
-            v[5] != null ? weightFactory.getInstance(v[5]) : WeightFactory.POS_INFINITY};
+            v0 != Long.MIN_VALUE ? weightFactory.getInstance(v0) : WeightFactory.NEG_INFINITY,
+            v1 != Long.MAX_VALUE ? weightFactory.getInstance(v1) : WeightFactory.POS_INFINITY,
+            v2 != Long.MIN_VALUE ? weightFactory.getInstance(v2) : WeightFactory.NEG_INFINITY,
+            v3 != Long.MAX_VALUE ? weightFactory.getInstance(v3) : WeightFactory.POS_INFINITY,
+            weightFactory.getInstance(v4),
+            v5 != Long.MAX_VALUE ? weightFactory.getInstance(v5) : WeightFactory.POS_INFINITY};
     }
 
     /**
@@ -428,30 +477,53 @@ public abstract class Interval implements Comparable<Interval> {
     }
 
     /**
-     * Get the start vertex of this interval.
+     * Get the start vertex of this interval. It is created on first use,
+     * because only intervals that are added to a constraint network need it.
      *
      * @return
      */
     Start getStart() {
-        return start;
+        Start result = this.start;
+        if (result == null) {
+            synchronized (this) {
+                result = this.start;
+                if (result == null) {
+                    result = new Start(this);
+                    this.start = result;
+                }
+            }
+        }
+        return result;
     }
 
     /**
-     * Get the finish vertex of this interval.
+     * Get the finish vertex of this interval. It is created on first use,
+     * because only intervals that are added to a constraint network need it.
      *
      * @return
      */
     Finish getFinish() {
-        return finish;
+        Finish result = this.finish;
+        if (result == null) {
+            synchronized (this) {
+                result = this.finish;
+                if (result == null) {
+                    result = new Finish(this);
+                    this.finish = result;
+                }
+            }
+        }
+        return result;
     }
 
     public boolean isLengthGreaterThan(int duration, Unit durationUnits) {
-        Long minS = getMinimumStart();
-        Long minF = getMinimumFinish();
-        if (durationUnits == null || minS == null || minF == null) {
-            if (minF == null) {
+        long minS = minimumStart();
+        long minF = minimumFinish();
+        if (durationUnits == null || minS == Long.MIN_VALUE
+                || minF == Long.MIN_VALUE) {
+            if (minF == Long.MIN_VALUE) {
                 return false;
-            } else if (minS == null) {
+            } else if (minS == Long.MIN_VALUE) {
                 return true;
             } else {
                 return minS + duration < minF;
@@ -463,12 +535,13 @@ public abstract class Interval implements Comparable<Interval> {
     }
 
     public boolean isLengthLessThan(int duration, Unit durationUnits) {
-        Long maxS = getMaximumStart();
-        Long maxF = getMaximumFinish();
-        if (durationUnits == null || maxS == null || maxF == null) {
-            if (maxF == null) {
+        long maxS = maximumStart();
+        long maxF = maximumFinish();
+        if (durationUnits == null || maxS == Long.MAX_VALUE
+                || maxF == Long.MAX_VALUE) {
+            if (maxF == Long.MAX_VALUE) {
                 return false;
-            } else if (maxS == null) {
+            } else if (maxS == Long.MAX_VALUE) {
                 return true;
             } else {
                 return maxS + duration > maxF;
@@ -486,7 +559,8 @@ public abstract class Interval implements Comparable<Interval> {
      */
     @Override
     public String toString() {
-        return Arrays.asList(v).toString();
+        return Arrays.asList(boxMinimum(v0), boxMaximum(v1), boxMinimum(v2),
+                boxMaximum(v3), v4, boxMaximum(v5)).toString();
     }
 
     static final class Start {
@@ -566,14 +640,30 @@ public abstract class Interval implements Comparable<Interval> {
         }
 
         Interval otherIval = (Interval) other;
-        return Arrays.equals(this.v, otherIval.v);
+        return this.v0 == otherIval.v0 && this.v1 == otherIval.v1
+                && this.v2 == otherIval.v2 && this.v3 == otherIval.v3
+                && this.v4 == otherIval.v4 && this.v5 == otherIval.v5;
     }
 
     @Override
     public int hashCode() {
         if (this.hashCode == 0) {
+            // Same value as hashing the boxed bounds as a list, with null for
+            // unbounded ones.
+            int vHashCode = 1;
+            vHashCode = 31 * vHashCode
+                    + (v0 != Long.MIN_VALUE ? Long.hashCode(v0) : 0);
+            vHashCode = 31 * vHashCode
+                    + (v1 != Long.MAX_VALUE ? Long.hashCode(v1) : 0);
+            vHashCode = 31 * vHashCode
+                    + (v2 != Long.MIN_VALUE ? Long.hashCode(v2) : 0);
+            vHashCode = 31 * vHashCode
+                    + (v3 != Long.MAX_VALUE ? Long.hashCode(v3) : 0);
+            vHashCode = 31 * vHashCode + Long.hashCode(v4);
+            vHashCode = 31 * vHashCode
+                    + (v5 != Long.MAX_VALUE ? Long.hashCode(v5) : 0);
             int result = 17;
-            result = 37 * result + Arrays.hashCode(this.v);
+            result = 37 * result + vHashCode;
             this.hashCode = result;
         }
 
@@ -586,33 +676,13 @@ public abstract class Interval implements Comparable<Interval> {
             return 0;
         }
 
-        Long start1 = this.getMinimumStart();
-        Long finish1 = this.getMaximumFinish();
-        Long start2 = o.getMinimumStart();
-        Long finish2 = o.getMaximumFinish();
-
-        int result;
-        if (start1 == null && start2 != null) {
-            result = -1;
-        } else if (start1 != null && start2 == null) {
-            result = 1;
-        } else if (start1 == null && start2 == null) {
-            result = 0;
-        } else {
-            result = start1.compareTo(start2);
-        }
+        // An unbounded start sorts first and an unbounded finish sorts
+        // last, which the sentinel values give us for free.
+        int result = Long.compare(this.minimumStart(), o.minimumStart());
         if (result != 0) {
             return result;
         }
-        if (finish1 == null && finish2 != null) {
-            return 1;
-        } else if (finish1 != null && finish2 == null) {
-            return -1;
-        } else if (finish1 == null && finish2 == null) {
-            return 0;
-        } else {
-            return finish1.compareTo(finish2);
-        }
+        return Long.compare(this.maximumFinish(), o.maximumFinish());
     }
 
     /**
@@ -621,7 +691,7 @@ public abstract class Interval implements Comparable<Interval> {
      * @return a {@link Long}.
      */
     public Long getMinStart() {
-        return minStart;
+        return boxMinimum(minStart);
     }
 
     /**
@@ -630,7 +700,7 @@ public abstract class Interval implements Comparable<Interval> {
      * @return a {@link Long}.
      */
     public Long getMaxStart() {
-        return maxStart;
+        return boxMaximum(maxStart);
     }
 
     /**
@@ -648,7 +718,7 @@ public abstract class Interval implements Comparable<Interval> {
      * @return a {@link Long}.
      */
     public Long getMinFinish() {
-        return minFinish;
+        return boxMinimum(minFinish);
     }
 
     /**
@@ -657,7 +727,7 @@ public abstract class Interval implements Comparable<Interval> {
      * @return a {@link Long}.
      */
     public Long getMaxFinish() {
-        return maxFinish;
+        return boxMaximum(maxFinish);
     }
 
     /**
@@ -677,7 +747,7 @@ public abstract class Interval implements Comparable<Interval> {
      */
     public Long getMinLength() {
         computeLength();
-        return minLength;
+        return minLength != NO_LENGTH ? minLength : null;
     }
 
     public Long minLengthIn(Unit unit) {
@@ -737,7 +807,7 @@ public abstract class Interval implements Comparable<Interval> {
      */
     public Long getMaxLength() {
         computeLength();
-        return maxLength;
+        return maxLength != NO_LENGTH ? maxLength : null;
     }
 
     /**
@@ -750,20 +820,28 @@ public abstract class Interval implements Comparable<Interval> {
         return lengthUnit;
     }
 
+    private static Long boxMinimum(long value) {
+        return value != Long.MIN_VALUE ? Long.valueOf(value) : null;
+    }
+
+    private static Long boxMaximum(long value) {
+        return value != Long.MAX_VALUE ? Long.valueOf(value) : null;
+    }
+
     private void readObject(ObjectInputStream s) throws IOException,
             ClassNotFoundException {
         s.defaultReadObject();
 
-        if (minStart != null && maxFinish != null && minStart > maxFinish) {
+        if (minStart > maxFinish) {
             throw new InvalidObjectException(
                     "maxFinish cannot be before minStart; maxFinish="
                     + maxFinish + "; minStart=" + minStart);
         }
-        if (minLength != null && minLength < 0) {
+        if (minLength < 0 && minLength != NO_LENGTH) {
             throw new InvalidObjectException(
                     "minLength must be positive or 0 but was " + minLength);
         }
-        if (maxLength != null && maxLength < 0) {
+        if (maxLength < 0 && maxLength != NO_LENGTH) {
             throw new InvalidObjectException(
                     "maxLength must be positive or 0 but was " + maxLength);
         }
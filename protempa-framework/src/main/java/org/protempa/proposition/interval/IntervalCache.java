@@ -0,0 +1,225 @@
+package org.protempa.proposition.interval;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.lang.ref.ReferenceQueue;
+import java.util.Objects;
+import org.protempa.proposition.SegmentedSoftCache;
+import org.protempa.proposition.value.Granularity;
+
+/**
+ * Interns {@link Interval}s for {@link IntervalFactory}. Intervals are looked
+ * up by their bounds and granularities directly, without allocating a key
+ * object. The intervals are held in a {@link SegmentedSoftCache}, so lookups
+ * of intervals that are already in the cache do not lock, and the garbage
+ * collector may reclaim intervals when memory is low.
+ *
+ * @author Andrew Post
+ */
+final class IntervalCache {
+
+    /**
+     * Distinguishes the three {@link IntervalFactory} <code>getInstance</code>
+     * methods, so that, for example, an interval created from a position is
+     * not returned for an interval created from a start and finish.
+     */
+    static final int KIND_POSITION = 0;
+    static final int KIND_START_FINISH = 1;
+    static final int KIND_MIN_MAX = 2;
+
+    private static final int SEGMENT_COUNT = 64;
+    private static final int INITIAL_SEGMENT_CAPACITY = 256;
+
+    private final SegmentedSoftCache<Interval> cache;
+
+    IntervalCache() {
+        this.cache = new SegmentedSoftCache<>(SEGMENT_COUNT,
+                INITIAL_SEGMENT_CAPACITY);
+    }
+
+    /**
+     * Looks up an interval without locking.
+     *
+     * @return the cached interval, or <code>null</code> if there is none.
+     */
+    Interval get(int kind, Long v0, Long v1, Granularity g0, Long v2,
+            Long v3, Granularity g1) {
+        int nulls = nulls(v0, v1, v2, v3);
+        long l0 = v0 != null ? v0 : 0L;
+        long l1 = v1 != null ? v1 : 0L;
+        long l2 = v2 != null ? v2 : 0L;
+        long l3 = v3 != null ? v3 : 0L;
+        int hash = hash(kind, nulls, l0, l1, g0, l2, l3, g1);
+        for (SegmentedSoftCache.Entry<Interval> e = this.cache.getFirst(hash);
+                e != null; e = e.getNext()) {
+            if (e.getHash() == hash && ((Entry) e).matches(kind, nulls, l0,
+                    l1, g0, l2, l3, g1)) {
+                Interval result = e.get();
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds an interval to the cache unless another thread added an equivalent
+     * one first.
+     *
+     * @param interval the interval to add.
+     * @return the interval that is in the cache after this call returns,
+     * which is <code>interval</code> unless another thread won the race.
+     */
+    Interval putIfAbsent(int kind, Long v0, Long v1, Granularity g0,
+            Long v2, Long v3, Granularity g1, Interval interval) {
+        assert interval != null : "interval cannot be null";
+        int nulls = nulls(v0, v1, v2, v3);
+        long l0 = v0 != null ? v0 : 0L;
+        long l1 = v1 != null ? v1 : 0L;
+        long l2 = v2 != null ? v2 : 0L;
+        long l3 = v3 != null ? v3 : 0L;
+        return this.cache.putIfAbsent(
+                hash(kind, nulls, l0, l1, g0, l2, l3, g1),
+                new Key(kind, nulls, l0, l1, g0, l2, l3, g1), interval);
+    }
+
+    /**
+     * Returns the number of entries in the cache, including any whose
+     * intervals have been reclaimed but not yet removed.
+     *
+     * @return the number of entries.
+     */
+    int size() {
+        return this.cache.size();
+    }
+
+    private static int nulls(Long v0, Long v1, Long v2, Long v3) {
+        return (v0 == null ? 1 : 0) | (v1 == null ? 2 : 0)
+                | (v2 == null ? 4 : 0) | (v3 == null ? 8 : 0);
+    }
+
+    private static int hash(int kind, int nulls, long l0, long l1,
+            Granularity g0, long l2, long l3, Granularity g1) {
+        int h = 31 * kind + nulls;
+        h = 31 * h + Long.hashCode(l0);
+        h = 31 * h + Long.hashCode(l1);
+        h = 31 * h + Objects.hashCode(g0);
+        h = 31 * h + Long.hashCode(l2);
+        h = 31 * h + Long.hashCode(l3);
+        h = 31 * h + Objects.hashCode(g1);
+        // Spread the bits so that both the segment (high bits) and the bucket
+        // (low bits) depend on all of the fields.
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    /**
+     * The bounds and granularities of an interval to add, with a bit set in
+     * <code>nulls</code> for each bound that is <code>null</code>.
+     */
+    private static final class Key
+            implements SegmentedSoftCache.Key<Interval> {
+
+        private final int kind;
+        private final int nulls;
+        private final long l0;
+        private final long l1;
+        private final Granularity g0;
+        private final long l2;
+        private final long l3;
+        private final Granularity g1;
+
+        Key(int kind, int nulls, long l0, long l1, Granularity g0, long l2,
+                long l3, Granularity g1) {
+            this.kind = kind;
+            this.nulls = nulls;
+            this.l0 = l0;
+            this.l1 = l1;
+            this.g0 = g0;
+            this.l2 = l2;
+            this.l3 = l3;
+            this.g1 = g1;
+        }
+
+        @Override
+        public boolean matches(SegmentedSoftCache.Entry<Interval> entry) {
+            return ((Entry) entry).matches(this.kind, this.nulls, this.l0,
+                    this.l1, this.g0, this.l2, this.l3, this.g1);
+        }
+
+        @Override
+        public SegmentedSoftCache.Entry<Interval> newEntry(Interval interval,
+                ReferenceQueue<? super Interval> queue, int hash,
+                SegmentedSoftCache.Entry<Interval> next) {
+            return new Entry(interval, queue, hash, this.kind, this.nulls,
+                    this.l0, this.l1, this.g0, this.l2, this.l3, this.g1,
+                    next);
+        }
+    }
+
+    /**
+     * A cached interval with its bounds and granularities.
+     */
+    private static final class Entry
+            extends SegmentedSoftCache.Entry<Interval> {
+
+        private final int kind;
+        private final int nulls;
+        private final long l0;
+        private final long l1;
+        private final Granularity g0;
+        private final long l2;
+        private final long l3;
+        private final Granularity g1;
+
+        Entry(Interval interval, ReferenceQueue<? super Interval> queue,
+                int hash, int kind, int nulls, long l0, long l1,
+                Granularity g0, long l2, long l3, Granularity g1,
+                SegmentedSoftCache.Entry<Interval> next) {
+            super(interval, queue, hash, next);
+            this.kind = kind;
+            this.nulls = nulls;
+            this.l0 = l0;
+            this.l1 = l1;
+            this.g0 = g0;
+            this.l2 = l2;
+            this.l3 = l3;
+            this.g1 = g1;
+        }
+
+        boolean matches(int kind, int nulls, long l0, long l1,
+                Granularity g0, long l2, long l3, Granularity g1) {
+            return this.kind == kind && this.nulls == nulls
+                    && this.l0 == l0 && this.l1 == l1 && this.l2 == l2
+                    && this.l3 == l3 && Objects.equals(this.g0, g0)
+                    && Objects.equals(this.g1, g1);
+        }
+
+        @Override
+        protected SegmentedSoftCache.Entry<Interval> copy(Interval interval,
+                ReferenceQueue<? super Interval> queue,
+                SegmentedSoftCache.Entry<Interval> next) {
+            return new Entry(interval, queue, getHash(), this.kind,
+                    this.nulls, this.l0, this.l1, this.g0, this.l2, this.l3,
+                    this.g1, next);
+        }
+    }
+}
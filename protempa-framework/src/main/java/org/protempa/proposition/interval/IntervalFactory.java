@@ -19,14 +19,9 @@
  */
 package org.protempa.proposition.interval;
 
-import org.apache.commons.collections4.map.ReferenceMap;
 import org.protempa.proposition.value.AbsoluteTimeGranularity;
 import org.protempa.proposition.value.Granularity;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-
 /**
  * A factory for creating {@link Interval} objects. A subclass of
  * {@link Interval} will be returned that is optimized for the arguments that
@@ -41,7 +36,7 @@ public final class IntervalFactory {
         private static Interval defaultInterval = new DefaultInterval();
     }
 
-    private static final Map<List<Object>, Interval> cache = new ReferenceMap<>();
+    private static final IntervalCache cache = new IntervalCache();
 
     /**
      * Returns an interval specified by the given minimum start, maximum start,
@@ -71,22 +66,20 @@ public final class IntervalFactory {
     public Interval getInstance(Long minStart, Long maxStart,
             Granularity startGran, Long minFinish, Long maxFinish,
             Granularity finishGran) {
-        List<Object> key = Arrays.asList(new Object[]{minStart, maxStart,
-            startGran, minFinish, maxFinish, finishGran});
-        Interval result;
-        synchronized (cache) {
-            result = cache.get(key);
-            if (result == null) {
-                if (minStart == null || maxStart == null || minFinish == null
-                        || maxFinish == null) {
-                    result = new DefaultInterval(minStart, maxStart, startGran,
-                            minFinish, maxFinish, finishGran, null, null, null);
-                } else {
-                    result = new SimpleInterval(minStart, maxStart,
-                            startGran, minFinish, maxFinish, finishGran);
-                }
-                cache.put(key, result);
+        Interval result = cache.get(IntervalCache.KIND_MIN_MAX, minStart,
+                maxStart, startGran, minFinish, maxFinish, finishGran);
+        if (result == null) {
+            if (minStart == null || maxStart == null || minFinish == null
+                    || maxFinish == null) {
+                result = new DefaultInterval(minStart, maxStart, startGran,
+                        minFinish, maxFinish, finishGran, null, null, null);
+            } else {
+                result = new SimpleInterval(minStart, maxStart,
+                        startGran, minFinish, maxFinish, finishGran);
             }
+            result = cache.putIfAbsent(IntervalCache.KIND_MIN_MAX, minStart,
+                    maxStart, startGran, minFinish, maxFinish, finishGran,
+                    result);
         }
         return result;
     }
@@ -109,19 +102,16 @@ public final class IntervalFactory {
      */
     public Interval getInstance(Long start, Granularity startGran,
             Long finish, Granularity finishGran) {
-        List<Object> key = Arrays.asList(new Object[]{start, startGran,
-            finish, finishGran});
-        Interval result;
-        synchronized (cache) {
-            result = cache.get(key);
-            if (result == null) {
-                if (start == null || finish == null) {
-                    result = new DefaultInterval(start, startGran, finish, finishGran);
-                } else {
-                    result = new SimpleInterval(start, startGran, finish, finishGran);
-                }
-                cache.put(key, result);
+        Interval result = cache.get(IntervalCache.KIND_START_FINISH, start,
+                null, startGran, finish, null, finishGran);
+        if (result == null) {
+            if (start == null || finish == null) {
+                result = new DefaultInterval(start, startGran, finish, finishGran);
+            } else {
+                result = new SimpleInterval(start, startGran, finish, finishGran);
             }
+            result = cache.putIfAbsent(IntervalCache.KIND_START_FINISH, start,
+                    null, startGran, finish, null, finishGran, result);
         }
         return result;
     }
@@ -141,18 +131,16 @@ public final class IntervalFactory {
      * @return an {@link Interval}.
      */
     public Interval getInstance(Long position, Granularity gran) {
-        List<Object> key = Arrays.asList(new Object[]{position, gran});
-        Interval result;
-        synchronized (cache) {
-            result = cache.get(key);
-            if (result == null) {
-                if (position == null) {
-                    result = new DefaultInterval(position, gran, position, gran);
-                } else {
-                    result = new SimpleInterval(position, gran);
-                }
-                cache.put(key, result);
+        Interval result = cache.get(IntervalCache.KIND_POSITION, position,
+                null, gran, null, null, null);
+        if (result == null) {
+            if (position == null) {
+                result = new DefaultInterval(position, gran, position, gran);
+            } else {
+                result = new SimpleInterval(position, gran);
             }
+            result = cache.putIfAbsent(IntervalCache.KIND_POSITION, position,
+                    null, gran, null, null, null, result);
         }
         return result;
     }
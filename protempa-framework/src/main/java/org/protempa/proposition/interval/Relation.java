@@ -289,14 +289,14 @@ public final class Relation implements Serializable {
         if (interval1 == null || interval2 == null) {
             return false;
         }
-        Long minStart1 = interval1.getMinimumStart();
-        Long maxStart1 = interval1.getMaximumStart();
-        Long minFinish1 = interval1.getMinimumFinish();
-        Long maxFinish1 = interval1.getMaximumFinish();
-        Long minStart2 = interval2.getMinimumStart();
-        Long maxStart2 = interval2.getMaximumStart();
-        Long minFinish2 = interval2.getMinimumFinish();
-        Long maxFinish2 = interval2.getMaximumFinish();
+        long minStart1 = interval1.minimumStart();
+        long maxStart1 = interval1.maximumStart();
+        long minFinish1 = interval1.minimumFinish();
+        long maxFinish1 = interval1.maximumFinish();
+        long minStart2 = interval2.minimumStart();
+        long maxStart2 = interval2.maximumStart();
+        long minFinish2 = interval2.minimumFinish();
+        long maxFinish2 = interval2.maximumFinish();
         return evenHasRelationCheck(0, minStart1, minStart2)
                 && oddHasRelationCheck(1, maxStart1, maxStart2)
                 && evenHasRelationCheck(2, minStart1, minFinish2)
@@ -307,35 +307,41 @@ public final class Relation implements Serializable {
                 && oddHasRelationCheck(7, maxFinish1, maxFinish2);
     }
 
-    private boolean evenHasRelationCheck(int i, Long lhs, Long rhs) {
-        if (this.units[i] != null && lhs != null && rhs != null
-                && this.intValues[i] != null) {
-            long lhsl = lhs;
-            long rhsl = rhs;
-            if (lhsl <= rhsl) {
-                return isLessThanOrEqualToDuration(this.units[i], lhsl, rhsl,
+    /*
+     * lhs and rhs are minimums, which are Long.MIN_VALUE when unbounded.
+     */
+    private boolean evenHasRelationCheck(int i, long lhs, long rhs) {
+        boolean bounded = lhs != Long.MIN_VALUE && rhs != Long.MIN_VALUE;
+        if (this.units[i] != null && bounded && this.intValues[i] != null) {
+            if (lhs <= rhs) {
+                return isLessThanOrEqualToDuration(this.units[i], lhs, rhs,
                         this.intValues[i]);
             } else {
-                return isGreaterThanOrEqualToDuration(this.units[i], rhsl,
-                        lhsl, -this.intValues[i]);
+                return isGreaterThanOrEqualToDuration(this.units[i], rhs,
+                        lhs, -this.intValues[i]);
             }
-        } else if (lhs != null && rhs != null && this.intValues[i] != null) {
+        } else if (bounded && this.intValues[i] != null) {
             return lhs + this.intValues[i] <= rhs;
-        } else if ((rhs != null || lhs == null) && this.intValues[i] == null) {
+        } else if ((rhs != Long.MIN_VALUE || lhs == Long.MIN_VALUE)
+                && this.intValues[i] == null) {
             return true;
         } else {
             return false;
         }
     }
 
-    private boolean oddHasRelationCheck(int i, Long lhs, Long rhs) {
-        if (this.units[i] != null && lhs != null && rhs != null
-                && this.intValues[i] != null) {
+    /*
+     * lhs and rhs are maximums, which are Long.MAX_VALUE when unbounded.
+     */
+    private boolean oddHasRelationCheck(int i, long lhs, long rhs) {
+        boolean bounded = lhs != Long.MAX_VALUE && rhs != Long.MAX_VALUE;
+        if (this.units[i] != null && bounded && this.intValues[i] != null) {
             return isGreaterThanOrEqualToDuration(this.units[i], lhs, rhs,
                     this.intValues[i]);
-        } else if (lhs != null && rhs != null && this.intValues[i] != null) {
+        } else if (bounded && this.intValues[i] != null) {
             return lhs + this.intValues[i] >= rhs;
-        } else if ((lhs != null || rhs == null) && this.intValues[i] == null) {
+        } else if ((lhs != Long.MAX_VALUE || rhs == Long.MAX_VALUE)
+                && this.intValues[i] == null) {
             return true;
         } else {
             return false;
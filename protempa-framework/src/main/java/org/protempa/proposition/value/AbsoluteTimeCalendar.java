@@ -0,0 +1,505 @@
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2013 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.proposition.value;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Calendar arithmetic for {@link AbsoluteTimeGranularity} and
+ * {@link AbsoluteTimeUnit}, with the same results as
+ * {@link Calendar#add(int, int) } in a time zone, without locking and
+ * without stepping one calendar unit at a time.
+ *
+ * When the time zone has a fixed offset from UTC and the calendar is
+ * Gregorian, positions are converted to a day and a time of day and computed
+ * with {@link LocalDate}, which is immutable. Otherwise, and for positions
+ * before the Gregorian cutover or very far in the future, the computation is
+ * done with a {@link Calendar} confined to the current thread.
+ *
+ * Distances in calendar units are the number of times one unit can be added
+ * to the start without passing the finish. Because adding one month pins
+ * the day of the month to the month's length, repeatedly adding one month
+ * to January 31 yields February 28 and then March 28, and the distances are
+ * computed accordingly. In time zones with daylight saving time, the offset
+ * from UTC is fixed between the zone's transitions, so distances are
+ * computed in closed form from one transition to the next, and a calendar
+ * only steps over the few units around each transition. Calendars may
+ * change the local time of day when a step lands in a gap, and the later
+ * steps keep the changed time of day.
+ *
+ * @author Andrew Post
+ */
+final class AbsoluteTimeCalendar {
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * How far from a time zone transition a calendar is used rather than
+     * closed-form arithmetic. It is longer than any change in a zone's offset
+     * from UTC, so local times this far from a transition are neither in a
+     * gap nor ambiguous.
+     */
+    private static final long TRANSITION_MARGIN = 2 * MILLIS_PER_DAY;
+
+    /**
+     * The earliest position computed in closed form, a year after the
+     * Gregorian cutover so that subtracting a unit cannot cross it.
+     */
+    private static final long MIN_POSITION
+            = new GregorianCalendar().getGregorianChange().getTime()
+            + 366 * MILLIS_PER_DAY;
+
+    /**
+     * The latest position computed in closed form, around the year 300000,
+     * far enough from the range of <code>long</code> that the arithmetic
+     * cannot overflow.
+     */
+    private static final long MAX_POSITION = 10000000000000000L;
+
+    /**
+     * The largest number of months or years added in closed form.
+     */
+    private static final long MAX_CALENDAR_AMOUNT = 1000000;
+
+    private static final AbsoluteTimeCalendar DEFAULT
+            = new AbsoluteTimeCalendar(TimeZone.getDefault());
+
+    private final boolean closedForm;
+    private final long offset;
+    private final ZoneRules zoneRules;
+    private final ThreadLocal<Calendar> calendars;
+
+    /**
+     * Creates calendar arithmetic for a time zone.
+     *
+     * @param timeZone a time zone. Cannot be <code>null</code>.
+     */
+    AbsoluteTimeCalendar(TimeZone timeZone) {
+        TimeZone zone = (TimeZone) timeZone.clone();
+        Calendar cal = Calendar.getInstance(zone);
+        boolean gregorian = cal.getClass() == GregorianCalendar.class
+                && ((GregorianCalendar) cal).getGregorianChange().equals(
+                        new GregorianCalendar().getGregorianChange())
+                && cal.getMaximum(Calendar.SECOND) == 59;
+        ZoneRules rules = zone.toZoneId().getRules();
+        if (gregorian && rules.isFixedOffset()) {
+            this.closedForm = true;
+            this.offset = zone.getRawOffset();
+            this.zoneRules = null;
+        } else {
+            this.closedForm = false;
+            this.offset = 0L;
+            if (gregorian && TimeZone.getTimeZone(zone.getID())
+                    .hasSameRules(zone)) {
+                this.zoneRules = rules;
+            } else {
+                this.zoneRules = null;
+            }
+        }
+        this.calendars = ThreadLocal.withInitial(
+                () -> Calendar.getInstance(zone));
+    }
+
+    /**
+     * Gets the calendar arithmetic for the default time zone.
+     *
+     * @return the calendar arithmetic.
+     */
+    static AbsoluteTimeCalendar getInstance() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the earliest position in the same calendar unit as the given
+     * position, e.g., the start of the day for {@link Calendar#DATE}.
+     *
+     * @param position a position.
+     * @param field a calendar unit, one of {@link Calendar#SECOND},
+     * {@link Calendar#MINUTE}, {@link Calendar#HOUR_OF_DAY},
+     * {@link Calendar#DATE}, {@link Calendar#MONTH} or
+     * {@link Calendar#YEAR}.
+     * @return the earliest position.
+     */
+    long earliest(long position, int field) {
+        if (isClosedForm(position)) {
+            long local = position + this.offset;
+            long result;
+            switch (field) {
+                case Calendar.SECOND:
+                case Calendar.MINUTE:
+                case Calendar.HOUR_OF_DAY:
+                case Calendar.DATE:
+                    long length = fixedLength(field);
+                    result = Math.floorDiv(local, length) * length;
+                    break;
+                case Calendar.MONTH:
+                    result = toLocal(date(local).withDayOfMonth(1), 0L);
+                    break;
+                case Calendar.YEAR:
+                    result = toLocal(date(local).withDayOfYear(1), 0L);
+                    break;
+                default:
+                    throw new IllegalArgumentException("invalid field: " + field);
+            }
+            return result - this.offset;
+        } else {
+            Calendar cal = this.calendars.get();
+            cal.setTimeInMillis(position);
+            switch (field) {
+                case Calendar.YEAR:
+                    cal.set(Calendar.MONTH, cal.getActualMinimum(Calendar.MONTH));
+                case Calendar.MONTH:
+                    cal.set(Calendar.DATE, cal.getActualMinimum(Calendar.DATE));
+                case Calendar.DATE:
+                    cal.set(Calendar.HOUR_OF_DAY,
+                            cal.getActualMinimum(Calendar.HOUR_OF_DAY));
+                case Calendar.HOUR_OF_DAY:
+                    cal.set(Calendar.MINUTE, cal.getActualMinimum(Calendar.MINUTE));
+                case Calendar.MINUTE:
+                    cal.set(Calendar.SECOND, cal.getActualMinimum(Calendar.SECOND));
+                case Calendar.SECOND:
+                    cal.set(Calendar.MILLISECOND,
+                            cal.getActualMinimum(Calendar.MILLISECOND));
+                    break;
+                default:
+                    throw new IllegalArgumentException("invalid field: " + field);
+            }
+            return cal.getTimeInMillis();
+        }
+    }
+
+    /**
+     * Adds an amount of a calendar unit to a position, like
+     * {@link Calendar#add(int, int) }.
+     *
+     * @param position a position.
+     * @param field a calendar unit.
+     * @param amount the amount to add.
+     * @return the new position.
+     */
+    long add(long position, int field, int amount) {
+        if (isClosedForm(position)) {
+            long result = addClosedForm(position, field, amount, this.offset);
+            if (isClosedForm(result)) {
+                return result;
+            }
+        }
+        Calendar cal = this.calendars.get();
+        cal.setTimeInMillis(position);
+        cal.add(field, amount);
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * Computes the length of time from a position to the end of the given
+     * number of calendar units later, i.e., adds <code>distance + 1</code>
+     * units and subtracts a millisecond.
+     *
+     * @param position a position.
+     * @param distance a number of calendar units.
+     * @param field a calendar unit.
+     * @return a length of time in milliseconds.
+     */
+    long maximumDistance(long position, long distance, int field) {
+        return addThen(position, distance, field, 1) - position;
+    }
+
+    /**
+     * Computes the length of time from a position to the start of the given
+     * number of calendar units later, i.e., adds <code>distance - 1</code>
+     * units and adds a millisecond.
+     *
+     * @param position a position.
+     * @param distance a number of calendar units.
+     * @param field a calendar unit.
+     * @return a length of time in milliseconds.
+     */
+    long minimumDistance(long position, long distance, int field) {
+        return addThen(position, distance, field, -1) - position;
+    }
+
+    /**
+     * Adds a distance and then one more unit in the given direction, and
+     * moves back a millisecond in the other direction.
+     */
+    private long addThen(long position, long distance, int field,
+            int direction) {
+        if (isClosedForm(position) && distance <= Integer.MAX_VALUE) {
+            long result = position;
+            if (distance > 0) {
+                result = addClosedForm(result, field, distance, this.offset);
+            }
+            if (isClosedForm(result)) {
+                result = addClosedForm(result, field, direction, this.offset);
+                if (isClosedForm(result)) {
+                    return result - direction;
+                }
+            }
+        }
+        Calendar cal = this.calendars.get();
+        cal.setTimeInMillis(position);
+        for (long d = 0; d < distance; d += Integer.MAX_VALUE) {
+            cal.add(field, (int) Math.min(Integer.MAX_VALUE, distance - d));
+        }
+        cal.add(field, direction);
+        cal.add(Calendar.MILLISECOND, -direction);
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * Counts how many times one calendar unit can be added to a start
+     * position, one at a time, without passing a finish position.
+     *
+     * @param start the start position.
+     * @param finish the finish position.
+     * @param field a calendar unit.
+     * @return the number of units, or <code>0</code> if the finish is less
+     * than a unit after the start.
+     */
+    long distance(long start, long finish, int field) {
+        if (isClosedForm(start) && isClosedForm(finish)) {
+            if (finish < start) {
+                return 0L;
+            }
+            return distanceClosedForm(start, finish, field, this.offset);
+        } else if (this.zoneRules != null && isInRange(start)
+                && isInRange(finish)) {
+            if (finish < start) {
+                return 0L;
+            }
+            return distanceAcrossTransitions(start, finish, field);
+        } else {
+            Calendar cal = this.calendars.get();
+            cal.setTimeInMillis(start);
+            int result = 0;
+            while (true) {
+                cal.add(field, 1);
+                if (cal.getTimeInMillis() > finish) {
+                    break;
+                } else {
+                    result++;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Counts units in a time zone with transitions. Away from transitions,
+     * the units are counted in closed form with the offset in effect there.
+     * Near a transition, a calendar adds one unit at a time until it is past
+     * the transition.
+     */
+    private long distanceAcrossTransitions(long start, long finish,
+            int field) {
+        switch (field) {
+            case Calendar.DATE:
+            case Calendar.WEEK_OF_MONTH:
+            case Calendar.MONTH:
+            case Calendar.YEAR:
+                break;
+            default:
+                // calendars add hours and smaller units as fixed lengths
+                return (finish - start) / fixedLength(field);
+        }
+        long position = start;
+        long result = 0L;
+        Calendar cal = null;
+        while (true) {
+            ZoneOffsetTransition transition = this.zoneRules.nextTransition(
+                    Instant.ofEpochMilli(position - TRANSITION_MARGIN));
+            long limit = finish;
+            if (transition != null) {
+                limit = Math.min(limit, transition.toEpochSecond() * 1000
+                        - TRANSITION_MARGIN);
+            }
+            if (limit >= position) {
+                long localOffset = this.zoneRules.getOffset(
+                        Instant.ofEpochMilli(position)).getTotalSeconds()
+                        * 1000L;
+                long units = distanceClosedForm(position, limit, field,
+                        localOffset);
+                result += units;
+                position = addOneAtATime(position, field, units, localOffset);
+            }
+            if (limit == finish) {
+                return result;
+            }
+            long pastTransition = transition.toEpochSecond() * 1000
+                    + TRANSITION_MARGIN;
+            if (cal == null) {
+                cal = this.calendars.get();
+            }
+            cal.setTimeInMillis(position);
+            while (position <= pastTransition) {
+                cal.add(field, 1);
+                long next = cal.getTimeInMillis();
+                if (next > finish) {
+                    return result;
+                }
+                result++;
+                position = next;
+            }
+        }
+    }
+
+    private boolean isClosedForm(long position) {
+        return this.closedForm && isInRange(position);
+    }
+
+    private static boolean isInRange(long position) {
+        return position >= MIN_POSITION && position <= MAX_POSITION;
+    }
+
+    /**
+     * Counts units in closed form with a fixed offset from UTC.
+     */
+    private static long distanceClosedForm(long start, long finish, int field,
+            long offset) {
+        switch (field) {
+            case Calendar.MONTH:
+            case Calendar.YEAR:
+                long localStart = start + offset;
+                long localFinish = finish + offset;
+                LocalDate startDate = date(localStart);
+                long timeOfDay = Math.floorMod(localStart, MILLIS_PER_DAY);
+                LocalDate finishDate = date(localFinish);
+                long result;
+                if (field == Calendar.MONTH) {
+                    result = months(finishDate) - months(startDate);
+                } else {
+                    result = finishDate.getYear() - startDate.getYear();
+                }
+                while (result > 0 && toLocal(
+                        plusOneAtATime(startDate, field, result),
+                        timeOfDay) > localFinish) {
+                    result--;
+                }
+                return result;
+            default:
+                return (finish - start) / fixedLength(field);
+        }
+    }
+
+    /**
+     * Adds units one at a time in closed form with a fixed offset from UTC.
+     */
+    private static long addOneAtATime(long position, int field, long amount,
+            long offset) {
+        switch (field) {
+            case Calendar.MONTH:
+            case Calendar.YEAR:
+                long local = position + offset;
+                return toLocal(plusOneAtATime(date(local), field, amount),
+                        Math.floorMod(local, MILLIS_PER_DAY)) - offset;
+            default:
+                return position + amount * fixedLength(field);
+        }
+    }
+
+    private static long addClosedForm(long position, int field, long amount,
+            long offset) {
+        switch (field) {
+            case Calendar.MONTH:
+            case Calendar.YEAR:
+                if (Math.abs(amount) > MAX_CALENDAR_AMOUNT) {
+                    // outside of the closed-form range, so callers use a
+                    // calendar instead
+                    return Long.MIN_VALUE;
+                }
+                long local = position + offset;
+                LocalDate date = date(local);
+                date = field == Calendar.MONTH ? date.plusMonths(amount)
+                        : date.plusYears(amount);
+                return toLocal(date, Math.floorMod(local, MILLIS_PER_DAY))
+                        - offset;
+            default:
+                return position + amount * fixedLength(field);
+        }
+    }
+    /**
+     * Adds months or years one at a time. Each addition pins the day of the
+     * month to the length of the month it lands in, so the day of the month
+     * of the result is the start's day of the month or the length of the
+     * shortest month passed through, whichever is less.
+     */
+    private static LocalDate plusOneAtATime(LocalDate start, int field,
+            long amount) {
+        if (field == Calendar.YEAR) {
+            LocalDate result = start.plusYears(amount);
+            if (start.getMonthValue() == 2 && start.getDayOfMonth() == 29) {
+                result = result.withDayOfMonth(28);
+            }
+            return result;
+        } else {
+            LocalDate month = start.withDayOfMonth(1);
+            int shortest;
+            if (amount >= 24) {
+                // two consecutive Februaries, at most one in a leap year
+                shortest = 28;
+            } else {
+                shortest = 31;
+                for (long i = 1; i <= amount; i++) {
+                    shortest = Math.min(shortest,
+                            month.plusMonths(i).lengthOfMonth());
+                }
+            }
+            return month.plusMonths(amount).withDayOfMonth(
+                    Math.min(start.getDayOfMonth(), shortest));
+        }
+    }
+
+    private static long months(LocalDate date) {
+        return date.getYear() * 12L + date.getMonthValue();
+    }
+
+    private static LocalDate date(long local) {
+        return LocalDate.ofEpochDay(Math.floorDiv(local, MILLIS_PER_DAY));
+    }
+
+    private static long toLocal(LocalDate date, long timeOfDay) {
+        return date.toEpochDay() * MILLIS_PER_DAY + timeOfDay;
+    }
+
+    private static long fixedLength(int field) {
+        switch (field) {
+            case Calendar.MILLISECOND:
+                return 1L;
+            case Calendar.SECOND:
+                return 1000L;
+            case Calendar.MINUTE:
+                return 60L * 1000;
+            case Calendar.HOUR_OF_DAY:
+                return 60L * 60 * 1000;
+            case Calendar.DATE:
+                return MILLIS_PER_DAY;
+            case Calendar.WEEK_OF_MONTH:
+                return 7 * MILLIS_PER_DAY;
+            default:
+                throw new IllegalArgumentException("invalid field: " + field);
+        }
+    }
+}
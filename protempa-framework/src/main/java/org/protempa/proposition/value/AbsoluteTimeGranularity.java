@@ -645,11 +645,6 @@ public final class AbsoluteTimeGranularity implements Granularity {
     private transient final ThreadLocal<DateFormat> shortDateFormatNoYear;
     private transient final ThreadLocal<DateFormat> timeFormat;
     private transient final ThreadLocal<DateFormat> reprFormat;
-    private transient final Calendar earliestCal;
-    private transient final Calendar latestCal;
-    private transient final Calendar minDistCal;
-    private transient final Calendar maxDistCal;
-    private transient final Calendar distToCal;
     private transient final Unit correspondingUnit;
     private int ordinal = nextOrdinal++;
 
@@ -675,11 +670,6 @@ public final class AbsoluteTimeGranularity implements Granularity {
         this.shortDateFormatNoYear = shortDateFormatNoYear;
         this.timeFormat = timeFormat;
         this.reprFormat = reprFormat;
-        this.earliestCal = Calendar.getInstance();
-        this.latestCal = Calendar.getInstance();
-        this.minDistCal = Calendar.getInstance();
-        this.maxDistCal = Calendar.getInstance();
-        this.distToCal = Calendar.getInstance();
         this.correspondingUnit = correspondingUnit;
     }
 
@@ -780,21 +770,14 @@ public final class AbsoluteTimeGranularity implements Granularity {
 
     @Override
     public long earliest(long pos) {
-        synchronized (this.earliestCal) {
-            this.earliestCal.setTimeInMillis(pos);
-            zeroCalendar(this.earliestCal);
-            return this.earliestCal.getTimeInMillis();
-        }
+        return AbsoluteTimeCalendar.getInstance().earliest(pos,
+                CALENDAR_TIME_UNITS[this.calUnitIndex]);
     }
 
     @Override
     public long latest(long pos) {
-        synchronized (this.latestCal) {
-            this.latestCal.setTimeInMillis(pos);
-            this.latestCal.add(CALENDAR_TIME_UNITS[this.calUnitIndex], 1);
-            this.latestCal.add(CALENDAR_TIME_UNITS[0], -1);
-            return this.latestCal.getTimeInMillis();
-        }
+        return AbsoluteTimeCalendar.getInstance().add(pos,
+                CALENDAR_TIME_UNITS[this.calUnitIndex], 1) - 1;
     }
 
     @Override
@@ -802,23 +785,8 @@ public final class AbsoluteTimeGranularity implements Granularity {
         if (distance == 0) {
             return 0L;
         }
-        synchronized (this.maxDistCal) {
-            this.maxDistCal.setTimeInMillis(position);
-            long initial = this.maxDistCal.getTimeInMillis();
-            int calUnits;
-            if (distanceUnit == null) {
-                calUnits = CALENDAR_TIME_UNITS[0];
-            } else {
-                calUnits = ((AbsoluteTimeUnit) distanceUnit).getCalendarUnits();
-            }
-            for (long d = 0; d < distance; d += Integer.MAX_VALUE) {
-                int dAsInt = (int) Math.min(Integer.MAX_VALUE, distance - d);
-                this.maxDistCal.add(calUnits, dAsInt);
-            }
-            this.maxDistCal.add(calUnits, 1);
-            this.maxDistCal.add(CALENDAR_TIME_UNITS[0], -1);
-            return this.maxDistCal.getTimeInMillis() - initial;
-        }
+        return AbsoluteTimeCalendar.getInstance().maximumDistance(position,
+                distance, calendarUnits(distanceUnit));
     }
 
     @Override
@@ -826,29 +794,15 @@ public final class AbsoluteTimeGranularity implements Granularity {
         if (distance == 0) {
             return 0L;
         }
-        synchronized (this.minDistCal) {
-            this.minDistCal.setTimeInMillis(position);
-            long initial = this.minDistCal.getTimeInMillis();
-            int calUnits;
-            if (distanceUnit == null) {
-                calUnits = CALENDAR_TIME_UNITS[0];
-            } else {
-                calUnits = ((AbsoluteTimeUnit) distanceUnit).getCalendarUnits();
-            }
-            for (long d = 0; d < distance; d += Integer.MAX_VALUE) {
-                int dAsInt = (int) Math.min(Integer.MAX_VALUE, distance - d);
-                this.minDistCal.add(calUnits, +dAsInt);
-            }
-            this.minDistCal.add(calUnits, -1);
-            this.minDistCal.add(CALENDAR_TIME_UNITS[0], 1);
-            return this.minDistCal.getTimeInMillis() - initial;
-        }
+        return AbsoluteTimeCalendar.getInstance().minimumDistance(position,
+                distance, calendarUnits(distanceUnit));
     }
 
-    private void zeroCalendar(Calendar cal) {
-        for (int i = this.calUnitIndex - 1; i >= 0; i--) {
-            cal.set(CALENDAR_TIME_UNITS[i],
-                    cal.getActualMinimum(CALENDAR_TIME_UNITS[i]));
+    private static int calendarUnits(Unit distanceUnit) {
+        if (distanceUnit == null) {
+            return CALENDAR_TIME_UNITS[0];
+        } else {
+            return ((AbsoluteTimeUnit) distanceUnit).getCalendarUnits();
         }
     }
 
@@ -862,20 +816,8 @@ public final class AbsoluteTimeGranularity implements Granularity {
         if (du.isUsingFastDurationCalculations()) {
             return (finish - start) / du.getLength();
         } else {
-            synchronized (this.distToCal) {
-                this.distToCal.setTimeInMillis(start);
-                int calUnits = du.getCalendarUnits();
-                int returnValue = 0;
-                while (true) {
-                    this.distToCal.add(calUnits, 1);
-                    if (this.distToCal.getTimeInMillis() > finish) {
-                        break;
-                    } else {
-                        returnValue++;
-                    }
-                }
-                return returnValue;
-            }
+            return AbsoluteTimeCalendar.getInstance().distance(start, finish,
+                    du.getCalendarUnits());
         }
     }
 
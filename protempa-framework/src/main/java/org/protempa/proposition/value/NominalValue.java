@@ -24,8 +24,6 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.text.Format;
-import java.util.Map;
-import org.apache.commons.collections4.map.ReferenceMap;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 /**
@@ -41,7 +39,8 @@ public final class NominalValue implements Value, Comparable<NominalValue>,
     private String val;
     private transient volatile int hashCode;
 
-    private static final Map<String, NominalValue> cache = new ReferenceMap<>();
+    private static final ValueCache<String, NominalValue> cache
+            = new ValueCache<>();
 
     /**
      * Creates a new nominal value. If <code>val</code>'s length is less than 20
@@ -54,13 +53,9 @@ public final class NominalValue implements Value, Comparable<NominalValue>,
      */
     public static NominalValue getInstance(String val) {
         if (val != null && val.length() < 20) {
-            NominalValue result;
-            synchronized (cache) {
-                result = cache.get(val);
-                if (result == null) {
-                    result = new NominalValue(val);
-                    cache.put(val, result);
-                }
+            NominalValue result = cache.get(val);
+            if (result == null) {
+                result = cache.putIfAbsent(val, new NominalValue(val));
             }
             return result;
         } else {
@@ -85,10 +80,7 @@ public final class NominalValue implements Value, Comparable<NominalValue>,
 
     @Override
     public NominalValue replace() {
-        NominalValue result;
-        synchronized (cache) {
-            result = cache.get(this.val);
-        }
+        NominalValue result = cache.get(this.val);
         if (result != null) {
             return result;
         } else {
@@ -96,6 +88,45 @@ public final class NominalValue implements Value, Comparable<NominalValue>,
         }
     }
 
+    /**
+     * Returns how many lookups of cached nominal values found one, including
+     * lookups by {@link #replace() }.
+     *
+     * @return the number of cache hits.
+     */
+    public static long getCacheHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * Returns how many lookups of cached nominal values did not find one.
+     * Strings of 20 or more characters are not cached and are not counted.
+     *
+     * @return the number of cache misses.
+     */
+    public static long getCacheMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * Returns the fraction of lookups of cached nominal values that found
+     * one.
+     *
+     * @return a number between 0 and 1.
+     */
+    public static double getCacheHitRate() {
+        return cache.getHitRate();
+    }
+
+    /**
+     * Returns the number of entries in the nominal value cache.
+     *
+     * @return the number of entries.
+     */
+    public static int getCacheSize() {
+        return cache.size();
+    }
+
     @Override
     public int hashCode() {
         if (this.hashCode == 0) {
@@ -213,9 +244,7 @@ public final class NominalValue implements Value, Comparable<NominalValue>,
         String tmpVal = (String) s.readObject();
         this.val = tmpVal != null ? tmpVal : "";
         if (tmpVal != null && tmpVal.length() < 20) {
-            if (!cache.containsKey(tmpVal)) {
-                cache.put(tmpVal, this);
-            }
+            cache.putIfAbsent(tmpVal, this);
         }
     }
 
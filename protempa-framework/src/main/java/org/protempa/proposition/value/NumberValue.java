@@ -19,7 +19,6 @@
  */
 package org.protempa.proposition.value;
 
-import org.apache.commons.collections4.map.ReferenceMap;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 import java.io.IOException;
@@ -28,7 +27,6 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.text.Format;
-import java.util.Map;
 
 /**
  * Represents a number, either integral or floating point, with unbounded upper
@@ -42,7 +40,17 @@ public final class NumberValue implements NumericalValue,
 
     private static final long serialVersionUID = 266750924747111671L;
 
-    private static final Map<BigDecimal, NumberValue> cache = new ReferenceMap<>();
+    /**
+     * Kinds of primitive keys in the cache. Numbers created from a
+     * <code>long</code> and from a <code>double</code> are cached separately
+     * because they have different scales, for example, <code>1</code> and
+     * <code>1.0</code>.
+     */
+    private static final int KIND_LONG = 0;
+    private static final int KIND_DOUBLE = 1;
+
+    private static final ValueCache<BigDecimal, NumberValue> cache
+            = new ValueCache<>();
     private BigDecimal num;
     private transient volatile int hashCode;
 
@@ -66,29 +74,100 @@ public final class NumberValue implements NumericalValue,
      * @return a {@link NumberValue}. Guaranteed not <code>null</code>.
      */
     public static NumberValue getInstance(double num) {
-        return getInstance(BigDecimal.valueOf(num));
+        long bits = Double.doubleToLongBits(num);
+        NumberValue result = cache.get(KIND_DOUBLE, bits);
+        if (result == null) {
+            result = cache.putIfAbsent(KIND_DOUBLE, bits,
+                    intern(BigDecimal.valueOf(num)));
+        }
+        return result;
     }
 
+    /**
+     * Gets an instance of {@link NumberValue} representing a
+     * <code>long</code>.
+     *
+     * @param num a long.
+     * @return a {@link NumberValue}. Guaranteed not <code>null</code>.
+     */
     public static NumberValue getInstance(long num) {
-        return getInstance(BigDecimal.valueOf(num));
+        NumberValue result = cache.get(KIND_LONG, num);
+        if (result == null) {
+            result = cache.putIfAbsent(KIND_LONG, num,
+                    intern(BigDecimal.valueOf(num)));
+        }
+        return result;
     }
 
+    /**
+     * Gets an instance of {@link NumberValue} representing a
+     * {@link BigDecimal}. Numbers that differ only in scale, like
+     * <code>1</code> and <code>1.0</code>, are different instances.
+     *
+     * @param num a {@link BigDecimal}. If <code>null</code>, zero is used.
+     * @return a {@link NumberValue}. Guaranteed not <code>null</code>.
+     */
     public static NumberValue getInstance(BigDecimal num) {
-        NumberValue result;
-        if (num != null) {
-            synchronized (cache) {
-                result = cache.get(num);
-                if (result == null) {
-                    result = new NumberValue(num);
-                    cache.put(num, result);
-                }
-            }
-        } else {
-            result = getInstance(BigDecimal.ZERO);
+        if (num == null) {
+            num = BigDecimal.ZERO;
+        }
+        NumberValue result = cache.get(num);
+        if (result == null) {
+            result = cache.putIfAbsent(num, new NumberValue(num));
         }
         return result;
     }
 
+    /**
+     * Gets the cached instance for a {@link BigDecimal}, adding one if there
+     * is none, without counting a lookup. Getting an instance from a primitive
+     * has already counted its lookup.
+     */
+    private static NumberValue intern(BigDecimal num) {
+        return cache.putIfAbsent(num, new NumberValue(num));
+    }
+
+    /**
+     * Returns how many lookups of cached number values found one, including
+     * lookups by {@link #replace() }.
+     *
+     * @return the number of cache hits.
+     */
+    public static long getCacheHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * Returns how many lookups of cached number values did not find one.
+     * Getting an instance from a <code>long</code>, <code>double</code> or
+     * {@link BigDecimal} for the first time misses once.
+     *
+     * @return the number of cache misses.
+     */
+    public static long getCacheMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * Returns the fraction of lookups of cached number values that found
+     * one.
+     *
+     * @return a number between 0 and 1.
+     */
+    public static double getCacheHitRate() {
+        return cache.getHitRate();
+    }
+
+    /**
+     * Returns the number of entries in the number value cache. Number values
+     * that were gotten from a primitive have two entries.
+     *
+     * @return the number of entries.
+     */
+    public static int getCacheSize() {
+        return cache.size();
+    }
+
     public NumberValue(long num) {
         this(BigDecimal.valueOf(num));
     }
@@ -111,10 +190,7 @@ public final class NumberValue implements NumericalValue,
 
     @Override
     public NumberValue replace() {
-        NumberValue result;
-        synchronized (cache) {
-            result = cache.get(this.num);
-        }
+        NumberValue result = cache.get(this.num);
         if (result != null) {
             return result;
         } else {
@@ -266,9 +342,7 @@ public final class NumberValue implements NumericalValue,
             ClassNotFoundException {
         BigDecimal tmpNum = (BigDecimal) s.readObject();
         init(tmpNum);
-        if (!cache.containsKey(tmpNum)) {
-            cache.put(tmpNum, this);
-        }
+        cache.putIfAbsent(this.num, this);
     }
 
     @Override
@@ -0,0 +1,252 @@
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2013 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.proposition.value;
+
+import java.lang.ref.ReferenceQueue;
+import java.util.concurrent.atomic.LongAdder;
+import org.protempa.proposition.SegmentedSoftCache;
+
+/**
+ * Interns values for their classes' <code>getInstance</code> methods. Values
+ * are looked up either by an object key, such as a {@link String} or
+ * {@link java.math.BigDecimal}, or by a primitive <code>long</code> key with a
+ * kind, which lets callers look up values created from primitives without
+ * allocating a key object. The values are held in a
+ * {@link SegmentedSoftCache}, so lookups of values that are already in the
+ * cache do not lock, and the garbage collector may reclaim values when memory
+ * is low. Lookups are counted as hits and misses.
+ *
+ * @author Andrew Post
+ * @param <K> the type of the object keys.
+ * @param <V> the type of the values.
+ */
+final class ValueCache<K, V> {
+
+    private static final int SEGMENT_COUNT = 32;
+    private static final int INITIAL_SEGMENT_CAPACITY = 64;
+
+    private final SegmentedSoftCache<V> cache;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    ValueCache() {
+        this.cache = new SegmentedSoftCache<>(SEGMENT_COUNT,
+                INITIAL_SEGMENT_CAPACITY);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Looks up a value by an object key without locking.
+     *
+     * @param key a key. Cannot be <code>null</code>.
+     * @return the cached value, or <code>null</code> if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    V get(K key) {
+        assert key != null : "key cannot be null";
+        int hash = spread(key.hashCode());
+        for (SegmentedSoftCache.Entry<V> e = this.cache.getFirst(hash);
+                e != null; e = e.getNext()) {
+            if (e.getHash() == hash && ((Entry<K, V>) e).matches(key)) {
+                return hit(e.get());
+            }
+        }
+        return hit(null);
+    }
+
+    /**
+     * Looks up a value by a primitive key without locking.
+     *
+     * @param kind distinguishes keys that the caller derives from primitives
+     * in different ways, for example, a <code>long</code> and the bits of a
+     * <code>double</code>.
+     * @param key a key.
+     * @return the cached value, or <code>null</code> if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    V get(int kind, long key) {
+        int hash = hash(kind, key);
+        for (SegmentedSoftCache.Entry<V> e = this.cache.getFirst(hash);
+                e != null; e = e.getNext()) {
+            if (e.getHash() == hash && ((Entry<K, V>) e).matches(kind, key)) {
+                return hit(e.get());
+            }
+        }
+        return hit(null);
+    }
+
+    /**
+     * Adds a value with an object key unless another thread added a value
+     * with an equal key first. It is not counted as a lookup.
+     *
+     * @param key a key. Cannot be <code>null</code>.
+     * @param value the value to add. Cannot be <code>null</code>.
+     * @return the value that is in the cache after this call returns, which
+     * is <code>value</code> unless another thread won the race.
+     */
+    V putIfAbsent(K key, V value) {
+        assert key != null : "key cannot be null";
+        return this.cache.putIfAbsent(spread(key.hashCode()),
+                new EntryKey<>(key, 0, 0L), value);
+    }
+
+    /**
+     * Adds a value with a primitive key unless another thread added a value
+     * with the same kind and key first. It is not counted as a lookup.
+     *
+     * @param kind the kind of key, see {@link #get(int, long) }.
+     * @param key a key.
+     * @param value the value to add. Cannot be <code>null</code>.
+     * @return the value that is in the cache after this call returns, which
+     * is <code>value</code> unless another thread won the race.
+     */
+    V putIfAbsent(int kind, long key, V value) {
+        return this.cache.putIfAbsent(hash(kind, key),
+                new EntryKey<K, V>(null, kind, key), value);
+    }
+
+    /**
+     * Returns the number of entries in the cache, including any whose values
+     * have been reclaimed but not yet removed. A value that was added with
+     * both an object key and a primitive key is counted twice.
+     *
+     * @return the number of entries.
+     */
+    int size() {
+        return this.cache.size();
+    }
+
+    long getHitCount() {
+        return this.hits.sum();
+    }
+
+    long getMissCount() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups that found a value.
+     *
+     * @return a number between 0 and 1, or 0 if there have been no lookups.
+     */
+    double getHitRate() {
+        long h = this.hits.sum();
+        long total = h + this.misses.sum();
+        return total > 0 ? (double) h / total : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "ValueCache{size=" + size() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", hitRate="
+                + getHitRate() + '}';
+    }
+
+    private V hit(V value) {
+        if (value != null) {
+            this.hits.increment();
+        } else {
+            this.misses.increment();
+        }
+        return value;
+    }
+
+    private static int hash(int kind, long key) {
+        return spread(31 * kind + Long.hashCode(key));
+    }
+
+    /**
+     * Spreads the bits of a hash code so that both the segment (high bits)
+     * and the bucket (low bits) depend on all of them.
+     */
+    private static int spread(int h) {
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h = h ^ (h >>> 7) ^ (h >>> 4);
+        return h * 0x9E3779B9;
+    }
+
+    /**
+     * An entry with either an object key, or a primitive key and a kind.
+     * Entries with a primitive key have a <code>null</code> object key.
+     */
+    private static final class Entry<K, V>
+            extends SegmentedSoftCache.Entry<V> {
+
+        private final K key;
+        private final int kind;
+        private final long longKey;
+
+        Entry(V value, ReferenceQueue<? super V> queue, int hash, K key,
+                int kind, long longKey, SegmentedSoftCache.Entry<V> next) {
+            super(value, queue, hash, next);
+            this.key = key;
+            this.kind = kind;
+            this.longKey = longKey;
+        }
+
+        boolean matches(K key) {
+            return key.equals(this.key);
+        }
+
+        boolean matches(int kind, long longKey) {
+            return this.key == null && this.kind == kind
+                    && this.longKey == longKey;
+        }
+
+        @Override
+        protected SegmentedSoftCache.Entry<V> copy(V value,
+                ReferenceQueue<? super V> queue,
+                SegmentedSoftCache.Entry<V> next) {
+            return new Entry<>(value, queue, getHash(), this.key, this.kind,
+                    this.longKey, next);
+        }
+    }
+
+    private static final class EntryKey<K, V>
+            implements SegmentedSoftCache.Key<V> {
+
+        private final K key;
+        private final int kind;
+        private final long longKey;
+
+        EntryKey(K key, int kind, long longKey) {
+            this.key = key;
+            this.kind = kind;
+            this.longKey = longKey;
+        }
+
+        @Override
+        public boolean matches(SegmentedSoftCache.Entry<V> entry) {
+            @SuppressWarnings("unchecked")
+            Entry<K, V> e = (Entry<K, V>) entry;
+            return this.key != null ? e.matches(this.key)
+                    : e.matches(this.kind, this.longKey);
+        }
+
+        @Override
+        public SegmentedSoftCache.Entry<V> newEntry(V value,
+                ReferenceQueue<? super V> queue, int hash,
+                SegmentedSoftCache.Entry<V> next) {
+            return new Entry<>(value, queue, hash, this.key, this.kind,
+                    this.longKey, next);
+        }
+    }
+}
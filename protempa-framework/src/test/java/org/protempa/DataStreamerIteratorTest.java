@@ -0,0 +1,128 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2015 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.protempa.proposition.Proposition;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class DataStreamerIteratorTest {
+
+    @Test
+    public void testMergesByKeyId() throws DataSourceReadException {
+        List<String> keyIds = keyIds(
+                stream("a", "c", "e"),
+                stream("b", "c", "d"),
+                stream("a", "f"));
+        Assert.assertEquals(
+                Arrays.asList("a", "a", "b", "c", "c", "d", "e", "f"), keyIds);
+    }
+
+    @Test
+    public void testSameKeyIdFollowsIteratorOrder()
+            throws DataSourceReadException {
+        List<DataStreamingEventIterator<Proposition>> itrs = new ArrayList<>();
+        itrs.add(stream("a", "a", "b"));
+        itrs.add(stream("a", "b"));
+        DataStreamerIterator<Proposition> itr = new DataStreamerIterator<>(itrs);
+        List<DataStreamingEvent<Proposition>> expected = new ArrayList<>();
+        expected.add(((ListIterator) itrs.get(0)).events.get(0));
+        expected.add(((ListIterator) itrs.get(1)).events.get(0));
+        expected.add(((ListIterator) itrs.get(0)).events.get(1));
+        expected.add(((ListIterator) itrs.get(0)).events.get(2));
+        expected.add(((ListIterator) itrs.get(1)).events.get(1));
+        for (DataStreamingEvent<Proposition> event : expected) {
+            Assert.assertTrue(itr.hasNext());
+            Assert.assertSame(event, itr.next());
+        }
+        Assert.assertFalse(itr.hasNext());
+    }
+
+    @Test
+    public void testNoIterators() throws DataSourceReadException {
+        Assert.assertTrue(keyIds().isEmpty());
+    }
+
+    @Test
+    public void testEmptyIterators() throws DataSourceReadException {
+        Assert.assertTrue(keyIds(stream(), stream()).isEmpty());
+    }
+
+    private static List<String> keyIds(
+            DataStreamingEventIterator<Proposition>... streams)
+            throws DataSourceReadException {
+        DataStreamerIterator<Proposition> itr
+                = new DataStreamerIterator<>(Arrays.asList(streams));
+        List<String> result = new ArrayList<>();
+        while (itr.hasNext()) {
+            String keyId = itr.getNextKeyId();
+            DataStreamingEvent<Proposition> event = itr.next();
+            Assert.assertEquals(keyId, event.getKeyId());
+            result.add(keyId);
+        }
+        return result;
+    }
+
+    private static DataStreamingEventIterator<Proposition> stream(
+            String... keyIds) {
+        List<DataStreamingEvent<Proposition>> events = new ArrayList<>();
+        for (String keyId : keyIds) {
+            events.add(new DataStreamingEvent<>(new String(keyId),
+                    Collections.<Proposition>emptyList()));
+        }
+        return new ListIterator(events);
+    }
+
+    private static class ListIterator
+            implements DataStreamingEventIterator<Proposition> {
+
+        private final List<DataStreamingEvent<Proposition>> events;
+        private final Iterator<DataStreamingEvent<Proposition>> itr;
+
+        ListIterator(List<DataStreamingEvent<Proposition>> events) {
+            this.events = events;
+            this.itr = events.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.itr.hasNext();
+        }
+
+        @Override
+        public DataStreamingEvent<Proposition> next() {
+            return this.itr.next();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.protempa.proposition.Proposition;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class DoProcessQueueReaderTest {
+
+    private MemoryBoundedQueue<List<DataStreamingEvent<Proposition>>> queue;
+    private List<DataStreamingEvent<Proposition>> poisonPill;
+
+    @Before
+    public void setUp() {
+        this.queue = new MemoryBoundedQueue<>(10, Long.MAX_VALUE,
+                (List<DataStreamingEvent<Proposition>> batch) -> batch.size());
+        this.poisonPill = new ArrayList<>(0);
+    }
+
+    @Test
+    public void testSequenceNumbersFollowQueueOrder() throws InterruptedException {
+        DoProcessQueueReader reader
+                = new DoProcessQueueReader(this.queue, this.poisonPill, 10);
+        this.queue.put(newBatch("a"));
+        this.queue.put(newBatch("b", "c"));
+        this.queue.put(newBatch("d"));
+        this.queue.put(this.poisonPill);
+        String[][] expected = {{"a"}, {"b", "c"}, {"d"}};
+        for (int i = 0; i < expected.length; i++) {
+            DoProcessQueueReader.SequencedBatch sb = reader.take();
+            Assert.assertEquals(i, sb.getSequenceNumber());
+            List<DataStreamingEvent<Proposition>> events = sb.getEvents();
+            Assert.assertEquals(expected[i].length, events.size());
+            for (int j = 0; j < expected[i].length; j++) {
+                Assert.assertEquals(expected[i][j], events.get(j).getKeyId());
+            }
+        }
+        Assert.assertNull(reader.take());
+    }
+
+    @Test
+    public void testEveryReaderSeesEndOfData() throws InterruptedException {
+        DoProcessQueueReader reader
+                = new DoProcessQueueReader(this.queue, this.poisonPill, 10);
+        this.queue.put(this.poisonPill);
+        Assert.assertNull(reader.take());
+        Assert.assertNull(reader.take());
+        Assert.assertNull(reader.take());
+    }
+
+    @Test
+    public void testStopWakesWaitingReader() throws InterruptedException {
+        final DoProcessQueueReader reader
+                = new DoProcessQueueReader(this.queue, this.poisonPill, 1);
+        this.queue.put(newBatch("a"));
+        Assert.assertNotNull(reader.take());
+        final DoProcessQueueReader.SequencedBatch[] result
+                = new DoProcessQueueReader.SequencedBatch[1];
+        Thread waiting = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result[0] = reader.take();
+                } catch (InterruptedException ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+        };
+        waiting.start();
+        reader.stop();
+        waiting.join(10000);
+        Assert.assertFalse(waiting.isAlive());
+        Assert.assertNull(result[0]);
+    }
+
+    private static List<DataStreamingEvent<Proposition>> newBatch(
+            String... keyIds) {
+        List<DataStreamingEvent<Proposition>> result = new ArrayList<>();
+        for (String keyId : keyIds) {
+            result.add(new DataStreamingEvent<>(keyId,
+                    Collections.<Proposition>emptyList()));
+        }
+        return result;
+    }
+}
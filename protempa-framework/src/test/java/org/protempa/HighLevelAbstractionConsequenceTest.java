@@ -0,0 +1,190 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.drools.FactHandle;
+import org.drools.StatefulSession;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.protempa.proposition.DefaultUniqueIdFactory;
+import org.protempa.proposition.PrimitiveParameter;
+import org.protempa.proposition.Proposition;
+import org.protempa.proposition.UniqueIdFactory;
+import org.protempa.proposition.interval.Relation;
+import org.protempa.proposition.value.AbsoluteTimeGranularity;
+import org.protempa.proposition.value.AbsoluteTimeUnit;
+
+/**
+ * Runs a high-level abstraction definition's rule as candidates are
+ * inserted and retracted after it has fired.
+ *
+ * @author Andrew Post
+ */
+public class HighLevelAbstractionConsequenceTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private final UniqueIdFactory uidFactory = new DefaultUniqueIdFactory();
+    private DerivationsBuilder derivationsBuilder;
+    private StatefulSession session;
+
+    @Before
+    public void setUp() throws Exception {
+        HighLevelAbstractionDefinition def
+                = new HighLevelAbstractionDefinition("AB");
+        TemporalExtendedPropositionDefinition a
+                = new TemporalExtendedPropositionDefinition("A");
+        TemporalExtendedPropositionDefinition b
+                = new TemporalExtendedPropositionDefinition("B");
+        def.add(a);
+        def.add(b);
+        def.setRelation(a, b, new Relation(null, null, null, null, null, null,
+                null, null, 0, AbsoluteTimeUnit.DAY, 7, AbsoluteTimeUnit.DAY,
+                null, null, null, null));
+        def.setConcatenable(false);
+        def.setGapFunction(new SimpleGapFunction(0, AbsoluteTimeUnit.DAY));
+        List<PropositionDefinition> propDefs = Arrays.asList(
+                new PrimitiveParameterDefinition("A"),
+                new PrimitiveParameterDefinition("B"), def);
+        this.derivationsBuilder = new DerivationsBuilder();
+        JBossRuleCreator ruleCreator = new JBossRuleCreator(
+                Collections.emptyMap(), this.derivationsBuilder,
+                new PropositionDefinitionCache(propDefs), propDefs);
+        this.session = new JBossRuleBaseFactory(ruleCreator, null)
+                .newInstance().newStatefulSession(true);
+        this.session.setGlobal(WorkingMemoryGlobals.KEY_ID, "key");
+    }
+
+    @After
+    public void tearDown() {
+        this.session.dispose();
+    }
+
+    @Test
+    public void testLateCandidateKeepsInstances() {
+        Proposition a0 = insert("A", 0);
+        Proposition b3 = insert("B", 3);
+        this.session.fireAllRules();
+        List<Proposition> before = instances();
+        Assert.assertEquals(1, before.size());
+        Proposition first = before.get(0);
+        String firstId = first.getUniqueId().getStringRepresentation();
+
+        Proposition a20 = insert("A", 20);
+        Proposition b22 = insert("B", 22);
+        this.session.fireAllRules();
+        List<Proposition> after = instances();
+        Assert.assertEquals(2, after.size());
+        Assert.assertTrue(containsSame(after, first));
+        Assert.assertEquals(firstId,
+                first.getUniqueId().getStringRepresentation());
+        assertDerivations(after, a0, b3, a20, b22);
+    }
+
+    @Test
+    public void testRetractedCandidateRemovesDerivations() {
+        Proposition a0 = insert("A", 0);
+        Proposition b3 = param("B", 3);
+        FactHandle b3Handle = this.session.insert(b3);
+        Proposition a20 = insert("A", 20);
+        Proposition b22 = insert("B", 22);
+        this.session.fireAllRules();
+        List<Proposition> before = instances();
+        Assert.assertEquals(2, before.size());
+
+        this.session.retract(b3Handle);
+        this.session.fireAllRules();
+        List<Proposition> after = instances();
+        Assert.assertEquals(1, after.size());
+        Assert.assertTrue(containsSame(before, after.get(0)));
+        assertDerivations(after, a20, b22);
+        Assert.assertNull(
+                this.derivationsBuilder.getForwardDerivations().get(a0));
+        Assert.assertNull(
+                this.derivationsBuilder.getForwardDerivations().get(b3));
+    }
+
+    /**
+     * Checks that the derivations are of the given instances only, and that
+     * each instance was derived from two of the given propositions, in
+     * order.
+     */
+    private void assertDerivations(List<Proposition> instances,
+            Proposition... props) {
+        Map<Proposition, Set<Proposition>> backward
+                = this.derivationsBuilder.getBackwardDerivations();
+        Map<Proposition, Set<Proposition>> forward
+                = this.derivationsBuilder.getForwardDerivations();
+        Assert.assertEquals(instances.size(), backward.size());
+        Assert.assertEquals(props.length, forward.size());
+        for (int i = 0; i < props.length; i += 2) {
+            Set<Proposition> derived = forward.get(props[i]);
+            Assert.assertEquals(1, derived.size());
+            Proposition instance = derived.iterator().next();
+            Assert.assertTrue(containsSame(instances, instance));
+            Assert.assertEquals(derived, forward.get(props[i + 1]));
+            Assert.assertEquals(2, backward.get(instance).size());
+        }
+    }
+
+    private List<Proposition> instances() {
+        List<Proposition> result = new ArrayList<>();
+        for (Iterator<?> itr = this.session.iterateObjects(); itr.hasNext();) {
+            Proposition prop = (Proposition) itr.next();
+            if (prop.getId().equals("AB")) {
+                result.add(prop);
+            }
+        }
+        return result;
+    }
+
+    private static boolean containsSame(List<Proposition> props,
+            Proposition prop) {
+        for (Proposition p : props) {
+            if (p == prop) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Proposition insert(String propId, int day) {
+        Proposition param = param(propId, day);
+        this.session.insert(param);
+        return param;
+    }
+
+    private Proposition param(String propId, int day) {
+        PrimitiveParameter param = new PrimitiveParameter(propId,
+                this.uidFactory.getInstance());
+        param.setPosition(631152000000L + day * DAY);
+        param.setGranularity(AbsoluteTimeGranularity.MINUTE);
+        return param;
+    }
+}
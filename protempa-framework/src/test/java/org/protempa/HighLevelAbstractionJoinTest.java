@@ -0,0 +1,146 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.protempa.proposition.DefaultUniqueIdFactory;
+import org.protempa.proposition.PrimitiveParameter;
+import org.protempa.proposition.Proposition;
+import org.protempa.proposition.UniqueIdFactory;
+import org.protempa.proposition.interval.Relation;
+import org.protempa.proposition.value.AbsoluteTimeGranularity;
+import org.protempa.proposition.value.AbsoluteTimeUnit;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class HighLevelAbstractionJoinTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private final UniqueIdFactory uidFactory = new DefaultUniqueIdFactory();
+
+    @Test
+    public void testFindsOnlyRelatedPairs() throws Exception {
+        HighLevelAbstractionDefinition def
+                = new HighLevelAbstractionDefinition("AB");
+        TemporalExtendedPropositionDefinition a
+                = new TemporalExtendedPropositionDefinition("A");
+        TemporalExtendedPropositionDefinition b
+                = new TemporalExtendedPropositionDefinition("B");
+        def.add(a);
+        def.add(b);
+        def.setRelation(a, b, new Relation(null, null, null, null, null, null,
+                null, null, 0, AbsoluteTimeUnit.DAY, 7, AbsoluteTimeUnit.DAY,
+                null, null, null, null));
+        ExtendedPropositionDefinition[] epds = epds(def);
+        Proposition a0 = param("A", 0);
+        Proposition b3 = param("B", 3);
+        Proposition b10 = param("B", 10);
+        Proposition bMinus1 = param("B", -1);
+        List<Proposition[]> instances = join(def, epds).find(
+                Arrays.asList(b10, a0, bMinus1, b3));
+        Assert.assertEquals(1, instances.size());
+        Proposition[] instance = instances.get(0);
+        Assert.assertSame(a0, instance[indexOf(epds, a)]);
+        Assert.assertSame(b3, instance[indexOf(epds, b)]);
+    }
+
+    @Test
+    public void testDoesNotRepeatPropositions() throws Exception {
+        HighLevelAbstractionDefinition def
+                = new HighLevelAbstractionDefinition("AA");
+        TemporalExtendedPropositionDefinition first
+                = new TemporalExtendedPropositionDefinition("A");
+        TemporalExtendedPropositionDefinition second
+                = new TemporalExtendedPropositionDefinition("A");
+        def.add(first);
+        def.add(second);
+        def.setRelation(first, second, Relation.BEFORE);
+        ExtendedPropositionDefinition[] epds = epds(def);
+        Proposition a0 = param("A", 0);
+        Proposition a5 = param("A", 5);
+        List<Proposition[]> instances = join(def, epds).find(
+                Arrays.asList(a5, a0));
+        Assert.assertEquals(1, instances.size());
+        Assert.assertSame(a0, instances.get(0)[indexOf(epds, first)]);
+        Assert.assertSame(a5, instances.get(0)[indexOf(epds, second)]);
+    }
+
+    @Test
+    public void testNoInstancesWithoutCandidates() throws Exception {
+        HighLevelAbstractionDefinition def
+                = new HighLevelAbstractionDefinition("AB");
+        TemporalExtendedPropositionDefinition a
+                = new TemporalExtendedPropositionDefinition("A");
+        TemporalExtendedPropositionDefinition b
+                = new TemporalExtendedPropositionDefinition("B");
+        def.add(a);
+        def.add(b);
+        def.setRelation(a, b, new Relation());
+        HighLevelAbstractionJoin join = join(def, epds(def));
+        Assert.assertTrue(join.find(
+                Arrays.asList(param("A", 0), param("A", 1))).isEmpty());
+        Assert.assertTrue(join.matchesAny(param("B", 0)));
+        Assert.assertFalse(join.matchesAny(param("C", 0)));
+    }
+
+    private static ExtendedPropositionDefinition[] epds(
+            HighLevelAbstractionDefinition def) {
+        Set<ExtendedPropositionDefinition> epds
+                = def.getExtendedPropositionDefinitions();
+        return epds.toArray(new ExtendedPropositionDefinition[epds.size()]);
+    }
+
+    private static HighLevelAbstractionJoin join(
+            HighLevelAbstractionDefinition def,
+            ExtendedPropositionDefinition[] epds) {
+        List<Set<String>> subtrees = new ArrayList<>(epds.length);
+        for (ExtendedPropositionDefinition epd : epds) {
+            subtrees.add(Collections.singleton(epd.getPropositionId()));
+        }
+        return new HighLevelAbstractionJoin(def, epds, subtrees);
+    }
+
+    private static int indexOf(ExtendedPropositionDefinition[] epds,
+            ExtendedPropositionDefinition epd) {
+        for (int i = 0; i < epds.length; i++) {
+            if (epds[i] == epd) {
+                return i;
+            }
+        }
+        throw new AssertionError(epd + " not found");
+    }
+
+    private Proposition param(String propId, int day) {
+        PrimitiveParameter param = new PrimitiveParameter(propId,
+                this.uidFactory.getInstance());
+        param.setPosition(631152000000L + day * DAY);
+        param.setGranularity(AbsoluteTimeGranularity.MINUTE);
+        return param;
+    }
+}
@@ -23,6 +23,7 @@ package org.protempa;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,6 +40,7 @@ import org.protempa.backend.ksb.SimpleKnowledgeSourceBackend;
  */
 public class KnowledgeSourceImplTest {
     private KnowledgeSourceImpl knowledgeSource;
+    private SimpleKnowledgeSourceBackend backend;
     
     @Before
     public void setUp() {
@@ -56,16 +58,16 @@ public class KnowledgeSourceImplTest {
             constantDefinition.setInverseIsA(me.getValue());
             propDefs.add(constantDefinition);
         }
-        this.knowledgeSource = new KnowledgeSourceImpl(
-                new SimpleKnowledgeSourceBackend(
-                        propDefs.toArray(
-                                new PropositionDefinition[propDefs.size()])));
+        this.backend = new SimpleKnowledgeSourceBackend(
+                propDefs.toArray(new PropositionDefinition[propDefs.size()]));
+        this.knowledgeSource = new KnowledgeSourceImpl(this.backend);
     }
     
     @After
     public void tearDown() throws SourceCloseException {
         this.knowledgeSource.close();
         this.knowledgeSource = null;
+        this.backend = null;
     }
     
     @Test
@@ -93,4 +95,43 @@ public class KnowledgeSourceImplTest {
                 expected, 
                 knowledgeSource.collectPropIdDescendantsUsingInverseIsA("bar", "rab"));
     }
+
+    @Test
+    public void testReadPropositionDefinitionIsCached() throws KnowledgeSourceReadException {
+        PropositionDefinition first = knowledgeSource.readPropositionDefinition("foo");
+        long misses = knowledgeSource.getCacheMissCount();
+        long hits = knowledgeSource.getCacheHitCount();
+        Assert.assertSame(first, knowledgeSource.readPropositionDefinition("foo"));
+        Assert.assertEquals(misses, knowledgeSource.getCacheMissCount());
+        Assert.assertEquals(hits + 1, knowledgeSource.getCacheHitCount());
+    }
+
+    @Test
+    public void testMissingPropositionDefinitionIsCached() throws KnowledgeSourceReadException {
+        Assert.assertNull(knowledgeSource.readPropositionDefinition("missing"));
+        long misses = knowledgeSource.getCacheMissCount();
+        Assert.assertFalse(knowledgeSource.hasPropositionDefinition("missing"));
+        Assert.assertEquals(misses, knowledgeSource.getCacheMissCount());
+    }
+
+    @Test
+    public void testReadPropositionDefinitionsMixesHitsAndMisses() throws KnowledgeSourceReadException {
+        knowledgeSource.readPropositionDefinition("foo");
+        List<PropositionDefinition> propDefs
+                = knowledgeSource.readPropositionDefinitions("foo", "bar", "missing");
+        Set<String> propIds = new HashSet<>();
+        for (PropositionDefinition propDef : propDefs) {
+            propIds.add(propDef.getId());
+        }
+        Assert.assertEquals(Arrays.asSet(new String[]{"foo", "bar"}), propIds);
+    }
+
+    @Test
+    public void testBackendUpdatedClearsCache() throws KnowledgeSourceReadException {
+        knowledgeSource.readPropositionDefinition("foo");
+        this.backend.fireKnowledgeSourceBackendUpdated();
+        long misses = knowledgeSource.getCacheMissCount();
+        knowledgeSource.readPropositionDefinition("foo");
+        Assert.assertEquals(misses + 1, knowledgeSource.getCacheMissCount());
+    }
 }
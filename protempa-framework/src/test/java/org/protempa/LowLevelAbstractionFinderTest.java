@@ -0,0 +1,204 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.drools.RuleBase;
+import org.drools.RuleBaseFactory;
+import org.drools.StatefulSession;
+import org.drools.rule.Package;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.protempa.backend.asb.java.StateAlgorithm;
+import org.protempa.proposition.AbstractParameter;
+import org.protempa.proposition.DefaultUniqueIdFactory;
+import org.protempa.proposition.PrimitiveParameter;
+import org.protempa.proposition.Sequence;
+import org.protempa.proposition.UniqueIdFactory;
+import org.protempa.proposition.interval.Interval;
+import org.protempa.proposition.value.NominalValue;
+import org.protempa.proposition.value.NumberValue;
+import org.protempa.proposition.value.ValueComparator;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the low-level abstraction finder finds the same abstractions
+ * when it resumes an earlier run over a changed sequence as when it searches
+ * the sequence from scratch.
+ *
+ * @author Andrew Post
+ */
+public class LowLevelAbstractionFinderTest {
+
+    private static final UniqueIdFactory UID_FACTORY =
+            new DefaultUniqueIdFactory();
+
+    private StatefulSession workingMemory;
+    private LowLevelAbstractionDefinition def;
+    private Algorithm algorithm;
+    private long nextPosition;
+
+    @Before
+    public void setUp() throws Exception {
+        RuleBase ruleBase = RuleBaseFactory.newRuleBase();
+        Package rules = new Package("test");
+        WorkingMemoryGlobals.addAll(rules);
+        ruleBase.addPackage(rules);
+        this.workingMemory = ruleBase.newStatefulSession();
+        this.workingMemory.setGlobal(WorkingMemoryGlobals.KEY_ID, "TEST");
+        this.nextPosition = 1;
+
+        this.algorithm = new StateAlgorithm(new Algorithms(), "stateDetector");
+        this.def = new LowLevelAbstractionDefinition("TEST_STATE");
+        this.def.addPrimitiveParameterId("TEST");
+        this.def.setAlgorithmId("stateDetector");
+        this.def.setSlidingWindowWidthMode(SlidingWindowWidthMode.DEFAULT);
+        LowLevelAbstractionValueDefinition high =
+                new LowLevelAbstractionValueDefinition(this.def, "HIGH");
+        high.setValue(NominalValue.getInstance("HIGH"));
+        high.setParameterValue("minThreshold", NumberValue.getInstance(5));
+        high.setParameterComp("minThreshold", ValueComparator.GREATER_THAN);
+        LowLevelAbstractionValueDefinition low =
+                new LowLevelAbstractionValueDefinition(this.def, "LOW");
+        low.setValue(NominalValue.getInstance("LOW"));
+        low.setParameterValue("maxThreshold", NumberValue.getInstance(5));
+        low.setParameterComp("maxThreshold",
+                ValueComparator.LESS_THAN_OR_EQUAL_TO);
+    }
+
+    @After
+    public void tearDown() {
+        this.workingMemory.dispose();
+    }
+
+    @Test
+    public void testAppendKeepsEarlierAbstractions() throws Exception {
+        List<PrimitiveParameter> params = params(1, 2, 7, 8, 9, 3, 2, 8);
+        List<Object> asserted1 = new ArrayList<>();
+        LowLevelAbstractionFinder.Run run1 = process(params, null, asserted1);
+        assertEquals(4, asserted1.size());
+
+        params.addAll(params(9, 1));
+        List<Object> asserted2 = new ArrayList<>();
+        process(params, run1, asserted2);
+        assertEquals(summaries(search(params)), summaries(asserted2));
+        /*
+         * The third abstraction, 3 and 2, was still open when the scan
+         * reached the end of the sequence, so only the first two are kept.
+         */
+        for (int i = 0; i < 2; i++) {
+            assertSame(asserted1.get(i), asserted2.get(i));
+        }
+    }
+
+    @Test
+    public void testSameSequenceAssertsSameAbstractions() throws Exception {
+        List<PrimitiveParameter> params = params(1, 7, 8, 2);
+        List<Object> asserted1 = new ArrayList<>();
+        LowLevelAbstractionFinder.Run run1 = process(params, null, asserted1);
+        List<Object> asserted2 = new ArrayList<>();
+        LowLevelAbstractionFinder.Run run2 = process(params, run1, asserted2);
+        assertSame(run1, run2);
+        assertEquals(asserted1, asserted2);
+    }
+
+    @Test
+    public void testChangesMatchSearchFromScratch() throws Exception {
+        this.def.setSlidingWindowWidthMode(SlidingWindowWidthMode.RANGE);
+        this.def.setMinimumNumberOfValues(1);
+        this.def.setMaximumNumberOfValues(3);
+        Random random = new Random(42);
+        List<PrimitiveParameter> params = new ArrayList<>();
+        LowLevelAbstractionFinder.Run run = null;
+        for (int i = 0; i < 200; i++) {
+            if (!params.isEmpty() && random.nextInt(4) == 0) {
+                params.remove(random.nextInt(params.size()));
+            } else {
+                PrimitiveParameter param = param(random.nextInt(10));
+                param.setPosition(random.nextInt(i + 1) * 2L);
+                int index = 0;
+                while (index < params.size() && params.get(index).getInterval()
+                        .getMinStart() <= param.getInterval().getMinStart()) {
+                    index++;
+                }
+                params.add(index, param);
+            }
+            List<Object> asserted = new ArrayList<>();
+            run = process(params, run, asserted);
+            assertEquals(summaries(search(params)), summaries(asserted));
+        }
+    }
+
+    private LowLevelAbstractionFinder.Run process(
+            List<PrimitiveParameter> params,
+            LowLevelAbstractionFinder.Run previous, final List<Object> asserted)
+            throws Exception {
+        Sequence<PrimitiveParameter> seq =
+                new Sequence<>(this.def.getAbstractedFrom(), params);
+        return LowLevelAbstractionFinder.process(seq, this.def,
+                this.algorithm, new ObjectAsserter() {
+
+            @Override
+            public void assertObject(Object obj) {
+                asserted.add(obj);
+            }
+        }, new DerivationsBuilder(), this.workingMemory, previous);
+    }
+
+    private List<Object> search(List<PrimitiveParameter> params)
+            throws Exception {
+        List<Object> asserted = new ArrayList<>();
+        process(params, null, asserted);
+        return asserted;
+    }
+
+    private static List<String> summaries(List<Object> asserted) {
+        List<String> result = new ArrayList<>(asserted.size());
+        for (Object obj : asserted) {
+            AbstractParameter ap = (AbstractParameter) obj;
+            Interval interval = ap.getInterval();
+            result.add(ap.getValue() + " " + interval.getMinStart() + "-"
+                    + interval.getMinFinish());
+        }
+        return result;
+    }
+
+    private List<PrimitiveParameter> params(int... values) {
+        List<PrimitiveParameter> result = new ArrayList<>(values.length);
+        for (int value : values) {
+            PrimitiveParameter param = param(value);
+            param.setPosition(this.nextPosition++);
+            result.add(param);
+        }
+        return result;
+    }
+
+    private static PrimitiveParameter param(int value) {
+        PrimitiveParameter param = new PrimitiveParameter("TEST",
+                UID_FACTORY.getInstance());
+        param.setSourceSystem(DataSourceBackendSourceSystem.getInstance("TEST"));
+        param.setValue(NumberValue.getInstance(value));
+        return param;
+    }
+}
@@ -0,0 +1,92 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class MemoryBoundedQueueTest {
+
+    @Test
+    public void testBoundedByMemory() throws InterruptedException {
+        MemoryBoundedQueue<Long> queue
+                = new MemoryBoundedQueue<>(100, 10L, (Long l) -> l);
+        Assert.assertTrue(queue.offer(4L));
+        Assert.assertTrue(queue.offer(6L));
+        Assert.assertFalse(queue.offer(1L));
+        Assert.assertEquals(10L, queue.getBytes());
+        Assert.assertEquals(Long.valueOf(4L), queue.take());
+        Assert.assertTrue(queue.offer(4L));
+        Assert.assertEquals(10L, queue.getMaxBytes());
+    }
+
+    @Test
+    public void testBoundedByCount() {
+        MemoryBoundedQueue<Long> queue
+                = new MemoryBoundedQueue<>(2, Long.MAX_VALUE, (Long l) -> l);
+        Assert.assertTrue(queue.offer(1L));
+        Assert.assertTrue(queue.offer(1L));
+        Assert.assertFalse(queue.offer(1L));
+        Assert.assertEquals(2, queue.getMaxSize());
+    }
+
+    @Test
+    public void testOversizedElementAcceptedWhenEmpty() throws InterruptedException {
+        MemoryBoundedQueue<Long> queue
+                = new MemoryBoundedQueue<>(10, 10L, (Long l) -> l);
+        Assert.assertTrue(queue.offer(100L));
+        Assert.assertFalse(queue.offer(1L));
+        Assert.assertEquals(Long.valueOf(100L), queue.take());
+        Assert.assertEquals(0L, queue.getBytes());
+    }
+
+    @Test
+    public void testProducerWaitsForSpace() throws InterruptedException {
+        final MemoryBoundedQueue<Long> queue
+                = new MemoryBoundedQueue<>(10, 10L, (Long l) -> l);
+        queue.put(10L);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.put(5L);
+                } catch (InterruptedException ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+        };
+        producer.start();
+        while (queue.getPutWaitCount() == 0 && producer.isAlive()) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals(Long.valueOf(10L), queue.take());
+        producer.join(10000);
+        Assert.assertFalse(producer.isAlive());
+        Assert.assertEquals(Long.valueOf(5L), queue.take());
+        Assert.assertEquals(2L, queue.getPutCount());
+        Assert.assertEquals(1L, queue.getPutWaitCount());
+    }
+}
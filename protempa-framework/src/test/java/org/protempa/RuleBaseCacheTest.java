@@ -0,0 +1,203 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.drools.rule.Rule;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.protempa.proposition.interval.Relation;
+import org.protempa.proposition.value.AbsoluteTimeUnit;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class RuleBaseCacheTest {
+
+    private Path tempDir;
+    private RuleBaseCache ruleBaseCache;
+
+    @Before
+    public void setUp() throws IOException {
+        this.tempDir = Files.createTempDirectory(null);
+        this.ruleBaseCache = new RuleBaseCache(this.tempDir);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files
+                = Files.newDirectoryStream(this.tempDir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(this.tempDir);
+    }
+
+    @Test
+    public void testFingerprintIgnoresAccessed() {
+        List<PropositionDefinition> propDefs1 = newPropositionDefinitions();
+        List<PropositionDefinition> propDefs2 = newPropositionDefinitions();
+        ((AbstractPropositionDefinition) propDefs2.get(0))
+                .setAccessed(new Date(0L));
+        Assert.assertEquals(
+                this.ruleBaseCache.fingerprint(newRuleCreator(propDefs1)),
+                this.ruleBaseCache.fingerprint(newRuleCreator(propDefs2)));
+    }
+
+    @Test
+    public void testFingerprintIgnoresOrder() {
+        List<PropositionDefinition> propDefs1 = newPropositionDefinitions();
+        List<PropositionDefinition> propDefs2 = newPropositionDefinitions();
+        Collections.reverse(propDefs2);
+        Assert.assertEquals(
+                this.ruleBaseCache.fingerprint(newRuleCreator(propDefs1)),
+                this.ruleBaseCache.fingerprint(newRuleCreator(propDefs2)));
+    }
+
+    @Test
+    public void testFingerprintChangesWithDefinition() {
+        List<PropositionDefinition> propDefs1 = newPropositionDefinitions();
+        List<PropositionDefinition> propDefs2 = newPropositionDefinitions();
+        ((HighLevelAbstractionDefinition) propDefs2.get(2))
+                .setConcatenable(false);
+        Assert.assertFalse(
+                this.ruleBaseCache.fingerprint(newRuleCreator(propDefs1))
+                .equals(this.ruleBaseCache.fingerprint(
+                        newRuleCreator(propDefs2))));
+    }
+
+    @Test
+    public void testFingerprintChangesWithRelation() {
+        List<PropositionDefinition> propDefs1 = newPropositionDefinitions();
+        List<PropositionDefinition> propDefs2 = newPropositionDefinitions();
+        setRelation((HighLevelAbstractionDefinition) propDefs1.get(2), 7);
+        setRelation((HighLevelAbstractionDefinition) propDefs2.get(2), 14);
+        Assert.assertFalse(
+                this.ruleBaseCache.fingerprint(newRuleCreator(propDefs1))
+                .equals(this.ruleBaseCache.fingerprint(
+                        newRuleCreator(propDefs2))));
+    }
+
+    @Test
+    public void testFingerprintChangesWithValueClassification() {
+        List<PropositionDefinition> propDefs1 = newPropositionDefinitions();
+        List<PropositionDefinition> propDefs2 = newPropositionDefinitions();
+        propDefs1.add(newCompoundDefinition("HIGH"));
+        propDefs2.add(newCompoundDefinition("LOW"));
+        Assert.assertFalse(
+                this.ruleBaseCache.fingerprint(newRuleCreator(propDefs1))
+                .equals(this.ruleBaseCache.fingerprint(
+                        newRuleCreator(propDefs2))));
+    }
+
+    @Test
+    public void testCodeDigest() {
+        Assert.assertNotNull(RuleBaseCache.codeDigest());
+    }
+
+    @Test
+    public void testReadsWhatItWrote() throws ProtempaException {
+        JBossRuleCreator ruleCreator
+                = newRuleCreator(newPropositionDefinitions());
+        ruleCreator.createRules();
+        List<Rule> rules = ruleCreator.getRules();
+        String fingerprint = this.ruleBaseCache.fingerprint(ruleCreator);
+        this.ruleBaseCache.put(fingerprint, new RuleBaseCache.CachedRules(
+                rules, ruleCreator.newConflictResolver()));
+        RuleBaseCache.CachedRules cachedRules = this.ruleBaseCache.get(
+                fingerprint, new DerivationsBuilder());
+        Assert.assertNotNull(cachedRules);
+        Assert.assertNotNull(cachedRules.getConflictResolver());
+        Assert.assertEquals(ruleNames(rules),
+                ruleNames(cachedRules.getRules()));
+    }
+
+    @Test
+    public void testMissingIsNull() {
+        Assert.assertNull(this.ruleBaseCache.get("0123",
+                new DerivationsBuilder()));
+    }
+
+    private static void setRelation(HighLevelAbstractionDefinition def,
+            int maxDays) {
+        List<TemporalExtendedPropositionDefinition> pair
+                = def.getTemporalExtendedPropositionDefinitionPairs()
+                .iterator().next();
+        def.setRelation(pair.get(0), pair.get(1), new Relation(
+                null, null, null, null, null, null, null, null,
+                0, AbsoluteTimeUnit.DAY, maxDays, AbsoluteTimeUnit.DAY,
+                null, null, null, null));
+    }
+
+    private static CompoundLowLevelAbstractionDefinition
+            newCompoundDefinition(String lowLevelAbstractionValue) {
+        CompoundLowLevelAbstractionDefinition result
+                = new CompoundLowLevelAbstractionDefinition("C");
+        result.addValueClassification(new ValueClassification("ALERT",
+                "LA", lowLevelAbstractionValue));
+        return result;
+    }
+
+    private static List<String> ruleNames(List<Rule> rules) {
+        List<String> result = new ArrayList<>(rules.size());
+        for (Rule rule : rules) {
+            result.add(rule.getName());
+        }
+        return result;
+    }
+
+    private static JBossRuleCreator newRuleCreator(
+            List<PropositionDefinition> propDefs) {
+        return new JBossRuleCreator(
+                Collections.<LowLevelAbstractionDefinition, Algorithm>emptyMap(),
+                new DerivationsBuilder(),
+                new PropositionDefinitionCache(propDefs), propDefs);
+    }
+
+    private static List<PropositionDefinition> newPropositionDefinitions() {
+        List<PropositionDefinition> result = new ArrayList<>();
+        PrimitiveParameterDefinition a = new PrimitiveParameterDefinition("A");
+        a.setAccessed(new Date());
+        result.add(a);
+        result.add(new PrimitiveParameterDefinition("B"));
+        HighLevelAbstractionDefinition ab
+                = new HighLevelAbstractionDefinition("AB");
+        TemporalExtendedPropositionDefinition tepdA
+                = new TemporalExtendedPropositionDefinition("A");
+        TemporalExtendedPropositionDefinition tepdB
+                = new TemporalExtendedPropositionDefinition("B");
+        ab.add(tepdA);
+        ab.add(tepdB);
+        ab.setRelation(tepdA, tepdB, new Relation());
+        result.add(ab);
+        return result;
+    }
+}
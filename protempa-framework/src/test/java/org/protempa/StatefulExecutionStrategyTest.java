@@ -0,0 +1,217 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.protempa.backend.asb.AlgorithmSourceBackend;
+import org.protempa.proposition.DefaultUniqueIdFactory;
+import org.protempa.proposition.PrimitiveParameter;
+import org.protempa.proposition.Proposition;
+import org.protempa.proposition.TemporalProposition;
+import org.protempa.proposition.UniqueIdFactory;
+import org.protempa.proposition.interval.Relation;
+import org.protempa.proposition.value.AbsoluteTimeGranularity;
+import org.protempa.proposition.value.AbsoluteTimeUnit;
+import org.protempa.query.Query;
+import org.protempa.query.QueryMode;
+
+/**
+ * Checks that a stateful session that is reused for each key id gives the
+ * same results as a new session per key id
+ * ({@link StatefulExecutionStrategy#NEW_SESSION_PER_KEY_PROPERTY}).
+ *
+ * @author Andrew Post
+ */
+public class StatefulExecutionStrategyTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private final UniqueIdFactory uidFactory = new DefaultUniqueIdFactory();
+
+    @Test
+    public void testReusedSessionGivesSameResultsAsNewSessions()
+            throws Exception {
+        List<List<Proposition>> data = Arrays.asList(
+                Arrays.asList(param("A", 0), param("B", 3), param("A", 20),
+                        param("B", 22)),
+                Arrays.asList(param("A", 1), param("B", 2), param("B", 40)));
+        List<List<String>> newSessions = run(true, data);
+        List<List<String>> reusedSession = run(false, data);
+        Assert.assertEquals(newSessions, reusedSession);
+        for (int i = 0; i < data.size(); i++) {
+            Assert.assertTrue(hasPrefix(reusedSession.get(i),
+                    "AB DERIVED^key" + i + "^AB^0 "));
+            Assert.assertTrue(hasPrefix(reusedSession.get(i),
+                    "FirstB DERIVED^key" + i + "^FirstB^0 "));
+        }
+    }
+
+    /**
+     * Runs the keys through a stateful execution strategy.
+     *
+     * @return for each key, its propositions' ids, unique ids and starts, and
+     * its derivations by unique id, sorted.
+     */
+    private static List<List<String>> run(boolean newSessionPerKey,
+            List<List<Proposition>> data) throws Exception {
+        String oldValue = System.setProperty(
+                StatefulExecutionStrategy.NEW_SESSION_PER_KEY_PROPERTY,
+                Boolean.toString(newSessionPerKey));
+        Path dir = Files.createTempDirectory("protempa-test");
+        try {
+            List<PropositionDefinition> propDefs = propositionDefinitions();
+            Query query = new Query("test", null, null, null,
+                    new String[]{"AB", "FirstB"},
+                    propDefs.toArray(new PropositionDefinition[propDefs.size()]),
+                    QueryMode.REPLACE, dir.resolve("test").toString());
+            StatefulExecutionStrategy strategy = new StatefulExecutionStrategy(
+                    new AlgorithmSourceImpl(new AlgorithmSourceBackend[0]),
+                    query);
+            List<List<String>> result = new ArrayList<>();
+            try {
+                strategy.initialize(new PropositionDefinitionCache(propDefs));
+                for (int i = 0; i < data.size(); i++) {
+                    List<String> keyResult = new ArrayList<>();
+                    try {
+                        Iterator<Proposition> itr = strategy.execute("key" + i,
+                                data.get(i).iterator());
+                        while (itr.hasNext()) {
+                            keyResult.add(describe(itr.next()));
+                        }
+                        DerivationsBuilder derivationsBuilder
+                                = strategy.getDerivationsBuilder();
+                        describe("forward",
+                                derivationsBuilder.getForwardDerivations(),
+                                keyResult);
+                        describe("backward",
+                                derivationsBuilder.getBackwardDerivations(),
+                                keyResult);
+                        derivationsBuilder.reset();
+                    } finally {
+                        strategy.closeCurrentWorkingMemory();
+                    }
+                    Collections.sort(keyResult);
+                    result.add(keyResult);
+                }
+            } finally {
+                strategy.shutdown();
+            }
+            return result;
+        } finally {
+            if (oldValue != null) {
+                System.setProperty(
+                        StatefulExecutionStrategy.NEW_SESSION_PER_KEY_PROPERTY,
+                        oldValue);
+            } else {
+                System.clearProperty(
+                        StatefulExecutionStrategy.NEW_SESSION_PER_KEY_PROPERTY);
+            }
+            deleteRecursively(dir);
+        }
+    }
+
+    private static boolean hasPrefix(List<String> strings, String prefix) {
+        for (String string : strings) {
+            if (string.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<PropositionDefinition> propositionDefinitions() {
+        HighLevelAbstractionDefinition ab
+                = new HighLevelAbstractionDefinition("AB");
+        TemporalExtendedPropositionDefinition a
+                = new TemporalExtendedPropositionDefinition("A");
+        TemporalExtendedPropositionDefinition b
+                = new TemporalExtendedPropositionDefinition("B");
+        ab.add(a);
+        ab.add(b);
+        ab.setRelation(a, b, new Relation(null, null, null, null, null, null,
+                null, null, 0, AbsoluteTimeUnit.DAY, 7, AbsoluteTimeUnit.DAY,
+                null, null, null, null));
+        ab.setConcatenable(false);
+        ab.setGapFunction(new SimpleGapFunction(0, AbsoluteTimeUnit.DAY));
+        SliceDefinition firstB = new SliceDefinition("FirstB");
+        firstB.add(new TemporalExtendedPropositionDefinition("B"));
+        firstB.setMaxIndex(1);
+        return Arrays.asList(new PrimitiveParameterDefinition("A"),
+                new PrimitiveParameterDefinition("B"), ab, firstB);
+    }
+
+    private static String describe(Proposition prop) {
+        String result = prop.getId() + " "
+                + prop.getUniqueId().getStringRepresentation();
+        if (prop instanceof TemporalProposition) {
+            result += " "
+                    + ((TemporalProposition) prop).getInterval().getMinStart();
+        }
+        return result;
+    }
+
+    private static void describe(String name,
+            Map<Proposition, Set<Proposition>> derivations,
+            List<String> keyResult) {
+        for (Map.Entry<Proposition, Set<Proposition>> me
+                : derivations.entrySet()) {
+            List<String> values = new ArrayList<>();
+            for (Proposition prop : me.getValue()) {
+                values.add(prop.getUniqueId().getStringRepresentation());
+            }
+            Collections.sort(values);
+            keyResult.add(name + " "
+                    + me.getKey().getUniqueId().getStringRepresentation()
+                    + " " + values);
+        }
+    }
+
+    private Proposition param(String propId, int day) {
+        PrimitiveParameter param = new PrimitiveParameter(propId,
+                this.uidFactory.getInstance());
+        param.setPosition(631152000000L + day * DAY);
+        param.setGranularity(AbsoluteTimeGranularity.MINUTE);
+        return param;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> children
+                    = Files.newDirectoryStream(path)) {
+                for (Path child : children) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,108 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.protempa.backend.asb.AlgorithmSourceBackend;
+import org.protempa.proposition.DefaultUniqueIdFactory;
+import org.protempa.proposition.PrimitiveParameter;
+import org.protempa.proposition.Proposition;
+import org.protempa.proposition.UniqueIdFactory;
+import org.protempa.proposition.value.AbsoluteTimeGranularity;
+import org.protempa.query.Query;
+import org.protempa.query.QueryMode;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class StatelessExecutionStrategyTest {
+
+    private final UniqueIdFactory uidFactory = new DefaultUniqueIdFactory();
+    private StatelessExecutionStrategy strategy;
+
+    @Before
+    public void setUp() throws Exception {
+        PrimitiveParameterDefinition a = new PrimitiveParameterDefinition("A");
+        SliceDefinition first = new SliceDefinition("FirstA");
+        first.add(new TemporalExtendedPropositionDefinition("A"));
+        first.setMaxIndex(1);
+        List<PropositionDefinition> propDefs = Arrays.asList(a, first);
+        Query query = new Query("test", null, null, null,
+                new String[]{"FirstA"},
+                propDefs.toArray(new PropositionDefinition[propDefs.size()]),
+                QueryMode.REPLACE, null);
+        this.strategy = new StatelessExecutionStrategy(
+                new AlgorithmSourceImpl(new AlgorithmSourceBackend[0]),
+                query);
+        this.strategy.initialize(new PropositionDefinitionCache(propDefs));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.strategy.shutdown();
+    }
+
+    @Test
+    public void testDerivedUniqueIdsHaveEachKeyId() throws Exception {
+        for (String keyId : new String[]{"key0", "key1", "key2"}) {
+            List<Proposition> derived = execute(keyId, "FirstA");
+            Assert.assertEquals(1, derived.size());
+            Assert.assertEquals(keyId + "^FirstA^0", derived.get(0)
+                    .getUniqueId().getLocalUniqueId().getId());
+        }
+    }
+
+    private List<Proposition> execute(String keyId, String propId)
+            throws Exception {
+        List<Proposition> props = new ArrayList<>();
+        props.add(param("A", 0));
+        props.add(param("A", 1));
+        List<Proposition> result = new ArrayList<>();
+        try {
+            Iterator<Proposition> itr = this.strategy.execute(keyId,
+                    props.iterator());
+            while (itr.hasNext()) {
+                Proposition prop = itr.next();
+                if (prop.getId().equals(propId)) {
+                    result.add(prop);
+                }
+            }
+        } finally {
+            this.strategy.closeCurrentWorkingMemory();
+        }
+        return result;
+    }
+
+    private Proposition param(String propId, int hour) {
+        PrimitiveParameter param = new PrimitiveParameter(propId,
+                this.uidFactory.getInstance());
+        param.setPosition(hour * 3600000L);
+        param.setGranularity(AbsoluteTimeGranularity.MINUTE);
+        return param;
+    }
+}
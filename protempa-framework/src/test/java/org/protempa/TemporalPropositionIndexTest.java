@@ -0,0 +1,162 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.protempa.proposition.DefaultUniqueIdFactory;
+import org.protempa.proposition.PrimitiveParameter;
+import org.protempa.proposition.UniqueIdFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the temporal proposition index returns the collected
+ * propositions in the same order as sorting them from scratch as
+ * propositions are inserted and retracted.
+ *
+ * @author Andrew Post
+ */
+public class TemporalPropositionIndexTest {
+
+    private static final UniqueIdFactory UID_FACTORY =
+            new DefaultUniqueIdFactory();
+
+    @Test
+    public void testSortsCollected() {
+        PrimitiveParameter p1 = newParameter(3);
+        PrimitiveParameter p2 = newParameter(1);
+        PrimitiveParameter p3 = newParameter(2);
+        TemporalPropositionIndex<PrimitiveParameter> index =
+                new TemporalPropositionIndex<>();
+        assertEquals(Arrays.asList(p2, p3, p1),
+                index.update(Arrays.asList(p1, p2, p3)));
+    }
+
+    @Test
+    public void testMergesInsertedAndRetracted() {
+        PrimitiveParameter p1 = newParameter(10);
+        PrimitiveParameter p2 = newParameter(20);
+        PrimitiveParameter p3 = newParameter(30);
+        PrimitiveParameter p4 = newParameter(15);
+        PrimitiveParameter p5 = newParameter(40);
+        TemporalPropositionIndex<PrimitiveParameter> index =
+                new TemporalPropositionIndex<>();
+        List<PrimitiveParameter> first =
+                index.update(Arrays.asList(p3, p1, p2));
+        assertEquals(Arrays.asList(p1, p2, p3), first);
+        assertEquals(Arrays.asList(p1, p4, p3, p5),
+                index.update(Arrays.asList(p5, p1, p3, p4)));
+        assertEquals("an earlier result should not change",
+                Arrays.asList(p1, p2, p3), first);
+    }
+
+    @Test
+    public void testSameOrderAsSort() {
+        Random random = new Random(7);
+        TemporalPropositionIndex<PrimitiveParameter> index =
+                new TemporalPropositionIndex<>();
+        List<PrimitiveParameter> collected = new ArrayList<>();
+        for (int step = 0; step < 200; step++) {
+            for (int i = random.nextInt(5); i >= 0; i--) {
+                if (!collected.isEmpty() && random.nextInt(3) == 0) {
+                    collected.remove(random.nextInt(collected.size()));
+                } else {
+                    collected.add(newParameter(random.nextInt(100)));
+                }
+            }
+            List<PrimitiveParameter> expected = new ArrayList<>(collected);
+            Collections.sort(expected, ProtempaUtil.TEMP_PROP_COMP);
+            List<PrimitiveParameter> actual =
+                    index.update(new ArrayList<>(collected));
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(0, ProtempaUtil.TEMP_PROP_COMP.compare(
+                        expected.get(i), actual.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testTiesInCollectedOrder() {
+        Random random = new Random(11);
+        TemporalPropositionIndex<PrimitiveParameter> index =
+                new TemporalPropositionIndex<>();
+        List<PrimitiveParameter> collected = new ArrayList<>();
+        for (int step = 0; step < 200; step++) {
+            for (int i = random.nextInt(5); i >= 0; i--) {
+                if (!collected.isEmpty() && random.nextInt(3) == 0) {
+                    collected.remove(random.nextInt(collected.size()));
+                } else {
+                    collected.add(newParameter(random.nextInt(10)));
+                }
+            }
+            if (random.nextInt(10) == 0) {
+                Collections.shuffle(collected, random);
+            }
+            List<PrimitiveParameter> expected = new ArrayList<>(collected);
+            Collections.sort(expected, ProtempaUtil.TEMP_PROP_COMP);
+            List<PrimitiveParameter> actual =
+                    index.update(new ArrayList<>(collected));
+            assertSameElements(expected, actual);
+
+            List<PrimitiveParameter> expectedReverse =
+                    new ArrayList<>(collected);
+            Collections.sort(expectedReverse,
+                    ProtempaUtil.REVERSE_TEMP_PROP_COMP);
+            assertSameElements(expectedReverse,
+                    TemporalPropositionIndex.reverse(actual, Integer.MAX_VALUE));
+            int n = random.nextInt(collected.size() + 1);
+            assertSameElements(expectedReverse.subList(0, n),
+                    TemporalPropositionIndex.reverse(actual, n));
+        }
+    }
+
+    @Test
+    public void testReorderedTiesDoNotChangeEarlierResult() {
+        PrimitiveParameter p1 = newParameter(10);
+        PrimitiveParameter p2 = newParameter(10);
+        TemporalPropositionIndex<PrimitiveParameter> index =
+                new TemporalPropositionIndex<>();
+        List<PrimitiveParameter> first = index.update(Arrays.asList(p1, p2));
+        List<PrimitiveParameter> second = index.update(Arrays.asList(p2, p1));
+        assertSameElements(Arrays.asList(p1, p2), first);
+        assertSameElements(Arrays.asList(p2, p1), second);
+    }
+
+    private static void assertSameElements(List<PrimitiveParameter> expected,
+            List<PrimitiveParameter> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), actual.get(i));
+        }
+    }
+
+    private static PrimitiveParameter newParameter(long position) {
+        PrimitiveParameter param =
+                new PrimitiveParameter("TEST", UID_FACTORY.getInstance());
+        param.setPosition(position);
+        return param;
+    }
+}
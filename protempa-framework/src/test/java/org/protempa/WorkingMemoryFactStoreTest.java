@@ -0,0 +1,114 @@
+package org.protempa;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2015 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.protempa.proposition.Event;
+import org.protempa.proposition.Proposition;
+import org.protempa.proposition.interval.IntervalFactory;
+import org.protempa.proposition.value.AbsoluteTimeGranularity;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class WorkingMemoryFactStoreTest extends ProtempaTestCase {
+
+    private static final IntervalFactory INTERVAL_FACTORY
+            = new IntervalFactory();
+
+    public void testRoundTrip() throws Exception {
+        Event e1 = newEvent(1000L);
+        Event e2 = newEvent(2000L);
+        Event derived = newEvent(3000L);
+        Map<Proposition, Set<Proposition>> forward = new HashMap<>();
+        forward.put(e1, new HashSet<Proposition>(
+                Collections.singleton(derived)));
+        forward.put(e2, new HashSet<Proposition>(
+                Collections.singleton(derived)));
+        Map<Proposition, Set<Proposition>> backward = new HashMap<>();
+        Set<Proposition> sources = new HashSet<>();
+        sources.add(e1);
+        sources.add(e2);
+        backward.put(derived, sources);
+        Map<String, Integer> instanceNums = new HashMap<>();
+        instanceNums.put("DERIVED", 1);
+
+        WorkingMemoryFactStore factStore = new WorkingMemoryFactStore();
+        List<Proposition> props = new ArrayList<>();
+        props.add(e1);
+        props.add(e2);
+        factStore.setPropositions(props);
+        factStore.setForwardDerivations(forward);
+        factStore.setBackwardDerivations(backward);
+        factStore.setInstanceNums(instanceNums);
+
+        WorkingMemoryFactStore copy = roundTrip(factStore);
+        assertEquals(props, copy.getPropositions());
+        assertEquals(forward, copy.getForwardDerivations());
+        assertEquals(backward, copy.getBackwardDerivations());
+        assertEquals(instanceNums, copy.getInstanceNums());
+        Proposition copiedDerived = copy.getBackwardDerivations().keySet()
+                .iterator().next();
+        assertSame(copiedDerived, copy.getForwardDerivations()
+                .get(copy.getPropositions().get(0)).iterator().next());
+    }
+
+    public void testRoundTripEmpty() throws Exception {
+        WorkingMemoryFactStore copy
+                = roundTrip(new WorkingMemoryFactStore());
+        assertNull(copy.getPropositions());
+        assertNull(copy.getForwardDerivations());
+        assertNull(copy.getBackwardDerivations());
+        assertNull(copy.getInstanceNums());
+    }
+
+    private Event newEvent(long position) {
+        Event event = new Event("TEST", getUid());
+        event.setInterval(INTERVAL_FACTORY.getInstance(position,
+                AbsoluteTimeGranularity.DAY));
+        return event;
+    }
+
+    private static WorkingMemoryFactStore roundTrip(
+            WorkingMemoryFactStore factStore)
+            throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(factStore);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(baos.toByteArray()))) {
+            return (WorkingMemoryFactStore) ois.readObject();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.protempa.datastore;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.protempa.EventDefinition;
+import org.protempa.PropositionDefinitionCache;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link WorkingMemoryDataStores#finish() } writes the stored
+ * proposition definitions only when the cache has changed since the last
+ * write.
+ *
+ * @author Andrew Post
+ */
+public class WorkingMemoryDataStoresTest {
+
+    private static final String NAME = "test";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private Path storedPropDefsFile;
+    private PropositionDefinitionCache cache;
+    private WorkingMemoryDataStores stores;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = this.folder.getRoot().toPath();
+        this.storedPropDefsFile = this.directory.resolve(
+                NAME + ".stored-propdefs");
+        this.cache = new PropositionDefinitionCache(
+                Collections.singleton(new EventDefinition("A")));
+        this.stores = new WorkingMemoryDataStores(this.directory, NAME,
+                this.cache);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.stores.close();
+    }
+
+    @Test
+    public void testFirstFinishWrites() throws IOException {
+        this.stores.finish();
+        assertTrue(Files.exists(this.storedPropDefsFile));
+        assertStored("A");
+    }
+
+    @Test
+    public void testFinishSkipsUnchangedCache() throws IOException {
+        this.stores.finish();
+        Files.delete(this.storedPropDefsFile);
+        this.stores.finish();
+        assertFalse(Files.exists(this.storedPropDefsFile));
+    }
+
+    @Test
+    public void testFinishSkipsMergeThatAddsNothing() throws IOException {
+        this.stores.finish();
+        Files.delete(this.storedPropDefsFile);
+        this.cache.merge(new PropositionDefinitionCache(
+                Collections.singleton(new EventDefinition("A"))));
+        this.cache.remove("B");
+        this.stores.finish();
+        assertFalse(Files.exists(this.storedPropDefsFile));
+    }
+
+    @Test
+    public void testFinishWritesAfterMerge() throws IOException {
+        this.stores.finish();
+        this.cache.merge(new PropositionDefinitionCache(
+                Collections.singleton(new EventDefinition("B"))));
+        this.stores.finish();
+        assertStored("A", "B");
+    }
+
+    @Test
+    public void testFinishWritesAfterRemove() throws IOException {
+        this.cache.merge(new PropositionDefinitionCache(
+                Collections.singleton(new EventDefinition("B"))));
+        this.stores.finish();
+        this.cache.remove("A");
+        this.stores.finish();
+        assertStored("B");
+    }
+
+    @Test
+    public void testReopenMergesStoredIntoCache() throws IOException {
+        this.cache.merge(new PropositionDefinitionCache(
+                Collections.singleton(new EventDefinition("B"))));
+        this.stores.finish();
+        this.stores.close();
+        PropositionDefinitionCache reopenedCache =
+                new PropositionDefinitionCache(
+                        Collections.singleton(new EventDefinition("C")));
+        this.stores = new WorkingMemoryDataStores(this.directory, NAME,
+                reopenedCache);
+        assertTrue(reopenedCache.contains("A"));
+        assertTrue(reopenedCache.contains("B"));
+        assertTrue(reopenedCache.contains("C"));
+    }
+
+    private void assertStored(String... ids) throws IOException {
+        assertFalse("no temporary file should be left behind",
+                Files.exists(this.storedPropDefsFile.resolveSibling(
+                        this.storedPropDefsFile.getFileName() + ".tmp")));
+        PropositionDefinitionCache stored =
+                new PropositionDefinitionCache(
+                        Collections.<EventDefinition>emptyList());
+        WorkingMemoryDataStores reopened = new WorkingMemoryDataStores(
+                this.directory, NAME, stored);
+        try {
+            assertEquals(ids.length, stored.getAll().size());
+            for (String id : Arrays.asList(ids)) {
+                assertTrue(id + " should be stored", stored.contains(id));
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+}
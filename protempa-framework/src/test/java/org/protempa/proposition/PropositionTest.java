@@ -19,11 +19,14 @@
  */
 package org.protempa.proposition;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import org.protempa.ProtempaTestCase;
+import org.protempa.proposition.value.NominalValue;
 
 public class PropositionTest extends ProtempaTestCase {
     
@@ -77,6 +80,54 @@ public class PropositionTest extends ProtempaTestCase {
         assertEquals("quux", pmap.put(new Event("quux", quuxUid), "xuup"));
     }
     
+    public void testProperties() {
+        Event e1 = new Event("testProperties", getUid());
+        e1.setProperty("a", NominalValue.getInstance("1"));
+        e1.setProperty("b", null);
+        Event e2 = new Event("testProperties", getUid());
+        e2.setProperty("c", NominalValue.getInstance("3"));
+        e2.setProperty("a", NominalValue.getInstance("2"));
+        assertEquals(NominalValue.getInstance("1"), e1.getProperty("a"));
+        assertNull(e1.getProperty("b"));
+        assertNull(e1.getProperty("c"));
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(e1.getPropertyNames()));
+        assertEquals(NominalValue.getInstance("2"), e2.getProperty("a"));
+        assertEquals(NominalValue.getInstance("3"), e2.getProperty("c"));
+        assertEquals(new HashSet<>(Arrays.asList("a", "c")),
+                new HashSet<>(Arrays.asList(e2.getPropertyNames())));
+        e1.setProperty("c", NominalValue.getInstance("4"));
+        assertEquals(NominalValue.getInstance("4"), e1.getProperty("c"));
+        assertEquals(NominalValue.getInstance("3"), e2.getProperty("c"));
+    }
+    
+    public void testReferences() {
+        Event e1 = new Event("testReferences", getUid());
+        UniqueId uid1 = getUid();
+        UniqueId uid2 = getUid();
+        e1.addReference("r", uid1);
+        e1.addReference("r", uid2);
+        e1.setReferences("s", Collections.singletonList(uid1));
+        assertEquals(Arrays.asList(uid1, uid2), e1.getReferences("r"));
+        assertEquals(Collections.singletonList(uid1), e1.getReferences("s"));
+        assertTrue(e1.getReferences("t").isEmpty());
+        assertEquals(Arrays.asList("r", "s"), Arrays.asList(e1.getReferenceNames()));
+        Event e2 = new Event("testReferences", getUid());
+        assertEquals(0, e2.getReferenceNames().length);
+        assertTrue(e2.getReferences("r").isEmpty());
+    }
+    
+    public void testIsEqualIgnoresPropertyOrder() {
+        Event e1 = new Event("testIsEqual", getUid());
+        e1.setProperty("a", NominalValue.getInstance("1"));
+        e1.setProperty("b", NominalValue.getInstance("2"));
+        Event e2 = new Event("testIsEqual", getUid());
+        e2.setProperty("b", NominalValue.getInstance("2"));
+        e2.setProperty("a", NominalValue.getInstance("1"));
+        assertTrue(e1.isEqual(e2));
+        e2.setProperty("a", NominalValue.getInstance("3"));
+        assertFalse(e1.isEqual(e2));
+    }
+    
     private boolean assertOneOf(Proposition toFind, Proposition... props) {
         for (Proposition p : props) {
             if (toFind.equals(p)) {
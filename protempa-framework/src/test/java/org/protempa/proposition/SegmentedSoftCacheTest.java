@@ -0,0 +1,155 @@
+package org.protempa.proposition;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.lang.ref.ReferenceQueue;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SegmentedSoftCache}, with string keys.
+ *
+ * @author Andrew Post
+ */
+public class SegmentedSoftCacheTest {
+
+    @Test
+    public void testPutIfAbsentKeepsFirstValue() {
+        SegmentedSoftCache<Object> cache = new SegmentedSoftCache<>(4, 4);
+        Object first = new Object();
+        assertSame(first, put(cache, "a", first));
+        assertSame(first, put(cache, "a", new Object()));
+        assertSame(first, get(cache, "a"));
+        assertNull(get(cache, "b"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testManyEntriesSurviveRehash() {
+        SegmentedSoftCache<Object> cache = new SegmentedSoftCache<>(4, 4);
+        Object[] values = new Object[5000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new Object();
+            assertSame(values[i], put(cache, "k" + i, values[i]));
+        }
+        assertEquals(values.length, cache.size());
+        for (int i = 0; i < values.length; i++) {
+            assertSame(values[i], get(cache, "k" + i));
+        }
+    }
+
+    @Test
+    public void testReclaimedEntriesAreRemoved() {
+        SegmentedSoftCache<Object> cache = new SegmentedSoftCache<>(1, 4);
+        Object a = new Object();
+        Object b = new Object();
+        put(cache, "a", a);
+        put(cache, "b", b);
+        SegmentedSoftCache.Entry<Object> entry = entry(cache, "a");
+        entry.clear();
+        entry.enqueue();
+        assertNull(get(cache, "a"));
+
+        Object newA = new Object();
+        assertSame(newA, put(cache, "a", newA));
+        assertEquals(2, cache.size());
+        assertSame(newA, get(cache, "a"));
+        assertSame(b, get(cache, "b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSegmentCountMustBePowerOfTwo() {
+        new SegmentedSoftCache<>(3, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInitialCapacityMustBePowerOfTwo() {
+        new SegmentedSoftCache<>(4, 0);
+    }
+
+    private static Object put(SegmentedSoftCache<Object> cache, String key,
+            Object value) {
+        return cache.putIfAbsent(hash(key), new StringKey(key), value);
+    }
+
+    private static Object get(SegmentedSoftCache<Object> cache, String key) {
+        SegmentedSoftCache.Entry<Object> entry = entry(cache, key);
+        return entry != null ? entry.get() : null;
+    }
+
+    private static SegmentedSoftCache.Entry<Object> entry(
+            SegmentedSoftCache<Object> cache, String key) {
+        int hash = hash(key);
+        for (SegmentedSoftCache.Entry<Object> e = cache.getFirst(hash);
+                e != null; e = e.getNext()) {
+            if (e.getHash() == hash && ((StringEntry) e).key.equals(key)
+                    && e.get() != null) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private static int hash(String key) {
+        return key.hashCode() * 0x9E3779B9;
+    }
+
+    private static final class StringKey
+            implements SegmentedSoftCache.Key<Object> {
+
+        private final String key;
+
+        StringKey(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public boolean matches(SegmentedSoftCache.Entry<Object> entry) {
+            return this.key.equals(((StringEntry) entry).key);
+        }
+
+        @Override
+        public SegmentedSoftCache.Entry<Object> newEntry(Object value,
+                ReferenceQueue<? super Object> queue, int hash,
+                SegmentedSoftCache.Entry<Object> next) {
+            return new StringEntry(value, queue, hash, this.key, next);
+        }
+    }
+
+    private static final class StringEntry
+            extends SegmentedSoftCache.Entry<Object> {
+
+        private final String key;
+
+        StringEntry(Object value, ReferenceQueue<? super Object> queue,
+                int hash, String key, SegmentedSoftCache.Entry<Object> next) {
+            super(value, queue, hash, next);
+            this.key = key;
+        }
+
+        @Override
+        protected SegmentedSoftCache.Entry<Object> copy(Object value,
+                ReferenceQueue<? super Object> queue,
+                SegmentedSoftCache.Entry<Object> next) {
+            return new StringEntry(value, queue, getHash(), this.key, next);
+        }
+    }
+}
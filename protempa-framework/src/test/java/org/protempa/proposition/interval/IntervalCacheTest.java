@@ -0,0 +1,84 @@
+package org.protempa.proposition.interval;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import org.junit.Assert;
+import org.junit.Test;
+import org.protempa.proposition.value.AbsoluteTimeGranularity;
+
+/**
+ *
+ * @author Andrew Post
+ */
+public class IntervalCacheTest {
+
+    @Test
+    public void testSameBoundsSameInstance() {
+        IntervalFactory factory = new IntervalFactory();
+        Interval i1 = factory.getInstance(1000L, AbsoluteTimeGranularity.DAY,
+                2000L, AbsoluteTimeGranularity.DAY);
+        Interval i2 = factory.getInstance(1000L, AbsoluteTimeGranularity.DAY,
+                2000L, AbsoluteTimeGranularity.DAY);
+        Assert.assertSame(i1, i2);
+    }
+
+    @Test
+    public void testNullBoundsAreDistinctFromZero() {
+        IntervalFactory factory = new IntervalFactory();
+        Interval i1 = factory.getInstance(0L, AbsoluteTimeGranularity.DAY,
+                null, AbsoluteTimeGranularity.DAY);
+        Interval i2 = factory.getInstance(0L, AbsoluteTimeGranularity.DAY,
+                0L, AbsoluteTimeGranularity.DAY);
+        Assert.assertNotSame(i1, i2);
+        Assert.assertNull(i1.getMaximumFinish());
+    }
+
+    @Test
+    public void testPositionIsDistinctFromStartFinish() {
+        IntervalCache cache = new IntervalCache();
+        Interval position = new SimpleInterval(5L,
+                AbsoluteTimeGranularity.DAY);
+        cache.putIfAbsent(IntervalCache.KIND_POSITION, 5L, null,
+                AbsoluteTimeGranularity.DAY, null, null, null, position);
+        Assert.assertNull(cache.get(IntervalCache.KIND_START_FINISH, 5L, null,
+                AbsoluteTimeGranularity.DAY, null, null, null));
+        Assert.assertSame(position, cache.get(IntervalCache.KIND_POSITION,
+                5L, null, AbsoluteTimeGranularity.DAY, null, null, null));
+    }
+
+    @Test
+    public void testManyEntriesSurviveRehash() {
+        IntervalCache cache = new IntervalCache();
+        Interval[] intervals = new Interval[20000];
+        for (int i = 0; i < intervals.length; i++) {
+            intervals[i] = new SimpleInterval((long) i,
+                    AbsoluteTimeGranularity.DAY);
+            Assert.assertSame(intervals[i], cache.putIfAbsent(
+                    IntervalCache.KIND_POSITION, (long) i, null,
+                    AbsoluteTimeGranularity.DAY, null, null, null,
+                    intervals[i]));
+        }
+        for (int i = 0; i < intervals.length; i++) {
+            Assert.assertSame(intervals[i], cache.get(
+                    IntervalCache.KIND_POSITION, (long) i, null,
+                    AbsoluteTimeGranularity.DAY, null, null, null));
+        }
+    }
+}
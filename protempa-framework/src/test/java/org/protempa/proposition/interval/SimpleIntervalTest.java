@@ -142,4 +142,23 @@ public class SimpleIntervalTest extends TestCase {
                 AbsoluteTimeGranularity.MINUTE);
         assertEquals(Long.valueOf(60L), i2.minLengthIn(AbsoluteTimeUnit.SECOND));
     }
+
+    public void testPrimitiveBoundsMatchBoxedBounds() {
+        assertEquals(interval.getMinimumStart().longValue(),
+                interval.minimumStart());
+        assertEquals(interval.getMaximumStart().longValue(),
+                interval.maximumStart());
+        assertEquals(interval.getMinimumFinish().longValue(),
+                interval.minimumFinish());
+        assertEquals(interval.getMaximumFinish().longValue(),
+                interval.maximumFinish());
+    }
+
+    public void testUnboundedFinish() {
+        Interval i2 = new DefaultInterval(asPosition(d),
+                AbsoluteTimeGranularity.MINUTE, null, null);
+        assertNull(i2.getMaximumFinish());
+        assertEquals(Long.MAX_VALUE, i2.maximumFinish());
+        assertNull(i2.getMaxFinish());
+    }
 }
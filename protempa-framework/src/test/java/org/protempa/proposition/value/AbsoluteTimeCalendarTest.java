@@ -0,0 +1,176 @@
+package org.protempa.proposition.value;
+
+/*
+ * #%L
+ * Protempa Framework
+ * %%
+ * Copyright (C) 2012 - 2018 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link AbsoluteTimeCalendar#distance(long, long, int) } counts
+ * the same number of units as adding one unit at a time with a
+ * {@link Calendar} in time zones with daylight saving time.
+ *
+ * @author Andrew Post
+ */
+public class AbsoluteTimeCalendarTest {
+
+    private static final TimeZone NEW_YORK
+            = TimeZone.getTimeZone("America/New_York");
+
+    private static final int[] FIELDS = {Calendar.HOUR_OF_DAY,
+        Calendar.DATE, Calendar.WEEK_OF_MONTH, Calendar.MONTH, Calendar.YEAR};
+
+    @Test
+    public void testDistanceMatchesCalendarInNewYork() {
+        assertMatchesCalendar(NEW_YORK, 1);
+    }
+
+    @Test
+    public void testDistanceMatchesCalendarWithHalfHourTransitions() {
+        assertMatchesCalendar(
+                TimeZone.getTimeZone("Australia/Lord_Howe"), 2);
+    }
+
+    @Test
+    public void testDistanceInDaysFromSpringForwardGap() {
+        // 2:30 am does not exist on March 8, 2015, so the calendar moves
+        // to another time of day, which the later days keep
+        long start = position(NEW_YORK, 2015, Calendar.MARCH, 7, 2, 30);
+        AbsoluteTimeCalendar calendar = new AbsoluteTimeCalendar(NEW_YORK);
+        for (int day = 8; day <= 10; day++) {
+            for (int hour = 0; hour < 5; hour++) {
+                long finish = position(NEW_YORK, 2015, Calendar.MARCH, day,
+                        hour, 30);
+                assertEquals(day + " " + hour,
+                        calendarDistance(NEW_YORK, start, finish,
+                                Calendar.DATE),
+                        calendar.distance(start, finish, Calendar.DATE));
+            }
+        }
+    }
+
+    @Test
+    public void testDistanceInMonthsAcrossFallBack() {
+        // 1:30 am occurs twice on November 1, 2015
+        long start = position(NEW_YORK, 2015, Calendar.OCTOBER, 1, 1, 30);
+        long firstOneThirty = position(NEW_YORK, 2015, Calendar.NOVEMBER, 1,
+                1, 30);
+        AbsoluteTimeCalendar calendar = new AbsoluteTimeCalendar(NEW_YORK);
+        for (long finish = firstOneThirty - 60 * 60 * 1000;
+                finish <= firstOneThirty + 2 * 60 * 60 * 1000;
+                finish += 15 * 60 * 1000) {
+            assertEquals(calendarDistance(NEW_YORK, start, finish,
+                    Calendar.MONTH),
+                    calendar.distance(start, finish, Calendar.MONTH));
+        }
+    }
+
+    @Test
+    public void testDistanceInMonthsPinsDayOfMonthInNewYork() {
+        long jan31 = position(NEW_YORK, 2015, Calendar.JANUARY, 31, 1, 30);
+        AbsoluteTimeCalendar calendar = new AbsoluteTimeCalendar(NEW_YORK);
+        // one month at a time: 2/28/15, then 3/28/15, after spring forward
+        assertEquals(2, calendar.distance(jan31,
+                position(NEW_YORK, 2015, Calendar.MARCH, 28, 1, 30),
+                Calendar.MONTH));
+        assertEquals(1, calendar.distance(jan31,
+                position(NEW_YORK, 2015, Calendar.MARCH, 28, 1, 29),
+                Calendar.MONTH));
+        assertEquals(11, calendar.distance(jan31,
+                position(NEW_YORK, 2015, Calendar.DECEMBER, 28, 1, 30),
+                Calendar.MONTH));
+    }
+
+    @Test
+    public void testFinishBeforeStart() {
+        long start = position(NEW_YORK, 2015, Calendar.MARCH, 8, 12, 0);
+        AbsoluteTimeCalendar calendar = new AbsoluteTimeCalendar(NEW_YORK);
+        for (int field : FIELDS) {
+            assertEquals(0, calendar.distance(start,
+                    start - 400L * 24 * 60 * 60 * 1000, field));
+        }
+    }
+
+    /**
+     * Compares distances with a calendar on random positions from 1970
+     * through 2040, half of them between midnight and 4 am, when the
+     * transitions happen.
+     */
+    private static void assertMatchesCalendar(TimeZone timeZone, long seed) {
+        AbsoluteTimeCalendar calendar = new AbsoluteTimeCalendar(timeZone);
+        Calendar cal = Calendar.getInstance(timeZone);
+        Random random = new Random(seed);
+        long min = 0L;
+        long range = 70L * 365 * 24 * 60 * 60 * 1000;
+        for (int i = 0; i < 2000; i++) {
+            long start = min + (long) (random.nextDouble() * range);
+            if (random.nextBoolean()) {
+                cal.setTimeInMillis(start);
+                cal.set(Calendar.HOUR_OF_DAY, random.nextInt(4));
+                cal.set(Calendar.MINUTE, random.nextInt(60));
+                start = cal.getTimeInMillis();
+            }
+            int field = FIELDS[random.nextInt(FIELDS.length)];
+            long days;
+            switch (field) {
+                case Calendar.HOUR_OF_DAY:
+                    days = 10;
+                    break;
+                case Calendar.YEAR:
+                    days = 30 * 365;
+                    break;
+                default:
+                    days = 3 * 365;
+            }
+            long span = days * 24 * 60 * 60 * 1000;
+            long finish = start + (long) (random.nextDouble() * span);
+            assertEquals(timeZone.getID() + " " + field + " " + start + " "
+                    + finish, calendarDistance(timeZone, start, finish, field),
+                    calendar.distance(start, finish, field));
+        }
+    }
+
+    private static long calendarDistance(TimeZone timeZone, long start,
+            long finish, int field) {
+        Calendar cal = Calendar.getInstance(timeZone);
+        cal.setTimeInMillis(start);
+        long result = 0;
+        while (true) {
+            cal.add(field, 1);
+            if (cal.getTimeInMillis() > finish) {
+                return result;
+            }
+            result++;
+        }
+    }
+
+    private static long position(TimeZone timeZone, int year, int month,
+            int date, int hour, int minute) {
+        Calendar cal = new GregorianCalendar(timeZone);
+        cal.clear();
+        cal.set(year, month, date, hour, minute);
+        return cal.getTimeInMillis();
+    }
+}
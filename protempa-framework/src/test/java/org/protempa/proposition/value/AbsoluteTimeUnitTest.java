@@ -102,4 +102,39 @@ public class AbsoluteTimeUnitTest extends TestCase {
         Date d2 = format.parse("1/15/07");
         assertEquals(14, AbsoluteTimeGranularity.DAY.distance(asPosition(d1), asPosition(d2), AbsoluteTimeGranularity.DAY, AbsoluteTimeUnit.DAY));
     }
+
+    public void testDistanceInMonthsPinsDayOfMonth() throws ParseException {
+        DateFormat format = DateFormat.getDateInstance(DateFormat.SHORT,
+                Locale.US);
+        long jan31 = asPosition(format.parse("1/31/08"));
+        // one month at a time: 2/29/08, then 3/29/08
+        assertEquals(2, AbsoluteTimeGranularity.DAY.distance(jan31,
+                asPosition(format.parse("3/29/08")),
+                AbsoluteTimeGranularity.DAY, AbsoluteTimeUnit.MONTH));
+        assertEquals(1, AbsoluteTimeGranularity.DAY.distance(jan31,
+                asPosition(format.parse("3/28/08")),
+                AbsoluteTimeGranularity.DAY, AbsoluteTimeUnit.MONTH));
+    }
+
+    public void testDistanceInYearsFromLeapDay() throws ParseException {
+        DateFormat format = DateFormat.getDateInstance(DateFormat.SHORT,
+                Locale.US);
+        long feb29 = asPosition(format.parse("2/29/08"));
+        assertEquals(4, AbsoluteTimeGranularity.DAY.distance(feb29,
+                asPosition(format.parse("2/28/12")),
+                AbsoluteTimeGranularity.DAY, AbsoluteTimeUnit.YEAR));
+        assertEquals(0, AbsoluteTimeGranularity.DAY.distance(feb29,
+                asPosition(format.parse("2/27/09")),
+                AbsoluteTimeGranularity.DAY, AbsoluteTimeUnit.YEAR));
+    }
+
+    public void testAddMonthsPinsDayOfMonth() throws ParseException {
+        DateFormat format = DateFormat.getDateInstance(DateFormat.SHORT,
+                Locale.US);
+        long jan31 = asPosition(format.parse("1/31/08"));
+        long feb29 = asPosition(format.parse("2/29/08"));
+        long mar31 = asPosition(format.parse("3/31/08"));
+        assertEquals(feb29, AbsoluteTimeUnit.MONTH.addToPosition(jan31, 1));
+        assertEquals(mar31, AbsoluteTimeUnit.MONTH.addToPosition(jan31, 2));
+    }
 }
@@ -19,6 +19,10 @@
  */
 package org.protempa.proposition.value;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.math.BigDecimal;
 import java.text.NumberFormat;
 
@@ -140,4 +144,80 @@ public class NumberValueTest extends TestCase {
         format.setGroupingUsed(false);
         assertEquals("1000", format.format(new BigDecimal("1000")));
     }
+
+    public void testGetInstanceLongInterned() {
+        assertSame(NumberValue.getInstance(123456789L),
+                NumberValue.getInstance(123456789L));
+    }
+
+    public void testGetInstanceLongSameAsBigDecimal() {
+        assertSame(NumberValue.getInstance(new BigDecimal("987654321")),
+                NumberValue.getInstance(987654321L));
+    }
+
+    public void testGetInstanceDoubleSameAsBigDecimal() {
+        assertSame(NumberValue.getInstance(new BigDecimal("3.25")),
+                NumberValue.getInstance(3.25));
+    }
+
+    public void testGetInstanceDoubleKeepsScale() {
+        assertEquals("1.0", NumberValue.getInstance(1.0).getFormatted());
+        assertEquals("1", NumberValue.getInstance(1L).getFormatted());
+    }
+
+    public void testGetInstanceNegativeZero() {
+        assertSame(NumberValue.getInstance(0.0),
+                NumberValue.getInstance(-0.0));
+    }
+
+    public void testReplace() {
+        NumberValue interned = NumberValue.getInstance(424242L);
+        assertSame(interned, new NumberValue(424242L).replace());
+    }
+
+    public void testDeserializedReplace() throws Exception {
+        NumberValue interned = NumberValue.getInstance(2.5);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(interned);
+        }
+        NumberValue copy;
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (NumberValue) in.readObject();
+        }
+        assertEquals(interned, copy);
+        assertSame(interned, copy.replace());
+    }
+
+    public void testCacheStatistics() {
+        long hits = NumberValue.getCacheHitCount();
+        NumberValue.getInstance(31337L);
+        NumberValue.getInstance(31337L);
+        assertTrue(NumberValue.getCacheHitCount() > hits);
+        assertTrue(NumberValue.getCacheSize() > 0);
+        double hitRate = NumberValue.getCacheHitRate();
+        assertTrue(hitRate > 0.0 && hitRate <= 1.0);
+    }
+
+    public void testPrimitiveMissCountedOnce() {
+        long misses = NumberValue.getCacheMissCount();
+        long hits = NumberValue.getCacheHitCount();
+        NumberValue first = NumberValue.getInstance(8675309L);
+        assertEquals(misses + 1, NumberValue.getCacheMissCount());
+        assertEquals(hits, NumberValue.getCacheHitCount());
+        assertSame(first, NumberValue.getInstance(8675309L));
+        assertEquals(misses + 1, NumberValue.getCacheMissCount());
+        assertEquals(hits + 1, NumberValue.getCacheHitCount());
+
+        misses = NumberValue.getCacheMissCount();
+        NumberValue.getInstance(8675309.5);
+        assertEquals(misses + 1, NumberValue.getCacheMissCount());
+    }
+
+    public void testPrimitiveSharesInstanceWithBigDecimal() {
+        NumberValue fromBigDecimal =
+                NumberValue.getInstance(BigDecimal.valueOf(4815162342L));
+        assertSame(fromBigDecimal, NumberValue.getInstance(4815162342L));
+    }
 }
@@ -633,6 +633,80 @@ abstract class ConnectionManager {
         return getOwnSlotValues(frame, getSlot(slotName));
     }
 
+    private static final class SlotValuesSpec {
+
+        final Collection<? extends Frame> frames;
+        final Slot slot;
+
+        SlotValuesSpec(Collection<? extends Frame> frames, Slot slot) {
+            this.frames = frames;
+            this.slot = slot;
+        }
+
+        @Override
+        public String toString() {
+            return this.frames.size() + " frames' " + this.slot;
+        }
+    }
+
+    private final ProtegeCommand<List<Object>, SlotValuesSpec> OWN_SLOT_VALUE_BULK_GETTER =
+            new ProtegeCommand<List<Object>, SlotValuesSpec>("get own slot value of") {
+
+                @Override
+                List<Object> get(SlotValuesSpec slotValuesSpec) {
+                    List<Object> result =
+                            new ArrayList<>(slotValuesSpec.frames.size());
+                    for (Frame frame : slotValuesSpec.frames) {
+                        result.add(protegeKnowledgeBase.getOwnSlotValue(frame,
+                                slotValuesSpec.slot));
+                    }
+                    return result;
+                }
+            };
+
+    /**
+     * Gets a slot's value for many frames in one command, so that they are
+     * retried together rather than one at a time.
+     *
+     * @param frames the frames.
+     * @param slot the slot.
+     * @return the slot's values, in the order of the frames.
+     */
+    List<Object> getOwnSlotValue(Collection<? extends Frame> frames,
+            Slot slot) throws KnowledgeSourceReadException {
+        return getFromProtege(new SlotValuesSpec(frames, slot),
+                OWN_SLOT_VALUE_BULK_GETTER);
+    }
+
+    private final ProtegeCommand<List<Collection<?>>, SlotValuesSpec> OWN_SLOT_VALUES_BULK_GETTER =
+            new ProtegeCommand<List<Collection<?>>, SlotValuesSpec>("get own slot values of") {
+
+                @Override
+                List<Collection<?>> get(SlotValuesSpec slotValuesSpec) {
+                    List<Collection<?>> result =
+                            new ArrayList<>(slotValuesSpec.frames.size());
+                    for (Frame frame : slotValuesSpec.frames) {
+                        result.add(protegeKnowledgeBase.getOwnSlotValues(frame,
+                                slotValuesSpec.slot));
+                    }
+                    return result;
+                }
+            };
+
+    /**
+     * Gets a multi-valued slot's values for many frames in one command, so
+     * that they are retried together rather than one at a time.
+     *
+     * @param frames the frames.
+     * @param slot the slot.
+     * @return the slot's values for each frame, in the order of the frames.
+     */
+    List<Collection<?>> getOwnSlotValues(Collection<? extends Frame> frames,
+            Slot slot) throws KnowledgeSourceReadException {
+        return getFromProtege(new SlotValuesSpec(frames, slot),
+                OWN_SLOT_VALUES_BULK_GETTER);
+    }
+
     private final ProtegeCommand<Collection<Cls>, Instance> DIRECT_TYPES_GETTER = new ProtegeCommand<Collection<Cls>, Instance>(
             "get direct types") {
 
@@ -47,10 +47,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.protempa.ProtempaUtil;
 
 /**
@@ -67,6 +67,14 @@ public abstract class ProtegeKnowledgeSourceBackend
     private Units units;
     private InstanceConverterFactory instanceConverterFactory;
 
+    /**
+     * The descendants of each proposition for which descendants have been
+     * collected, indexed by whether only propositions in the data source were
+     * collected and whether <code>abstractedFrom</code> was followed. Cleared
+     * whenever the knowledge base changes.
+     */
+    private final Map<String, Set<String>>[] closureIndexes;
+
     private static enum Units {
 
         ABSOLUTE(AbsoluteTimeUnit.class), RELATIVE_HOURS(RelativeHourUnit.class);
@@ -81,7 +89,12 @@ public abstract class ProtegeKnowledgeSourceBackend
         }
     };
 
+    @SuppressWarnings("unchecked")
     protected ProtegeKnowledgeSourceBackend() {
+        this.closureIndexes = new Map[4];
+        for (int i = 0; i < this.closureIndexes.length; i++) {
+            this.closureIndexes[i] = new ConcurrentHashMap<>();
+        }
     }
 
     @Override
@@ -132,6 +145,7 @@ public abstract class ProtegeKnowledgeSourceBackend
             this.instanceConverterFactory.reset();
             this.instanceConverterFactory = null;
         }
+        clearClosureIndexes();
     }
 
     @Override
@@ -264,24 +278,28 @@ public abstract class ProtegeKnowledgeSourceBackend
     @Override
     public void formChanged(ProjectEvent arg0) {
         this.instanceConverterFactory.reset();
+        clearClosureIndexes();
         fireKnowledgeSourceBackendUpdated();
     }
 
     @Override
     public void projectClosed(ProjectEvent arg0) {
         this.instanceConverterFactory.reset();
+        clearClosureIndexes();
         fireKnowledgeSourceBackendUpdated();
     }
 
     @Override
     public void projectSaved(ProjectEvent arg0) {
         this.instanceConverterFactory.reset();
+        clearClosureIndexes();
         fireKnowledgeSourceBackendUpdated();
     }
 
     @Override
     public void runtimeClsWidgetCreated(ProjectEvent arg0) {
         this.instanceConverterFactory.reset();
+        clearClosureIndexes();
         fireKnowledgeSourceBackendUpdated();
     }
 
@@ -404,39 +422,115 @@ public abstract class ProtegeKnowledgeSourceBackend
 
     private Collection<String> collectPropDescendantsInt(boolean inDataSourceOnly, boolean narrower, String[] propIds) throws KnowledgeSourceReadException {
         assert propIds != null : "propIds cannot be null";
+        Map<String, Set<String>> closureIndex =
+                this.closureIndexes[closureIndex(inDataSourceOnly, narrower)];
+        Set<String> result = new HashSet<>();
+        for (String propId : propIds) {
+            Set<String> descendants = closureIndex.get(propId);
+            if (descendants == null) {
+                Instance instance = this.cm.getInstance(propId);
+                if (instance == null) {
+                    throw new KnowledgeSourceReadException("unknown proposition id " + propId);
+                }
+                descendants = Collections.unmodifiableSet(
+                        collectDescendants(instance, inDataSourceOnly,
+                                narrower, closureIndex));
+                closureIndex.putIfAbsent(propId, descendants);
+            }
+            result.addAll(descendants);
+        }
+        return result;
+    }
+
+    /**
+     * Collects a proposition and its descendants breadth first. Each
+     * proposition is visited once no matter how many paths lead to it, and
+     * the slots of each level of the hierarchy are read in one command per
+     * slot. When the traversal reaches a proposition whose descendants are
+     * already in the closure index, it uses them rather than traversing them
+     * again.
+     *
+     * @param root the proposition.
+     * @param inDataSourceOnly whether to only collect propositions that are
+     * in the data source.
+     * @param narrower whether to follow <code>abstractedFrom</code> as well
+     * as <code>inverseIsA</code>.
+     * @param closureIndex descendants of previously visited roots.
+     * @return the ids of the proposition and its descendants.
+     */
+    private Set<String> collectDescendants(Instance root,
+            boolean inDataSourceOnly, boolean narrower,
+            Map<String, Set<String>> closureIndex)
+            throws KnowledgeSourceReadException {
         Slot inverseIsASlot = this.cm.getSlot("inverseIsA");
         Slot abstractedFromSlot = this.cm.getSlot("abstractedFrom");
         Slot inDataSourceSlot = this.cm.getSlot("inDataSource");
         Set<String> result = new HashSet<>();
-        Queue<Instance> queue = new LinkedList<>();
-        for (String propId : propIds) {
-            Instance instance = this.cm.getInstance(propId);
-            if (instance == null) {
-                throw new KnowledgeSourceReadException("unknown proposition id " + propId);
-            } else {
-                queue.add(instance);
+        Set<String> visited = new HashSet<>();
+        visited.add(root.getName());
+        List<Instance> level = Collections.singletonList(root);
+        while (!level.isEmpty()) {
+            List<Instance> toExpand = new ArrayList<>(level.size());
+            for (Instance instance : level) {
+                Set<String> indexed = instance != root
+                        ? closureIndex.get(instance.getName()) : null;
+                if (indexed != null) {
+                    result.addAll(indexed);
+                    visited.addAll(indexed);
+                } else {
+                    toExpand.add(instance);
+                }
+            }
+            if (toExpand.isEmpty()) {
+                break;
             }
-        }
-        while (!queue.isEmpty()) {
-            Instance instance = queue.poll();
             if (inDataSourceOnly) {
-                Boolean inDataSource = (Boolean) this.cm.getOwnSlotValue(instance, inDataSourceSlot);
-                if (inDataSource != null && inDataSource.booleanValue()) {
-                    result.add(instance.getName());
+                List<Object> inDataSources =
+                        this.cm.getOwnSlotValue(toExpand, inDataSourceSlot);
+                for (int i = 0, n = toExpand.size(); i < n; i++) {
+                    if (Boolean.TRUE.equals(inDataSources.get(i))) {
+                        result.add(toExpand.get(i).getName());
+                    }
                 }
             } else {
-                result.add(instance.getName());
-            }
-            Collection<?> inverseIsAs = this.cm.getOwnSlotValues(instance, inverseIsASlot);
-            for (Object obj : inverseIsAs) {
-                queue.add((Instance) obj);
+                for (Instance instance : toExpand) {
+                    result.add(instance.getName());
+                }
             }
-            Collection<?> abstractedFroms = narrower ? this.cm.getOwnSlotValues(instance, abstractedFromSlot) : Collections.emptyList();
-            for (Object obj : abstractedFroms) {
-                queue.add((Instance) obj);
+            List<Instance> nextLevel = new ArrayList<>();
+            addUnvisited(this.cm.getOwnSlotValues(toExpand, inverseIsASlot),
+                    visited, nextLevel);
+            if (narrower) {
+                addUnvisited(
+                        this.cm.getOwnSlotValues(toExpand, abstractedFromSlot),
+                        visited, nextLevel);
             }
+            level = nextLevel;
         }
         return result;
     }
 
+    private static void addUnvisited(List<Collection<?>> slotValues,
+            Set<String> visited, List<Instance> nextLevel) {
+        for (Collection<?> values : slotValues) {
+            for (Object obj : values) {
+                Instance child = (Instance) obj;
+                if (visited.add(child.getName())) {
+                    nextLevel.add(child);
+                }
+            }
+        }
+    }
+
+    private static int closureIndex(boolean inDataSourceOnly,
+            boolean narrower) {
+        return (narrower ? 2 : 0) | (inDataSourceOnly ? 1 : 0);
+    }
+
+    private void clearClosureIndexes() {
+        for (Map<String, Set<String>> closureIndex : this.closureIndexes) {
+            closureIndex.clear();
+        }
+    }
+
 }
@@ -0,0 +1,209 @@
+/*
+ * #%L
+ * Protempa Test Suite
+ * %%
+ * Copyright (C) 2012 - 2013 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.protempa.backend.ksb.protege;
+
+import edu.stanford.smi.protege.model.Cls;
+import edu.stanford.smi.protege.model.Instance;
+import edu.stanford.smi.protege.model.Slot;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.protempa.KnowledgeSource;
+import org.protempa.KnowledgeSourceReadException;
+import org.protempa.PropositionDefinition;
+import org.protempa.SourceCloseException;
+import org.protempa.SourceFactory;
+import org.protempa.bconfigs.ini4j.INIConfigurations;
+import org.protempa.backend.ksb.KnowledgeSourceBackend;
+
+/**
+ * Tests that collecting the descendants of propositions level by level with
+ * the bulk slot getters returns the same propositions as reading the slots
+ * of one instance at a time, on the test ontology.
+ *
+ * @author Andrew Post
+ */
+public class ProtegeKnowledgeSourceBackendDescendantsTest {
+
+    private KnowledgeSource knowledgeSource;
+    private ProtegeKnowledgeSourceBackend backend;
+    private ConnectionManager cm;
+    private List<String> propIds;
+
+    @Before
+    public void setUp() throws Exception {
+        SourceFactory sf = new SourceFactory(
+                new INIConfigurations(new File("src/test/resources")),
+                "protege-h2-test-config");
+        this.knowledgeSource = sf.newKnowledgeSourceInstance();
+        for (KnowledgeSourceBackend b : this.knowledgeSource.getBackends()) {
+            if (b instanceof ProtegeKnowledgeSourceBackend) {
+                this.backend = (ProtegeKnowledgeSourceBackend) b;
+            }
+        }
+        Assert.assertNotNull(this.backend);
+        this.cm = this.backend.getConnectionManager();
+        Cls propositionCls = this.cm.getCls("Proposition");
+        this.propIds = new ArrayList<>();
+        for (Instance instance : this.cm.getInstances(propositionCls)) {
+            this.propIds.add(instance.getName());
+        }
+        Collections.sort(this.propIds);
+        Assert.assertFalse(this.propIds.isEmpty());
+    }
+
+    @After
+    public void tearDown() throws SourceCloseException {
+        if (this.knowledgeSource != null) {
+            this.knowledgeSource.close();
+        }
+    }
+
+    @Test
+    public void testBulkSlotGetters() throws KnowledgeSourceReadException {
+        List<Instance> instances = new ArrayList<>(this.propIds.size());
+        for (String propId : this.propIds) {
+            instances.add(this.cm.getInstance(propId));
+        }
+        Slot inverseIsASlot = this.cm.getSlot("inverseIsA");
+        Slot inDataSourceSlot = this.cm.getSlot("inDataSource");
+        List<Collection<?>> inverseIsAs
+                = this.cm.getOwnSlotValues(instances, inverseIsASlot);
+        List<Object> inDataSources
+                = this.cm.getOwnSlotValue(instances, inDataSourceSlot);
+        for (int i = 0; i < instances.size(); i++) {
+            Instance instance = instances.get(i);
+            Assert.assertEquals(instance.getName(),
+                    new ArrayList<>(this.cm.getOwnSlotValues(instance,
+                            inverseIsASlot)),
+                    new ArrayList<>(inverseIsAs.get(i)));
+            Assert.assertEquals(instance.getName(),
+                    this.cm.getOwnSlotValue(instance, inDataSourceSlot),
+                    inDataSources.get(i));
+        }
+    }
+
+    @Test
+    public void testInverseIsA() throws KnowledgeSourceReadException {
+        // twice, so that the second pass is answered from the closure index
+        for (int pass = 0; pass < 2; pass++) {
+            for (String propId : this.propIds) {
+                Assert.assertEquals(propId,
+                        perInstanceDescendants(false, false, propId),
+                        new HashSet<>(this.backend
+                                .collectPropIdDescendantsUsingInverseIsA(
+                                        new String[]{propId})));
+            }
+        }
+    }
+
+    @Test
+    public void testAllNarrower() throws KnowledgeSourceReadException {
+        for (boolean inDataSourceOnly : new boolean[]{false, true}) {
+            for (int pass = 0; pass < 2; pass++) {
+                for (String propId : this.propIds) {
+                    Assert.assertEquals(propId + ", " + inDataSourceOnly,
+                            perInstanceDescendants(inDataSourceOnly, true,
+                                    propId),
+                            new HashSet<>(this.backend
+                                    .collectPropIdDescendantsUsingAllNarrower(
+                                            inDataSourceOnly,
+                                            new String[]{propId})));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPropositionDefinitions()
+            throws KnowledgeSourceReadException {
+        String[] allPropIds
+                = this.propIds.toArray(new String[this.propIds.size()]);
+        Set<String> actual = new HashSet<>();
+        for (PropositionDefinition propDef : this.backend
+                .collectPropDefDescendantsUsingAllNarrower(true,
+                        allPropIds)) {
+            actual.add(propDef.getId());
+        }
+        Assert.assertEquals(
+                perInstanceDescendants(true, true, allPropIds), actual);
+        actual.clear();
+        for (PropositionDefinition propDef : this.backend
+                .collectPropDefDescendantsUsingInverseIsA(allPropIds)) {
+            actual.add(propDef.getId());
+        }
+        Assert.assertEquals(
+                perInstanceDescendants(false, false, allPropIds), actual);
+    }
+
+    /**
+     * Collects descendants breadth first, reading the slots of one instance
+     * at a time, as the backend did before it read them a level at a time.
+     */
+    private Set<String> perInstanceDescendants(boolean inDataSourceOnly,
+            boolean narrower, String... roots)
+            throws KnowledgeSourceReadException {
+        Slot inverseIsASlot = this.cm.getSlot("inverseIsA");
+        Slot abstractedFromSlot = this.cm.getSlot("abstractedFrom");
+        Slot inDataSourceSlot = this.cm.getSlot("inDataSource");
+        Set<String> result = new HashSet<>();
+        Set<String> visited = new HashSet<>();
+        Queue<Instance> queue = new LinkedList<>();
+        for (String root : roots) {
+            queue.add(this.cm.getInstance(root));
+        }
+        while (!queue.isEmpty()) {
+            Instance instance = queue.poll();
+            if (!visited.add(instance.getName())) {
+                continue;
+            }
+            if (inDataSourceOnly) {
+                Boolean inDataSource = (Boolean) this.cm.getOwnSlotValue(
+                        instance, inDataSourceSlot);
+                if (inDataSource != null && inDataSource) {
+                    result.add(instance.getName());
+                }
+            } else {
+                result.add(instance.getName());
+            }
+            for (Object obj : this.cm.getOwnSlotValues(instance,
+                    inverseIsASlot)) {
+                queue.add((Instance) obj);
+            }
+            if (narrower) {
+                for (Object obj : this.cm.getOwnSlotValues(instance,
+                        abstractedFromSlot)) {
+                    queue.add((Instance) obj);
+                }
+            }
+        }
+        return result;
+    }
+}